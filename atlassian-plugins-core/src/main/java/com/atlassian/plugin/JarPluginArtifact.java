@@ -1,7 +1,6 @@
 package com.atlassian.plugin;
 
 import org.apache.commons.lang.Validate;
-import org.apache.commons.io.IOUtils;
 
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
@@ -9,6 +8,11 @@ import java.io.*;
 
 /**
  * The implementation of PluginArtifact that is backed by a jar file.
+ * <p>
+ * The jar is opened lazily and shared by all the streams returned by {@link #getResourceAsStream(String)}, and closed
+ * once the last of them is closed.  To read many resources, such as while a plugin is being created, hold the jar open
+ * with {@link #open()} and close it with a matching call to {@link #close()}.  While the jar is open,
+ * {@link #doesResourceExist(String)} is a lookup in the central directory it has already read.
  *
  * @see PluginArtifact
  * @since 2.0.0
@@ -17,47 +21,64 @@ public class JarPluginArtifact implements PluginArtifact
 {
     private final File jarFile;
 
+    // guarded by this
+    private JarFile jar;
+    private int references;
+
     public JarPluginArtifact(File jarFile)
     {
         Validate.notNull(jarFile);
         this.jarFile = jarFile;
     }
 
+    /**
+     * Opens the jar, if it isn't already, and keeps it open until a matching call to {@link #close()}.
+     *
+     * @throws PluginParseException if the jar can't be opened
+     * @since 2.11.0
+     */
+    public void open() throws PluginParseException
+    {
+        acquire();
+    }
+
+    /**
+     * Releases the jar held open by a call to {@link #open()}, closing it if no streams read from it are still open.
+     *
+     * @since 2.11.0
+     */
+    public void close()
+    {
+        release();
+    }
+
     public boolean doesResourceExist(String name)
     {
-        InputStream in = null;
+        Validate.notNull(name, "The file name must not be null");
+        final JarFile jar = acquire();
         try
         {
-            in = getResourceAsStream(name);
-            return (in != null);
+            return jar.getEntry(name) != null;
         }
         finally
         {
-            IOUtils.closeQuietly(in);
+            release();
         }
     }
 
     /**
-     * @return an input stream for the this file in the jar. Closing this stream also closes the jar file this stream comes from.
+     * @return an input stream for the this file in the jar. Closing this stream also closes the jar file this stream
+     * comes from, unless it is held open by {@link #open()} or by other streams.
      */
     public InputStream getResourceAsStream(String fileName) throws PluginParseException
     {
         Validate.notNull(fileName, "The file name must not be null");
-        final JarFile jar;
-        final ZipEntry entry;
-        try
-        {
-            jar = new JarFile(jarFile);
-            entry = jar.getEntry(fileName);
-            if (entry == null)
-            {
-                jar.close();
-                return null;
-            }
-        }
-        catch (IOException e)
+        final JarFile jar = acquire();
+        final ZipEntry entry = jar.getEntry(fileName);
+        if (entry == null)
         {
-            throw new PluginParseException("Cannot open JAR file for reading: " + jarFile, e);
+            release();
+            return null;
         }
 
         InputStream descriptorStream;
@@ -65,17 +86,34 @@ public class JarPluginArtifact implements PluginArtifact
         {
             descriptorStream = new BufferedInputStream(jar.getInputStream(entry)) {
 
+                private boolean closed;
+
                 // because we do not expose a handle to the jar file this stream is associated with, we need to make sure
-                // we explicitly close the jar file when we're done with the stream (else we'll have a file handle leak)
+                // we explicitly release the jar file when we're done with the stream (else we'll have a file handle leak)
                 public void close() throws IOException
                 {
-                    super.close();
-                    jar.close();
+                    try
+                    {
+                        super.close();
+                    }
+                    finally
+                    {
+                        synchronized (this)
+                        {
+                            if (closed)
+                            {
+                                return;
+                            }
+                            closed = true;
+                        }
+                        release();
+                    }
                 }
             };
         }
         catch (IOException e)
         {
+            release();
             throw new PluginParseException("Cannot retrieve " + fileName + " from plugin JAR [" + jarFile + "]", e);
         }
         return descriptorStream;
@@ -112,4 +150,44 @@ public class JarPluginArtifact implements PluginArtifact
     {
         return jarFile;
     }
+
+    private synchronized JarFile acquire() throws PluginParseException
+    {
+        if (jar == null)
+        {
+            try
+            {
+                jar = new JarFile(jarFile);
+            }
+            catch (IOException e)
+            {
+                throw new PluginParseException("Cannot open JAR file for reading: " + jarFile, e);
+            }
+        }
+        references++;
+        return jar;
+    }
+
+    private synchronized void release()
+    {
+        if (references == 0)
+        {
+            return;
+        }
+        if (--references == 0)
+        {
+            try
+            {
+                jar.close();
+            }
+            catch (IOException e)
+            {
+                // ignore, as with IOUtils.closeQuietly()
+            }
+            finally
+            {
+                jar = null;
+            }
+        }
+    }
 }
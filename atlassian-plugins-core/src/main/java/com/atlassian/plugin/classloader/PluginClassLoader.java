@@ -1,14 +1,20 @@
 package com.atlassian.plugin.classloader;
 
+import com.atlassian.plugin.classloader.url.ZipIndexUrlStreamHandler;
+import com.atlassian.plugin.util.PluginUtils;
+import com.atlassian.plugin.util.zip.ZipIndex;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.Validate;
 import org.codehaus.classworlds.uberjar.protocol.jar.NonLockingJarHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -16,17 +22,40 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 /**
  * A class loader used to load classes and resources from a given plugin.
+ * <p>
+ * Inner jars are either extracted to temporary files, or held in memory and read in place, see
+ * {@link PluginUtils#ATLASSIAN_PLUGINS_INNER_JARS_IN_MEMORY}.  Classes are loaded with a lock per class name rather
+ * than a lock on the whole class loader.
  *
  * @see PluginsClassLoader
  */
 public final class PluginClassLoader extends ClassLoader
 {
+    private static final Logger log = LoggerFactory.getLogger(PluginClassLoader.class);
     private static final String PLUGIN_INNER_JAR_PREFIX = "atlassian-plugins-innerjar";
+
+    static
+    {
+        // only available from Java 7, where it stops the VM from locking the whole class loader when loading classes
+        try
+        {
+            final Method registerAsParallelCapable = ClassLoader.class.getDeclaredMethod("registerAsParallelCapable");
+            registerAsParallelCapable.setAccessible(true);
+            registerAsParallelCapable.invoke(null);
+        }
+        catch (final Exception e)
+        {
+            log.debug("Unable to register the plugin class loader as parallel capable", e);
+        }
+    }
+
     /**
      * the list of inner jars
      */
@@ -39,6 +68,14 @@ public final class PluginClassLoader extends ClassLoader
      * The directory used for storing extracted inner jars.
      */
     private final File tempDirectory;
+    /**
+     * Whether inner jars are extracted to the temporary directory, rather than read in place.
+     */
+    private final boolean extractInnerJars;
+    /**
+     * The locks to load each class with.
+     */
+    private final ConcurrentMap<String, Object> classLoadingLocks = new ConcurrentHashMap<String, Object>();
 
     /**
      * @param pluginFile file reference to the jar for this plugin
@@ -64,10 +101,24 @@ public final class PluginClassLoader extends ClassLoader
      * @since 2.0.2
      */
     public PluginClassLoader(final File pluginFile, final ClassLoader parent, final File tempDirectory)
+    {
+        this(pluginFile, parent, tempDirectory, !Boolean.getBoolean(PluginUtils.ATLASSIAN_PLUGINS_INNER_JARS_IN_MEMORY));
+    }
+
+    /**
+     * @param pluginFile       file reference to the jar for this plugin
+     * @param parent           the parent class loader
+     * @param tempDirectory    the temporary directory to store inner jars
+     * @param extractInnerJars true to extract inner jars to the temporary directory, false to hold them in memory and
+     *                         read them in place
+     * @since 2.11.0
+     */
+    public PluginClassLoader(final File pluginFile, final ClassLoader parent, final File tempDirectory, final boolean extractInnerJars)
     {
         super(parent);
         Validate.isTrue(tempDirectory.exists(), "Temp directory should exist");
         this.tempDirectory = tempDirectory;
+        this.extractInnerJars = extractInnerJars;
         try
         {
             if ((pluginFile == null) || !pluginFile.exists())
@@ -100,7 +151,10 @@ public final class PluginClassLoader extends ClassLoader
                 final JarEntry jarEntry = entries.nextElement();
                 if (isInnerJarPath(jarEntry.getName()))
                 {
-                    initialiseInnerJar(jarFile, jarEntry);
+                    if (extractInnerJars || !indexInnerJar(file, jarFile, jarEntry))
+                    {
+                        initialiseInnerJar(jarFile, jarEntry);
+                    }
                 }
                 else
                 {
@@ -154,6 +208,42 @@ public final class PluginClassLoader extends ClassLoader
         }
     }
 
+    /**
+     * Reads an inner jar into memory and indexes its entries, so they can be read without extracting the jar.
+     *
+     * @return false if the inner jar can't be read in place, e.g. because it is a zip64 archive
+     */
+    private boolean indexInnerJar(final File file, final JarFile jarFile, final JarEntry jarEntry) throws IOException
+    {
+        InputStream inputStream = null;
+        final ZipIndex innerJarIndex;
+        try
+        {
+            inputStream = jarFile.getInputStream(jarEntry);
+            innerJarIndex = ZipIndex.of(IOUtils.toByteArray(inputStream));
+        }
+        catch (final IOException e)
+        {
+            log.debug("Unable to read inner jar " + jarEntry.getName() + " in place, extracting it instead", e);
+            return false;
+        }
+        finally
+        {
+            IOUtils.closeQuietly(inputStream);
+        }
+
+        final ZipIndexUrlStreamHandler handler = new ZipIndexUrlStreamHandler(innerJarIndex);
+        final String innerJarPath = "file:" + file.getAbsolutePath() + "!/" + jarEntry.getName() + "!/";
+        for (final String name : innerJarIndex.getEntryNames())
+        {
+            if (!entryMappings.containsKey(name))
+            {
+                entryMappings.put(name, new URL("jar", "", -1, innerJarPath + name, handler));
+            }
+        }
+        return true;
+    }
+
     /**
      * This implementation of loadClass uses a child first delegation model rather than the standard parent first. If the
      * requested class cannot be found in this class loader, the parent class loader will be consulted via the standard
@@ -165,29 +255,39 @@ public final class PluginClassLoader extends ClassLoader
      * @throws ClassNotFoundException if the class cannot be found in this class loader or its parent
      */
     @Override
-    protected synchronized Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException
+    protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException
     {
-        // First check if it's already been loaded
-        final Class<?> c = findLoadedClass(name);
-        if (c != null)
-        {
-            return c;
-        }
-
-        // If not, look inside the plugin before searching the parent.
-        final String path = name.replace('.', '/').concat(".class");
-        if (isEntryInPlugin(path))
+        synchronized (getClassNameLock(name))
         {
-            try
+            // First check if it's already been loaded
+            final Class<?> c = findLoadedClass(name);
+            if (c != null)
             {
-                return loadClassFromPlugin(name, path);
+                return c;
             }
-            catch (final IOException e)
+
+            // If not, look inside the plugin before searching the parent.
+            final String path = name.replace('.', '/').concat(".class");
+            if (isEntryInPlugin(path))
             {
-                throw new ClassNotFoundException("Unable to load class [ " + name + " ] from PluginClassLoader", e);
+                try
+                {
+                    return loadClassFromPlugin(name, path);
+                }
+                catch (final IOException e)
+                {
+                    throw new ClassNotFoundException("Unable to load class [ " + name + " ] from PluginClassLoader", e);
+                }
             }
+            return super.loadClass(name, resolve);
         }
-        return super.loadClass(name, resolve);
+    }
+
+    private Object getClassNameLock(final String className)
+    {
+        final Object lock = new Object();
+        final Object existingLock = classLoadingLocks.putIfAbsent(className, lock);
+        return (existingLock != null) ? existingLock : lock;
     }
 
     /**
@@ -247,7 +347,7 @@ public final class PluginClassLoader extends ClassLoader
      *
      * @param className to derive the package from
      */
-    private void initializePackage(final String className)
+    private synchronized void initializePackage(final String className)
     {
         final int i = className.lastIndexOf('.');
         if (i != -1)
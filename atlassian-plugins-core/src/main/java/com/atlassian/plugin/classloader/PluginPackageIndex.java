@@ -0,0 +1,260 @@
+package com.atlassian.plugin.classloader;
+
+import com.atlassian.plugin.Plugin;
+import com.atlassian.plugin.PluginArtifact;
+import com.atlassian.plugin.PluginArtifactBackedPlugin;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Index of which plugins contain which packages, built from the entries of each plugin's artifact, including the
+ * entries of any inner jars under {@code META-INF/lib}.  Packages are represented as directory names, such as
+ * {@code com/atlassian/plugin}, so that classes and resources share the same index.
+ * <p>
+ * Plugins that aren't backed by a jar artifact can't be indexed.  Plugins are indexed as they are enabled, so lookups
+ * never have to read an artifact.  The artifact is read without holding any lock, so a plugin removed meanwhile is
+ * not added to the index once it has been read.
+ *
+ * @since 2.11.0
+ */
+final class PluginPackageIndex
+{
+    private static final Logger log = LoggerFactory.getLogger(PluginPackageIndex.class);
+    private static final String INNER_JAR_PREFIX = "META-INF/lib/";
+
+    private final ConcurrentMap<String, Set<Plugin>> pluginsByPackage = new ConcurrentHashMap<String, Set<Plugin>>();
+    private final ConcurrentMap<String, IndexedPlugin> indexedPlugins = new ConcurrentHashMap<String, IndexedPlugin>();
+    // the plugin being indexed or indexed for each key, guarded by this
+    private final Map<String, Plugin> currentPlugins = new HashMap<String, Plugin>();
+
+    /**
+     * Indexes the packages of the plugin, replacing any previous index of a plugin with the same key.
+     *
+     * @param plugin The plugin to index
+     * @return The packages the plugin contains, or null if the plugin couldn't be indexed, or was removed or indexed
+     * again while it was being read
+     */
+    Set<String> index(final Plugin plugin)
+    {
+        synchronized (this)
+        {
+            removeIndexed(plugin.getKey());
+            currentPlugins.put(plugin.getKey(), plugin);
+        }
+        final Set<String> packages = readPackages(plugin);
+        if (packages == null)
+        {
+            return null;
+        }
+        synchronized (this)
+        {
+            if (currentPlugins.get(plugin.getKey()) != plugin)
+            {
+                return null;
+            }
+            removeIndexed(plugin.getKey());
+            addIndexed(plugin, packages);
+        }
+        return packages;
+    }
+
+    /**
+     * Removes the plugin with the given key from the index, including any plugin with the key that is being indexed
+     *
+     * @param pluginKey The plugin key
+     * @return The packages the plugin contained, or null if the plugin wasn't indexed
+     */
+    synchronized Set<String> remove(final String pluginKey)
+    {
+        currentPlugins.remove(pluginKey);
+        return removeIndexed(pluginKey);
+    }
+
+    // guarded by this
+    private void addIndexed(final Plugin plugin, final Set<String> packages)
+    {
+        for (final String packageName : packages)
+        {
+            Set<Plugin> plugins = pluginsByPackage.get(packageName);
+            if (plugins == null)
+            {
+                final Set<Plugin> newPlugins = new CopyOnWriteArraySet<Plugin>();
+                plugins = pluginsByPackage.putIfAbsent(packageName, newPlugins);
+                if (plugins == null)
+                {
+                    plugins = newPlugins;
+                }
+            }
+            plugins.add(plugin);
+        }
+        indexedPlugins.put(plugin.getKey(), new IndexedPlugin(plugin, packages));
+    }
+
+    // guarded by this
+    private Set<String> removeIndexed(final String pluginKey)
+    {
+        final IndexedPlugin indexed = indexedPlugins.remove(pluginKey);
+        if (indexed == null)
+        {
+            return null;
+        }
+        for (final String packageName : indexed.packages)
+        {
+            final Set<Plugin> plugins = pluginsByPackage.get(packageName);
+            if (plugins != null)
+            {
+                plugins.remove(indexed.plugin);
+            }
+        }
+        return indexed.packages;
+    }
+
+    /**
+     * @param pluginKey The plugin key
+     * @return The packages the plugin contains, or null if the plugin isn't indexed
+     */
+    Set<String> getPackages(final String pluginKey)
+    {
+        final IndexedPlugin indexed = indexedPlugins.get(pluginKey);
+        return indexed == null ? null : indexed.packages;
+    }
+
+    /**
+     * @param packageName The package, as a directory name
+     * @return The plugins known to contain the package, in the order they were indexed
+     */
+    Collection<Plugin> getPlugins(final String packageName)
+    {
+        final Set<Plugin> plugins = pluginsByPackage.get(packageName);
+        return plugins == null ? Collections.<Plugin>emptySet() : plugins;
+    }
+
+    /**
+     * @param className The fully qualified class name
+     * @return The package of the class as a directory name
+     */
+    static String getPackageOfClass(final String className)
+    {
+        final int lastDot = className.lastIndexOf('.');
+        return lastDot < 0 ? "" : className.substring(0, lastDot).replace('.', '/');
+    }
+
+    /**
+     * @param resourceName The resource name
+     * @return The directory of the resource
+     */
+    static String getPackageOfResource(final String resourceName)
+    {
+        final int start = resourceName.startsWith("/") ? 1 : 0;
+        final int lastSlash = resourceName.lastIndexOf('/');
+        return lastSlash < start ? "" : resourceName.substring(start, lastSlash);
+    }
+
+    private static Set<String> readPackages(final Plugin plugin)
+    {
+        if (!(plugin instanceof PluginArtifactBackedPlugin))
+        {
+            return null;
+        }
+        final PluginArtifact artifact = ((PluginArtifactBackedPlugin) plugin).getPluginArtifact();
+        final File file = artifact == null ? null : artifact.toFile();
+        if (file == null || !file.isFile())
+        {
+            return null;
+        }
+
+        final Set<String> packages = new HashSet<String>();
+        ZipFile zipFile = null;
+        try
+        {
+            zipFile = new ZipFile(file);
+            for (final Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();)
+            {
+                final ZipEntry entry = entries.nextElement();
+                addPackage(packages, entry);
+                if (entry.getName().startsWith(INNER_JAR_PREFIX) && entry.getName().endsWith(".jar"))
+                {
+                    addInnerJarPackages(packages, zipFile.getInputStream(entry));
+                }
+            }
+            return packages;
+        }
+        catch (final IOException e)
+        {
+            if (log.isDebugEnabled())
+            {
+                log.debug("Unable to index the packages of plugin " + plugin.getKey() + " from " + file, e);
+            }
+            return null;
+        }
+        finally
+        {
+            if (zipFile != null)
+            {
+                try
+                {
+                    zipFile.close();
+                }
+                catch (final IOException e)
+                {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static void addInnerJarPackages(final Set<String> packages, final InputStream in) throws IOException
+    {
+        final ZipInputStream zin = new ZipInputStream(in);
+        try
+        {
+            ZipEntry entry;
+            while ((entry = zin.getNextEntry()) != null)
+            {
+                addPackage(packages, entry);
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly(zin);
+        }
+    }
+
+    private static void addPackage(final Set<String> packages, final ZipEntry entry)
+    {
+        if (!entry.isDirectory())
+        {
+            packages.add(getPackageOfResource(entry.getName()));
+        }
+    }
+
+    private static final class IndexedPlugin
+    {
+        private final Plugin plugin;
+        private final Set<String> packages;
+
+        IndexedPlugin(final Plugin plugin, final Set<String> packages)
+        {
+            this.plugin = plugin;
+            this.packages = packages;
+        }
+    }
+}
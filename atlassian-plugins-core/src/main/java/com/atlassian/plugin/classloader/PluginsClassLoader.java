@@ -7,11 +7,13 @@ import com.atlassian.plugin.PluginAccessor;
 
 import java.net.URL;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.atlassian.plugin.event.PluginEventListener;
 import com.atlassian.plugin.event.PluginEventManager;
@@ -24,6 +26,11 @@ import org.slf4j.Logger;
 /**
  * A ClassLoader that will loop over all enabled Plugins, attempting to load the given class (or other resource) from
  * the ClassLoader of each plugin in turn.
+ * <p>
+ * Plugins known to contain the package of the class or resource, as recorded in a {@link PluginPackageIndex} of the
+ * enabled plugins, are tried first.  Misses are cached per package.  Enabling a plugin flushes them all, as its
+ * classloader may import packages from anywhere, but enabling a module of a plugin that is already indexed only
+ * invalidates the misses for the packages the plugin contains.
  *
  * @see com.atlassian.plugin.classloader.PluginClassLoader
  */
@@ -33,11 +40,12 @@ public class PluginsClassLoader extends AbstractClassLoader
 
     private final PluginAccessor pluginAccessor;
 
-    private final Map<String, Plugin> pluginResourceIndex = new HashMap<String, Plugin>();
-    private final Map<String, Plugin> pluginClassIndex = new HashMap<String, Plugin>();
+    private final ConcurrentMap<String, Plugin> pluginResourceIndex = new ConcurrentHashMap<String, Plugin>();
+    private final ConcurrentMap<String, Plugin> pluginClassIndex = new ConcurrentHashMap<String, Plugin>();
+    private final PluginPackageIndex packageIndex = new PluginPackageIndex();
 
-    private final Set<String> missedPluginResource = new HashSet<String>();
-    private final Set<String> missedPluginClass = new HashSet<String>();
+    private final MissCache missedPluginResource = new MissCache();
+    private final MissCache missedPluginClass = new MissCache();
     private ClassLoader parentClassLoader;
 
     public PluginsClassLoader(final PluginAccessor pluginAccessor)
@@ -70,11 +78,7 @@ public class PluginsClassLoader extends AbstractClassLoader
     @Override
     protected URL findResource(final String name)
     {
-        final Plugin indexedPlugin;
-        synchronized (this)
-        {
-            indexedPlugin = pluginResourceIndex.get(name);
-        }
+        final Plugin indexedPlugin = pluginResourceIndex.get(name);
         final URL result;
         if (isPluginEnabled(indexedPlugin))
         {
@@ -94,11 +98,7 @@ public class PluginsClassLoader extends AbstractClassLoader
     @Override
     protected Class<?> findClass(final String className) throws ClassNotFoundException
     {
-        final Plugin indexedPlugin;
-        synchronized (this)
-        {
-            indexedPlugin = pluginClassIndex.get(className);
-        }
+        final Plugin indexedPlugin = pluginClassIndex.get(className);
 
         final Class<?> result;
         if (isPluginEnabled(indexedPlugin))
@@ -125,15 +125,28 @@ public class PluginsClassLoader extends AbstractClassLoader
 
     private Class<?> loadClassFromPlugins(final String className)
     {
-        final boolean isMissedClassName;
-        synchronized (this)
+        final String packageName = PluginPackageIndex.getPackageOfClass(className);
+        final long missGeneration = missedPluginClass.getGeneration();
+        if (missedPluginClass.contains(packageName, className))
         {
-            isMissedClassName = missedPluginClass.contains(className);
+            return null;
         }
-        if (isMissedClassName)
+
+        // Try the plugins known to contain the package first
+        final Collection<Plugin> candidates = packageIndex.getPlugins(packageName);
+        for (final Plugin plugin : candidates)
         {
-            return null;
+            if (isPluginEnabled(plugin))
+            {
+                final Class<?> result = loadClassFromPlugin(plugin, className);
+                if (result != null)
+                {
+                    return result;
+                }
+            }
         }
+
+        // Then any other plugin, as it may not be indexed or may import the package
         final Collection<Plugin> plugins = pluginAccessor.getEnabledPlugins();
         if (log.isDebugEnabled())
         {
@@ -141,93 +154,128 @@ public class PluginsClassLoader extends AbstractClassLoader
         }
         for (final Plugin plugin : plugins)
         {
-            if (log.isDebugEnabled())
-            {
-                log.debug("loadClassFromPlugins (" + className + ") looking in plugin '" + plugin.getKey() + "'.");
-            }
-            try
+            if (!containsPlugin(candidates, plugin))
             {
-                final Class<?> result = plugin.getClassLoader().loadClass(className);
-                //loadClass should never return null
-                synchronized (this)
+                final Class<?> result = loadClassFromPlugin(plugin, className);
+                if (result != null)
                 {
-                    pluginClassIndex.put(className, plugin);
+                    return result;
                 }
-                if (log.isDebugEnabled())
-                {
-                    log.debug("loadClassFromPlugins (" + className + ") found in plugin '" + plugin.getKey() + "'.");
-                }
-                return result;
-            }
-            catch (final ClassNotFoundException e)
-            {
-                // continue searching the other plugins
             }
         }
         if (log.isDebugEnabled())
         {
             log.debug("loadClassFromPlugins (" + className + ") not found - caching the miss.");
         }
-        synchronized (this)
+        missedPluginClass.add(packageName, className, missGeneration);
+        return null;
+    }
+
+    private Class<?> loadClassFromPlugin(final Plugin plugin, final String className)
+    {
+        if (log.isDebugEnabled())
         {
-            missedPluginClass.add(className);
+            log.debug("loadClassFromPlugins (" + className + ") looking in plugin '" + plugin.getKey() + "'.");
+        }
+        try
+        {
+            final Class<?> result = plugin.getClassLoader().loadClass(className);
+            //loadClass should never return null
+            pluginClassIndex.put(className, plugin);
+            if (log.isDebugEnabled())
+            {
+                log.debug("loadClassFromPlugins (" + className + ") found in plugin '" + plugin.getKey() + "'.");
+            }
+            return result;
+        }
+        catch (final ClassNotFoundException e)
+        {
+            // continue searching the other plugins
+            return null;
         }
-        return null;
     }
 
     private URL getResourceFromPlugins(final String name)
     {
-        final boolean isMissedResource;
-        synchronized (this)
+        final String packageName = PluginPackageIndex.getPackageOfResource(name);
+        final long missGeneration = missedPluginResource.getGeneration();
+        if (missedPluginResource.contains(packageName, name))
         {
-            isMissedResource = missedPluginResource.contains(name);
+            return null;
         }
-        if (isMissedResource)
+
+        final Collection<Plugin> candidates = packageIndex.getPlugins(packageName);
+        for (final Plugin plugin : candidates)
         {
-            return null;
+            if (isPluginEnabled(plugin))
+            {
+                final URL resource = getResourceFromPlugin(plugin, name);
+                if (resource != null)
+                {
+                    return resource;
+                }
+            }
         }
+
         final Collection<Plugin> plugins = pluginAccessor.getEnabledPlugins();
         for (final Plugin plugin : plugins)
         {
-            final URL resource = plugin.getClassLoader().getResource(name);
-            if (resource != null)
+            if (!containsPlugin(candidates, plugin))
             {
-                synchronized (this)
+                final URL resource = getResourceFromPlugin(plugin, name);
+                if (resource != null)
                 {
-                    pluginResourceIndex.put(name, plugin);
+                    return resource;
                 }
-                return resource;
             }
         }
-        synchronized (this)
-        {
-            missedPluginResource.add(name);
-        }
+        missedPluginResource.add(packageName, name, missGeneration);
         return null;
     }
 
-    private boolean isPluginEnabled(final Plugin plugin)
+    private URL getResourceFromPlugin(final Plugin plugin, final String name)
     {
-        return (plugin != null) && pluginAccessor.isPluginEnabled(plugin.getKey());
+        final URL resource = plugin.getClassLoader().getResource(name);
+        if (resource != null)
+        {
+            pluginResourceIndex.put(name, plugin);
+        }
+        return resource;
     }
 
-    public synchronized void notifyUninstallPlugin(final Plugin plugin)
+    /**
+     * Checks by identity, so the plugins are only asked for their keys if there are any candidates at all
+     */
+    private static boolean containsPlugin(final Collection<Plugin> plugins, final Plugin plugin)
     {
-        flushMissesCaches();
-        for (final Iterator<Map.Entry<String, Plugin>> it = pluginResourceIndex.entrySet().iterator(); it.hasNext();)
+        for (final Plugin candidate : plugins)
         {
-            final Map.Entry<String, Plugin> resourceEntry = it.next();
-            final Plugin pluginForResource = resourceEntry.getValue();
-            if (plugin.getKey().equals(pluginForResource.getKey()))
+            if (candidate == plugin)
             {
-                it.remove();
+                return true;
             }
         }
-        for (final Iterator<Map.Entry<String, Plugin>> it = pluginClassIndex.entrySet().iterator(); it.hasNext();)
+        return false;
+    }
+
+    private boolean isPluginEnabled(final Plugin plugin)
+    {
+        return (plugin != null) && pluginAccessor.isPluginEnabled(plugin.getKey());
+    }
+
+    public void notifyUninstallPlugin(final Plugin plugin)
+    {
+        invalidateMisses(packageIndex.remove(plugin.getKey()));
+        removePlugin(pluginResourceIndex, plugin);
+        removePlugin(pluginClassIndex, plugin);
+    }
+
+    private static void removePlugin(final Map<String, Plugin> index, final Plugin plugin)
+    {
+        for (final Iterator<Map.Entry<String, Plugin>> it = index.entrySet().iterator(); it.hasNext();)
         {
-            final Map.Entry<String, Plugin> pluginClassEntry = it.next();
-            final Plugin pluginForClass = pluginClassEntry.getValue();
-            if (plugin.getKey().equals(pluginForClass.getKey()))
+            final Map.Entry<String, Plugin> entry = it.next();
+            if (plugin.getKey().equals(entry.getValue().getKey()))
             {
                 it.remove();
             }
@@ -245,11 +293,7 @@ public class PluginsClassLoader extends AbstractClassLoader
      */
     public Plugin getPluginForClass(String className)
     {
-        Plugin indexedPlugin;
-        synchronized (this)
-        {
-            indexedPlugin = pluginClassIndex.get(className);
-        }
+        Plugin indexedPlugin = pluginClassIndex.get(className);
 
         if (isPluginEnabled(indexedPlugin))
         {
@@ -268,13 +312,9 @@ public class PluginsClassLoader extends AbstractClassLoader
             // Class could not be loaded - so return null.
             return null;
         }
-        synchronized (this)
-        {
-            // if we get here, then loadClassFromPlugins() has returned a non-null class, and the side effect is that
-            // the plugin for the class name is cached in pluginClassIndex.
-            indexedPlugin = pluginClassIndex.get(className);
-        }
-        return indexedPlugin;
+        // if we get here, then loadClassFromPlugins() has returned a non-null class, and the side effect is that
+        // the plugin for the class name is cached in pluginClassIndex.
+        return pluginClassIndex.get(className);
     }
 
     private boolean isSystemClass(final String className)
@@ -313,23 +353,114 @@ public class PluginsClassLoader extends AbstractClassLoader
     @PluginEventListener
     public void onPluginEnabled(PluginEnabledEvent event)
     {
-        notifyPluginOrModuleEnabled();
+        notifyPluginEnabled(event.getPlugin());
     }
 
     @PluginEventListener
     public void onPluginModuleEnabled(PluginModuleEnabledEvent event)
     {
-        notifyPluginOrModuleEnabled();
+        final Plugin plugin = event.getModule().getPlugin();
+        if (plugin != null)
+        {
+            invalidateMisses(packageIndex.getPackages(plugin.getKey()));
+        }
+        else
+        {
+            flushMissesCaches();
+        }
     }
 
-    public synchronized void notifyPluginOrModuleEnabled()
+    /**
+     * Flushes all cached misses.  Prefer {@link #onPluginEnabled(PluginEnabledEvent)}, which also indexes the packages
+     * of the plugin that was enabled.
+     */
+    public void notifyPluginOrModuleEnabled()
     {
         flushMissesCaches();
     }
 
+    private void notifyPluginEnabled(final Plugin plugin)
+    {
+        packageIndex.index(plugin);
+        // a class or resource may be found through the packages the plugin imports, not just those it contains
+        flushMissesCaches();
+    }
+
+    /**
+     * @param packages The packages to invalidate misses for, or null if they are unknown and all misses need flushing
+     */
+    private void invalidateMisses(final Set<String> packages)
+    {
+        if (packages == null)
+        {
+            flushMissesCaches();
+        }
+        else
+        {
+            missedPluginClass.invalidate(packages);
+            missedPluginResource.invalidate(packages);
+        }
+    }
+
     private void flushMissesCaches()
     {
         missedPluginClass.clear();
         missedPluginResource.clear();
     }
+
+    /**
+     * Names that couldn't be found in any plugin, grouped by package so they can be invalidated a package at a time.
+     * Each invalidation bumps a generation, so a lookup that raced with an invalidation doesn't record a stale miss.
+     */
+    private static final class MissCache
+    {
+        private final ConcurrentMap<String, Set<String>> missesByPackage = new ConcurrentHashMap<String, Set<String>>();
+        private final AtomicLong generation = new AtomicLong();
+
+        long getGeneration()
+        {
+            return generation.get();
+        }
+
+        boolean contains(final String packageName, final String name)
+        {
+            final Set<String> misses = missesByPackage.get(packageName);
+            return misses != null && misses.contains(name);
+        }
+
+        void add(final String packageName, final String name, final long lookupGeneration)
+        {
+            Set<String> misses = missesByPackage.get(packageName);
+            if (misses == null)
+            {
+                final Set<String> newMisses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                misses = missesByPackage.putIfAbsent(packageName, newMisses);
+                if (misses == null)
+                {
+                    misses = newMisses;
+                }
+            }
+            misses.add(name);
+            if (generation.get() != lookupGeneration)
+            {
+                // invalidated while looking up, so the miss may already be stale
+                misses.remove(name);
+            }
+        }
+
+        void invalidate(final Set<String> packages)
+        {
+            generation.incrementAndGet();
+            for (final String packageName : packages)
+            {
+                missesByPackage.remove(packageName);
+            }
+        }
+
+        void clear()
+        {
+            generation.incrementAndGet();
+            missesByPackage.clear();
+        }
+    }
 }
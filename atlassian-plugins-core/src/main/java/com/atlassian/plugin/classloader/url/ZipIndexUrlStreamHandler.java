@@ -0,0 +1,48 @@
+package com.atlassian.plugin.classloader.url;
+
+import com.atlassian.plugin.util.zip.ZipIndex;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+
+/**
+ * URL stream handler of the entries of a zip held in memory.  The name of the entry is the part of the URL after the
+ * last <code>!/</code>.
+ *
+ * @since 2.11.0
+ */
+public class ZipIndexUrlStreamHandler extends URLStreamHandler
+{
+    private final ZipIndex zipIndex;
+
+    public ZipIndexUrlStreamHandler(final ZipIndex zipIndex)
+    {
+        this.zipIndex = zipIndex;
+    }
+
+    public URLConnection openConnection(final URL url)
+    {
+        final String file = url.getFile();
+        final String name = file.substring(file.lastIndexOf("!/") + 2);
+        return new URLConnection(url)
+        {
+            public void connect()
+            {
+            }
+
+            public InputStream getInputStream() throws IOException
+            {
+                final InputStream in = zipIndex.getInputStream(name);
+                if (in == null)
+                {
+                    throw new FileNotFoundException(url.toExternalForm());
+                }
+                return in;
+            }
+        };
+    }
+}
@@ -7,13 +7,13 @@ import com.atlassian.event.api.EventPublisher;
 import com.atlassian.event.config.ListenerHandlersConfiguration;
 import com.atlassian.event.internal.AsynchronousAbleEventDispatcher;
 import com.atlassian.event.internal.EventExecutorFactoryImpl;
-import com.atlassian.event.internal.EventPublisherImpl;
 import com.atlassian.event.internal.EventThreadPoolConfigurationImpl;
 import com.atlassian.event.spi.EventDispatcher;
 import com.atlassian.event.spi.EventExecutorFactory;
 import com.atlassian.event.spi.ListenerHandler;
 import com.atlassian.plugin.event.NotificationException;
 import com.atlassian.plugin.event.PluginEventManager;
+import com.atlassian.plugin.util.PluginUtils;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -23,6 +23,9 @@ import java.util.List;
  * <p>
  * The default method selectors are {@link MethodNameListenerMethodSelector} and 
  * {@link AnnotationListenerMethodSelector}.
+ * <p>
+ * Unless constructed with an {@code EventPublisher}, the listeners of each class of event are looked up once and
+ * kept up to date as listeners are registered and unregistered.
  */
 public class DefaultPluginEventManager implements PluginEventManager
 {
@@ -50,7 +53,8 @@ public class DefaultPluginEventManager implements PluginEventManager
 
         final EventExecutorFactory executorFactory = new EventExecutorFactoryImpl(new EventThreadPoolConfigurationImpl());
         final EventDispatcher eventDispatcher = new AsynchronousAbleEventDispatcher(executorFactory);
-        publisher = new EventPublisherImpl(eventDispatcher, configuration);
+        publisher = new TypeIndexedEventPublisher(eventDispatcher, configuration,
+            Long.getLong(PluginUtils.ATLASSIAN_PLUGINS_EVENT_SLOW_LISTENER_MILLIS, 1000));
     }
 
     public DefaultPluginEventManager()
@@ -5,7 +5,7 @@ import com.atlassian.event.spi.ListenerInvoker;
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import com.google.common.collect.ImmutableSet;
 
 import java.util.List;
 import java.util.Set;
@@ -35,11 +35,14 @@ final class MethodSelectorListenerHandler implements ListenerHandler
         {
             public ListenerInvoker apply(final Method method)
             {
+                // computed once, as the publisher may ask for them repeatedly
+                final Set<Class<?>> supportedEventTypes = ImmutableSet.<Class<?>>copyOf(method.getParameterTypes());
+                makeAccessible(method);
                 return new ListenerInvoker()
                 {
                     public Set<Class<?>> getSupportedEventTypes()
                     {
-                        return Sets.newHashSet(method.getParameterTypes());
+                        return supportedEventTypes;
                     }
 
                     public void invoke(Object event)
@@ -73,11 +76,32 @@ final class MethodSelectorListenerHandler implements ListenerHandler
                     {
                         return true;
                     }
+
+                    @Override
+                    public String toString()
+                    {
+                        return listener.getClass().getName() + "." + method.getName() + "(" + method.getParameterTypes()[0].getName() + ")";
+                    }
                 };
             }
         });
     }
 
+    /**
+     * Skips the access checks of every invocation.  The method is public, but the listener class may not be.
+     */
+    private static void makeAccessible(final Method method)
+    {
+        try
+        {
+            method.setAccessible(true);
+        }
+        catch (final SecurityException e)
+        {
+            // invoke with the access checks then
+        }
+    }
+
     private List<Method> getValidMethods(Object listener)
     {
         final List<Method> listenerMethods = Lists.newArrayList();
@@ -0,0 +1,235 @@
+package com.atlassian.plugin.event.impl;
+
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.event.config.ListenerHandlersConfiguration;
+import com.atlassian.event.spi.EventDispatcher;
+import com.atlassian.event.spi.ListenerHandler;
+import com.atlassian.event.spi.ListenerInvoker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An {@link EventPublisher} that looks up the listeners of an event in a table by the class of the event.  The entry
+ * for a class holds the invokers of every listener of the class or any of its supertypes, so publishing an event is a
+ * single lookup once an event of its class has been published.  Registering or unregistering a listener only updates
+ * the entries of the classes the listener listens for, adding or removing its invokers.
+ * <p>
+ * As with the Atlassian Event publisher, an exception thrown by a listener is logged and the event still goes to the
+ * other listeners, and registering a listener again replaces its previous registration.  Listeners that take longer
+ * than {@link com.atlassian.plugin.util.PluginUtils#ATLASSIAN_PLUGINS_EVENT_SLOW_LISTENER_MILLIS} to handle an event
+ * are logged as a warning, and the time taken by every listener is logged at debug level.
+ *
+ * @since 2.11.0
+ */
+final class TypeIndexedEventPublisher implements EventPublisher
+{
+    private static final Logger log = LoggerFactory.getLogger(TypeIndexedEventPublisher.class);
+
+    private static final ListenerInvoker[] NO_INVOKERS = new ListenerInvoker[0];
+
+    private final EventDispatcher eventDispatcher;
+    private final ListenerHandlersConfiguration configuration;
+    private final long slowListenerNanos;
+
+    // guarded by this
+    private final Map<Object, List<ListenerInvoker>> invokersByListener = new LinkedHashMap<Object, List<ListenerInvoker>>();
+    /** The class and supertypes of each class of event in the table, guarded by this */
+    private final Map<Class<?>, Set<Class<?>>> typesByEventClass = new HashMap<Class<?>, Set<Class<?>>>();
+
+    /** The invokers of the listeners for each class of event published, only changed while holding this */
+    private final ConcurrentMap<Class<?>, ListenerInvoker[]> invokersByEventClass = new ConcurrentHashMap<Class<?>, ListenerInvoker[]>();
+
+    TypeIndexedEventPublisher(final EventDispatcher eventDispatcher, final ListenerHandlersConfiguration configuration,
+                              final long slowListenerMillis)
+    {
+        this.eventDispatcher = checkNotNull(eventDispatcher);
+        this.configuration = checkNotNull(configuration);
+        this.slowListenerNanos = TimeUnit.MILLISECONDS.toNanos(slowListenerMillis);
+    }
+
+    public void publish(final Object event)
+    {
+        checkNotNull(event);
+        for (final ListenerInvoker invoker : getInvokers(event.getClass()))
+        {
+            final long start = System.nanoTime();
+            try
+            {
+                eventDispatcher.dispatch(invoker, event);
+            }
+            catch (final Exception e)
+            {
+                log.error("There was an exception thrown trying to dispatch event '" + event + "' from the invoker '" + invoker + "'.", e);
+            }
+            finally
+            {
+                logTime(invoker, event, System.nanoTime() - start);
+            }
+        }
+    }
+
+    public void register(final Object listener)
+    {
+        checkArgument(listener != null, "Listener must not be null");
+        final List<ListenerInvoker> invokers = new ArrayList<ListenerInvoker>();
+        for (final ListenerHandler handler : configuration.getListenerHandlers())
+        {
+            invokers.addAll(handler.getInvokers(listener));
+        }
+        if (invokers.isEmpty())
+        {
+            throw new IllegalArgumentException("No listener invokers were found for listener <" + listener + ">");
+        }
+
+        synchronized (this)
+        {
+            // re-registering moves the listener to the end, as if it was unregistered first
+            final List<ListenerInvoker> previous = invokersByListener.remove(listener);
+            invokersByListener.put(listener, invokers);
+            for (final Map.Entry<Class<?>, Set<Class<?>>> entry : typesByEventClass.entrySet())
+            {
+                final ListenerInvoker[] existing = invokersByEventClass.get(entry.getKey());
+                final List<ListenerInvoker> updated = previous == null ? new ArrayList<ListenerInvoker>(Arrays.asList(existing)) : without(existing, previous);
+                addSupporting(updated, invokers, entry.getValue());
+                if (previous != null || updated.size() != existing.length)
+                {
+                    invokersByEventClass.put(entry.getKey(), toArray(updated));
+                }
+            }
+        }
+    }
+
+    public void unregister(final Object listener)
+    {
+        checkArgument(listener != null, "Listener must not be null");
+        synchronized (this)
+        {
+            final List<ListenerInvoker> previous = invokersByListener.remove(listener);
+            if (previous != null)
+            {
+                for (final Map.Entry<Class<?>, ListenerInvoker[]> entry : invokersByEventClass.entrySet())
+                {
+                    final List<ListenerInvoker> updated = without(entry.getValue(), previous);
+                    if (updated.size() != entry.getValue().length)
+                    {
+                        invokersByEventClass.put(entry.getKey(), toArray(updated));
+                    }
+                }
+            }
+        }
+    }
+
+    public void unregisterAll()
+    {
+        synchronized (this)
+        {
+            invokersByListener.clear();
+            typesByEventClass.clear();
+            invokersByEventClass.clear();
+        }
+    }
+
+    private ListenerInvoker[] getInvokers(final Class<?> eventClass)
+    {
+        final ListenerInvoker[] invokers = invokersByEventClass.get(eventClass);
+        return invokers != null ? invokers : addEventClass(eventClass);
+    }
+
+    /**
+     * Adds the entry for a class of event to the table, with the invokers of every listener of the class or any of its
+     * supertypes
+     */
+    private synchronized ListenerInvoker[] addEventClass(final Class<?> eventClass)
+    {
+        final ListenerInvoker[] existing = invokersByEventClass.get(eventClass);
+        if (existing != null)
+        {
+            return existing;
+        }
+
+        final Set<Class<?>> eventTypes = new HashSet<Class<?>>();
+        collectTypes(eventClass, eventTypes);
+        final List<ListenerInvoker> invokers = new ArrayList<ListenerInvoker>();
+        for (final List<ListenerInvoker> listenerInvokers : invokersByListener.values())
+        {
+            addSupporting(invokers, listenerInvokers, eventTypes);
+        }
+        final ListenerInvoker[] result = toArray(invokers);
+        typesByEventClass.put(eventClass, eventTypes);
+        invokersByEventClass.put(eventClass, result);
+        return result;
+    }
+
+    /**
+     * Adds the invokers supporting any of the event types that aren't already in the list
+     */
+    private static void addSupporting(final List<ListenerInvoker> invokers, final List<ListenerInvoker> candidates, final Set<Class<?>> eventTypes)
+    {
+        for (final ListenerInvoker invoker : candidates)
+        {
+            if (!Collections.disjoint(invoker.getSupportedEventTypes(), eventTypes) && !invokers.contains(invoker))
+            {
+                invokers.add(invoker);
+            }
+        }
+    }
+
+    private static List<ListenerInvoker> without(final ListenerInvoker[] invokers, final List<ListenerInvoker> removed)
+    {
+        final List<ListenerInvoker> result = new ArrayList<ListenerInvoker>(invokers.length);
+        for (final ListenerInvoker invoker : invokers)
+        {
+            if (!removed.contains(invoker))
+            {
+                result.add(invoker);
+            }
+        }
+        return result;
+    }
+
+    private static ListenerInvoker[] toArray(final List<ListenerInvoker> invokers)
+    {
+        return invokers.isEmpty() ? NO_INVOKERS : invokers.toArray(new ListenerInvoker[invokers.size()]);
+    }
+
+    private static void collectTypes(final Class<?> type, final Set<Class<?>> types)
+    {
+        if (type == null || !types.add(type))
+        {
+            return;
+        }
+        collectTypes(type.getSuperclass(), types);
+        for (final Class<?> iface : type.getInterfaces())
+        {
+            collectTypes(iface, types);
+        }
+    }
+
+    private void logTime(final ListenerInvoker invoker, final Object event, final long nanos)
+    {
+        if (nanos > slowListenerNanos)
+        {
+            log.warn("Listener '" + invoker + "' took " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms to handle event '" + event + "'");
+        }
+        else if (log.isDebugEnabled())
+        {
+            log.debug("Listener '" + invoker + "' took " + TimeUnit.NANOSECONDS.toMicros(nanos) + " microseconds to handle event '" + event + "'");
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.atlassian.plugin.loaders;
 
 import com.atlassian.plugin.DefaultPluginArtifactFactory;
+import com.atlassian.plugin.JarPluginArtifact;
 import com.atlassian.plugin.ModuleDescriptorFactory;
 import com.atlassian.plugin.Plugin;
 import com.atlassian.plugin.PluginArtifact;
@@ -15,6 +16,7 @@ import com.atlassian.plugin.factories.PluginFactory;
 import com.atlassian.plugin.impl.UnloadablePlugin;
 import com.atlassian.plugin.loaders.classloading.DeploymentUnit;
 import com.atlassian.plugin.loaders.classloading.Scanner;
+import com.atlassian.plugin.util.PluginUtils;
 
 import org.apache.commons.lang.Validate;
 import org.slf4j.Logger;
@@ -27,6 +29,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Plugin loader that delegates the detection of plugins to a Scanner instance. The scanner may monitor the contents
@@ -42,6 +51,7 @@ public class ScanningPluginLoader implements DynamicPluginLoader
     protected final Map<DeploymentUnit, Plugin> plugins;
     protected final List<PluginFactory> pluginFactories;
     protected final PluginArtifactFactory pluginArtifactFactory;
+    private final int loadingThreads;
 
     /**
      * Constructor that provides a default plugin artifact factory
@@ -66,6 +76,22 @@ public class ScanningPluginLoader implements DynamicPluginLoader
      * @since 2.0.0
      */
     public ScanningPluginLoader(final Scanner scanner, final List<PluginFactory> pluginFactories, final PluginArtifactFactory pluginArtifactFactory, final PluginEventManager pluginEventManager)
+    {
+        this(scanner, pluginFactories, pluginArtifactFactory, pluginEventManager, PluginUtils.getDefaultLoadingThreadCount());
+    }
+
+    /**
+     * Construct a new scanning plugin loader that creates the plugins it finds concurrently.  The plugin factories
+     * must be safe to call from several threads at once if more than one thread is used.
+     *
+     * @param scanner The scanner to use to detect new plugins
+     * @param pluginFactories The deployers that will handle turning an artifact into a plugin
+     * @param pluginArtifactFactory used to create new plugin artifacts from an URL
+     * @param pluginEventManager The event manager, used for listening for shutdown events
+     * @param loadingThreads The maximum number of plugins to create concurrently
+     * @since 2.11.0
+     */
+    public ScanningPluginLoader(final Scanner scanner, final List<PluginFactory> pluginFactories, final PluginArtifactFactory pluginArtifactFactory, final PluginEventManager pluginEventManager, final int loadingThreads)
     {
         Validate.notNull(pluginFactories, "The list of plugin factories must be specified");
         Validate.notNull(pluginEventManager, "The event manager must be specified");
@@ -76,6 +102,7 @@ public class ScanningPluginLoader implements DynamicPluginLoader
         this.pluginArtifactFactory = pluginArtifactFactory;
         this.scanner = scanner;
         this.pluginFactories = new ArrayList<PluginFactory>(pluginFactories);
+        this.loadingThreads = loadingThreads;
 
         pluginEventManager.register(this);
     }
@@ -84,11 +111,12 @@ public class ScanningPluginLoader implements DynamicPluginLoader
     {
         scanner.scan();
 
-        for (final DeploymentUnit deploymentUnit : scanner.getDeploymentUnits())
+        final List<DeploymentUnit> deploymentUnits = new ArrayList<DeploymentUnit>(scanner.getDeploymentUnits());
+        final List<Plugin> deployedPlugins = deployPluginsFromUnits(deploymentUnits, moduleDescriptorFactory);
+        for (int i = 0; i < deploymentUnits.size(); i++)
         {
-            Plugin plugin = deployPluginFromUnit(deploymentUnit, moduleDescriptorFactory);
-            plugin = postProcess(plugin);
-            plugins.put(deploymentUnit, plugin);
+            final Plugin plugin = postProcess(deployedPlugins.get(i));
+            plugins.put(deploymentUnits.get(i), plugin);
         }
 
         if (scanner.getDeploymentUnits().isEmpty())
@@ -99,17 +127,122 @@ public class ScanningPluginLoader implements DynamicPluginLoader
         return Collections.unmodifiableCollection(new ArrayList<Plugin>(plugins.values()));
     }
 
+    /**
+     * Creates the plugins for a list of deployment units, concurrently if the loader has more than one loading
+     * thread.  Each plugin is created by {@link #deployPluginFromUnit(DeploymentUnit, ModuleDescriptorFactory)}.
+     *
+     * @return the plugins, in the same order as the deployment units
+     */
+    private List<Plugin> deployPluginsFromUnits(final List<DeploymentUnit> deploymentUnits, final ModuleDescriptorFactory moduleDescriptorFactory)
+    {
+        final List<Plugin> deployedPlugins = new ArrayList<Plugin>(deploymentUnits.size());
+        final ExecutorService executorService = createExecutorService(deploymentUnits.size());
+        if (executorService == null)
+        {
+            for (final DeploymentUnit deploymentUnit : deploymentUnits)
+            {
+                deployedPlugins.add(deployPluginFromUnit(deploymentUnit, moduleDescriptorFactory));
+            }
+            return deployedPlugins;
+        }
+
+        try
+        {
+            final List<Future<Plugin>> futures = new ArrayList<Future<Plugin>>(deploymentUnits.size());
+            for (final DeploymentUnit deploymentUnit : deploymentUnits)
+            {
+                futures.add(executorService.submit(new Callable<Plugin>()
+                {
+                    public Plugin call()
+                    {
+                        return deployPluginFromUnit(deploymentUnit, moduleDescriptorFactory);
+                    }
+                }));
+            }
+            for (final Future<Plugin> future : futures)
+            {
+                deployedPlugins.add(getUninterruptibly(future));
+            }
+            return deployedPlugins;
+        }
+        finally
+        {
+            executorService.shutdown();
+        }
+    }
+
+    private static Plugin getUninterruptibly(final Future<Plugin> future)
+    {
+        boolean interrupted = false;
+        try
+        {
+            while (true)
+            {
+                try
+                {
+                    return future.get();
+                }
+                catch (final InterruptedException e)
+                {
+                    // the plugins being created must be accounted for, so keep waiting
+                    interrupted = true;
+                }
+                catch (final ExecutionException e)
+                {
+                    // should never happen, as deploying a plugin catches everything
+                    throw new IllegalStateException("Unexpected error while deploying plugins", e.getCause());
+                }
+            }
+        }
+        finally
+        {
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @param pluginCount The number of plugins that will be created
+     * @return An executor service to create plugins with, or null if they should be created on the calling thread
+     */
+    private ExecutorService createExecutorService(final int pluginCount)
+    {
+        final int threads = Math.min(loadingThreads, pluginCount);
+        if (threads <= 1)
+        {
+            return null;
+        }
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            public Thread newThread(final Runnable r)
+            {
+                final Thread thread = new Thread(r, "ScanningPluginLoader:thread-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setContextClassLoader(contextClassLoader);
+                return thread;
+            }
+        });
+    }
+
     protected Plugin deployPluginFromUnit(final DeploymentUnit deploymentUnit, final ModuleDescriptorFactory moduleDescriptorFactory)
     {
         Plugin plugin = null;
         String errorText = "No plugin factories found for plugin file " + deploymentUnit;
 
         String pluginKey = null;
-        for (final PluginFactory factory : pluginFactories)
+        PluginArtifact artifact = null;
+        try
         {
-            try
+            artifact = pluginArtifactFactory.create(deploymentUnit.getPath().toURI());
+            // every factory reads the artifact, so keep it open until the plugin is created
+            open(artifact);
+            for (final PluginFactory factory : pluginFactories)
             {
-                final PluginArtifact artifact = pluginArtifactFactory.create(deploymentUnit.getPath().toURI());
                 pluginKey = factory.canCreate(artifact);
                 if (pluginKey != null)
                 {
@@ -120,12 +253,15 @@ public class ScanningPluginLoader implements DynamicPluginLoader
                     }
                 }
             }
-            catch (final Throwable ex)
-            {
-                log.error("Unable to deploy plugin '" + pluginKey + "', file " + deploymentUnit, ex);
-                errorText = ex.getMessage();
-                break;
-            }
+        }
+        catch (final Throwable ex)
+        {
+            log.error("Unable to deploy plugin '" + pluginKey + "', file " + deploymentUnit, ex);
+            errorText = ex.getMessage();
+        }
+        finally
+        {
+            close(artifact);
         }
         if (plugin == null)
         {
@@ -168,17 +304,22 @@ public class ScanningPluginLoader implements DynamicPluginLoader
         final Collection<DeploymentUnit> updatedDeploymentUnits = scanner.scan();
 
         // create list while updating internal state
-        final List<Plugin> foundPlugins = new ArrayList<Plugin>();
+        final List<DeploymentUnit> newDeploymentUnits = new ArrayList<DeploymentUnit>();
         for (final DeploymentUnit deploymentUnit : updatedDeploymentUnits)
         {
-            if (!plugins.containsKey(deploymentUnit))
+            if (!plugins.containsKey(deploymentUnit) && !newDeploymentUnits.contains(deploymentUnit))
             {
-                Plugin plugin = deployPluginFromUnit(deploymentUnit, moduleDescriptorFactory);
-                plugin = postProcess(plugin);
-                plugins.put(deploymentUnit, plugin);
-                foundPlugins.add(plugin);
+                newDeploymentUnits.add(deploymentUnit);
             }
         }
+        final List<Plugin> deployedPlugins = deployPluginsFromUnits(newDeploymentUnits, moduleDescriptorFactory);
+        final List<Plugin> foundPlugins = new ArrayList<Plugin>();
+        for (int i = 0; i < newDeploymentUnits.size(); i++)
+        {
+            final Plugin plugin = postProcess(deployedPlugins.get(i));
+            plugins.put(newDeploymentUnits.get(i), plugin);
+            foundPlugins.add(plugin);
+        }
         if (foundPlugins.isEmpty())
         {
             log.info("No plugins found to be installed");
@@ -296,17 +437,41 @@ public class ScanningPluginLoader implements DynamicPluginLoader
     public String canLoad(final PluginArtifact pluginArtifact) throws PluginParseException
     {
         String pluginKey = null;
-        for (final PluginFactory factory : pluginFactories)
+        open(pluginArtifact);
+        try
         {
-            pluginKey = factory.canCreate(pluginArtifact);
-            if (pluginKey != null)
+            for (final PluginFactory factory : pluginFactories)
             {
-                break;
+                pluginKey = factory.canCreate(pluginArtifact);
+                if (pluginKey != null)
+                {
+                    break;
+                }
             }
         }
+        finally
+        {
+            close(pluginArtifact);
+        }
         return pluginKey;
     }
 
+    private static void open(final PluginArtifact pluginArtifact)
+    {
+        if (pluginArtifact instanceof JarPluginArtifact)
+        {
+            ((JarPluginArtifact) pluginArtifact).open();
+        }
+    }
+
+    private static void close(final PluginArtifact pluginArtifact)
+    {
+        if (pluginArtifact instanceof JarPluginArtifact)
+        {
+            ((JarPluginArtifact) pluginArtifact).close();
+        }
+    }
+
     /**
      * Template method that can be used by a specific {@link PluginLoader} to
      * add information to a {@link Plugin} after it has been loaded.
@@ -15,6 +15,8 @@ import com.atlassian.plugin.descriptors.UnloadableModuleDescriptorFactory;
 import com.atlassian.plugin.event.NotificationException;
 import com.atlassian.plugin.event.PluginEventListener;
 import com.atlassian.plugin.event.PluginEventManager;
+import com.atlassian.plugin.event.events.PluginContainerFailedEvent;
+import com.atlassian.plugin.event.events.PluginContainerRefreshedEvent;
 import com.atlassian.plugin.event.events.PluginContainerUnavailableEvent;
 import com.atlassian.plugin.event.events.PluginDisabledEvent;
 import com.atlassian.plugin.event.events.PluginEnabledEvent;
@@ -38,7 +40,6 @@ import com.atlassian.plugin.manager.PluginPersistentState.Builder;
 import com.atlassian.plugin.metadata.ClasspathFilePluginMetadata;
 import com.atlassian.plugin.metadata.RequiredPluginValidator;
 import com.atlassian.plugin.parsers.DescriptorParserFactory;
-import com.atlassian.plugin.predicate.EnabledModulePredicate;
 import com.atlassian.plugin.predicate.EnabledPluginPredicate;
 import com.atlassian.plugin.predicate.ModuleDescriptorOfClassPredicate;
 import com.atlassian.plugin.predicate.ModuleDescriptorOfTypePredicate;
@@ -54,6 +55,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
 
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -96,6 +98,7 @@ public class DefaultPluginManager implements PluginController, PluginAccessor, P
     private final Map<String, Plugin> plugins = CopyOnWriteMap.<String, Plugin> builder().stableViews().newHashMap();
     private final PluginsClassLoader classLoader;
     private final PluginEnabler pluginEnabler = new PluginEnabler(this, this);
+    private final EnabledModuleDescriptorIndex enabledModuleDescriptorIndex = new EnabledModuleDescriptorIndex();
     private final StateTracker tracker = new StateTracker();
 
     private final boolean verifyRequiredPlugins;
@@ -215,6 +218,7 @@ public class DefaultPluginManager implements PluginController, PluginAccessor, P
             log.error("At least one error occured while broadcasting the PluginFrameworkShutdownEvent. We will continue to shutdown the Plugin Manager anyway.");
         }
         plugins.clear();
+        enabledModuleDescriptorIndex.invalidate();
         pluginEventManager.unregister(this);
         tracker.setState(StateTracker.State.SHUTDOWN);
     }
@@ -259,12 +263,14 @@ public class DefaultPluginManager implements PluginController, PluginAccessor, P
     @PluginEventListener
     public void onPluginModuleAvailable(final PluginModuleAvailableEvent event)
     {
+        enabledModuleDescriptorIndex.invalidate();
         enableConfiguredPluginModule(event.getModule().getPlugin(), event.getModule(), new HashSet<ModuleDescriptor<?>>());
     }
 
     @PluginEventListener
     public void onPluginModuleUnavailable(final PluginModuleUnavailableEvent event)
     {
+        enabledModuleDescriptorIndex.invalidate();
         notifyModuleDisabled(event.getModule());
     }
 
@@ -274,12 +280,25 @@ public class DefaultPluginManager implements PluginController, PluginAccessor, P
         disablePluginWithoutPersisting(event.getPluginKey());
     }
 
+    @PluginEventListener
+    public void onPluginContainerRefreshed(final PluginContainerRefreshedEvent event)
+    {
+        pluginEnabler.onPluginContainerEvent(event.getPluginKey());
+    }
+
+    @PluginEventListener
+    public void onPluginContainerFailed(final PluginContainerFailedEvent event)
+    {
+        pluginEnabler.onPluginContainerEvent(event.getPluginKey());
+    }
+
     @PluginEventListener
     public void onPluginRefresh(final PluginRefreshedEvent event)
     {
         final Plugin plugin = event.getPlugin();
 
         disablePluginModules(plugin);
+        enabledModuleDescriptorIndex.invalidate();
 
         // enable the plugin, shamefully copied from notifyPluginEnabled()
         if (enableConfiguredPluginModules(plugin))
@@ -542,6 +561,7 @@ public class DefaultPluginManager implements PluginController, PluginAccessor, P
         {
             pluginInstaller.revertInstalledPlugin(pluginKey);
             plugins.remove(pluginKey);
+            enabledModuleDescriptorIndex.invalidate();
         }
         updateRequiresRestartState(pluginKey, PluginRestartState.NONE);
     }
@@ -579,6 +599,7 @@ public class DefaultPluginManager implements PluginController, PluginAccessor, P
         }
 
         plugins.remove(plugin.getKey());
+        enabledModuleDescriptorIndex.invalidate();
     }
 
     private PluginLoader ensurePluginAndLoaderSupportsUninstall(final Plugin plugin)
@@ -708,9 +729,12 @@ public class DefaultPluginManager implements PluginController, PluginAccessor, P
             plugins.put(plugin.getKey(), plugin);
             pluginToPluginLoader.put(plugin, loader);
         }
+        enabledModuleDescriptorIndex.invalidate();
 
         // enable all plugins, waiting a time period for them to enable
         pluginEnabler.enable(pluginsToEnable);
+        // the descriptors of a plugin may be replaced while it is disabled, without any events
+        enabledModuleDescriptorIndex.invalidate();
 
         // handle the plugins that were able to be successfully enabled
         for (final Plugin plugin : pluginsToEnable)
@@ -1036,15 +1060,13 @@ public class DefaultPluginManager implements PluginController, PluginAccessor, P
      */
     private <M> Collection<ModuleDescriptor<M>> getEnabledModuleDescriptorsByModuleClass(final Class<M> moduleClass)
     {
-        final ModuleOfClassPredicate<M> ofType = new ModuleOfClassPredicate<M>(moduleClass);
-        final EnabledModulePredicate<M> enabled = new EnabledModulePredicate<M>(this);
-        return toList(getModuleDescriptors(getEnabledPlugins(), new ModuleDescriptorPredicate<M>()
+        return addEnabledModuleDescriptors(enabledModuleDescriptorIndex.getByModuleClass(moduleClass, new Supplier<Collection<ModuleDescriptor<M>>>()
         {
-            public boolean matches(final ModuleDescriptor<? extends M> moduleDescriptor)
+            public Collection<ModuleDescriptor<M>> get()
             {
-                return ofType.matches(moduleDescriptor) && enabled.matches(moduleDescriptor);
+                return toList(getModuleDescriptors(getPlugins(), new ModuleOfClassPredicate<M>(moduleClass)));
             }
-        }));
+        }), new ArrayList<ModuleDescriptor<M>>());
     }
 
     /**
@@ -1053,39 +1075,60 @@ public class DefaultPluginManager implements PluginController, PluginAccessor, P
      * state it was in at 54639 when the fundamental issue leading to this
      * slowdown has been corrected (that is, slowness of PluginClassLoader).
      * 
+     * <p>
+     * The descriptors of the given class are kept in a snapshot until descriptors are added or removed, and the
+     * result is a new list of those that are currently enabled, which callers are free to modify as before.
+     *
      * @see PluginAccessor#getEnabledModuleDescriptorsByClass(Class)
      */
     public <D extends ModuleDescriptor<?>> List<D> getEnabledModuleDescriptorsByClass(final Class<D> descriptorClazz)
     {
-        final List<D> result = new LinkedList<D>();
-        for (final Plugin plugin : plugins.values())
+        return addEnabledModuleDescriptors(enabledModuleDescriptorIndex.getByDescriptorClass(descriptorClazz, new Supplier<List<D>>()
         {
-            // Skip disabled plugins
-            if (!isPluginEnabled(plugin.getKey()))
+            public List<D> get()
             {
-                if (log.isDebugEnabled())
-                {
-                    log.debug("Plugin [" + plugin.getKey() + "] is disabled.");
-                }
-                continue;
+                return findModuleDescriptorsByClass(descriptorClazz);
             }
+        }), new LinkedList<D>());
+    }
 
+    private <D extends ModuleDescriptor<?>> List<D> findModuleDescriptorsByClass(final Class<D> descriptorClazz)
+    {
+        final List<D> result = new LinkedList<D>();
+        for (final Plugin plugin : plugins.values())
+        {
             for (final ModuleDescriptor<?> module : plugin.getModuleDescriptors())
             {
                 if (descriptorClazz.isInstance(module))
                 {
-                    if (isPluginModuleEnabled(module.getCompleteKey()))
-                    {
-                        result.add(descriptorClazz.cast(module));
-                    }
-                    else if (log.isDebugEnabled())
-                    {
-                        log.debug("Module [" + module.getCompleteKey() + "] is disabled.");
-                    }
+                    result.add(descriptorClazz.cast(module));
                 }
             }
         }
+        return result;
+    }
 
+    /**
+     * Adds the descriptors from a snapshot of the index whose plugin and module are enabled right now, as their state
+     * may have changed without the plugin manager knowing, such as when the bundle of an OSGi plugin stops.
+     *
+     * @param descriptors the descriptors to check
+     * @param result the collection to add the enabled descriptors to
+     * @return the result
+     */
+    private <D extends ModuleDescriptor<?>, C extends Collection<D>> C addEnabledModuleDescriptors(final Iterable<D> descriptors, final C result)
+    {
+        for (final D descriptor : descriptors)
+        {
+            if (isPluginModuleEnabled(descriptor.getCompleteKey()))
+            {
+                result.add(descriptor);
+            }
+            else if (log.isDebugEnabled())
+            {
+                log.debug("Module [" + descriptor.getCompleteKey() + "] is disabled.");
+            }
+        }
         return result;
     }
 
@@ -1103,15 +1146,13 @@ public class DefaultPluginManager implements PluginController, PluginAccessor, P
     @Deprecated
     public <M> List<ModuleDescriptor<M>> getEnabledModuleDescriptorsByType(final String type) throws PluginParseException, IllegalArgumentException
     {
-        final ModuleDescriptorOfTypePredicate<M> ofType = new ModuleDescriptorOfTypePredicate<M>(moduleDescriptorFactory, type);
-        final EnabledModulePredicate<M> enabled = new EnabledModulePredicate<M>(this);
-        return toList(getModuleDescriptors(getEnabledPlugins(), new ModuleDescriptorPredicate<M>()
+        return addEnabledModuleDescriptors(enabledModuleDescriptorIndex.getByType(type, new Supplier<Collection<ModuleDescriptor<M>>>()
         {
-            public boolean matches(final ModuleDescriptor<? extends M> moduleDescriptor)
+            public Collection<ModuleDescriptor<M>> get()
             {
-                return ofType.matches(moduleDescriptor) && enabled.matches(moduleDescriptor);
+                return toList(getModuleDescriptors(getPlugins(), new ModuleDescriptorOfTypePredicate<M>(moduleDescriptorFactory, type)));
             }
-        }));
+        }), new ArrayList<ModuleDescriptor<M>>());
     }
 
     /**
@@ -1167,6 +1208,8 @@ public class DefaultPluginManager implements PluginController, PluginAccessor, P
             pluginsToEnable.add(plugin);
         }
         final Collection<Plugin> enabledPlugins = pluginEnabler.enableAllRecursively(pluginsToEnable);
+        // the descriptors of a plugin may be replaced while it is disabled, without any events
+        enabledModuleDescriptorIndex.invalidate();
 
         for (final Plugin plugin : enabledPlugins)
         {
@@ -1450,6 +1493,7 @@ public class DefaultPluginManager implements PluginController, PluginAccessor, P
         {
             ((StateAware) module).enabled();
         }
+        enabledModuleDescriptorIndex.moduleEnabled(module);
         pluginEventManager.broadcast(new PluginModuleEnabledEvent(module));
     }
 
@@ -1531,6 +1575,7 @@ public class DefaultPluginManager implements PluginController, PluginAccessor, P
         // logging.
         unloadablePlugin.setErrorText(unloadableDescriptor.getErrorText());
         plugins.put(plugin.getKey(), unloadablePlugin);
+        enabledModuleDescriptorIndex.invalidate();
 
         // PLUG-390: We used to persist the disabled state here, but we don't
         // want to do this.
@@ -0,0 +1,108 @@
+package com.atlassian.plugin.manager;
+
+import static com.google.common.collect.ImmutableList.copyOf;
+
+import com.atlassian.plugin.ModuleDescriptor;
+import com.google.common.base.Supplier;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of the module descriptors of all plugins by descriptor class, module class and descriptor type, which the
+ * plugin manager filters by the current state of their plugins and modules on every lookup.  Each entry is an
+ * immutable snapshot that is computed on first use, so repeated lookups don't need to walk every descriptor of every
+ * plugin.
+ * <p>
+ * As the state is checked on every lookup, enabling and disabling plugins and modules, in the plugin manager or
+ * elsewhere, leaves the snapshots alone.  They are only dropped when descriptors are added or removed, except that
+ * enabling a module drops the snapshots of the module classes it may now match, as a descriptor may only know its
+ * module class once it is enabled.
+ * <p>
+ * Every change bumps a generation, so a snapshot computed concurrently with a change is never stored.
+ *
+ * @since 2.11.0
+ */
+final class EnabledModuleDescriptorIndex
+{
+    private final ConcurrentMap<Class<?>, List<?>> byDescriptorClass = new ConcurrentHashMap<Class<?>, List<?>>();
+    private final ConcurrentMap<Class<?>, List<?>> byModuleClass = new ConcurrentHashMap<Class<?>, List<?>>();
+    private final ConcurrentMap<String, List<?>> byType = new ConcurrentHashMap<String, List<?>>();
+    private final AtomicLong generation = new AtomicLong();
+
+    <D extends ModuleDescriptor<?>> List<D> getByDescriptorClass(final Class<D> descriptorClass, final Supplier<? extends Collection<D>> supplier)
+    {
+        return get(byDescriptorClass, descriptorClass, supplier);
+    }
+
+    <M> List<ModuleDescriptor<M>> getByModuleClass(final Class<M> moduleClass, final Supplier<? extends Collection<ModuleDescriptor<M>>> supplier)
+    {
+        return get(byModuleClass, moduleClass, supplier);
+    }
+
+    <M> List<ModuleDescriptor<M>> getByType(final String type, final Supplier<? extends Collection<ModuleDescriptor<M>>> supplier)
+    {
+        return get(byType, type, supplier);
+    }
+
+    /**
+     * Drops all the snapshots.  Must be called after any change to the plugins or their module descriptors.
+     */
+    void invalidate()
+    {
+        generation.incrementAndGet();
+        byDescriptorClass.clear();
+        byModuleClass.clear();
+        byType.clear();
+    }
+
+    /**
+     * Drops the snapshots of the module classes the descriptor's module may be an instance of.  Must be called after a
+     * module is enabled.
+     *
+     * @param descriptor The descriptor of the module that was enabled
+     */
+    void moduleEnabled(final ModuleDescriptor<?> descriptor)
+    {
+        final Class<?> moduleClass = descriptor.getModuleClass();
+        if (moduleClass == null)
+        {
+            return;
+        }
+        generation.incrementAndGet();
+        for (final Iterator<Class<?>> it = byModuleClass.keySet().iterator(); it.hasNext();)
+        {
+            if (it.next().isAssignableFrom(moduleClass))
+            {
+                it.remove();
+            }
+        }
+    }
+
+    private <K, T> List<T> get(final ConcurrentMap<K, List<?>> index, final K key, final Supplier<? extends Collection<T>> supplier)
+    {
+        @SuppressWarnings("unchecked")
+        final List<T> cached = (List<T>) index.get(key);
+        if (cached != null)
+        {
+            return cached;
+        }
+
+        final long lookupGeneration = generation.get();
+        final List<T> snapshot = copyOf(supplier.get());
+        if (generation.get() == lookupGeneration)
+        {
+            index.put(key, snapshot);
+            if (generation.get() != lookupGeneration)
+            {
+                // invalidated while storing, so the snapshot may already be stale
+                index.remove(key, snapshot);
+            }
+        }
+        return snapshot;
+    }
+}
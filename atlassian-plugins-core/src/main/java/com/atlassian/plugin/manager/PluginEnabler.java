@@ -5,15 +5,26 @@ import com.atlassian.plugin.PluginAccessor;
 import com.atlassian.plugin.PluginController;
 import com.atlassian.plugin.PluginState;
 import com.atlassian.plugin.util.PluginUtils;
-import com.atlassian.plugin.util.WaitUntil;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.collect.ImmutableList;
 import org.slf4j.Logger;
@@ -21,8 +32,13 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Helper class that handles the problem of enabling a set of plugins at once.  This functionality is used for both
- * the initial plugin loading and manual plugin enabling.  The system waits 60 seconds for all dependencies to be
+ * the initial plugin loading and manual plugin enabling.  Plugins are enabled in dependency order, with plugins that
+ * don't depend on each other enabled concurrently if more than one thread is configured by
+ * {@link PluginUtils#ATLASSIAN_PLUGINS_ENABLE_THREADS}.  The system then waits 60 seconds for all dependencies to be
  * resolved, then resets the timer to 5 seconds if only one remains.
+ * <p>
+ * Rather than polling, the wait is woken up by {@link #onPluginContainerEvent(String)} whenever a plugin container
+ * has been refreshed or has failed.
  *
  * @since 2.2.0
  */
@@ -32,14 +48,48 @@ class PluginEnabler
     private static final long LAST_PLUGIN_TIMEOUT = 30 * 1000;
     private static final long LAST_PLUGIN_WARN_TIMEOUT = 5 * 1000;
 
+    /**
+     * How long to wait between checks when no container events arrive
+     */
+    private static final long DEFAULT_POLL_INTERVAL = 1000;
+
+    /**
+     * How long to wait for the plugin itself to process a container event before checking its state again
+     */
+    private static final long CONTAINER_EVENT_SETTLE_INTERVAL = 25;
+
     private final PluginAccessor pluginAccessor;
     private final PluginController pluginController;
+    private final int enablingThreads;
+    private final long pollInterval;
     private final Set<Plugin> pluginsBeingEnabled = new CopyOnWriteArraySet<Plugin>();
+    private final ContainerEventSignal containerEventSignal = new ContainerEventSignal();
 
     public PluginEnabler(PluginAccessor pluginAccessor, PluginController pluginController)
+    {
+        this(pluginAccessor, pluginController, PluginUtils.getDefaultEnablingThreadCount());
+    }
+
+    /**
+     * @param pluginAccessor The plugin accessor
+     * @param pluginController The plugin controller, used to disable plugins that time out
+     * @param enablingThreads The maximum number of plugins to enable concurrently
+     * @since 2.11.0
+     */
+    public PluginEnabler(PluginAccessor pluginAccessor, PluginController pluginController, int enablingThreads)
+    {
+        this(pluginAccessor, pluginController, enablingThreads, DEFAULT_POLL_INTERVAL);
+    }
+
+    /**
+     * @param pollInterval How long to wait, in milliseconds, between checks when no container events arrive
+     */
+    PluginEnabler(PluginAccessor pluginAccessor, PluginController pluginController, int enablingThreads, long pollInterval)
     {
         this.pluginAccessor = pluginAccessor;
         this.pluginController = pluginController;
+        this.enablingThreads = enablingThreads;
+        this.pollInterval = pollInterval;
     }
 
     /**
@@ -85,6 +135,22 @@ class PluginEnabler
         return pluginsBeingEnabled.contains(plugin);
     }
 
+    /**
+     * Called when the container of a plugin has been refreshed or has failed, which means the plugin has probably
+     * left the enabling state.  Wakes up any thread waiting for plugins to enable.
+     *
+     * @param pluginKey The key of the plugin whose container changed
+     * @since 2.11.0
+     */
+    void onPluginContainerEvent(String pluginKey)
+    {
+        if (log.isDebugEnabled())
+        {
+            log.debug("Container event received for plugin " + pluginKey);
+        }
+        containerEventSignal.fire();
+    }
+
     /**
      * Enables a collection of plugins at once, waiting for 60 seconds.  If any plugins are still in the enabling state,
      * the plugins are explicitly disabled.
@@ -106,97 +172,284 @@ class PluginEnabler
 
     private void actualEnable(Collection<Plugin> plugins)
     {
-        final Set<Plugin> pluginsInEnablingState = new HashSet<Plugin>();
-        for (final Plugin plugin : plugins)
+        final Set<Plugin> pluginsInEnablingState = enableInDependencyOrder(plugins);
+
+        if (!pluginsInEnablingState.isEmpty())
         {
-            try
+            // Now wait for plugins that weren't enabled straight away, probably due to dependency ordering issues
+            awaitEnablingPlugins(pluginsInEnablingState);
+
+            // Disable any plugins that aren't enabled by now
+            if (!pluginsInEnablingState.isEmpty())
             {
-                plugin.enable();
-                if (plugin.getPluginState() == PluginState.ENABLING)
+                final StringBuilder sb = new StringBuilder();
+                for (final Plugin plugin : pluginsInEnablingState)
                 {
-                    pluginsInEnablingState.add(plugin);
+                    sb.append(plugin.getKey()).append(',');
+                    pluginController.disablePluginWithoutPersisting(plugin.getKey());
                 }
+                sb.deleteCharAt(sb.length() - 1);
+                log.error("Unable to start the following plugins due to timeout while waiting for plugin to enable: " + sb.toString());
             }
-            catch (final RuntimeException ex)
+        }
+    }
+
+    /**
+     * Calls {@link Plugin#enable()} on each plugin, only once the plugins it requires from the same set have been
+     * enabled.  Plugins whose dependencies are satisfied are enabled concurrently.  Circular dependencies are broken
+     * by enabling the first remaining plugin, in the order given, once nothing else can make progress.
+     *
+     * @param plugins The plugins to enable
+     * @return The plugins that were left in the {@link PluginState#ENABLING} state
+     */
+    private Set<Plugin> enableInDependencyOrder(Collection<Plugin> plugins)
+    {
+        final Map<String, EnablementNode> nodes = new LinkedHashMap<String, EnablementNode>();
+        for (final Plugin plugin : plugins)
+        {
+            nodes.put(plugin.getKey(), new EnablementNode(plugin));
+        }
+        for (final EnablementNode node : nodes.values())
+        {
+            for (final String dependencyKey : node.plugin.getRequiredPlugins())
             {
-                log.error("Unable to enable plugin " + plugin.getKey(), ex);
+                final EnablementNode dependency = nodes.get(dependencyKey);
+                if (dependency != null && dependency != node)
+                {
+                    node.unsatisfiedDependencies++;
+                    dependency.dependents.add(node);
+                }
             }
         }
 
-        if (!pluginsInEnablingState.isEmpty())
+        final Set<Plugin> pluginsInEnablingState = new HashSet<Plugin>();
+        final ExecutorService executorService = createExecutorService(nodes.size());
+        try
         {
-            // Now try to enable plugins that weren't enabled before, probably due to dependency ordering issues
-            WaitUntil.invoke(new WaitUntil.WaitCondition()
+            final CompletionService<EnablementNode> completionService = new ExecutorCompletionService<EnablementNode>(
+                    executorService != null ? executorService : new CallerRunsExecutor());
+            final Set<EnablementNode> remaining = new HashSet<EnablementNode>(nodes.values());
+            int inFlight = 0;
+
+            for (final EnablementNode node : nodes.values())
             {
-                private long singlePluginTimeout;
-                private long singlePluginWarn;
+                if (node.unsatisfiedDependencies == 0)
+                {
+                    submit(completionService, node, remaining);
+                    inFlight++;
+                }
+            }
 
-                public boolean isFinished()
+            while (!remaining.isEmpty() || inFlight > 0)
+            {
+                if (inFlight == 0)
                 {
-                    if (singlePluginTimeout > 0 && singlePluginTimeout < System.currentTimeMillis())
+                    // Only circular dependencies are left, so break the cycle
+                    final EnablementNode node = firstRemaining(nodes.values(), remaining);
+                    if (log.isDebugEnabled())
                     {
-                        return true;
+                        log.debug("Circular dependency detected, enabling " + node.plugin.getKey() + " before its dependencies");
                     }
-                    for (final Iterator<Plugin> i = pluginsInEnablingState.iterator(); i.hasNext();)
-                    {
-                        final Plugin plugin = i.next();
-                        if (plugin.getPluginState() != PluginState.ENABLING)
-                        {
-                            i.remove();
-                        }
-                    }
-                    if (isAtlassianDevMode() && pluginsInEnablingState.size() == 1)
+                    submit(completionService, node, remaining);
+                    inFlight++;
+                    continue;
+                }
+
+                final EnablementNode completed = takeCompleted(completionService);
+                inFlight--;
+                if (completed.plugin.getPluginState() == PluginState.ENABLING)
+                {
+                    pluginsInEnablingState.add(completed.plugin);
+                }
+                for (final EnablementNode dependent : completed.dependents)
+                {
+                    if (--dependent.unsatisfiedDependencies == 0 && remaining.contains(dependent))
                     {
-                        final long currentTime = System.currentTimeMillis();
-                        if (singlePluginTimeout == 0)
-                        {
-                            log.info("Only one plugin left not enabled. Resetting the timeout to " + (LAST_PLUGIN_TIMEOUT / 1000) + " seconds.");
-
-                            singlePluginWarn = currentTime + LAST_PLUGIN_WARN_TIMEOUT;
-                            singlePluginTimeout = currentTime + LAST_PLUGIN_TIMEOUT;
-                        }
-                        else if (singlePluginWarn <= currentTime)
-                        {
-                            //PLUG-617: Warn people when it takes a long time to enable a plugin when in dev mode. We bumped
-                            //this timeout from 5 to 30 seconds because the gadget publisher in JIRA can take this long to
-                            //load when running java in DEBUG mode. We are also now going to log a message about slow startup
-                            //since 30 seconds is a long time to wait for your plugin to fail.
-                            final Plugin plugin = pluginsInEnablingState.iterator().next();
-                            final long remainingWait = Math.max(0, Math.round((singlePluginTimeout - currentTime) / 1000.0));
-
-                            log.warn("Plugin '" + plugin + "' did not enable within " + (LAST_PLUGIN_WARN_TIMEOUT / 1000) + " seconds." + "The plugin should not take this long to enable. Will only attempt to load plugin for another '" + remainingWait + "' seconds.");
-                            singlePluginWarn = Long.MAX_VALUE;
-                        }
+                        submit(completionService, dependent, remaining);
+                        inFlight++;
                     }
-                    return pluginsInEnablingState.isEmpty();
                 }
+            }
+        }
+        finally
+        {
+            if (executorService != null)
+            {
+                executorService.shutdown();
+            }
+        }
+        return pluginsInEnablingState;
+    }
+
+    private void submit(CompletionService<EnablementNode> completionService, EnablementNode node, Set<EnablementNode> remaining)
+    {
+        remaining.remove(node);
+        completionService.submit(node);
+    }
+
+    private EnablementNode firstRemaining(Collection<EnablementNode> nodes, Set<EnablementNode> remaining)
+    {
+        for (final EnablementNode node : nodes)
+        {
+            if (remaining.contains(node))
+            {
+                return node;
+            }
+        }
+        throw new IllegalStateException("No plugins remaining to enable");
+    }
+
+    private EnablementNode takeCompleted(CompletionService<EnablementNode> completionService)
+    {
+        boolean interrupted = false;
+        try
+        {
+            while (true)
+            {
+                try
+                {
+                    return completionService.take().get();
+                }
+                catch (final InterruptedException e)
+                {
+                    // the plugins that are already being enabled must be accounted for, so keep waiting
+                    interrupted = true;
+                }
+                catch (final ExecutionException e)
+                {
+                    // should never happen, as the node catches everything
+                    throw new IllegalStateException("Unexpected error while enabling plugins", e.getCause());
+                }
+            }
+        }
+        finally
+        {
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-                public String getWaitMessage()
+    /**
+     * @param pluginCount The number of plugins that will be enabled
+     * @return An executor service to enable plugins with, or null if they should be enabled on the calling thread
+     */
+    private ExecutorService createExecutorService(int pluginCount)
+    {
+        final int threads = Math.min(enablingThreads, pluginCount);
+        if (threads <= 1)
+        {
+            return null;
+        }
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            public Thread newThread(Runnable r)
+            {
+                final Thread thread = new Thread(r, "PluginEnabler:thread-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setContextClassLoader(contextClassLoader);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Waits for the plugins to leave the {@link PluginState#ENABLING} state, removing each plugin from the set as it
+     * does.  Gives up after the default enabling wait period, or after {@link #LAST_PLUGIN_TIMEOUT} if only one
+     * plugin is left in dev mode.
+     *
+     * @param pluginsInEnablingState The plugins to wait for
+     */
+    private void awaitEnablingPlugins(Set<Plugin> pluginsInEnablingState)
+    {
+        final long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(PluginUtils.getDefaultEnablingWaitPeriod());
+        long singlePluginTimeout = 0;
+        long singlePluginWarn = 0;
+        long lastSignal = containerEventSignal.get();
+        boolean settling = false;
+
+        while (true)
+        {
+            for (final Iterator<Plugin> i = pluginsInEnablingState.iterator(); i.hasNext();)
+            {
+                final Plugin plugin = i.next();
+                if (plugin.getPluginState() != PluginState.ENABLING)
                 {
-                    return "Plugins that have yet to be enabled: " + pluginsInEnablingState;
+                    i.remove();
                 }
+            }
+            if (pluginsInEnablingState.isEmpty())
+            {
+                return;
+            }
 
-                private boolean isAtlassianDevMode()
+            final long currentTime = System.currentTimeMillis();
+            if (isAtlassianDevMode() && pluginsInEnablingState.size() == 1)
+            {
+                if (singlePluginTimeout == 0)
                 {
-                    return Boolean.getBoolean(PluginUtils.ATLASSIAN_DEV_MODE);
+                    log.info("Only one plugin left not enabled. Resetting the timeout to " + (LAST_PLUGIN_TIMEOUT / 1000) + " seconds.");
+
+                    singlePluginWarn = currentTime + LAST_PLUGIN_WARN_TIMEOUT;
+                    singlePluginTimeout = currentTime + LAST_PLUGIN_TIMEOUT;
                 }
-            }, PluginUtils.getDefaultEnablingWaitPeriod(), TimeUnit.SECONDS, 1);
+                else if (singlePluginWarn <= currentTime)
+                {
+                    //PLUG-617: Warn people when it takes a long time to enable a plugin when in dev mode. We bumped
+                    //this timeout from 5 to 30 seconds because the gadget publisher in JIRA can take this long to
+                    //load when running java in DEBUG mode. We are also now going to log a message about slow startup
+                    //since 30 seconds is a long time to wait for your plugin to fail.
+                    final Plugin plugin = pluginsInEnablingState.iterator().next();
+                    final long remainingWait = Math.max(0, Math.round((singlePluginTimeout - currentTime) / 1000.0));
 
-            // Disable any plugins that aren't enabled by now
-            if (!pluginsInEnablingState.isEmpty())
+                    log.warn("Plugin '" + plugin + "' did not enable within " + (LAST_PLUGIN_WARN_TIMEOUT / 1000) + " seconds." + "The plugin should not take this long to enable. Will only attempt to load plugin for another '" + remainingWait + "' seconds.");
+                    singlePluginWarn = Long.MAX_VALUE;
+                }
+            }
+
+            final long deadline = singlePluginTimeout > 0 ? Math.min(timeout, singlePluginTimeout) : timeout;
+            if (currentTime >= deadline)
             {
-                final StringBuilder sb = new StringBuilder();
-                for (final Plugin plugin : pluginsInEnablingState)
+                return;
+            }
+
+            final long waitTime;
+            if (settling)
+            {
+                // The plugin may not have seen the container event yet, so check again shortly
+                waitTime = Math.min(CONTAINER_EVENT_SETTLE_INTERVAL, deadline - currentTime);
+            }
+            else
+            {
+                waitTime = Math.min(pollInterval, deadline - currentTime);
+                if (log.isInfoEnabled())
                 {
-                    sb.append(plugin.getKey()).append(',');
-                    pluginController.disablePluginWithoutPersisting(plugin.getKey());
+                    log.info("Plugins that have yet to be enabled: " + pluginsInEnablingState + ", " + TimeUnit.MILLISECONDS.toSeconds(deadline - currentTime) + " seconds remaining");
                 }
-                sb.deleteCharAt(sb.length() - 1);
-                log.error("Unable to start the following plugins due to timeout while waiting for plugin to enable: " + sb.toString());
+            }
+
+            try
+            {
+                settling = containerEventSignal.await(lastSignal, waitTime);
+                lastSignal = containerEventSignal.get();
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
             }
         }
     }
 
+    private boolean isAtlassianDevMode()
+    {
+        return Boolean.getBoolean(PluginUtils.ATLASSIAN_DEV_MODE);
+    }
+
     /**
      * Scans, recursively, to build a set of plugin dependencies for the target plugin
      *
@@ -218,4 +471,80 @@ class PluginEnabler
             }
         }
     }
+
+    /**
+     * A plugin in the dependency graph being enabled.  The graph is only modified by the thread calling
+     * {@link #enable(Collection)}, the node is only called on the worker threads.
+     */
+    private static final class EnablementNode implements Callable<EnablementNode>
+    {
+        private final Plugin plugin;
+        private final List<EnablementNode> dependents = new ArrayList<EnablementNode>();
+        private int unsatisfiedDependencies;
+
+        EnablementNode(Plugin plugin)
+        {
+            this.plugin = plugin;
+        }
+
+        public EnablementNode call()
+        {
+            try
+            {
+                plugin.enable();
+            }
+            catch (final RuntimeException ex)
+            {
+                log.error("Unable to enable plugin " + plugin.getKey(), ex);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Runs tasks on the calling thread, used when plugins are enabled one at a time
+     */
+    private static final class CallerRunsExecutor implements Executor
+    {
+        public void execute(Runnable command)
+        {
+            command.run();
+        }
+    }
+
+    /**
+     * A counter of container events that threads can wait on
+     */
+    private static final class ContainerEventSignal
+    {
+        private long count;
+
+        synchronized void fire()
+        {
+            count++;
+            notifyAll();
+        }
+
+        synchronized long get()
+        {
+            return count;
+        }
+
+        /**
+         * @param seen The last count seen by the caller
+         * @param millis The maximum time to wait
+         * @return True if a container event was fired since the count was seen
+         */
+        synchronized boolean await(long seen, long millis) throws InterruptedException
+        {
+            final long end = System.currentTimeMillis() + millis;
+            long remaining = millis;
+            while (count == seen && remaining > 0)
+            {
+                wait(remaining);
+                remaining = end - System.currentTimeMillis();
+            }
+            return count != seen;
+        }
+    }
 }
@@ -1,5 +1,11 @@
 package com.atlassian.plugin.url;
 
+import com.atlassian.plugin.util.FileUtils;
+import com.atlassian.plugin.util.zip.ZipIndex;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.JarURLConnection;
@@ -7,16 +13,34 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
+ * Connection to a resource in a jar nested in another jar.  The outer jar is read through {@link ZipFile} if it is a
+ * file, and the nested jars are read into memory once and indexed, see {@link ZipIndex}, so that resources are read
+ * by seeking straight to them.  The indexes are kept in a cache bounded by count and size, keyed by the path of the
+ * nested jar and the length and last modified time of the outer jar.
  */
 class InnerJarURLConnection extends JarURLConnection
 {
+    private static final int MAX_CACHED_ARCHIVES = 32;
+    private static final long MAX_CACHED_ARCHIVE_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * The indexes of the nested jars, in access order.  Guarded by itself.
+     */
+    private static final Map<String, ZipIndex> archiveCache = new LinkedHashMap<String, ZipIndex>(16, 0.75f, true);
+    private static long cachedArchiveBytes;
+
     private URL baseResource;
     private String[] segments;
     private InputStream in;
@@ -134,14 +158,104 @@ class InnerJarURLConnection extends JarURLConnection
      */
     protected void setupPathedInputStream() throws IOException
     {
-        InputStream curIn = getBaseResource().openStream();
+        final File baseFile = FileUtils.toFile( getBaseResource() );
+        String key = ( baseFile != null )
+            ? baseFile.getAbsolutePath() + ":" + baseFile.length() + ":" + baseFile.lastModified()
+            : getBaseResource().toExternalForm();
 
-        for ( int i = 0; i < this.segments.length; ++i )
+        ZipIndex archive = null;
+        for ( int i = 0; i < this.segments.length - 1; ++i )
         {
-            curIn = getSegmentInputStream( curIn, segments[i]);
+            key = key + "!" + segments[i];
+            archive = getArchive( key, baseFile, archive, segments[i] );
+        }
+
+        this.in = openSegment( baseFile, archive, segments[segments.length - 1] );
+    }
+
+    /**
+     * Gets the index of a nested jar, reading and caching it if it isn't cached yet.
+     */
+    private ZipIndex getArchive( String key, File baseFile, ZipIndex parent, String segment ) throws IOException
+    {
+        synchronized ( archiveCache )
+        {
+            final ZipIndex archive = archiveCache.get( key );
+            if ( archive != null )
+            {
+                return archive;
+            }
+        }
+
+        final ZipIndex archive;
+        final InputStream segmentIn = openSegment( baseFile, parent, segment );
+        try
+        {
+            archive = ZipIndex.of( IOUtils.toByteArray( segmentIn ) );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( segmentIn );
+        }
+
+        synchronized ( archiveCache )
+        {
+            final ZipIndex previous = archiveCache.put( key, archive );
+            cachedArchiveBytes += archive.size() - ( previous != null ? previous.size() : 0 );
+            for ( Iterator<ZipIndex> it = archiveCache.values().iterator();
+                  it.hasNext() && ( archiveCache.size() > MAX_CACHED_ARCHIVES || cachedArchiveBytes > MAX_CACHED_ARCHIVE_BYTES ); )
+            {
+                cachedArchiveBytes -= it.next().size();
+                it.remove();
+            }
+        }
+        return archive;
+    }
+
+    /**
+     * Opens a nesting segment, from the nested jar it is in if there is one, otherwise from the base resource.
+     */
+    private InputStream openSegment( File baseFile, ZipIndex parent, String segment ) throws IOException
+    {
+        final String name = segment.startsWith( "/" ) ? segment.substring( 1 ) : segment;
+        if ( parent != null )
+        {
+            final InputStream segmentIn = parent.getInputStream( name );
+            if ( segmentIn == null )
+            {
+                throw new IOException( "unable to locate segment: " + segment );
+            }
+            return segmentIn;
+        }
+
+        if ( baseFile != null )
+        {
+            final ZipFile zipFile = new ZipFile( baseFile );
+            final ZipEntry entry = zipFile.getEntry( name );
+            if ( entry == null )
+            {
+                zipFile.close();
+                throw new IOException( "unable to locate segment: " + segment );
+            }
+            // the zip file is closed with the stream, so the jar isn't locked for longer than needed
+            return new FilterInputStream( zipFile.getInputStream( entry ) )
+            {
+                @Override
+                public void close() throws IOException
+                {
+                    try
+                    {
+                        super.close();
+                    }
+                    finally
+                    {
+                        zipFile.close();
+                    }
+                }
+            };
         }
 
-        this.in = curIn;
+        return getSegmentInputStream( getBaseResource().openStream(), segment );
     }
 
     /**
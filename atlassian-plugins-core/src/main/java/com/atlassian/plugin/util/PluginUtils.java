@@ -26,6 +26,45 @@ public class PluginUtils
      */
     public static final String ATLASSIAN_PLUGINS_ENABLE_WAIT = "atlassian.plugins.enable.wait";
 
+    /**
+     * System property for the number of threads used to enable independent plugins concurrently.  A value of one or
+     * less, the default, enables the plugins one at a time on the calling thread.  Only set this if the plugins, and
+     * the listeners of their enabled events, can be enabled from other threads.
+     * @since 2.11.0
+     */
+    public static final String ATLASSIAN_PLUGINS_ENABLE_THREADS = "atlassian.plugins.enable.threads";
+
+    /**
+     * System property for the number of threads used to create the plugins found by a scanning plugin loader
+     * concurrently when all plugins are loaded, which includes transforming them into OSGi bundles.  A value of one
+     * or less, the default, creates the plugins one at a time on the calling thread.
+     * @since 2.11.0
+     */
+    public static final String ATLASSIAN_PLUGINS_LOAD_THREADS = "atlassian.plugins.load.threads";
+
+    /**
+     * System property to read the inner jars of legacy dynamic plugins from memory rather than extracting them to
+     * temporary files.  Each inner jar is held in memory as it is stored in the plugin, and its entries are
+     * decompressed on demand.
+     * @since 2.11.0
+     */
+    public static final String ATLASSIAN_PLUGINS_INNER_JARS_IN_MEMORY = "atlassian.plugins.innerjars.inmemory";
+
+    /**
+     * System property to keep the bundle cache of the OSGi container across restarts.  Setting this value to true
+     * keeps the bundles installed by the last run as long as the cache key of the application hasn't changed, and
+     * a cached bundle is only used again if the file it was installed from still exists and has the same digest.
+     * @since 2.11.0
+     */
+    public static final String ATLASSIAN_PLUGINS_OSGI_PERSISTENT_BUNDLE_CACHE = "atlassian.plugins.osgi.bundle.cache.persistent";
+
+    /**
+     * System property for the time in milliseconds a listener may take to handle a plugin framework event before it is
+     * logged as slow.  Defaults to one second.
+     * @since 2.11.0
+     */
+    public static final String ATLASSIAN_PLUGINS_EVENT_SLOW_LISTENER_MILLIS = "atlassian.plugins.event.listener.slow.millis";
+
      /**
      * Used to customise the size of the LRU cache for files. This effectively controls how many files will be created
      * by the file cache. Providing a negative number results in undefined behaviour.
@@ -40,6 +79,30 @@ public class PluginUtils
      */
     public static final String DISABLE_FILE_CACHE = new String("atlassian.file.cache.disable");
 
+    /**
+     * Used to limit the total size in bytes of the files created by the file cache, in addition to
+     * {@link #FILE_CACHE_SIZE}. By default the size is unlimited.
+     * @since 2.11.0
+     */
+    public static final String FILE_CACHE_MAX_BYTES = "atlassian.file.cache.max.bytes";
+
+    /**
+     * Used to keep the files created by the file cache across restarts. Setting this value to true records the cached
+     * files in a manifest, and the files that are still valid for the current system counter and plugin versions are
+     * used again after a restart. Ignored in dev mode.
+     * @since 2.11.0
+     */
+    public static final String PERSISTENT_FILE_CACHE = "atlassian.file.cache.persistent";
+
+    /**
+     * Used to serve batched resources gzipped to clients that accept it. Setting this value to true caches a gzipped
+     * copy of each batch next to the uncompressed one, so the batch is only compressed once rather than on every
+     * request. Disable any gzip filter in front of the download servlet for batches, or let it skip responses that
+     * already have a Content-Encoding.
+     * @since 2.11.0
+     */
+    public static final String PRECOMPRESS_FILE_CACHE = "atlassian.file.cache.precompress";
+
     /**
      * Determines if a plugin requires a restart after being installed at runtime.  Looks for the annotation
      * {@link RequiresRestart} on the plugin's module descriptors.
@@ -123,4 +186,22 @@ public class PluginUtils
     {
         return Integer.parseInt(System.getProperty(ATLASSIAN_PLUGINS_ENABLE_WAIT, "60"));
     }
+
+    /**
+     * @return The number of threads to use when enabling a set of plugins, defaulting to one
+     * @since 2.11.0
+     */
+    public static int getDefaultEnablingThreadCount()
+    {
+        return Integer.getInteger(ATLASSIAN_PLUGINS_ENABLE_THREADS, 1);
+    }
+
+    /**
+     * @return The number of threads to use when creating a set of plugins from their artifacts, defaulting to one
+     * @since 2.11.0
+     */
+    public static int getDefaultLoadingThreadCount()
+    {
+        return Integer.getInteger(ATLASSIAN_PLUGINS_LOAD_THREADS, 1);
+    }
 }
@@ -0,0 +1,165 @@
+package com.atlassian.plugin.util.zip;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * An index of the entries of a zip held in memory, read from its central directory.  An entry is read by seeking
+ * straight to it, so only that entry is decompressed, rather than every entry before it as with a
+ * {@link ZipInputStream} over the whole zip.
+ * <p>
+ * Instances are immutable and can be read from concurrently.  Zip64 archives are not supported.
+ *
+ * @since 2.11.0
+ */
+public final class ZipIndex
+{
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    private final byte[] zip;
+    private final Map<String, Integer> offsets;
+
+    private ZipIndex(final byte[] zip, final Map<String, Integer> offsets)
+    {
+        this.zip = zip;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Reads the central directory of a zip.
+     *
+     * @param zip the contents of the zip, which must not be modified afterwards
+     * @return the index, never null
+     * @throws IOException if the zip has no readable central directory
+     */
+    public static ZipIndex of(final byte[] zip) throws IOException
+    {
+        final int end = findEndOfCentralDirectory(zip);
+        final int entries = readShort(zip, end + 10);
+        final long size = readInt(zip, end + 12) & 0xffffffffL;
+        final long start = readInt(zip, end + 16) & 0xffffffffL;
+        if (start + size > end)
+        {
+            throw new IOException("Invalid or zip64 central directory");
+        }
+
+        final Map<String, Integer> offsets = new LinkedHashMap<String, Integer>(entries * 4 / 3 + 1);
+        int pos = (int) start;
+        for (int i = 0; i < entries; i++)
+        {
+            if (pos + CENTRAL_DIRECTORY_HEADER_SIZE > end || readInt(zip, pos) != CENTRAL_DIRECTORY_SIGNATURE)
+            {
+                throw new IOException("Invalid central directory entry at " + pos);
+            }
+            final int nameLength = readShort(zip, pos + 28);
+            final int extraLength = readShort(zip, pos + 30);
+            final int commentLength = readShort(zip, pos + 32);
+            final long offset = readInt(zip, pos + 42) & 0xffffffffL;
+            if (offset >= zip.length || pos + CENTRAL_DIRECTORY_HEADER_SIZE + nameLength > end)
+            {
+                throw new IOException("Invalid central directory entry at " + pos);
+            }
+            final String name = decode(zip, pos + CENTRAL_DIRECTORY_HEADER_SIZE, nameLength);
+            // like ZipInputStream, the first of several entries with the same name wins
+            if (!offsets.containsKey(name))
+            {
+                offsets.put(name, (int) offset);
+            }
+            pos += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return new ZipIndex(zip, offsets);
+    }
+
+    /**
+     * @return the names of the entries, in the order of the central directory
+     */
+    public Set<String> getEntryNames()
+    {
+        return Collections.unmodifiableSet(offsets.keySet());
+    }
+
+    public boolean contains(final String name)
+    {
+        return offsets.containsKey(name);
+    }
+
+    /**
+     * @return the size of the zip in bytes
+     */
+    public int size()
+    {
+        return zip.length;
+    }
+
+    /**
+     * Opens an entry.
+     *
+     * @param name the name of the entry
+     * @return the decompressed contents of the entry, or null if there is no such entry
+     * @throws IOException if the entry can't be read
+     */
+    public InputStream getInputStream(final String name) throws IOException
+    {
+        final Integer offset = offsets.get(name);
+        if (offset == null)
+        {
+            return null;
+        }
+        final ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip, offset, zip.length - offset));
+        final ZipEntry entry = in.getNextEntry();
+        if (entry == null || !name.equals(entry.getName()))
+        {
+            throw new IOException("Invalid local header for entry " + name);
+        }
+        return in;
+    }
+
+    private static int findEndOfCentralDirectory(final byte[] zip) throws IOException
+    {
+        final int last = zip.length - END_OF_CENTRAL_DIRECTORY_SIZE;
+        final int first = Math.max(0, last - MAX_COMMENT_SIZE);
+        for (int pos = last; pos >= first; pos--)
+        {
+            if (readInt(zip, pos) == END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+            {
+                return pos;
+            }
+        }
+        throw new IOException("No central directory found");
+    }
+
+    private static int readShort(final byte[] b, final int pos)
+    {
+        return (b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8);
+    }
+
+    private static int readInt(final byte[] b, final int pos)
+    {
+        return readShort(b, pos) | (readShort(b, pos + 2) << 16);
+    }
+
+    private static String decode(final byte[] b, final int pos, final int length)
+    {
+        try
+        {
+            // ZipInputStream always reads names as UTF-8 as well
+            return new String(b, pos, length, "UTF-8");
+        }
+        catch (final UnsupportedEncodingException e)
+        {
+            throw new AssertionError("UTF-8 encoding is not available.");
+        }
+    }
+}
@@ -4,6 +4,9 @@ import junit.framework.TestCase;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
 
 import com.atlassian.plugin.test.PluginJarBuilder;
 
@@ -19,4 +22,59 @@ public class TestJarPluginArtifact extends TestCase
         assertNotNull(artifact.getResourceAsStream("foo"));
         assertNull(artifact.getResourceAsStream("bar"));
     }
+
+    public void testDoesResourceExist() throws IOException
+    {
+        File plugin = new PluginJarBuilder()
+            .addResource("foo", "bar")
+            .addResource("dir/baz", "qux")
+            .build();
+        JarPluginArtifact artifact = new JarPluginArtifact(plugin);
+
+        artifact.open();
+        try
+        {
+            assertTrue(artifact.doesResourceExist("foo"));
+            assertTrue(artifact.doesResourceExist("dir/baz"));
+            assertFalse(artifact.doesResourceExist("bar"));
+        }
+        finally
+        {
+            artifact.close();
+        }
+        assertTrue(artifact.doesResourceExist("foo"));
+        assertFalse(artifact.doesResourceExist("bar"));
+    }
+
+    public void testStreamOutlivesOpenHandle() throws IOException
+    {
+        File plugin = new PluginJarBuilder()
+            .addResource("foo", "bar")
+            .build();
+        JarPluginArtifact artifact = new JarPluginArtifact(plugin);
+
+        artifact.open();
+        InputStream in = artifact.getResourceAsStream("foo");
+        artifact.close();
+        try
+        {
+            assertEquals("bar", IOUtils.toString(in));
+        }
+        finally
+        {
+            in.close();
+            // closing twice must not release the jar twice
+            in.close();
+        }
+
+        artifact.open();
+        try
+        {
+            assertEquals("bar", IOUtils.toString(artifact.getResourceAsStream("foo")));
+        }
+        finally
+        {
+            artifact.close();
+        }
+    }
 }
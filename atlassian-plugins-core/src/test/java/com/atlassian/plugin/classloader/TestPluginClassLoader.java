@@ -1,5 +1,6 @@
 package com.atlassian.plugin.classloader;
 
+import com.atlassian.plugin.test.PluginJarBuilder;
 import com.atlassian.plugin.test.PluginTestUtils;
 import com.opensymphony.util.BeanUtils;
 import junit.framework.TestCase;
@@ -125,6 +126,33 @@ public class TestPluginClassLoader extends TestCase
             2, BeanUtils.getValue(instance, "version"));
     }
 
+    public void testPluginClassLoaderReadsInnerJarsInPlace() throws Exception
+    {
+        final File innerJar = new PluginJarBuilder("inner")
+                .addFormattedJava("my.inner.InnerClass",
+                        "package my.inner;",
+                        "public class InnerClass {}")
+                .addResource("innerresource.txt", "innerresource")
+                .addResource("testresource.txt", "innerjar")
+                .build();
+        final File pluginJar = new PluginJarBuilder("outer")
+                .addResource("testresource.txt", "outerjar")
+                .addFile("META-INF/lib/inner.jar", innerJar)
+                .build();
+
+        final PluginClassLoader loader = new PluginClassLoader(pluginJar, getClass().getClassLoader(), tmpDir, false);
+
+        assertTrue(loader.getPluginInnerJars().isEmpty());
+        assertEquals(0, tmpDir.listFiles().length);
+        assertEquals("outerjar", IOUtils.toString(loader.getResource("testresource.txt").openStream()));
+        final URL innerResource = loader.getResource("innerresource.txt");
+        assertTrue(innerResource.toExternalForm().endsWith("!/META-INF/lib/inner.jar!/innerresource.txt"));
+        assertEquals("innerresource", IOUtils.toString(innerResource.openStream()));
+        final Class<?> c = loader.loadClass("my.inner.InnerClass");
+        assertEquals(loader, c.getClassLoader());
+        assertEquals("my.inner", c.getPackage().getName());
+    }
+
     public void testPluginClassLoaderDoesNotLockTheJarsPermanently() throws Exception
     {
         //N.B This will probably never fail on a non Windows machine
@@ -0,0 +1,114 @@
+package com.atlassian.plugin.classloader;
+
+import com.atlassian.plugin.JarPluginArtifact;
+import com.atlassian.plugin.Plugin;
+import com.atlassian.plugin.PluginArtifact;
+import com.atlassian.plugin.PluginArtifactBackedPlugin;
+import com.atlassian.plugin.test.PluginJarBuilder;
+import junit.framework.TestCase;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.util.Set;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestPluginPackageIndex extends TestCase
+{
+    public void testIndexPluginWithInnerJar() throws Exception
+    {
+        File innerJar = new PluginJarBuilder("inner")
+                .addFormattedJava("inner.pkg.Bar", "package inner.pkg; public class Bar {}")
+                .build();
+        File pluginJar = new PluginJarBuilder("outer")
+                .addFormattedJava("my.pkg.Foo", "package my.pkg; public class Foo {}")
+                .addResource("templates/foo.vm", "foo")
+                .addFile("META-INF/lib/inner.jar", innerJar)
+                .build();
+        Plugin plugin = mockPlugin("foo", pluginJar);
+
+        PluginPackageIndex index = new PluginPackageIndex();
+        Set<String> packages = index.index(plugin);
+
+        assertTrue(packages.contains("my/pkg"));
+        assertTrue(packages.contains("templates"));
+        assertTrue(packages.contains("inner/pkg"));
+        assertTrue(index.getPlugins("my/pkg").contains(plugin));
+        assertTrue(index.getPlugins("inner/pkg").contains(plugin));
+        assertTrue(index.getPlugins("other/pkg").isEmpty());
+        assertEquals(packages, index.getPackages("foo"));
+    }
+
+    public void testRemove() throws Exception
+    {
+        File pluginJar = new PluginJarBuilder("outer")
+                .addFormattedJava("my.pkg.Foo", "package my.pkg; public class Foo {}")
+                .build();
+        Plugin plugin = mockPlugin("foo", pluginJar);
+
+        PluginPackageIndex index = new PluginPackageIndex();
+        index.index(plugin);
+        Set<String> removed = index.remove("foo");
+
+        assertTrue(removed.contains("my/pkg"));
+        assertTrue(index.getPlugins("my/pkg").isEmpty());
+        assertNull(index.getPackages("foo"));
+        assertNull(index.remove("foo"));
+    }
+
+    public void testPluginRemovedWhileBeingReadIsNotIndexed() throws Exception
+    {
+        File pluginJar = new PluginJarBuilder("outer")
+                .addFormattedJava("my.pkg.Foo", "package my.pkg; public class Foo {}")
+                .build();
+        final PluginPackageIndex index = new PluginPackageIndex();
+        final PluginArtifactBackedPlugin plugin = mock(PluginArtifactBackedPlugin.class);
+        when(plugin.getKey()).thenReturn("foo");
+        final PluginArtifact artifact = new JarPluginArtifact(pluginJar);
+        // the plugin is uninstalled while its artifact is being read
+        when(plugin.getPluginArtifact()).thenAnswer(new Answer<PluginArtifact>()
+        {
+            public PluginArtifact answer(InvocationOnMock invocation)
+            {
+                index.remove("foo");
+                return artifact;
+            }
+        });
+
+        assertNull(index.index(plugin));
+        assertTrue(index.getPlugins("my/pkg").isEmpty());
+        assertNull(index.getPackages("foo"));
+    }
+
+    public void testPluginWithoutArtifactIsNotIndexed()
+    {
+        Plugin plugin = mock(Plugin.class);
+        when(plugin.getKey()).thenReturn("foo");
+
+        assertNull(new PluginPackageIndex().index(plugin));
+    }
+
+    public void testGetPackageOfClass()
+    {
+        assertEquals("com/atlassian/plugin", PluginPackageIndex.getPackageOfClass("com.atlassian.plugin.Plugin"));
+        assertEquals("", PluginPackageIndex.getPackageOfClass("Foo"));
+    }
+
+    public void testGetPackageOfResource()
+    {
+        assertEquals("com/atlassian", PluginPackageIndex.getPackageOfResource("com/atlassian/foo.txt"));
+        assertEquals("com/atlassian", PluginPackageIndex.getPackageOfResource("/com/atlassian/foo.txt"));
+        assertEquals("", PluginPackageIndex.getPackageOfResource("foo.txt"));
+        assertEquals("", PluginPackageIndex.getPackageOfResource("/foo.txt"));
+    }
+
+    private static Plugin mockPlugin(String key, File jar)
+    {
+        PluginArtifactBackedPlugin plugin = mock(PluginArtifactBackedPlugin.class);
+        when(plugin.getKey()).thenReturn(key);
+        when(plugin.getPluginArtifact()).thenReturn(new JarPluginArtifact(jar));
+        return plugin;
+    }
+}
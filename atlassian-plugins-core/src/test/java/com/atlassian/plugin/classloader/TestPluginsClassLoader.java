@@ -7,7 +7,14 @@ import com.atlassian.plugin.PluginAccessor;
 import com.atlassian.plugin.Plugin;
 import com.atlassian.plugin.MockPluginAccessor;
 import com.atlassian.plugin.MockPlugin;
-
+import com.atlassian.plugin.JarPluginArtifact;
+import com.atlassian.plugin.PluginArtifact;
+import com.atlassian.plugin.PluginArtifactBackedPlugin;
+import com.atlassian.plugin.event.events.PluginEnabledEvent;
+import com.atlassian.plugin.event.impl.DefaultPluginEventManager;
+import com.atlassian.plugin.test.PluginJarBuilder;
+
+import java.io.File;
 import java.net.URL;
 import java.net.MalformedURLException;
 import java.util.Collections;
@@ -173,6 +180,43 @@ public class TestPluginsClassLoader extends TestCase
         assertEquals(null, pluginsClassLoader.getPluginForClass("java.lang.String"));
     }
 
+    public void testMissOfImportedClassIsFlushedWhenPluginIsEnabled() throws Exception
+    {
+        final MockPluginAccessor mockPluginAccessor = new MockPluginAccessor();
+        PluginsClassLoader pluginsClassLoader = new PluginsClassLoader(mockPluginAccessor);
+        // The plugin's jar only contains my.pkg, but its classloader imports com.acme
+        File pluginJar = new PluginJarBuilder("importing")
+                .addFormattedJava("my.pkg.Foo", "package my.pkg; public class Foo {}")
+                .build();
+        MockClassLoader mockClassLoader = new MockClassLoader();
+        mockClassLoader.register("com.acme.Imported", String.class);
+        ArtifactBackedMockPlugin plugin = new ArtifactBackedMockPlugin("importing", mockClassLoader, new JarPluginArtifact(pluginJar));
+        mockPluginAccessor.addPlugin(plugin);
+
+        assertEquals(null, pluginsClassLoader.getPluginForClass("com.acme.Imported"));
+
+        plugin.enable();
+        pluginsClassLoader.onPluginEnabled(new PluginEnabledEvent(plugin));
+        assertEquals(plugin, pluginsClassLoader.getPluginForClass("com.acme.Imported"));
+    }
+
+    public void testMissIsFlushedWhenPluginEnabledEventIsBroadcast() throws Exception
+    {
+        final MockPluginAccessor mockPluginAccessor = new MockPluginAccessor();
+        final DefaultPluginEventManager pluginEventManager = new DefaultPluginEventManager();
+        PluginsClassLoader pluginsClassLoader = new PluginsClassLoader(null, mockPluginAccessor, pluginEventManager);
+        MockClassLoader mockClassLoader = new MockClassLoader();
+        mockClassLoader.register("com.acme.Ant", String.class);
+        MockPlugin plugin = new MockPlugin("A", mockClassLoader);
+        mockPluginAccessor.addPlugin(plugin);
+
+        assertEquals(null, pluginsClassLoader.getPluginForClass("com.acme.Ant"));
+
+        plugin.enable();
+        pluginEventManager.broadcast(new PluginEnabledEvent(plugin));
+        assertEquals(plugin, pluginsClassLoader.getPluginForClass("com.acme.Ant"));
+    }
+
     private void loadPluginResource(ClassLoader stubClassLoader)
     {
         mockPluginAccessor.expectAndReturn("getEnabledPlugins", Collections.singleton(mockPlugin.proxy()));
@@ -187,6 +231,22 @@ public class TestPluginsClassLoader extends TestCase
         pluginsClassLoader.findClass(TEST_CLASS);
     }
 
+    private static final class ArtifactBackedMockPlugin extends MockPlugin implements PluginArtifactBackedPlugin
+    {
+        private final PluginArtifact pluginArtifact;
+
+        ArtifactBackedMockPlugin(String key, ClassLoader classLoader, PluginArtifact pluginArtifact)
+        {
+            super(key, classLoader);
+            this.pluginArtifact = pluginArtifact;
+        }
+
+        public PluginArtifact getPluginArtifact()
+        {
+            return pluginArtifact;
+        }
+    }
+
     private static final class StubClassLoader extends AbstractClassLoader
     {
         private final Collection<String> findResourceNames = new LinkedList<String>();
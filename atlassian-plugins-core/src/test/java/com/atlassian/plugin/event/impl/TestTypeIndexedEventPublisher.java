@@ -0,0 +1,171 @@
+package com.atlassian.plugin.event.impl;
+
+import com.atlassian.event.config.ListenerHandlersConfiguration;
+import com.atlassian.event.spi.EventDispatcher;
+import com.atlassian.event.spi.ListenerHandler;
+import com.atlassian.event.spi.ListenerInvoker;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TestTypeIndexedEventPublisher extends TestCase
+{
+    private ListenerMethodSelector selector;
+    private EventDispatcher dispatcher;
+    private TypeIndexedEventPublisher publisher;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        selector = spy(new MethodNameListenerMethodSelector());
+        dispatcher = new EventDispatcher()
+        {
+            public void dispatch(final ListenerInvoker invoker, final Object event)
+            {
+                invoker.invoke(event);
+            }
+        };
+        publisher = new TypeIndexedEventPublisher(dispatcher, new ListenerHandlersConfiguration()
+        {
+            public List<ListenerHandler> getListenerHandlers()
+            {
+                return Collections.<ListenerHandler>singletonList(new MethodSelectorListenerHandler(selector));
+            }
+        }, 1000);
+    }
+
+    public void testPublishesToListenersOfSupertypes()
+    {
+        final RecordingListener listener = new RecordingListener();
+        publisher.register(listener);
+
+        publisher.publish("event");
+        publisher.publish(1);
+
+        assertEquals(2, listener.objects.size());
+        assertEquals(Collections.singletonList("event"), listener.charSequences);
+    }
+
+    public void testListenerChangesAreSeenByLaterEvents()
+    {
+        final RecordingListener first = new RecordingListener();
+        final RecordingListener second = new RecordingListener();
+        publisher.register(first);
+        publisher.publish("one");
+
+        publisher.register(second);
+        publisher.publish("two");
+
+        publisher.unregister(first);
+        publisher.publish("three");
+
+        assertEquals(2, first.objects.size());
+        assertEquals(2, second.objects.size());
+    }
+
+    public void testListenerMethodsAreOnlySelectedAtRegistration() throws Exception
+    {
+        publisher.register(new RecordingListener());
+        for (int i = 0; i < 10; i++)
+        {
+            publisher.publish("event");
+        }
+        verify(selector, times(1)).isListenerMethod(RecordingListener.class.getMethod("channel", Object.class));
+    }
+
+    public void testRegistrationOnlyUpdatesTheEventClassesOfTheListener()
+    {
+        final Object stringListener = new Object();
+        final Object integerListener = new Object();
+        final ListenerInvoker stringInvoker = mockInvoker(String.class);
+        final ListenerInvoker integerInvoker = mockInvoker(Integer.class);
+        final Map<Object, ListenerInvoker> invokers = new HashMap<Object, ListenerInvoker>();
+        invokers.put(stringListener, stringInvoker);
+        invokers.put(integerListener, integerInvoker);
+        publisher = new TypeIndexedEventPublisher(dispatcher, new ListenerHandlersConfiguration()
+        {
+            public List<ListenerHandler> getListenerHandlers()
+            {
+                return Collections.<ListenerHandler>singletonList(new ListenerHandler()
+                {
+                    public List<? extends ListenerInvoker> getInvokers(final Object listener)
+                    {
+                        return Collections.singletonList(invokers.get(listener));
+                    }
+                });
+            }
+        }, 1000);
+
+        publisher.register(stringListener);
+        publisher.publish("one");
+        publisher.publish(1);
+        publisher.register(integerListener);
+        publisher.publish("two");
+        publisher.publish(2);
+        publisher.unregister(stringListener);
+        publisher.publish("three");
+
+        // only looked at when the entries for String and Integer were first added to the table
+        verify(stringInvoker, times(2)).getSupportedEventTypes();
+        verify(stringInvoker).invoke("one");
+        verify(stringInvoker).invoke("two");
+        verify(stringInvoker, never()).invoke("three");
+        verify(integerInvoker).invoke(2);
+        verify(integerInvoker, never()).invoke(1);
+    }
+
+    public void testFailingListenerDoesNotStopOtherListeners()
+    {
+        final FailingListener failing = new FailingListener();
+        final RecordingListener listener = new RecordingListener();
+        publisher.register(failing);
+        publisher.register(listener);
+
+        publisher.publish("event");
+
+        assertEquals(1, listener.objects.size());
+    }
+
+    private static ListenerInvoker mockInvoker(final Class<?> eventClass)
+    {
+        final ListenerInvoker invoker = mock(ListenerInvoker.class);
+        doReturn(Collections.<Class<?>>singleton(eventClass)).when(invoker).getSupportedEventTypes();
+        return invoker;
+    }
+
+    public static class RecordingListener
+    {
+        final List<Object> objects = new ArrayList<Object>();
+        final List<CharSequence> charSequences = new ArrayList<CharSequence>();
+
+        public void channel(final Object event)
+        {
+            objects.add(event);
+        }
+
+        public void channel(final CharSequence event)
+        {
+            charSequences.add(event);
+        }
+    }
+
+    public static class FailingListener
+    {
+        public void channel(final Object event)
+        {
+            throw new IllegalStateException("failed");
+        }
+    }
+}
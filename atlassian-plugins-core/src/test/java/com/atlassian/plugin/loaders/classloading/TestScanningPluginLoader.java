@@ -1,5 +1,7 @@
 package com.atlassian.plugin.loaders.classloading;
 
+import com.atlassian.plugin.JarPluginArtifact;
+import com.atlassian.plugin.ModuleDescriptorFactory;
 import com.atlassian.plugin.Plugin;
 import com.atlassian.plugin.PluginArtifact;
 import com.atlassian.plugin.PluginArtifactFactory;
@@ -16,9 +18,13 @@ import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.never;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.net.URI;
 
@@ -110,6 +116,60 @@ public class TestScanningPluginLoader extends TestCase
         verify(plugin, never()).uninstall();
     }
 
+    public void testLoadsPluginsConcurrentlyInDeploymentOrder()
+    {
+        final List<DeploymentUnit> units = Arrays.asList(new DeploymentUnit(new File("b.jar")), new DeploymentUnit(new File("a.jar")),
+            new DeploymentUnit(new File("c.jar")));
+        Scanner scanner = mock(Scanner.class);
+        when(scanner.getDeploymentUnits()).thenReturn(units);
+        PluginArtifactFactory artFactory = new PluginArtifactFactory()
+        {
+            public PluginArtifact create(URI artifactUri)
+            {
+                return new JarPluginArtifact(new File(artifactUri));
+            }
+        };
+
+        // every plugin waits for the others, so this only completes if they are created concurrently
+        final CountDownLatch allCreating = new CountDownLatch(units.size());
+        PluginFactory factory = new PluginFactory()
+        {
+            public String canCreate(PluginArtifact pluginArtifact)
+            {
+                return pluginArtifact.getName();
+            }
+
+            public Plugin create(DeploymentUnit deploymentUnit, ModuleDescriptorFactory moduleDescriptorFactory)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            public Plugin create(PluginArtifact pluginArtifact, ModuleDescriptorFactory moduleDescriptorFactory)
+            {
+                allCreating.countDown();
+                try
+                {
+                    assertTrue(allCreating.await(10, TimeUnit.SECONDS));
+                }
+                catch (InterruptedException e)
+                {
+                    throw new RuntimeException(e);
+                }
+                Plugin plugin = mock(Plugin.class);
+                when(plugin.getKey()).thenReturn(pluginArtifact.getName());
+                return plugin;
+            }
+        };
+
+        ScanningPluginLoader loader = new ScanningPluginLoader(scanner, Arrays.asList(factory), artFactory, pluginEventManager, 3);
+        final List<String> keys = new ArrayList<String>();
+        for (Plugin plugin : loader.loadAllPlugins(null))
+        {
+            keys.add(plugin.getKey());
+        }
+        assertEquals(Arrays.asList("a.jar", "b.jar", "c.jar"), keys);
+    }
+
     public void testPostProcessCalledAlways()
     {
         final AtomicBoolean called = new AtomicBoolean(false);
@@ -377,6 +377,53 @@ public class TestDefaultPluginManager extends AbstractTestClassLoader
         assertFalse(getPluginAccessor().getEnabledModuleDescriptorsByType("animal").isEmpty());
     }
 
+    public void testEnabledModuleDescriptorsByClassAreCachedUntilStateChanges() throws PluginParseException
+    {
+        pluginLoaders.add(new SinglePluginLoader("test-atlassian-plugin.xml"));
+        moduleDescriptorFactory.addModuleDescriptor("animal", MockAnimalModuleDescriptor.class);
+        moduleDescriptorFactory.addModuleDescriptor("mineral", MockMineralModuleDescriptor.class);
+        moduleDescriptorFactory.addModuleDescriptor("vegetable", MockVegetableModuleDescriptor.class);
+        manager.init();
+
+        final String moduleKey = "test.atlassian.plugin:bear";
+        final List<MockAnimalModuleDescriptor> descriptors = manager.getEnabledModuleDescriptorsByClass(MockAnimalModuleDescriptor.class);
+        assertFalse(descriptors.isEmpty());
+        assertEquals(descriptors, manager.getEnabledModuleDescriptorsByClass(MockAnimalModuleDescriptor.class));
+
+        // callers get their own copy, which they may modify
+        final List<MockAnimalModuleDescriptor> modified = manager.getEnabledModuleDescriptorsByClass(MockAnimalModuleDescriptor.class);
+        modified.clear();
+        assertEquals(descriptors, manager.getEnabledModuleDescriptorsByClass(MockAnimalModuleDescriptor.class));
+
+        manager.disablePluginModule(moduleKey);
+        assertTrue(manager.getEnabledModuleDescriptorsByClass(MockAnimalModuleDescriptor.class).isEmpty());
+
+        manager.enablePluginModule(moduleKey);
+        assertEquals(descriptors, manager.getEnabledModuleDescriptorsByClass(MockAnimalModuleDescriptor.class));
+    }
+
+    public void testEnabledModuleDescriptorsFollowPluginStateChangedElsewhere() throws PluginParseException
+    {
+        pluginLoaders.add(new SinglePluginLoader("test-atlassian-plugin.xml"));
+        moduleDescriptorFactory.addModuleDescriptor("animal", MockAnimalModuleDescriptor.class);
+        moduleDescriptorFactory.addModuleDescriptor("mineral", MockMineralModuleDescriptor.class);
+        moduleDescriptorFactory.addModuleDescriptor("vegetable", MockVegetableModuleDescriptor.class);
+        manager.init();
+
+        assertFalse(manager.getEnabledModuleDescriptorsByClass(MockAnimalModuleDescriptor.class).isEmpty());
+        assertFalse(manager.getEnabledModuleDescriptorsByType("animal").isEmpty());
+
+        // as when the bundle of an OSGi plugin stops, without going through the plugin manager
+        final Plugin plugin = manager.getPlugin("test.atlassian.plugin");
+        plugin.disable();
+        assertTrue(manager.getEnabledModuleDescriptorsByClass(MockAnimalModuleDescriptor.class).isEmpty());
+        assertTrue(manager.getEnabledModuleDescriptorsByType("animal").isEmpty());
+
+        plugin.enable();
+        assertFalse(manager.getEnabledModuleDescriptorsByClass(MockAnimalModuleDescriptor.class).isEmpty());
+        assertFalse(manager.getEnabledModuleDescriptorsByType("animal").isEmpty());
+    }
+
     public void testDuplicatePluginKeysAreBad() throws PluginParseException
     {
         moduleDescriptorFactory.addModuleDescriptor("mineral", MockMineralModuleDescriptor.class);
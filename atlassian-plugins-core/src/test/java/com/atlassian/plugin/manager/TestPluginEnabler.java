@@ -11,9 +11,14 @@ import com.atlassian.plugin.impl.StaticPlugin;
 import com.mockobjects.dynamic.Mock;
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.mock;
 
@@ -109,6 +114,89 @@ public class TestPluginEnabler extends TestCase
         assertEquals(PluginState.ENABLED, plugin3.getPluginState());
     }
 
+    public void testConcurrentEnableRespectsDependencies()
+    {
+        final List<String> enableOrder = Collections.synchronizedList(new ArrayList<String>());
+        Plugin plugin = new OrderRecordingPlugin(enableOrder, "foo", "foo2", "bar");
+        Plugin plugin2 = new OrderRecordingPlugin(enableOrder, "foo2", "foo3");
+        Plugin plugin3 = new OrderRecordingPlugin(enableOrder, "foo3");
+        Plugin plugin4 = new OrderRecordingPlugin(enableOrder, "bar");
+
+        enabler = new PluginEnabler(mock(PluginAccessor.class), mock(PluginController.class), 4);
+        enabler.enable(Arrays.asList(plugin, plugin2, plugin3, plugin4));
+
+        assertEquals(PluginState.ENABLED, plugin.getPluginState());
+        assertEquals(PluginState.ENABLED, plugin2.getPluginState());
+        assertEquals(PluginState.ENABLED, plugin3.getPluginState());
+        assertEquals(PluginState.ENABLED, plugin4.getPluginState());
+        assertTrue(enableOrder.indexOf("foo3") < enableOrder.indexOf("foo2"));
+        assertTrue(enableOrder.indexOf("foo2") < enableOrder.indexOf("foo"));
+        assertTrue(enableOrder.indexOf("bar") < enableOrder.indexOf("foo"));
+    }
+
+    public void testContainerEventWakesUpEnabler() throws Exception
+    {
+        final CountDownLatch enabling = new CountDownLatch(1);
+        final CountDownLatch enabled = new CountDownLatch(1);
+        final MyPlugin plugin = new MyPlugin("foo") {
+            @Override
+            protected PluginState enableInternal() throws PluginException
+            {
+                return PluginState.ENABLING;
+            }
+
+            @Override
+            protected void setPluginState(PluginState state)
+            {
+                super.setPluginState(state);
+                if (state == PluginState.ENABLING)
+                {
+                    enabling.countDown();
+                }
+            }
+        };
+        // without the container event, the enabler would only check the plugin again after the enabling wait period
+        enabler = new PluginEnabler(mock(PluginAccessor.class), mock(PluginController.class), 1, TimeUnit.HOURS.toMillis(1));
+
+        final Thread enablerThread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                enabler.enable(Arrays.<Plugin>asList(plugin));
+                enabled.countDown();
+            }
+        };
+        enablerThread.start();
+
+        assertTrue(enabling.await(30, TimeUnit.SECONDS));
+        plugin.markEnabled();
+        enabler.onPluginContainerEvent("foo");
+
+        assertTrue("The enabler should be woken up by the container event",
+            enabled.await(PluginUtils.getDefaultEnablingWaitPeriod() / 2, TimeUnit.SECONDS));
+        enablerThread.join();
+        assertEquals(PluginState.ENABLED, plugin.getPluginState());
+    }
+
+    public static class OrderRecordingPlugin extends MyPlugin
+    {
+        private final List<String> enableOrder;
+
+        public OrderRecordingPlugin(List<String> enableOrder, String key, String... deps)
+        {
+            super(key, deps);
+            this.enableOrder = enableOrder;
+        }
+
+        @Override
+        protected PluginState enableInternal() throws PluginException
+        {
+            enableOrder.add(getKey());
+            return PluginState.ENABLED;
+        }
+    }
+
     public static class MyPlugin extends StaticPlugin
     {
         private final Set<String> deps;
@@ -125,5 +213,10 @@ public class TestPluginEnabler extends TestCase
         {
             return deps;
         }
+
+        void markEnabled()
+        {
+            setPluginState(PluginState.ENABLED);
+        }
     }
 }
\ No newline at end of file
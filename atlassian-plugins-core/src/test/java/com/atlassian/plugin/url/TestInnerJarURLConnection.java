@@ -0,0 +1,89 @@
+package com.atlassian.plugin.url;
+
+import com.atlassian.plugin.test.PluginJarBuilder;
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+public class TestInnerJarURLConnection extends TestCase
+{
+    private File pluginJar;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        final File innerInnerJar = new PluginJarBuilder("innerinner")
+                .addResource("deepresource.txt", "deep")
+                .build();
+        final File innerJar = new PluginJarBuilder("inner")
+                .addResource("innerresource.txt", "innerresource")
+                .addFile("lib/innerinner.jar", innerInnerJar)
+                .build();
+        pluginJar = new PluginJarBuilder("outer")
+                .addResource("outerresource.txt", "outerresource")
+                .addFile("META-INF/lib/inner.jar", innerJar)
+                .build();
+    }
+
+    public void testReadsResourceFromOuterJar() throws IOException
+    {
+        assertEquals("outerresource", read("!/outerresource.txt"));
+    }
+
+    public void testReadsResourcesFromNestedJars() throws IOException
+    {
+        assertEquals("innerresource", read("!/META-INF/lib/inner.jar!/innerresource.txt"));
+        assertEquals("deep", read("!/META-INF/lib/inner.jar!/lib/innerinner.jar!/deepresource.txt"));
+        // read again from the cached nested jars
+        assertEquals("innerresource", read("!/META-INF/lib/inner.jar!/innerresource.txt"));
+    }
+
+    public void testReadsChangedOuterJar() throws Exception
+    {
+        assertEquals("innerresource", read("!/META-INF/lib/inner.jar!/innerresource.txt"));
+
+        final File changedInnerJar = new PluginJarBuilder("inner")
+                .addResource("innerresource.txt", "changed")
+                .build();
+        final File changedPluginJar = new PluginJarBuilder("outer")
+                .addFile("META-INF/lib/inner.jar", changedInnerJar)
+                .build();
+        assertTrue(pluginJar.delete());
+        assertTrue(changedPluginJar.renameTo(pluginJar));
+        pluginJar.setLastModified(pluginJar.lastModified() + 2000);
+
+        assertEquals("changed", read("!/META-INF/lib/inner.jar!/innerresource.txt"));
+    }
+
+    public void testMissingResource() throws IOException
+    {
+        try
+        {
+            read("!/META-INF/lib/inner.jar!/missing.txt");
+            fail("Should have failed to find the resource");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+
+    private String read(final String path) throws IOException
+    {
+        final URL url = new URL("jar:" + pluginJar.toURI().toURL().toExternalForm() + path);
+        final InputStream in = new InnerJarURLStreamHandler().openConnection(url).getInputStream();
+        try
+        {
+            return IOUtils.toString(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.atlassian.plugin.util.zip;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class TestZipIndex extends TestCase
+{
+    public void testReadsEntriesInAnyOrder() throws IOException
+    {
+        final ZipIndex index = ZipIndex.of(zip(false, "a.txt", "first", "dir/b.txt", "second", "c.txt", "third"));
+
+        assertEquals(Arrays.asList("a.txt", "dir/b.txt", "c.txt"), Arrays.asList(index.getEntryNames().toArray()));
+        assertEquals("third", read(index, "c.txt"));
+        assertEquals("first", read(index, "a.txt"));
+        assertEquals("second", read(index, "dir/b.txt"));
+        assertTrue(index.contains("a.txt"));
+        assertFalse(index.contains("missing.txt"));
+        assertNull(index.getInputStream("missing.txt"));
+    }
+
+    public void testReadsStoredEntries() throws IOException
+    {
+        final ZipIndex index = ZipIndex.of(zip(true, "a.txt", "first", "b.txt", "second"));
+
+        assertEquals("second", read(index, "b.txt"));
+        assertEquals("first", read(index, "a.txt"));
+    }
+
+    public void testReadsZipWithComment() throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ZipOutputStream out = new ZipOutputStream(bytes);
+        out.setComment("a comment");
+        out.putNextEntry(new ZipEntry("a.txt"));
+        out.write("first".getBytes("UTF-8"));
+        out.close();
+
+        assertEquals("first", read(ZipIndex.of(bytes.toByteArray()), "a.txt"));
+    }
+
+    public void testRejectsInvalidZip() throws IOException
+    {
+        try
+        {
+            ZipIndex.of("not a zip".getBytes("UTF-8"));
+            fail("Should have failed to read the central directory");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+
+    private static String read(final ZipIndex index, final String name) throws IOException
+    {
+        final InputStream in = index.getInputStream(name);
+        try
+        {
+            return IOUtils.toString(in, "UTF-8");
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static byte[] zip(final boolean stored, final String... namesAndContents) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ZipOutputStream out = new ZipOutputStream(bytes);
+        for (int i = 0; i < namesAndContents.length; i += 2)
+        {
+            final byte[] content = namesAndContents[i + 1].getBytes("UTF-8");
+            final ZipEntry entry = new ZipEntry(namesAndContents[i]);
+            if (stored)
+            {
+                final CRC32 crc = new CRC32();
+                crc.update(content);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.length);
+                entry.setCrc(crc.getValue());
+            }
+            out.putNextEntry(entry);
+            out.write(content);
+            out.closeEntry();
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -102,7 +102,7 @@ public class AtlassianPlugins
 
         if (config.getHotDeployPollingPeriod() > 0)
         {
-            hotDeployer = new HotDeployer(pluginManager, config.getHotDeployPollingPeriod());
+            hotDeployer = new HotDeployer(pluginManager, config.getPluginDirectory(), config.getHotDeployPollingPeriod());
         }
     }
 
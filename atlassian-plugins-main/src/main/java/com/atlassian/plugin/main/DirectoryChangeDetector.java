@@ -0,0 +1,133 @@
+package com.atlassian.plugin.main;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Detects changes to the files in a plugin directory, so that the plugins are only scanned for once something has
+ * changed.  A change is only reported once it has settled: a file that is still being written keeps changing its size
+ * or last modified time, so a change is held back until two consecutive checks find the directory the same.  This
+ * also means several plugins copied into the directory together are reported as a single change.
+ * <p>
+ * While the directory itself is unchanged, a check only reads the last modified time of the known files, rather than
+ * listing the directory.  Files beginning with "." are ignored, as they are by the directory scanner.
+ * <p>
+ * Not thread-safe, it is meant to be called from the hot deploy thread only.
+ *
+ * @since 2.11.0
+ */
+class DirectoryChangeDetector
+{
+    /**
+     * File systems may only record the last modified time to the second or two, so a directory modified more recently
+     * than this may have changed again since without its last modified time showing it.
+     */
+    private static final long MODIFIED_TIME_RESOLUTION = 2000;
+
+    private final File directory;
+
+    /** The files when the plugins were last scanned for, or null before the first check */
+    private Map<String, FileStamp> scanned;
+    /** The files at the previous check, if they differed from the scanned files */
+    private Map<String, FileStamp> pending;
+    /** The files at the previous check */
+    private Map<String, FileStamp> current;
+    private long directoryLastModified;
+
+    DirectoryChangeDetector(final File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * @return true if the plugins should be scanned for, which is on the first check, and when the directory has
+     * changed since the last time true was returned and has stayed the same since the previous check
+     */
+    boolean hasSettledChanges()
+    {
+        current = snapshot();
+        if (scanned == null || current.equals(pending))
+        {
+            scanned = current;
+            pending = null;
+            return true;
+        }
+        pending = current.equals(scanned) ? null : current;
+        return false;
+    }
+
+    private Map<String, FileStamp> snapshot()
+    {
+        final long lastModified = directory.lastModified();
+        // the directory only needs listing again if files were added, removed or renamed
+        if (current != null && lastModified == directoryLastModified
+                && System.currentTimeMillis() - lastModified > MODIFIED_TIME_RESOLUTION && isUnmodified(current))
+        {
+            return current;
+        }
+        directoryLastModified = lastModified;
+
+        final Map<String, FileStamp> stamps = new HashMap<String, FileStamp>();
+        final File[] files = directory.listFiles(new FilenameFilter()
+        {
+            public boolean accept(final File dir, final String name)
+            {
+                return !name.startsWith(".");
+            }
+        });
+        if (files != null)
+        {
+            for (final File file : files)
+            {
+                stamps.put(file.getName(), new FileStamp(file.length(), file.lastModified()));
+            }
+        }
+        return stamps;
+    }
+
+    private boolean isUnmodified(final Map<String, FileStamp> stamps)
+    {
+        final long now = System.currentTimeMillis();
+        for (final Map.Entry<String, FileStamp> entry : stamps.entrySet())
+        {
+            final long lastModified = new File(directory, entry.getKey()).lastModified();
+            // a recently modified file may be growing without its last modified time changing, so check its length too
+            if (lastModified != entry.getValue().lastModified || now - lastModified <= MODIFIED_TIME_RESOLUTION)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class FileStamp
+    {
+        private final long length;
+        private final long lastModified;
+
+        FileStamp(final long length, final long lastModified)
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (!(o instanceof FileStamp))
+            {
+                return false;
+            }
+            final FileStamp other = (FileStamp) o;
+            return length == other.length && lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (int) (length ^ (length >>> 32)) + (int) (lastModified ^ (lastModified >>> 32));
+        }
+    }
+}
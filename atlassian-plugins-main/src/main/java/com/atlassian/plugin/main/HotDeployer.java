@@ -2,8 +2,11 @@ package com.atlassian.plugin.main;
 
 import com.atlassian.plugin.PluginController;
 
+import java.io.File;
+
 /**
- * A simple class that starts a hot deploy thread for scanning for new plugins
+ * A simple class that starts a hot deploy thread for scanning for new plugins.  If given the plugin directory, the
+ * thread only scans once the directory has changed and the change has settled, see {@link DirectoryChangeDetector}.
  *
  * @since 2.2.0
  */
@@ -14,8 +17,20 @@ public class HotDeployer
     private boolean running;
 
     public HotDeployer(PluginController pluginController, final long period)
+    {
+        this(pluginController, null, period);
+    }
+
+    /**
+     * @param pluginController the controller to scan for new plugins with
+     * @param pluginDirectory the directory to watch for changes, or null to scan every period regardless
+     * @param period the time between checks, in milliseconds
+     * @since 2.11.0
+     */
+    public HotDeployer(PluginController pluginController, final File pluginDirectory, final long period)
     {
         this.pluginController = pluginController;
+        final DirectoryChangeDetector changeDetector = pluginDirectory != null ? new DirectoryChangeDetector(pluginDirectory) : null;
 
         hotDeploy = new Thread("Plugin Hot Deploy")
         {
@@ -25,8 +40,10 @@ public class HotDeployer
                 running = true;
                 while (running)
                 {
-
-                    HotDeployer.this.pluginController.scanForNewPlugins();
+                    if (changeDetector == null || changeDetector.hasSettledChanges())
+                    {
+                        HotDeployer.this.pluginController.scanForNewPlugins();
+                    }
                     try
                     {
                         Thread.sleep(period);
@@ -0,0 +1,107 @@
+package com.atlassian.plugin.main;
+
+import com.atlassian.plugin.test.PluginTestUtils;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+public class TestDirectoryChangeDetector extends TestCase
+{
+    private File pluginDir;
+    private DirectoryChangeDetector detector;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        pluginDir = PluginTestUtils.createTempDirectory(TestDirectoryChangeDetector.class);
+        detector = new DirectoryChangeDetector(pluginDir);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        FileUtils.deleteDirectory(pluginDir);
+        super.tearDown();
+    }
+
+    public void testFirstCheckScans()
+    {
+        assertTrue(detector.hasSettledChanges());
+        assertFalse(detector.hasSettledChanges());
+    }
+
+    public void testAddedPluginIsReportedOnceSettled() throws IOException
+    {
+        assertTrue(detector.hasSettledChanges());
+
+        write("plugin.jar", "contents", 10000);
+        assertFalse(detector.hasSettledChanges());
+        assertTrue(detector.hasSettledChanges());
+        assertFalse(detector.hasSettledChanges());
+    }
+
+    public void testGrowingPluginIsNotReported() throws IOException
+    {
+        assertTrue(detector.hasSettledChanges());
+
+        write("plugin.jar", "con", 10000);
+        assertFalse(detector.hasSettledChanges());
+        write("plugin.jar", "contents", 10000);
+        assertFalse(detector.hasSettledChanges());
+        assertTrue(detector.hasSettledChanges());
+    }
+
+    public void testPluginsAddedTogetherAreReportedOnce() throws IOException
+    {
+        assertTrue(detector.hasSettledChanges());
+
+        write("first.jar", "first", 10000);
+        assertFalse(detector.hasSettledChanges());
+        write("second.jar", "second", 10000);
+        assertFalse(detector.hasSettledChanges());
+        assertTrue(detector.hasSettledChanges());
+        assertFalse(detector.hasSettledChanges());
+    }
+
+    public void testModifiedPluginIsReportedWithoutDirectoryChange() throws IOException
+    {
+        write("plugin.jar", "contents", 20000);
+        pluginDir.setLastModified(System.currentTimeMillis() - 20000);
+        assertTrue(detector.hasSettledChanges());
+        assertFalse(detector.hasSettledChanges());
+
+        final File plugin = new File(pluginDir, "plugin.jar");
+        plugin.setLastModified(plugin.lastModified() + 10000);
+        assertFalse(detector.hasSettledChanges());
+        assertTrue(detector.hasSettledChanges());
+    }
+
+    public void testRemovedPluginIsReported() throws IOException
+    {
+        write("plugin.jar", "contents", 10000);
+        assertTrue(detector.hasSettledChanges());
+
+        assertTrue(new File(pluginDir, "plugin.jar").delete());
+        assertFalse(detector.hasSettledChanges());
+        assertTrue(detector.hasSettledChanges());
+    }
+
+    public void testHiddenFilesAreIgnored() throws IOException
+    {
+        assertTrue(detector.hasSettledChanges());
+
+        write(".plugin.jar.tmp", "contents", 10000);
+        assertFalse(detector.hasSettledChanges());
+        assertFalse(detector.hasSettledChanges());
+    }
+
+    private void write(final String name, final String contents, final long age) throws IOException
+    {
+        final File file = new File(pluginDir, name);
+        FileUtils.writeStringToFile(file, contents);
+        file.setLastModified(System.currentTimeMillis() - age);
+    }
+}
@@ -33,7 +33,8 @@ public interface OsgiPersistentCache
     void clear() throws OsgiContainerException;
 
     /**
-     * Validates the caches against a cache key.  If the key changes, the directories are wiped clean.
+     * Validates the caches against a cache key.  If the key changes, the directories are wiped clean.  The container
+     * bundle cache may be wiped even if the key hasn't changed.
      *
      * @param cacheKey The cache key, can be anything
      */
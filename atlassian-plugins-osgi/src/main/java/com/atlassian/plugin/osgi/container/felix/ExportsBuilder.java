@@ -23,13 +23,20 @@ import javax.servlet.ServletContext;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Builds the OSGi package exports string.  Uses a file to cache the scanned results, keyed by the application version.
+ * If a cache file is given, the packages found by the package scan are persisted in it by jar, and after a restart
+ * only the jars that changed are scanned again, see {@link ExportsCache}.
  */
 class ExportsBuilder
 {
@@ -42,6 +49,9 @@ class ExportsBuilder
     private static Logger log = LoggerFactory.getLogger(ExportsBuilder.class);
     private static String exportStringCache;
 
+    private final File cacheFile;
+    private volatile ExportsCache exportsCache;
+
     private static final Predicate<String> UNDER_PLUGIN_FRAMEWORK = new Predicate<String>()
     {
         public boolean apply(String pkg)
@@ -50,6 +60,20 @@ class ExportsBuilder
         }
     };
 
+    ExportsBuilder()
+    {
+        this(null);
+    }
+
+    /**
+     * @param cacheFile the file to persist the scanned packages in, or null to scan all of them on every start
+     * @since 2.11.0
+     */
+    ExportsBuilder(final File cacheFile)
+    {
+        this.cacheFile = cacheFile;
+    }
+
     /**
      * Gets the framework exports taking into account host components and package scanner configuration.
      * <p>
@@ -82,6 +106,22 @@ class ExportsBuilder
         exportStringCache = null;
     }
 
+    /**
+     * Writes the packages found by the last scan to the cache file, if there is one.  This is separate from
+     * determining the exports so that callers can store them once they've cleared any caches that depend on the
+     * exports.
+     *
+     * @since 2.11.0
+     */
+    public void storeExportCache()
+    {
+        final ExportsCache cache = exportsCache;
+        if (cacheFile != null && cache != null)
+        {
+            cache.store(cacheFile);
+        }
+    }
+
     /**
      * Determines framework exports taking into account host components and package scanner configuration.
      *
@@ -106,6 +146,24 @@ class ExportsBuilder
      */
     String determineExports(List<HostComponentRegistration> regs, PackageScannerConfiguration packageScannerConfig)
     {
+        final ExportsCache previousCache = (cacheFile != null) ? ExportsCache.load(cacheFile) : null;
+        final List<String> classPathLocations = ExportsCache.findClassPathLocations(getScanClassLoader());
+        final String scanKey = ExportsCache.getScanKey(packageScannerConfig, classPathLocations);
+        final String exportsKey = ExportsCache.getExportsKey(scanKey, regs);
+        final Set<String> locations = new LinkedHashSet<String>(classPathLocations);
+        // the cached locations are only still scanned if they are on the same class path
+        if (previousCache != null && previousCache.getScanKey().equals(scanKey))
+        {
+            locations.addAll(previousCache.getStamps().keySet());
+        }
+        final Map<String, String> stamps = ExportsCache.stamp(locations);
+        if (previousCache != null && previousCache.isUpToDate(exportsKey, stamps))
+        {
+            log.info("Using the cached exports, as none of the scanned jars have changed");
+            exportsCache = previousCache;
+            return previousCache.getExports();
+        }
+
         Map<String, String> exportPackages = new HashMap<String, String>();
 
         // The first part is osgi related packages.
@@ -115,8 +173,21 @@ class ExportsBuilder
         copyUnlessExist(exportPackages, parseExportFile(JDK_PACKAGES_PATH));
 
         // Third part by scanning packages available via classloader. The versions are determined by jar names.
-        Collection<ExportPackage> scannedPackages = generateExports(packageScannerConfig);
-        copyUnlessExist(exportPackages, ExportBuilderUtils.toMap(scannedPackages));
+        final Map<String, Map<String, String>> packagesByLocation;
+        if (previousCache != null && previousCache.getScanKey().equals(scanKey))
+        {
+            packagesByLocation = scanChangedLocations(packageScannerConfig, previousCache, stamps);
+        }
+        else
+        {
+            packagesByLocation = groupByLocation(generateExports(packageScannerConfig), stamps);
+        }
+        final Map<String, String> scannedPackages = new HashMap<String, String>();
+        for (Map<String, String> packages : packagesByLocation.values())
+        {
+            scannedPackages.putAll(packages);
+        }
+        copyUnlessExist(exportPackages, scannedPackages);
 
         // Fourth part by scanning host components since all the classes referred to by them must be available to consumers.
         try
@@ -140,9 +211,116 @@ class ExportsBuilder
             log.debug("Exports:\n"+exports.replaceAll(",", "\r\n"));
         }
 
+        if (cacheFile != null && packagesByLocation != null)
+        {
+            exportsCache = new ExportsCache(scanKey, exportsKey, exports, stamps, packagesByLocation);
+        }
         return exports;
     }
 
+    /**
+     * Scans the locations that are new or have changed since the cache was written, and reuses the cached packages of
+     * the others.
+     *
+     * @return the packages found by location
+     */
+    private Map<String, Map<String, String>> scanChangedLocations(PackageScannerConfiguration packageScannerConfig,
+                                                                  ExportsCache previousCache, Map<String, String> stamps)
+    {
+        final Map<String, Map<String, String>> packagesByLocation = new LinkedHashMap<String, Map<String, String>>();
+        final List<URL> changed = new ArrayList<URL>();
+        for (Map.Entry<String, String> stamp : stamps.entrySet())
+        {
+            final Map<String, String> packages = previousCache.getPackages(stamp.getKey());
+            if (packages != null && stamp.getValue().equals(previousCache.getStamps().get(stamp.getKey())))
+            {
+                packagesByLocation.put(stamp.getKey(), packages);
+            }
+            else
+            {
+                try
+                {
+                    changed.add(new File(stamp.getKey()).toURI().toURL());
+                }
+                catch (MalformedURLException e)
+                {
+                    // can't happen for a file
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        if (!changed.isEmpty())
+        {
+            log.info("Scanning " + changed.size() + " changed jars for packages to export");
+            final Collection<ExportPackage> exports = createScanner(packageScannerConfig).scan(changed.toArray(new URL[changed.size()]));
+            final Map<String, Map<String, String>> changedPackages = groupByLocation(exports, stamps);
+            if (changedPackages == null)
+            {
+                return groupByLocation(generateExports(packageScannerConfig), stamps);
+            }
+            packagesByLocation.putAll(changedPackages);
+        }
+
+        for (Map<String, String> packages : packagesByLocation.values())
+        {
+            if (packages.containsKey("org.slf4j"))
+            {
+                return packagesByLocation;
+            }
+        }
+        // something is off with the cache, see isPackageScanSuccessful(), so fall back to a full scan
+        return groupByLocation(generateExports(packageScannerConfig), stamps);
+    }
+
+    /**
+     * Groups the scanned packages by the location they were found in, adding the stamps of any locations that
+     * weren't stamped yet.
+     *
+     * @return the packages by location, or null if the location of a package is unknown
+     */
+    private static Map<String, Map<String, String>> groupByLocation(Collection<ExportPackage> exports, Map<String, String> stamps)
+    {
+        final Map<String, List<ExportPackage>> exportsByLocation = new LinkedHashMap<String, List<ExportPackage>>();
+        for (ExportPackage export : exports)
+        {
+            if (export.getLocation() == null)
+            {
+                return null;
+            }
+            final String location = export.getLocation().getAbsolutePath();
+            List<ExportPackage> locationExports = exportsByLocation.get(location);
+            if (locationExports == null)
+            {
+                locationExports = new ArrayList<ExportPackage>();
+                exportsByLocation.put(location, locationExports);
+            }
+            locationExports.add(export);
+        }
+
+        final Map<String, Map<String, String>> packagesByLocation = new LinkedHashMap<String, Map<String, String>>();
+        for (Map.Entry<String, List<ExportPackage>> locationExports : exportsByLocation.entrySet())
+        {
+            packagesByLocation.put(locationExports.getKey(), ExportBuilderUtils.toMap(locationExports.getValue()));
+        }
+        stamps.putAll(ExportsCache.stamp(packagesByLocation.keySet()));
+        // locations without any packages are recorded too, so that they aren't scanned again
+        for (String location : stamps.keySet())
+        {
+            if (!packagesByLocation.containsKey(location))
+            {
+                packagesByLocation.put(location, new HashMap<String, String>());
+            }
+        }
+        return packagesByLocation;
+    }
+
+    private static ClassLoader getScanClassLoader()
+    {
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return (classLoader != null) ? classLoader : ExportsBuilder.class.getClassLoader();
+    }
+
     private void enforceFrameworkVersion(Map<String, String> exportPackages)
     {
         final String frameworkVersion = PluginFrameworkUtils.getPluginFrameworkVersion();
@@ -159,30 +337,7 @@ class ExportsBuilder
 
     Collection<ExportPackage> generateExports(PackageScannerConfiguration packageScannerConfig)
     {
-        String[] arrType = new String[0];
-
-        Map<String,String> pkgVersions = new HashMap<String,String>(packageScannerConfig.getPackageVersions());
-        if (packageScannerConfig.getServletContext() != null)
-        {
-            String ver = packageScannerConfig.getServletContext().getMajorVersion() + "." + packageScannerConfig.getServletContext().getMinorVersion();
-            pkgVersions.put("javax.servlet*", ver);
-        }
-
-        PackageScanner scanner = new PackageScanner()
-           .select(
-               jars(
-                       include(packageScannerConfig.getJarIncludes().toArray(arrType)),
-                       exclude(packageScannerConfig.getJarExcludes().toArray(arrType))),
-               packages(
-                       include(packageScannerConfig.getPackageIncludes().toArray(arrType)),
-                       exclude(packageScannerConfig.getPackageExcludes().toArray(arrType)))
-           )
-           .withMappings(pkgVersions);
-
-        if (log.isDebugEnabled())
-        {
-            scanner.enableDebug();
-        }
+        PackageScanner scanner = createScanner(packageScannerConfig);
 
         Collection<ExportPackage> exports = scanner.scan();
         log.info("Package scan completed. Found " + exports.size() + " packages to export.");
@@ -209,6 +364,35 @@ class ExportsBuilder
         return exports;
     }
 
+    private static PackageScanner createScanner(PackageScannerConfiguration packageScannerConfig)
+    {
+        String[] arrType = new String[0];
+
+        Map<String,String> pkgVersions = new HashMap<String,String>(packageScannerConfig.getPackageVersions());
+        if (packageScannerConfig.getServletContext() != null)
+        {
+            String ver = packageScannerConfig.getServletContext().getMajorVersion() + "." + packageScannerConfig.getServletContext().getMinorVersion();
+            pkgVersions.put("javax.servlet*", ver);
+        }
+
+        PackageScanner scanner = new PackageScanner()
+           .select(
+               jars(
+                       include(packageScannerConfig.getJarIncludes().toArray(arrType)),
+                       exclude(packageScannerConfig.getJarExcludes().toArray(arrType))),
+               packages(
+                       include(packageScannerConfig.getPackageIncludes().toArray(arrType)),
+                       exclude(packageScannerConfig.getPackageExcludes().toArray(arrType)))
+           )
+           .withMappings(pkgVersions);
+
+        if (log.isDebugEnabled())
+        {
+            scanner.enableDebug();
+        }
+        return scanner;
+    }
+
     /**
      * Tests to see if a scan of packages to export was successful, using the presence of slf4j as the criteria.
      *
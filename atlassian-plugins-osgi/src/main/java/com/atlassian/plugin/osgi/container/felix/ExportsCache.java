@@ -0,0 +1,394 @@
+package com.atlassian.plugin.osgi.container.felix;
+
+import com.atlassian.plugin.osgi.container.PackageScannerConfiguration;
+import com.atlassian.plugin.osgi.hostcomponents.HostComponentRegistration;
+import com.atlassian.plugin.util.PluginFrameworkUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The result of a package scan, persisted across restarts.  The packages found are recorded by the jar or directory
+ * they were found in, together with a stamp of its length and last modified time, so that after a restart only the
+ * locations that changed have to be scanned again.  The cached locations are only used if the class path is unchanged,
+ * as otherwise some of them may no longer be visible to the scanner.  The final exports are recorded as well, and are
+ * used as they are if the scanner configuration, the class path, the host components and all the stamps are unchanged.
+ *
+ * @since 2.11.0
+ */
+class ExportsCache
+{
+    private static final Logger log = LoggerFactory.getLogger(ExportsCache.class);
+
+    private static final String SCAN_KEY = "scan.key";
+    private static final String EXPORTS_KEY = "exports.key";
+    private static final String EXPORTS = "exports";
+    private static final String LOCATION = "location.";
+    private static final String STAMP = "stamp.";
+    private static final String PACKAGES = "packages.";
+
+    private final String scanKey;
+    private final String exportsKey;
+    private final String exports;
+    private final Map<String, String> stamps;
+    private final Map<String, Map<String, String>> packagesByLocation;
+
+    /**
+     * @param scanKey the key of the scanner configuration, see {@link #getScanKey}
+     * @param exportsKey the key of everything the exports depend on, see {@link #getExportsKey}
+     * @param exports the exports
+     * @param stamps the stamps of all the scanned locations, by path
+     * @param packagesByLocation the packages found in each scanned location, by path, mapped to their version
+     */
+    ExportsCache(final String scanKey, final String exportsKey, final String exports, final Map<String, String> stamps,
+                 final Map<String, Map<String, String>> packagesByLocation)
+    {
+        this.scanKey = scanKey;
+        this.exportsKey = exportsKey;
+        this.exports = exports;
+        this.stamps = stamps;
+        this.packagesByLocation = packagesByLocation;
+    }
+
+    String getScanKey()
+    {
+        return scanKey;
+    }
+
+    String getExports()
+    {
+        return exports;
+    }
+
+    /**
+     * @return the stamps of all the scanned locations, by path
+     */
+    Map<String, String> getStamps()
+    {
+        return stamps;
+    }
+
+    /**
+     * @param location the path of a scanned location
+     * @return the packages found in the location, mapped to their version, or null if the location wasn't scanned
+     */
+    Map<String, String> getPackages(final String location)
+    {
+        return packagesByLocation.get(location);
+    }
+
+    /**
+     * @param exportsKey the key of the current configuration and host components
+     * @param currentStamps the current stamps of the scanned locations, see {@link #stamp(Iterable)}
+     * @return true if the exports can be used as they are
+     */
+    boolean isUpToDate(final String exportsKey, final Map<String, String> currentStamps)
+    {
+        return this.exportsKey.equals(exportsKey) && stamps.equals(currentStamps);
+    }
+
+    /**
+     * Reads a cache written by {@link #store(File)}.
+     *
+     * @param file the file to read
+     * @return the cache, or null if the file doesn't exist or can't be read
+     */
+    static ExportsCache load(final File file)
+    {
+        if (!file.exists())
+        {
+            return null;
+        }
+
+        final Properties props = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream(file);
+            props.load(in);
+        }
+        catch (final IOException e)
+        {
+            log.warn("Unable to read the cached exports from " + file + ", so all packages will be scanned again", e);
+            return null;
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+
+        if (props.getProperty(SCAN_KEY) == null || props.getProperty(EXPORTS_KEY) == null || props.getProperty(EXPORTS) == null)
+        {
+            return null;
+        }
+        final Map<String, String> stamps = new TreeMap<String, String>();
+        final Map<String, Map<String, String>> packagesByLocation = new LinkedHashMap<String, Map<String, String>>();
+        for (int i = 0; props.getProperty(LOCATION + i) != null; i++)
+        {
+            final String location = props.getProperty(LOCATION + i);
+            stamps.put(location, props.getProperty(STAMP + i));
+            packagesByLocation.put(location, parsePackages(props.getProperty(PACKAGES + i, "")));
+        }
+        return new ExportsCache(props.getProperty(SCAN_KEY), props.getProperty(EXPORTS_KEY), props.getProperty(EXPORTS),
+            stamps, packagesByLocation);
+    }
+
+    /**
+     * Writes the cache, failing silently as the packages can always be scanned again.
+     *
+     * @param file the file to write
+     */
+    void store(final File file)
+    {
+        final Properties props = new Properties();
+        props.setProperty(SCAN_KEY, scanKey);
+        props.setProperty(EXPORTS_KEY, exportsKey);
+        props.setProperty(EXPORTS, exports);
+        int i = 0;
+        for (final Map.Entry<String, String> stamp : stamps.entrySet())
+        {
+            props.setProperty(LOCATION + i, stamp.getKey());
+            props.setProperty(STAMP + i, stamp.getValue());
+            final Map<String, String> packages = packagesByLocation.get(stamp.getKey());
+            props.setProperty(PACKAGES + i, formatPackages(packages == null ? Collections.<String, String>emptyMap() : packages));
+            i++;
+        }
+
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream(file);
+            props.store(out, null);
+        }
+        catch (final IOException e)
+        {
+            log.warn("Unable to write the cached exports to " + file, e);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * @param packageScannerConfig the scanner configuration, which determines which packages are found in a location
+     * @param classPathLocations the jars and directories on the class path, see {@link #findClassPathLocations}, which
+     * determine the locations that are scanned
+     * @return a key for the scanner configuration and the class path
+     */
+    static String getScanKey(final PackageScannerConfiguration packageScannerConfig, final Collection<String> classPathLocations)
+    {
+        final StringBuilder key = new StringBuilder();
+        key.append(new TreeSet<String>(classPathLocations)).append('\0');
+        key.append(packageScannerConfig.getJarIncludes()).append('\0');
+        key.append(packageScannerConfig.getJarExcludes()).append('\0');
+        key.append(packageScannerConfig.getPackageIncludes()).append('\0');
+        key.append(packageScannerConfig.getPackageExcludes()).append('\0');
+        key.append(new TreeMap<String, String>(packageScannerConfig.getPackageVersions())).append('\0');
+        if (packageScannerConfig.getServletContext() != null)
+        {
+            key.append(packageScannerConfig.getServletContext().getMajorVersion()).append('.')
+                .append(packageScannerConfig.getServletContext().getMinorVersion());
+        }
+        return md5(key.toString());
+    }
+
+    /**
+     * @return a key for everything the exports depend on apart from the scanned locations: the scanner configuration,
+     * the host component interfaces, the JDK version and the plugin framework version
+     */
+    static String getExportsKey(final String scanKey, final List<HostComponentRegistration> regs)
+    {
+        final List<String> interfaces = new ArrayList<String>();
+        for (final HostComponentRegistration reg : regs)
+        {
+            interfaces.addAll(Arrays.asList(reg.getMainInterfaces()));
+        }
+        Collections.sort(interfaces);
+
+        final StringBuilder key = new StringBuilder(scanKey).append('\0');
+        key.append(interfaces).append('\0');
+        key.append(System.getProperty("java.specification.version")).append('\0');
+        key.append(PluginFrameworkUtils.getPluginFrameworkVersion());
+        return md5(key.toString());
+    }
+
+    /**
+     * @param classLoader the class loader the packages are scanned from
+     * @return the paths of the jars and directories on the class path of the class loader and its parents
+     */
+    static List<String> findClassPathLocations(final ClassLoader classLoader)
+    {
+        final List<String> locations = new ArrayList<String>();
+        for (ClassLoader cl = classLoader; cl != null; cl = cl.getParent())
+        {
+            if (cl instanceof URLClassLoader)
+            {
+                for (final URL url : ((URLClassLoader) cl).getURLs())
+                {
+                    final File file = com.atlassian.plugin.util.FileUtils.toFile(url);
+                    if (file != null)
+                    {
+                        locations.add(file.getAbsolutePath());
+                    }
+                }
+            }
+        }
+        // not every class loader is a URLClassLoader, so look for the jars through their manifests as well
+        try
+        {
+            for (final Enumeration<URL> e = classLoader.getResources("META-INF/MANIFEST.MF"); e.hasMoreElements();)
+            {
+                final String url = e.nextElement().toExternalForm();
+                if (url.startsWith("jar:file:") && url.contains("!/"))
+                {
+                    final File file = com.atlassian.plugin.util.FileUtils.toFile(new URL(url.substring("jar:".length(), url.indexOf("!/"))));
+                    if (file != null)
+                    {
+                        locations.add(file.getAbsolutePath());
+                    }
+                }
+            }
+        }
+        catch (final IOException e)
+        {
+            log.debug("Unable to list the jars of the class loader", e);
+        }
+        return locations;
+    }
+
+    /**
+     * @param locations the paths of jars and directories
+     * @return the stamps of the locations that exist, by path
+     */
+    static Map<String, String> stamp(final Iterable<String> locations)
+    {
+        final Map<String, String> stamps = new TreeMap<String, String>();
+        for (final String location : locations)
+        {
+            final File file = new File(location);
+            if (file.exists())
+            {
+                stamps.put(location, stamp(file));
+            }
+        }
+        return stamps;
+    }
+
+    private static String stamp(final File file)
+    {
+        if (file.isFile())
+        {
+            return file.length() + ":" + file.lastModified();
+        }
+        // a directory changes if any file under it is added, removed or modified
+        final long[] stamp = new long[2];
+        stampDirectory(file, stamp);
+        return "d" + stamp[0] + ":" + stamp[1];
+    }
+
+    private static void stampDirectory(final File dir, final long[] stamp)
+    {
+        final File[] files = dir.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+        for (final File file : files)
+        {
+            if (file.isDirectory())
+            {
+                stampDirectory(file, stamp);
+            }
+            else
+            {
+                stamp[0]++;
+                stamp[1] = Math.max(stamp[1], file.lastModified());
+            }
+        }
+    }
+
+    private static String formatPackages(final Map<String, String> packages)
+    {
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<String, String> pkg : packages.entrySet())
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(',');
+            }
+            sb.append(pkg.getKey());
+            if (pkg.getValue() != null)
+            {
+                sb.append('=').append(pkg.getValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, String> parsePackages(final String value)
+    {
+        final Map<String, String> packages = new LinkedHashMap<String, String>();
+        if (value.length() > 0)
+        {
+            for (final String pkg : value.split(","))
+            {
+                final int pos = pkg.indexOf('=');
+                if (pos < 0)
+                {
+                    packages.put(pkg, null);
+                }
+                else
+                {
+                    packages.put(pkg.substring(0, pos), pkg.substring(pos + 1));
+                }
+            }
+        }
+        return packages;
+    }
+
+    private static String md5(final String value)
+    {
+        try
+        {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8"));
+            final StringBuilder key = new StringBuilder(digest.length * 2);
+            for (final byte b : digest)
+            {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        }
+        catch (final NoSuchAlgorithmException e)
+        {
+            throw new AssertionError("MD5 hashing algorithm is not available.");
+        }
+        catch (final UnsupportedEncodingException e)
+        {
+            throw new AssertionError("UTF-8 encoding is not available.");
+        }
+    }
+}
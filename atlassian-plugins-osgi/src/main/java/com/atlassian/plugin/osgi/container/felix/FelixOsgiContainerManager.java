@@ -3,6 +3,7 @@ package com.atlassian.plugin.osgi.container.felix;
 import com.atlassian.plugin.event.PluginEventListener;
 import com.atlassian.plugin.event.PluginEventManager;
 import com.atlassian.plugin.event.events.PluginFrameworkShutdownEvent;
+import com.atlassian.plugin.event.events.PluginFrameworkStartedEvent;
 import com.atlassian.plugin.event.events.PluginFrameworkStartingEvent;
 import com.atlassian.plugin.event.events.PluginFrameworkWarmRestartingEvent;
 import com.atlassian.plugin.event.events.PluginUninstalledEvent;
@@ -15,6 +16,8 @@ import com.atlassian.plugin.osgi.hostcomponents.impl.DefaultComponentRegistrar;
 import com.atlassian.plugin.osgi.util.OsgiHeaderUtil;
 import com.atlassian.plugin.util.ClassLoaderUtils;
 import com.atlassian.plugin.util.ContextClassLoaderSwitchingUtil;
+import com.atlassian.plugin.util.PluginUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.felix.framework.Felix;
 import org.apache.felix.framework.Logger;
@@ -36,15 +39,26 @@ import org.osgi.service.packageadmin.PackageAdmin;
 import org.osgi.util.tracker.ServiceTracker;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -61,6 +75,9 @@ public class FelixOsgiContainerManager implements OsgiContainerManager
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(FelixOsgiContainerManager.class);
     private static final String OSGI_BOOTDELEGATION = "org.osgi.framework.bootdelegation";
     private static final String ATLASSIAN_PREFIX = "atlassian.";
+    // the name mustn't start with "bundle", as Felix treats those files in its cache directory as bundle archives
+    private static final String BUNDLE_DIGESTS_FILE = "atlassian-bundle-digests.properties";
+    private static final String EXPORTS_CACHE_FILE = "system-exports.properties";
 
     private final OsgiPersistentCache persistentCache;
     private final URL frameworkBundlesUrl;
@@ -163,7 +180,7 @@ public class FelixOsgiContainerManager implements OsgiContainerManager
         this.pluginEventManager = eventManager;
         eventManager.register(this);
         felixLogger = new FelixLoggerBridge(log);
-        exportsBuilder = new ExportsBuilder();
+        exportsBuilder = new ExportsBuilder(new File(persistentCache.getTransformedPluginCache(), EXPORTS_CACHE_FILE));
     }
 
     public void setFelixLogger(final Logger logger)
@@ -193,6 +210,16 @@ public class FelixOsgiContainerManager implements OsgiContainerManager
         start();
     }
 
+    @SuppressWarnings ({ "UnusedDeclaration" })
+    @PluginEventListener
+    public void onStarted(final PluginFrameworkStartedEvent event)
+    {
+        if (isRunning())
+        {
+            registration.uninstallUnusedCachedBundles();
+        }
+    }
+
     @SuppressWarnings ({ "UnusedDeclaration" })
     @PluginEventListener
     public void onShutdown(final PluginFrameworkShutdownEvent event)
@@ -270,11 +297,16 @@ public class FelixOsgiContainerManager implements OsgiContainerManager
         }
 
         validateConfiguration(configMap);
+        // only now, as validating the caches clears them if the exports have changed
+        exportsBuilder.storeExportCache();
 
         try
         {
             // Create host activator;
-            registration = new BundleRegistration(frameworkBundlesUrl, persistentCache.getFrameworkBundleCache(), registrar);
+            final File bundleDigestsFile = Boolean.getBoolean(PluginUtils.ATLASSIAN_PLUGINS_OSGI_PERSISTENT_BUNDLE_CACHE)
+                ? new File(persistentCache.getOsgiBundleCache(), BUNDLE_DIGESTS_FILE) : null;
+            registration = new BundleRegistration(frameworkBundlesUrl, persistentCache.getFrameworkBundleCache(), registrar,
+                bundleDigestsFile);
             final List<BundleActivator> list = new ArrayList<BundleActivator>();
             list.add(registration);
             configMap.put(FelixConstants.SYSTEMBUNDLE_ACTIVATORS_PROP, list);
@@ -483,6 +515,12 @@ public class FelixOsgiContainerManager implements OsgiContainerManager
     /**
      * Manages framework-level framework bundles and host components registration, and individual plugin bundle
      * installation and removal.
+     * <p>
+     * If the bundle cache of the container is kept across restarts, the digest of every installed bundle is recorded
+     * by location.  The bundles restored from the cache on startup are uninstalled unless the file they were installed
+     * from still has the recorded digest, and the others are used again instead of being installed from scratch.  The
+     * digests are kept in memory as bundles are installed, and only written once the plugin framework has started and
+     * when the container stops.
      */
     static class BundleRegistration implements BundleActivator, BundleListener, FrameworkListener
     {
@@ -494,12 +532,28 @@ public class FelixOsgiContainerManager implements OsgiContainerManager
         private final File frameworkBundlesDir;
         private ClassLoader initializedClassLoader;
         private PackageAdmin packageAdmin;
+        private final File bundleDigestsFile;
+        private final Properties bundleDigests = new Properties();
+        private volatile boolean bundleDigestsChanged;
+        private final Map<String, Bundle> cachedBundles = new ConcurrentHashMap<String, Bundle>();
 
         public BundleRegistration(final URL frameworkBundlesUrl, final File frameworkBundlesDir, final DefaultComponentRegistrar registrar)
+        {
+            this(frameworkBundlesUrl, frameworkBundlesDir, registrar, null);
+        }
+
+        /**
+         * @param bundleDigestsFile the file to record the digests of the installed bundles in, or null if the bundle
+         * cache isn't kept across restarts
+         * @since 2.11.0
+         */
+        public BundleRegistration(final URL frameworkBundlesUrl, final File frameworkBundlesDir, final DefaultComponentRegistrar registrar,
+                                  final File bundleDigestsFile)
         {
             this.registrar = registrar;
             this.frameworkBundlesUrl = frameworkBundlesUrl;
             this.frameworkBundlesDir = frameworkBundlesDir;
+            this.bundleDigestsFile = bundleDigestsFile;
             this.initializedClassLoader = Thread.currentThread().getContextClassLoader();
         }
 
@@ -512,6 +566,10 @@ public class FelixOsgiContainerManager implements OsgiContainerManager
             context.addBundleListener(this);
             context.addFrameworkListener(this);
 
+            if (bundleDigestsFile != null)
+            {
+                reconcileCachedBundles();
+            }
             loadHostComponents(registrar);
             extractAndInstallFrameworkBundles();
         }
@@ -520,6 +578,7 @@ public class FelixOsgiContainerManager implements OsgiContainerManager
         {
             ctx.removeBundleListener(this);
             ctx.removeFrameworkListener(this);
+            storeBundleDigests();
             if (hostServicesReferences != null)
             {
                 for (ServiceRegistration ref : hostServicesReferences)
@@ -527,6 +586,7 @@ public class FelixOsgiContainerManager implements OsgiContainerManager
                     ref.unregister();
                 }
             }
+            cachedBundles.clear();
             bundleContext = null;
             packageAdmin = null;
             hostServicesReferences = null;
@@ -562,6 +622,14 @@ public class FelixOsgiContainerManager implements OsgiContainerManager
 
         public Bundle install(final File path, final boolean uninstallOtherVersions) throws BundleException
         {
+            final String location = path.toURI().toString();
+            final Bundle cachedBundle = cachedBundles.remove(location);
+            if (cachedBundle != null && cachedBundle.getState() != Bundle.UNINSTALLED)
+            {
+                log.debug("Using cached bundle " + location);
+                return cachedBundle;
+            }
+
             boolean bundleUninstalled = false;
             if (uninstallOtherVersions)
             {
@@ -592,7 +660,12 @@ public class FelixOsgiContainerManager implements OsgiContainerManager
                     throw new BundleException("Invalid bundle format", e);
                 }
             }
-            final Bundle bundle = bundleContext.installBundle(path.toURI().toString());
+            final Bundle bundle = bundleContext.installBundle(location);
+            if (bundleDigestsFile != null)
+            {
+                bundleDigests.setProperty(location, digest(path));
+                bundleDigestsChanged = true;
+            }
             if (bundleUninstalled)
             {
                 refreshPackages();
@@ -600,6 +673,166 @@ public class FelixOsgiContainerManager implements OsgiContainerManager
             return bundle;
         }
 
+        /**
+         * Uninstalls the bundles restored from the cache that were not installed again since the container was
+         * started, as the plugins they belonged to are gone, and writes the digests of the installed bundles.
+         *
+         * @since 2.11.0
+         */
+        public void uninstallUnusedCachedBundles()
+        {
+            boolean bundleUninstalled = false;
+            for (final String location : new ArrayList<String>(cachedBundles.keySet()))
+            {
+                final Bundle bundle = cachedBundles.remove(location);
+                if (bundle != null && bundle.getState() != Bundle.UNINSTALLED)
+                {
+                    log.info("Uninstalling unused cached bundle " + location);
+                    try
+                    {
+                        bundle.uninstall();
+                        bundleUninstalled = true;
+                    }
+                    catch (final BundleException e)
+                    {
+                        log.warn("Unable to uninstall cached bundle " + location, e);
+                    }
+                }
+                bundleDigests.remove(location);
+                bundleDigestsChanged = true;
+            }
+            storeBundleDigests();
+            if (bundleUninstalled)
+            {
+                refreshPackages();
+            }
+        }
+
+        /**
+         * Uninstalls the bundles restored from the cache whose file has changed or is gone, and keeps the others
+         * around to be used again when they are installed.  The kept bundles are marked as stopped, so the framework
+         * doesn't start them before whoever installed them in the first place does.
+         */
+        private void reconcileCachedBundles() throws BundleException
+        {
+            loadBundleDigests();
+            for (final Bundle bundle : bundleContext.getBundles())
+            {
+                if (bundle.getBundleId() == 0)
+                {
+                    continue;
+                }
+                final String location = bundle.getLocation();
+                final String digest = bundleDigests.getProperty(location);
+                final File file = toFile(location);
+                if (digest != null && file != null && file.isFile() && digest.equals(digest(file)))
+                {
+                    bundle.stop();
+                    cachedBundles.put(location, bundle);
+                }
+                else
+                {
+                    log.info("Uninstalling cached bundle " + location + " as its file has changed");
+                    bundle.uninstall();
+                    bundleDigests.remove(location);
+                    bundleDigestsChanged = true;
+                }
+            }
+        }
+
+        private void loadBundleDigests()
+        {
+            if (!bundleDigestsFile.exists())
+            {
+                return;
+            }
+            InputStream in = null;
+            try
+            {
+                in = new FileInputStream(bundleDigestsFile);
+                bundleDigests.load(in);
+            }
+            catch (final IOException e)
+            {
+                // the cached bundles can't be matched, so they'll all be installed again
+                log.warn("Unable to read the bundle digests from " + bundleDigestsFile, e);
+            }
+            finally
+            {
+                IOUtils.closeQuietly(in);
+            }
+        }
+
+        private synchronized void storeBundleDigests()
+        {
+            if (bundleDigestsFile == null || !bundleDigestsChanged)
+            {
+                return;
+            }
+            bundleDigestsChanged = false;
+            OutputStream out = null;
+            try
+            {
+                out = new FileOutputStream(bundleDigestsFile);
+                bundleDigests.store(out, null);
+            }
+            catch (final IOException e)
+            {
+                log.warn("Unable to write the bundle digests to " + bundleDigestsFile + ", so cached bundles won't be used after a restart", e);
+            }
+            finally
+            {
+                IOUtils.closeQuietly(out);
+            }
+        }
+
+        private static File toFile(final String location)
+        {
+            try
+            {
+                final URI uri = new URI(location);
+                return "file".equals(uri.getScheme()) ? new File(uri) : null;
+            }
+            catch (final Exception e)
+            {
+                return null;
+            }
+        }
+
+        private static String digest(final File file) throws BundleException
+        {
+            InputStream in = null;
+            try
+            {
+                final MessageDigest md5 = MessageDigest.getInstance("MD5");
+                in = new BufferedInputStream(new FileInputStream(file));
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1)
+                {
+                    md5.update(buffer, 0, read);
+                }
+                final StringBuilder digest = new StringBuilder();
+                for (final byte b : md5.digest())
+                {
+                    digest.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+                }
+                return digest.toString();
+            }
+            catch (final NoSuchAlgorithmException e)
+            {
+                throw new AssertionError("MD5 hashing algorithm is not available.");
+            }
+            catch (final IOException e)
+            {
+                throw new BundleException("Unable to read bundle " + file, e);
+            }
+            finally
+            {
+                IOUtils.closeQuietly(in);
+            }
+        }
+
         public Bundle[] getBundles()
         {
             return bundleContext.getBundles();
@@ -2,6 +2,7 @@ package com.atlassian.plugin.osgi.container.impl;
 
 import com.atlassian.plugin.osgi.container.OsgiContainerException;
 import com.atlassian.plugin.osgi.container.OsgiPersistentCache;
+import com.atlassian.plugin.util.PluginUtils;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.Validate;
@@ -13,6 +14,9 @@ import java.io.IOException;
 
 /**
  * Default implementation of persistent cache.  Handles clearing of directories if an upgrade has been detected.
+ * The container bundle cache is cleaned on every validation, unless
+ * {@link PluginUtils#ATLASSIAN_PLUGINS_OSGI_PERSISTENT_BUNDLE_CACHE} is set, in which case it is only cleaned with
+ * the other caches when the cache key changes.
  *
  * @since 2.2.0
  */
@@ -82,13 +86,11 @@ public class DefaultOsgiPersistentCache implements OsgiPersistentCache
         ensureDirectoryExists(osgiBundleCache);
         ensureDirectoryExists(transformedPluginCache);
 
-        try
-        {
-            FileUtils.cleanDirectory(osgiBundleCache);
-        }
-        catch (final IOException e)
+        // the container reconciles a persistent bundle cache with the bundles it installs, see FelixOsgiContainerManager
+        final boolean persistentOsgiBundleCache = Boolean.getBoolean(PluginUtils.ATLASSIAN_PLUGINS_OSGI_PERSISTENT_BUNDLE_CACHE);
+        if (!persistentOsgiBundleCache)
         {
-            throw new OsgiContainerException("Unable to clean the cache directory: " + osgiBundleCache, e);
+            cleanOsgiBundleCache();
         }
 
         if (cacheValidationKey != null)
@@ -115,6 +117,11 @@ public class DefaultOsgiPersistentCache implements OsgiPersistentCache
                     return;
                 }
             }
+            else if (persistentOsgiBundleCache)
+            {
+                // there is no way to tell which version the cached bundles were installed by
+                cleanOsgiBundleCache();
+            }
 
             try
             {
@@ -127,6 +134,18 @@ public class DefaultOsgiPersistentCache implements OsgiPersistentCache
         }
     }
 
+    private void cleanOsgiBundleCache()
+    {
+        try
+        {
+            FileUtils.cleanDirectory(osgiBundleCache);
+        }
+        catch (final IOException e)
+        {
+            throw new OsgiContainerException("Unable to clean the cache directory: " + osgiBundleCache, e);
+        }
+    }
+
     private void ensureDirectoryExists(final File dir)
     {
         if (dir.exists() && !dir.isDirectory())
@@ -120,14 +120,24 @@ public class OsgiPluginFactory implements PluginFactory
 
     private PluginTransformer getPluginTransformer()
     {
-        if (pluginTransformer == null)
+        PluginTransformer transformer = pluginTransformer;
+        if (transformer == null)
         {
-            String exportString = (String) osgi.getBundles()[0].getHeaders()
-                    .get(Constants.EXPORT_PACKAGE);
-            SystemExports exports = new SystemExports(exportString);
-            pluginTransformer = pluginTransformerFactory.newPluginTransformer(persistentCache, exports, applicationKeys, pluginDescriptorFileName, osgi);
+            // plugins may be created concurrently, and they must all share one transformer and its cache
+            synchronized (this)
+            {
+                transformer = pluginTransformer;
+                if (transformer == null)
+                {
+                    String exportString = (String) osgi.getBundles()[0].getHeaders()
+                            .get(Constants.EXPORT_PACKAGE);
+                    SystemExports exports = new SystemExports(exportString);
+                    transformer = pluginTransformerFactory.newPluginTransformer(persistentCache, exports, applicationKeys, pluginDescriptorFileName, osgi);
+                    pluginTransformer = transformer;
+                }
+            }
         }
-        return pluginTransformer;
+        return transformer;
     }
 
     public String canCreate(PluginArtifact pluginArtifact) throws PluginParseException
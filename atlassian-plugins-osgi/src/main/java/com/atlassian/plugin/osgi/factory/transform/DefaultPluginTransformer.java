@@ -9,12 +9,17 @@ import com.atlassian.plugin.JarPluginArtifact;
 import com.atlassian.plugin.PluginArtifact;
 import com.atlassian.plugin.util.PluginUtils;
 import org.apache.commons.lang.Validate;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -26,6 +31,7 @@ import java.util.zip.ZipOutputStream;
 public class DefaultPluginTransformer implements PluginTransformer
 {
     private static final Logger log = LoggerFactory.getLogger(DefaultPluginTransformer.class);
+    private static final String TEMP_FILE_PREFIX = ".transforming-";
 
     private final String pluginDescriptorPath;
     private final List<TransformStage> stages;
@@ -35,6 +41,11 @@ public class DefaultPluginTransformer implements PluginTransformer
     private final OsgiPersistentCache osgiCache;
     private final OsgiContainerManager osgiContainerManager;
 
+    // the transformed plugins in the cache directory by file name, read from the directory on first use
+    private volatile ConcurrentMap<String, File> cacheIndex;
+    // the cache entries looked up or created by this transformer, which are never garbage-collected
+    private final Set<String> usedCacheNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
     /**
      * Gets the default list of transform stages performed by the transformer. Clients wishing to add stages to the
      * transformation process should use this list as a template rather than creating their own from scratch.
@@ -186,9 +197,19 @@ public class DefaultPluginTransformer implements PluginTransformer
         Validate.notNull(regs, "The host component registrations are required");
 
         File artifactFile = pluginArtifact.toFile();
+        final String cacheName;
+        try
+        {
+            cacheName = generateCacheName(artifactFile, generateCacheKey(artifactFile, regs));
+        }
+        catch (IOException e)
+        {
+            throw new PluginTransformationException("Unable to read plugin jar " + artifactFile, e);
+        }
+        usedCacheNames.add(cacheName);
 
         // Look in cache first
-        File cachedPlugin = getFromCache(artifactFile);
+        File cachedPlugin = getFromCache(cacheName);
         if (cachedPlugin != null)
         {
             return cachedPlugin;
@@ -217,7 +238,7 @@ public class DefaultPluginTransformer implements PluginTransformer
                 }
                 log.debug(sb.toString());
             }
-            return addFilesToExistingZip(artifactFile, context.getFileOverrides());
+            return addToCache(addFilesToExistingZip(artifactFile, context.getFileOverrides()), cacheName);
         }
         catch (IOException e)
         {
@@ -225,35 +246,213 @@ public class DefaultPluginTransformer implements PluginTransformer
         }
     }
 
-    private File getFromCache(File artifact)
+    private File getFromCache(String cacheName)
+    {
+        final ConcurrentMap<String, File> index = getCacheIndex();
+        final File cached = index.get(cacheName);
+        if (cached != null && !cached.exists())
+        {
+            // the cache directory has been cleared
+            index.remove(cacheName, cached);
+            return null;
+        }
+        return cached;
+    }
+
+    private ConcurrentMap<String, File> getCacheIndex()
+    {
+        ConcurrentMap<String, File> index = cacheIndex;
+        if (index == null)
+        {
+            synchronized (this)
+            {
+                index = cacheIndex;
+                if (index == null)
+                {
+                    index = new ConcurrentHashMap<String, File>();
+                    final File[] children = bundleCacheDir.listFiles();
+                    if (children != null)
+                    {
+                        for (File child : children)
+                        {
+                            if (child.getName().startsWith(TEMP_FILE_PREFIX))
+                            {
+                                // left behind by a transformation that didn't complete
+                                child.delete();
+                            }
+                            else
+                            {
+                                index.put(child.getName(), child);
+                            }
+                        }
+                    }
+                    cacheIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Moves a transformed plugin into the cache, and deletes the plugins previously cached for the same file that
+     * haven't been used by this transformer.
+     */
+    private File addToCache(File transformed, String cacheName) throws IOException
     {
-        String name = generateCacheName(artifact);
-        for (File child : bundleCacheDir.listFiles())
+        final File cached = new File(bundleCacheDir, cacheName);
+        if (cached.exists())
         {
-            if (child.getName().equals(name))
-                return child;
+            cached.delete();
         }
-        return null;
+        if (!transformed.renameTo(cached))
+        {
+            FileUtils.copyFile(transformed, cached);
+            transformed.delete();
+        }
+
+        final ConcurrentMap<String, File> index = getCacheIndex();
+        index.put(cacheName, cached);
+        for (Iterator<Map.Entry<String, File>> it = index.entrySet().iterator(); it.hasNext();)
+        {
+            final Map.Entry<String, File> entry = it.next();
+            if (isStaleCacheName(entry.getKey(), cacheName) && !usedCacheNames.contains(entry.getKey()))
+            {
+                log.debug("Removing stale transformed plugin " + entry.getValue());
+                entry.getValue().delete();
+                it.remove();
+            }
+        }
+        return cached;
     }
 
     /**
-     * Generate a cache name that incorporates the timestap and preserves the extension
+     * @return true if the name is the name of a different cache entry for the same file as the current cache name
+     */
+    static boolean isStaleCacheName(String name, String currentCacheName)
+    {
+        final int keyStart = currentCacheName.lastIndexOf('_') + 1;
+        final int keyEnd = currentCacheName.indexOf('.', keyStart) < 0 ? currentCacheName.length() : currentCacheName.indexOf('.', keyStart);
+        final String prefix = currentCacheName.substring(0, keyStart);
+        final String suffix = currentCacheName.substring(keyEnd);
+        if (name.equals(currentCacheName) || !name.startsWith(prefix) || !name.endsWith(suffix)
+            || name.length() <= prefix.length() + suffix.length())
+        {
+            return false;
+        }
+        // the key is a digest, or the last modified time of the file in older versions
+        final String key = name.substring(prefix.length(), name.length() - suffix.length());
+        for (int i = 0; i < key.length(); i++)
+        {
+            if (Character.digit(key.charAt(i), 16) < 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generate a cache name that incorporates the cache key and preserves the extension
      * @param file The original file to cache
+     * @param cacheKey The key of the transformed file
      * @return The new file name
      */
-    static String generateCacheName(File file)
+    static String generateCacheName(File file, String cacheKey)
     {
         int dotPos = file.getName().lastIndexOf('.');
         if (dotPos > 0 && file.getName().length() - 1 > dotPos)
         {
-            return file.getName().substring(0, dotPos) + "_" + file.lastModified() + file.getName().substring(dotPos);
+            return file.getName().substring(0, dotPos) + "_" + cacheKey + file.getName().substring(dotPos);
         }
         else
         {
-            return file.getName() + "_" + file.lastModified();
+            return file.getName() + "_" + cacheKey;
         }
     }
 
+    /**
+     * Generates the cache key of a transformed plugin: a digest of the contents of the plugin and of everything else
+     * that determines the result of the transformation, so a plugin is only transformed again if one of them changed,
+     * regardless of the last modified time of the file.
+     *
+     * @param file The plugin jar
+     * @param regs The host component registrations
+     * @return The cache key, as a hex string
+     * @throws IOException If the plugin jar can't be read
+     */
+    String generateCacheKey(File file, List<HostComponentRegistration> regs) throws IOException
+    {
+        final MessageDigest md5;
+        try
+        {
+            md5 = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new AssertionError("MD5 hashing algorithm is not available.");
+        }
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream(file);
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                md5.update(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+
+        final StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append('\0').append(pluginDescriptorPath);
+        for (TransformStage stage : stages)
+        {
+            fingerprint.append('\0').append(stage.getClass().getName());
+        }
+        if (applicationKeys != null)
+        {
+            final List<String> sortedApplicationKeys = new ArrayList<String>();
+            for (String applicationKey : applicationKeys)
+            {
+                sortedApplicationKeys.add(String.valueOf(applicationKey));
+            }
+            Collections.sort(sortedApplicationKeys);
+            for (String applicationKey : sortedApplicationKeys)
+            {
+                fingerprint.append('\0').append(applicationKey);
+            }
+        }
+        fingerprint.append('\0').append(systemExports == null ? null : systemExports.getExportsLine());
+        // the order of the registrations matters, as it is used to name the generated beans
+        for (HostComponentRegistration reg : regs)
+        {
+            fingerprint.append('\0').append(Arrays.toString(reg.getMainInterfaces()));
+            final Map<String, String> properties = new TreeMap<String, String>();
+            if (reg.getProperties() != null)
+            {
+                for (Enumeration<String> keys = reg.getProperties().keys(); keys.hasMoreElements();)
+                {
+                    final String key = keys.nextElement();
+                    properties.put(key, reg.getProperties().get(key));
+                }
+            }
+            fingerprint.append(properties);
+        }
+        md5.update(fingerprint.toString().getBytes("UTF-8"));
+
+        final byte[] digest = md5.digest();
+        final StringBuilder key = new StringBuilder(digest.length * 2);
+        for (byte b : digest)
+        {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
 
     /**
      * Creates a new jar by overriding the specified files in the existing one
@@ -266,8 +465,8 @@ public class DefaultPluginTransformer implements PluginTransformer
     File addFilesToExistingZip(File zipFile,
                                       Map<String, byte[]> files) throws IOException
     {
-        // get a temp file
-        File tempFile = new File(bundleCacheDir, generateCacheName(zipFile));
+        // get a temp file, which is only moved into the cache once it's complete
+        File tempFile = File.createTempFile(TEMP_FILE_PREFIX, ".tmp", bundleCacheDir);
         
         ZipInputStream zin = null;
         ZipOutputStream out = null;
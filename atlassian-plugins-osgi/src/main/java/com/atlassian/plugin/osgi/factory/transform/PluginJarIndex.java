@@ -0,0 +1,250 @@
+package com.atlassian.plugin.osgi.factory.transform;
+
+import aQute.lib.osgi.Clazz;
+import com.atlassian.plugin.osgi.util.ClassBinaryScanner;
+import com.atlassian.plugin.osgi.util.ClassBinaryScanner.InputStreamResource;
+import com.atlassian.plugin.osgi.util.ClassBinaryScanner.ScanResult;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.io.IOUtils;
+import org.osgi.framework.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * An in-memory index of the plugin jar, built by reading the jar once so that the transform stages don't each have
+ * to open and decompress it again.
+ * <p>
+ * The index contains the names of all the entries in the jar, the names of the entries in the inner jars under
+ * <code>META-INF/lib/</code> or on the <code>Bundle-ClassPath</code> of the original manifest, and the result of
+ * scanning every class in the jar and in the inner jars on the <code>Bundle-ClassPath</code>.  Scanning the classes
+ * is far more expensive than reading the entry names and only some stages need it, so it is done by another pass over
+ * the jar the first time the results are asked for.
+ *
+ * @since 2.11.0
+ */
+public final class PluginJarIndex
+{
+    private static final Logger log = LoggerFactory.getLogger(PluginJarIndex.class);
+
+    private static final String INNER_JARS_BASE_LOCATION = "META-INF/lib/";
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final File pluginFile;
+    private final Set<String> classPathJars;
+    private final Set<String> entryNames;
+    private final Map<String, Set<String>> innerJarEntryNames;
+    private Map<String, ScanResult> classScanResults;
+
+    private PluginJarIndex(final File pluginFile, final Set<String> classPathJars, final Set<String> entryNames, final Map<String, Set<String>> innerJarEntryNames)
+    {
+        this.pluginFile = pluginFile;
+        this.classPathJars = classPathJars;
+        this.entryNames = entryNames;
+        this.innerJarEntryNames = innerJarEntryNames;
+    }
+
+    /**
+     * @return the names of all the entries in the plugin jar, in the order they appear in the jar
+     */
+    public Set<String> getEntryNames()
+    {
+        return entryNames;
+    }
+
+    public boolean containsEntry(final String path)
+    {
+        return entryNames.contains(path);
+    }
+
+    /**
+     * @param innerJar the path of the inner jar in the plugin jar
+     * @return the names of the entries in the inner jar, empty if the inner jar doesn't exist or wasn't indexed
+     */
+    public Set<String> getInnerJarEntryNames(final String innerJar)
+    {
+        final Set<String> names = innerJarEntryNames.get(innerJar);
+        return (names == null) ? Collections.<String>emptySet() : names;
+    }
+
+    /**
+     * @return the scan results of the classes in the plugin jar and in the inner jars on the bundle classpath, keyed
+     * by the class path without the <code>.class</code> suffix, e.g. <code>com/atlassian/Foo</code>
+     * @throws PluginTransformationException if the jar can't be read
+     */
+    public Map<String, ScanResult> getClassScanResults() throws PluginTransformationException
+    {
+        if (classScanResults == null)
+        {
+            classScanResults = scanClasses(pluginFile, classPathJars);
+        }
+        return classScanResults;
+    }
+
+    /**
+     * Reads the names of the entries of the plugin jar and its inner jars to build its index.
+     *
+     * @param pluginFile the plugin jar
+     * @param manifest the original manifest of the plugin jar, used to find the inner jars on the bundle classpath
+     * @return the index, never null
+     * @throws PluginTransformationException if the jar can't be read
+     */
+    static PluginJarIndex build(final File pluginFile, final Manifest manifest) throws PluginTransformationException
+    {
+        final Set<String> entryNames = new LinkedHashSet<String>();
+        final Map<String, Set<String>> innerJarEntryNames = new HashMap<String, Set<String>>();
+        final Set<String> classPathJars = getBundleClassPathJars(manifest);
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream(pluginFile);
+            final ZipInputStream zin = new ZipInputStream(new BufferedInputStream(in));
+            ZipEntry zipEntry;
+            while ((zipEntry = zin.getNextEntry()) != null)
+            {
+                final String path = zipEntry.getName();
+                entryNames.add(path);
+                if (path.endsWith(".jar") && (path.startsWith(INNER_JARS_BASE_LOCATION) || classPathJars.contains(path)))
+                {
+                    innerJarEntryNames.put(path, indexInnerJar(path, zin, null));
+                }
+            }
+        }
+        catch (final IOException e)
+        {
+            throw new PluginTransformationException("Error reading jar:" + pluginFile.getName(), e);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+
+        return new PluginJarIndex(pluginFile, classPathJars, Collections.unmodifiableSet(entryNames),
+            ImmutableMap.copyOf(innerJarEntryNames));
+    }
+
+    /**
+     * Reads the plugin jar again to scan the classes in it and in the inner jars on the bundle classpath.
+     */
+    private static Map<String, ScanResult> scanClasses(final File pluginFile, final Set<String> classPathJars) throws PluginTransformationException
+    {
+        final Map<String, ScanResult> classScanResults = new HashMap<String, ScanResult>();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream(pluginFile);
+            final ZipInputStream zin = new ZipInputStream(new BufferedInputStream(in));
+            ZipEntry zipEntry;
+            while ((zipEntry = zin.getNextEntry()) != null)
+            {
+                final String path = zipEntry.getName();
+                if (path.endsWith(CLASS_SUFFIX))
+                {
+                    scanClass(path, zin, classScanResults);
+                }
+                else if (classPathJars.contains(path))
+                {
+                    indexInnerJar(path, zin, classScanResults);
+                }
+            }
+        }
+        catch (final IOException e)
+        {
+            throw new PluginTransformationException("Error reading jar:" + pluginFile.getName(), e);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+        return ImmutableMap.copyOf(classScanResults);
+    }
+
+    /**
+     * Reads the entries of an inner jar from the stream of the plugin jar, scanning its classes if the scan results
+     * are wanted.
+     */
+    private static Set<String> indexInnerJar(final String innerJar, final InputStream in, final Map<String, ScanResult> classScanResults) throws IOException
+    {
+        final ImmutableSet.Builder<String> names = ImmutableSet.builder();
+        final ZipInputStream zin = new ZipInputStream(new UnclosableFilterInputStream(in));
+        try
+        {
+            ZipEntry zipEntry;
+            while ((zipEntry = zin.getNextEntry()) != null)
+            {
+                final String path = zipEntry.getName();
+                names.add(path);
+                if ((classScanResults != null) && path.endsWith(CLASS_SUFFIX))
+                {
+                    scanClass(path, zin, classScanResults);
+                }
+            }
+        }
+        catch (final IOException e)
+        {
+            throw new PluginTransformationException("Error reading inner jar:" + innerJar, e);
+        }
+        return names.build();
+    }
+
+    private static void scanClass(final String path, final InputStream in, final Map<String, ScanResult> classScanResults) throws IOException
+    {
+        final Clazz cls = new Clazz(path, new InputStreamResource(new BufferedInputStream(new UnclosableFilterInputStream(in))));
+        classScanResults.put(path.substring(0, path.length() - CLASS_SUFFIX.length()), ClassBinaryScanner.scanClassBinary(cls));
+    }
+
+    private static Set<String> getBundleClassPathJars(final Manifest manifest)
+    {
+        final Set<String> paths = new LinkedHashSet<String>();
+        final String cp = manifest.getMainAttributes().getValue(Constants.BUNDLE_CLASSPATH);
+        if (cp != null)
+        {
+            for (String entry : cp.split(","))
+            {
+                entry = entry.trim();
+                if (entry.length() != 1 && entry.endsWith(".jar"))
+                {
+                    paths.add(entry);
+                }
+                else if (!".".equals(entry))
+                {
+                    log.warn("Non-jar classpath elements not supported: " + entry);
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Wrapper for the zip input stream to prevent clients from closing it when reading entries
+     */
+    private static class UnclosableFilterInputStream extends FilterInputStream
+    {
+        public UnclosableFilterInputStream(final InputStream delegate)
+        {
+            super(delegate);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            // do nothing
+        }
+    }
+}
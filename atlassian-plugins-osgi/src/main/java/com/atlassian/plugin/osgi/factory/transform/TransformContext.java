@@ -54,6 +54,7 @@ public final class TransformContext
     private boolean shouldRequireSpring = false;
     private final OsgiContainerManager osgiContainerManager;
     private final Set<HostComponentRegistration> requiredHostComponents;
+    private PluginJarIndex pluginJarIndex;
 
     private static final Logger LOG = LoggerFactory.getLogger(TransformContext.class);
 
@@ -185,6 +186,22 @@ public final class TransformContext
         return getEntry(pluginArtifact.toFile(), path);
     }
 
+    /**
+     * Gets the index of the plugin jar, which is read the first time this is called and shared by all the stages.
+     *
+     * @return the index of the plugin jar
+     * @throws PluginTransformationException if the plugin jar can't be read
+     * @since 2.11.0
+     */
+    public PluginJarIndex getPluginJarIndex() throws PluginTransformationException
+    {
+        if (pluginJarIndex == null)
+        {
+            pluginJarIndex = PluginJarIndex.build(pluginArtifact.toFile(), manifest);
+        }
+        return pluginJarIndex;
+    }
+
     public void addRequiredHostComponent(final HostComponentRegistration hostComponent)
     {
         requiredHostComponents.add(hostComponent);
@@ -13,6 +13,7 @@ import com.atlassian.plugin.osgi.util.OsgiHeaderUtil;
  */
 public class SystemExports
 {
+    private final String exportsLine;
     private final Map<String, Map<String,String>> exports;
 
     public static final SystemExports NONE = new SystemExports("");
@@ -28,6 +29,7 @@ public class SystemExports
         {
             exportsLine = "";
         }
+        this.exportsLine = exportsLine;
         this.exports = Collections.unmodifiableMap(OsgiHeaderUtil.parseHeader(exportsLine));
     }
 
@@ -53,6 +55,15 @@ public class SystemExports
         return pkg;
     }
 
+    /**
+     * @return The Export-Package header value the exports were parsed from, never null
+     * @since 2.11.0
+     */
+    public String getExportsLine()
+    {
+        return exportsLine;
+    }
+
     /**
      * @param pkg The package to check
      * @return True if the package is being exported, false otherwise
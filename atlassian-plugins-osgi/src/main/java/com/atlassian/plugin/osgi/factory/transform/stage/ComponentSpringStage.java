@@ -4,27 +4,23 @@ import com.atlassian.multitenant.MultiTenantContext;
 import com.atlassian.plugin.osgi.factory.transform.TransformStage;
 import com.atlassian.plugin.osgi.factory.transform.TransformContext;
 import com.atlassian.plugin.osgi.factory.transform.PluginTransformationException;
+import com.atlassian.plugin.osgi.factory.transform.PluginJarIndex;
 import static com.atlassian.plugin.util.validation.ValidationPattern.createPattern;
 import static com.atlassian.plugin.util.validation.ValidationPattern.test;
 
 import com.atlassian.plugin.util.validation.ValidationPattern;
 import com.atlassian.plugin.util.PluginUtils;
-import com.google.common.collect.Sets;
 import org.apache.commons.lang.StringUtils;
 import org.dom4j.Document;
 import org.dom4j.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.jar.JarInputStream;
 
 /**
  * Transforms component tags in the plugin descriptor into the appropriate spring XML configuration file
@@ -172,7 +168,7 @@ public class ComponentSpringStage implements TransformStage
             Set<String> requiredInterfaces;
             try
             {
-                requiredInterfaces = calculateRequiredImports(context.getPluginFile(),
+                requiredInterfaces = calculateRequiredImports(context.getPluginJarIndex(),
                                                               declaredInterfaces,
                                                               context.getBundleClassPathJars());
             }
@@ -211,50 +207,41 @@ public class ComponentSpringStage implements TransformStage
     /**
      * Calculate the the interfaces that need to be imported.
      *
-     * @return the set of interfaces that cannot be resolved in the pluginFile.
+     * @return the set of interfaces that cannot be resolved in the plugin jar.
      */
-    private Set<String> calculateRequiredImports(final File pluginFile,
+    private Set<String> calculateRequiredImports(final PluginJarIndex pluginJarIndex,
                                                  final Set<String> declaredInterfaces,
                                                  final Set<String> innerJars)
     {
         // we only do it if at least one interface is declared as part of component element.
         if (declaredInterfaces.size() > 0)
         {
-            // scan for class files of interest in the jar file, not including classes in inner jars.
-            final Set<String> shallowMatches;
-            FileInputStream fis = null;
-            JarInputStream jarStream = null;
-            try
-            {
-                fis = new FileInputStream(pluginFile);
-                jarStream = new JarInputStream(fis);
-                shallowMatches =TransformStageUtils.scanJarForItems(jarStream,
-                                                                    declaredInterfaces,
-                                                                    TransformStageUtils.JarEntryToClassName.INSTANCE);
-            }
-            catch (final IOException ioe)
-            {
-                throw new PluginTransformationException("Error reading jar:" + pluginFile.getName(), ioe);
-            }
-            finally
+            // the outstanding set = declared set - classes in the jar or in the inner jars
+            final Set<String> remainders = new HashSet<String>();
+            for (final String declaredInterface : declaredInterfaces)
             {
-                TransformStageUtils.closeNestedStreamQuietly(jarStream, fis);
-            }
-
-            // the outstanding set = declared set - shallow match set
-            final Set<String> remainders = Sets.newHashSet(Sets.difference(declaredInterfaces, shallowMatches));
-
-            // if all the interfaces are not yet satisfied, we have to scan inner jars as well.
-            // this is, of course, subject to the availability of qualified inner jars.
-            if ((remainders.size() > 0) && (innerJars.size() > 0))
-            {
-                remainders.removeAll(TransformStageUtils.scanInnerJars(pluginFile, innerJars, remainders));
+                final String path = declaredInterface.replace('.', '/') + ".class";
+                if (!pluginJarIndex.containsEntry(path) && !isInInnerJar(pluginJarIndex, innerJars, path))
+                {
+                    remainders.add(declaredInterface);
+                }
             }
-
             return Collections.unmodifiableSet(remainders);
         }
 
         // if no need to import.
         return Collections.emptySet();
     }
+
+    private static boolean isInInnerJar(final PluginJarIndex pluginJarIndex, final Set<String> innerJars, final String path)
+    {
+        for (final String innerJar : innerJars)
+        {
+            if (pluginJarIndex.getInnerJarEntryNames(innerJar).contains(path))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
 }
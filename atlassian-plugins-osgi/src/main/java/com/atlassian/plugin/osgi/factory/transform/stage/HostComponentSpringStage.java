@@ -1,37 +1,26 @@
 package com.atlassian.plugin.osgi.factory.transform.stage;
 
-import aQute.lib.osgi.Clazz;
 import com.atlassian.plugin.osgi.factory.transform.TransformStage;
 import com.atlassian.plugin.osgi.factory.transform.TransformContext;
 import com.atlassian.plugin.osgi.factory.transform.PluginTransformationException;
+import com.atlassian.plugin.osgi.factory.transform.PluginJarIndex;
 import com.atlassian.plugin.osgi.factory.transform.model.ComponentImport;
 import com.atlassian.plugin.osgi.factory.transform.model.SystemExports;
 import com.atlassian.plugin.osgi.hostcomponents.HostComponentRegistration;
 import com.atlassian.plugin.osgi.hostcomponents.PropertyBuilder;
 import com.atlassian.plugin.osgi.hostcomponents.ComponentRegistrar;
-import com.atlassian.plugin.osgi.util.ClassBinaryScanner;
 import com.atlassian.plugin.osgi.util.OsgiHeaderUtil;
 import com.atlassian.plugin.PluginParseException;
 import com.atlassian.plugin.util.ClassLoaderUtils;
 import com.atlassian.plugin.util.PluginUtils;
-import com.atlassian.plugin.osgi.util.ClassBinaryScanner.InputStreamResource;
 import com.atlassian.plugin.osgi.util.ClassBinaryScanner.ScanResult;
 import org.dom4j.Document;
 import org.dom4j.Element;
-import org.apache.commons.io.IOUtils;
-import org.osgi.framework.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
-import java.io.FilterInputStream;
 import java.util.*;
-import java.util.jar.Manifest;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipEntry;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.Method;
 
 public class HostComponentSpringStage implements TransformStage
@@ -50,21 +39,14 @@ public class HostComponentSpringStage implements TransformStage
             Document doc = SpringHelper.createSpringDocument();
             Set<String> hostComponentInterfaceNames = convertRegistrationsToSet(context.getHostComponentRegistrations());
             Set<String> matchedInterfaceNames = new HashSet<String>();
-            List<String> innerJarPaths = findJarPaths(context.getManifest());
-            InputStream pluginStream = null;
             try
             {
-                pluginStream = new FileInputStream(context.getPluginFile());
-                findUsedHostComponents(hostComponentInterfaceNames, matchedInterfaceNames, innerJarPaths, pluginStream);
+                findUsedHostComponents(hostComponentInterfaceNames, matchedInterfaceNames, context.getPluginJarIndex());
             }
-            catch (IOException e)
+            catch (PluginTransformationException e)
             {
                 throw new PluginParseException("Unable to scan for host components in plugin classes", e);
             }
-            finally
-            {
-                IOUtils.closeQuietly(pluginStream);
-            }
 
             List<HostComponentRegistration> matchedRegistrations = new ArrayList<HostComponentRegistration>();
             Element root = doc.getRootElement();
@@ -175,47 +157,25 @@ public class HostComponentSpringStage implements TransformStage
         return interfaceNames;
     }
 
-    private void findUsedHostComponents(Set<String> allHostComponents, Set<String> matchedHostComponents, List<String> innerJarPaths, InputStream
-            jarStream) throws IOException
+    private void findUsedHostComponents(Set<String> allHostComponents, Set<String> matchedHostComponents, PluginJarIndex pluginJarIndex)
     {
-        Set<String> entries = new HashSet<String>();
+        // the classes of the jar and of the inner jars on the bundle classpath
+        Map<String, ScanResult> classes = pluginJarIndex.getClassScanResults();
         Set<String> superClassNames = new HashSet<String>();
-        ZipInputStream zin = null;
-        try
+        for (ScanResult scanResult : classes.values())
         {
-            zin = new ZipInputStream(new BufferedInputStream(jarStream));
-            ZipEntry zipEntry;
-            while ((zipEntry = zin.getNextEntry()) != null)
+            superClassNames.add(scanResult.getSuperClass());
+            for (String ref : scanResult.getReferredClasses())
             {
-                String path = zipEntry.getName();
-                if (path.endsWith(".class"))
+                String name = TransformStageUtils.jarPathToClassName(ref + ".class");
+                if (allHostComponents.contains(name))
                 {
-                    entries.add(path.substring(0, path.length() - ".class".length()));
-                    final Clazz cls = new Clazz(path, new InputStreamResource(new BufferedInputStream(new UnclosableFilterInputStream(zin))));
-                    final ScanResult scanResult = ClassBinaryScanner.scanClassBinary(cls);
-
-                    superClassNames.add(scanResult.getSuperClass());
-                    for (String ref : scanResult.getReferredClasses())
-                    {
-                        String name = TransformStageUtils.jarPathToClassName(ref + ".class");
-                        if (allHostComponents.contains(name))
-                        {
-                            matchedHostComponents.add(name);
-                        }
-                    }
-                }
-                else if (path.endsWith(".jar") && innerJarPaths.contains(path))
-                {
-                    findUsedHostComponents(allHostComponents, matchedHostComponents, Collections.<String>emptyList(), new UnclosableFilterInputStream(zin));
+                    matchedHostComponents.add(name);
                 }
             }
         }
-        finally
-        {
-            IOUtils.closeQuietly(zin);
-        }
 
-        addHostComponentsUsedInSuperClasses(allHostComponents, matchedHostComponents, entries, superClassNames);
+        addHostComponentsUsedInSuperClasses(allHostComponents, matchedHostComponents, classes.keySet(), superClassNames);
     }
 
     /**
@@ -264,45 +224,6 @@ public class HostComponentSpringStage implements TransformStage
         }
     }
 
-    private List<String> findJarPaths(Manifest mf)
-    {
-        List<String> paths = new ArrayList<String>();
-        String cp = mf.getMainAttributes().getValue(Constants.BUNDLE_CLASSPATH);
-        if (cp != null)
-        {
-            for (String entry : cp.split(","))
-            {
-                entry = entry.trim();
-                if (entry.length() != 1 && entry.endsWith(".jar"))
-                {
-                    paths.add(entry);
-                }
-                else if (!".".equals(entry))
-                {
-                    log.warn("Non-jar classpath elements not supported: " + entry);
-                }
-            }
-        }
-        return paths;
-    }
-
-    /**
-     * Wrapper for the zip input stream to prevent clients from closing it when reading entries
-     */
-    private static class UnclosableFilterInputStream extends FilterInputStream
-    {
-        public UnclosableFilterInputStream(InputStream delegate)
-        {
-            super(delegate);
-        }
-
-        @Override
-        public void close() throws IOException
-        {
-            // do nothing
-        }
-    }
-
     private String determineId(Set<String> hostComponentNames, String beanName, int iteration)
     {
         String id = beanName;
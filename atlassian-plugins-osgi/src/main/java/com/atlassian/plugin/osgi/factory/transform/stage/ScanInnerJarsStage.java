@@ -4,8 +4,6 @@ import com.atlassian.plugin.osgi.factory.transform.PluginTransformationException
 import com.atlassian.plugin.osgi.factory.transform.TransformContext;
 import com.atlassian.plugin.osgi.factory.transform.TransformStage;
 
-import java.util.jar.JarEntry;
-
 /**
  * The stages which scan for inner jars in attempt to create bundle classpath.
  *
@@ -17,13 +15,13 @@ public class ScanInnerJarsStage implements TransformStage
 
     public void execute(TransformContext context) throws PluginTransformationException
     {
-        for (final JarEntry jarEntry : context.getPluginJarEntries())
+        for (final String entryName : context.getPluginJarIndex().getEntryNames())
         {
             // we only want jar files under the defined base location.
-            if (jarEntry.getName().startsWith(INNER_JARS_BASE_LOCATION)
-                && jarEntry.getName().endsWith(".jar"))
+            if (entryName.startsWith(INNER_JARS_BASE_LOCATION)
+                && entryName.endsWith(".jar"))
             {
-                context.addBundleClasspathJar(jarEntry.getName());
+                context.addBundleClasspathJar(entryName);
             }
         }
     }
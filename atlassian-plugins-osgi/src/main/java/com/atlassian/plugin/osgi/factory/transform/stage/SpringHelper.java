@@ -81,7 +81,7 @@ class SpringHelper
      */
     static boolean shouldGenerateFile(final TransformContext context, final String path)
     {
-        if (context.getPluginJarEntry(path) == null)
+        if (!context.getPluginJarIndex().containsEntry(path))
         {
             log.debug("File "+path+" not present, generating");
             return true;
@@ -3,6 +3,7 @@ package com.atlassian.plugin.osgi.container;
 import junit.framework.TestCase;
 import com.atlassian.plugin.test.PluginTestUtils;
 import com.atlassian.plugin.osgi.container.impl.DefaultOsgiPersistentCache;
+import com.atlassian.plugin.util.PluginUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -50,6 +51,34 @@ public class TestDefaultOsgiPersistentCache extends TestCase
         assertTrue(tmp.exists());
     }
 
+    public void testCleanOsgiBundleCache() throws IOException
+    {
+        DefaultOsgiPersistentCache cache = new DefaultOsgiPersistentCache(tmpDir);
+        cache.validate("1.0");
+        File tmp = File.createTempFile("foo", ".txt", new File(tmpDir, "felix"));
+        cache.validate("1.0");
+        assertFalse(tmp.exists());
+    }
+
+    public void testKeepPersistentOsgiBundleCache() throws IOException
+    {
+        System.setProperty(PluginUtils.ATLASSIAN_PLUGINS_OSGI_PERSISTENT_BUNDLE_CACHE, "true");
+        try
+        {
+            DefaultOsgiPersistentCache cache = new DefaultOsgiPersistentCache(tmpDir);
+            cache.validate("1.0");
+            File tmp = File.createTempFile("foo", ".txt", new File(tmpDir, "felix"));
+            cache.validate("1.0");
+            assertTrue(tmp.exists());
+            cache.validate("2.0");
+            assertFalse(tmp.exists());
+        }
+        finally
+        {
+            System.clearProperty(PluginUtils.ATLASSIAN_PLUGINS_OSGI_PERSISTENT_BUNDLE_CACHE);
+        }
+    }
+
     @Override
     protected void tearDown() throws Exception
     {
@@ -0,0 +1,111 @@
+package com.atlassian.plugin.osgi.container.felix;
+
+import com.atlassian.plugin.osgi.container.impl.DefaultPackageScannerConfiguration;
+import com.atlassian.plugin.osgi.hostcomponents.HostComponentRegistration;
+import com.atlassian.plugin.osgi.hostcomponents.impl.MockRegistration;
+import com.atlassian.plugin.test.PluginTestUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TestExportsCache extends TestCase
+{
+    private File tmpDir;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        tmpDir = PluginTestUtils.createTempDirectory(TestExportsCache.class);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        FileUtils.deleteDirectory(tmpDir);
+        super.tearDown();
+    }
+
+    public void testStoreAndLoad() throws Exception
+    {
+        final File jar = new File(tmpDir, "foo-1.0.jar");
+        FileUtils.writeStringToFile(jar, "foo");
+        final File emptyJar = new File(tmpDir, "empty.jar");
+        FileUtils.writeStringToFile(emptyJar, "");
+        final Map<String, String> stamps = ExportsCache.stamp(ImmutableList.of(jar.getAbsolutePath(), emptyJar.getAbsolutePath()));
+        final Map<String, Map<String, String>> packages = new LinkedHashMap<String, Map<String, String>>();
+        packages.put(jar.getAbsolutePath(), ImmutableMap.of("foo", "1.0", "foo.bar", "1.0"));
+        packages.put(emptyJar.getAbsolutePath(), new HashMap<String, String>());
+
+        final File file = new File(tmpDir, "exports.properties");
+        new ExportsCache("scan", "exports", "foo;version=1.0,foo.bar;version=1.0", stamps, packages).store(file);
+        final ExportsCache cache = ExportsCache.load(file);
+
+        assertEquals("scan", cache.getScanKey());
+        assertEquals("foo;version=1.0,foo.bar;version=1.0", cache.getExports());
+        assertEquals(stamps, cache.getStamps());
+        assertEquals(ImmutableMap.of("foo", "1.0", "foo.bar", "1.0"), cache.getPackages(jar.getAbsolutePath()));
+        assertEquals(Collections.<String, String>emptyMap(), cache.getPackages(emptyJar.getAbsolutePath()));
+        assertNull(cache.getPackages(new File(tmpDir, "other.jar").getAbsolutePath()));
+        assertTrue(cache.isUpToDate("exports", stamps));
+        assertFalse(cache.isUpToDate("other", stamps));
+    }
+
+    public void testLoadMissingFile()
+    {
+        assertNull(ExportsCache.load(new File(tmpDir, "missing.properties")));
+    }
+
+    public void testStampChangesWithJar() throws Exception
+    {
+        final File jar = new File(tmpDir, "foo-1.0.jar");
+        FileUtils.writeStringToFile(jar, "foo");
+        final Map<String, String> stamps = ExportsCache.stamp(ImmutableList.of(jar.getAbsolutePath()));
+
+        FileUtils.writeStringToFile(jar, "foobar");
+        assertFalse(stamps.equals(ExportsCache.stamp(ImmutableList.of(jar.getAbsolutePath()))));
+
+        jar.delete();
+        assertTrue(ExportsCache.stamp(ImmutableList.of(jar.getAbsolutePath())).isEmpty());
+    }
+
+    public void testStampChangesWithDirectoryContents() throws Exception
+    {
+        final File dir = new File(tmpDir, "classes");
+        FileUtils.writeStringToFile(new File(dir, "foo/Foo.class"), "foo");
+        final Map<String, String> stamps = ExportsCache.stamp(ImmutableList.of(dir.getAbsolutePath()));
+        assertEquals(stamps, ExportsCache.stamp(ImmutableList.of(dir.getAbsolutePath())));
+
+        FileUtils.writeStringToFile(new File(dir, "foo/Bar.class"), "bar");
+        assertFalse(stamps.equals(ExportsCache.stamp(ImmutableList.of(dir.getAbsolutePath()))));
+    }
+
+    public void testScanKeyDependsOnClassPath()
+    {
+        final DefaultPackageScannerConfiguration config = new DefaultPackageScannerConfiguration("1.0");
+        final String scanKey = ExportsCache.getScanKey(config, ImmutableList.of("/lib/foo.jar", "/lib/bar.jar"));
+
+        assertEquals(scanKey, ExportsCache.getScanKey(config, ImmutableList.of("/lib/bar.jar", "/lib/foo.jar")));
+        assertFalse(scanKey.equals(ExportsCache.getScanKey(config, ImmutableList.of("/lib/foo.jar"))));
+    }
+
+    public void testExportsKeyDependsOnHostComponentInterfaces()
+    {
+        final String scanKey = ExportsCache.getScanKey(new DefaultPackageScannerConfiguration("1.0"), ImmutableList.<String>of());
+        final HostComponentRegistration reg = new MockRegistration(new DefaultTableModel(), TableModel.class);
+
+        assertEquals(ExportsCache.getExportsKey(scanKey, ImmutableList.<HostComponentRegistration>of()),
+            ExportsCache.getExportsKey(scanKey, ImmutableList.<HostComponentRegistration>of()));
+        assertFalse(ExportsCache.getExportsKey(scanKey, ImmutableList.<HostComponentRegistration>of()).equals(
+            ExportsCache.getExportsKey(scanKey, ImmutableList.of(reg))));
+    }
+}
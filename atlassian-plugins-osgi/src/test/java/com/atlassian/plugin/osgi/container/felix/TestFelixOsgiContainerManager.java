@@ -6,6 +6,7 @@ import com.atlassian.plugin.osgi.container.impl.DefaultOsgiPersistentCache;
 import com.atlassian.plugin.osgi.container.OsgiContainerException;
 import com.atlassian.plugin.test.PluginJarBuilder;
 import com.atlassian.plugin.test.PluginTestUtils;
+import com.atlassian.plugin.util.PluginUtils;
 import junit.framework.TestCase;
 import org.apache.commons.io.FileUtils;
 import org.osgi.framework.Bundle;
@@ -277,6 +278,55 @@ public class TestFelixOsgiContainerManager extends TestCase
         assertNotNull(bundleUpdate.getResource("bar.txt"));
     }
 
+    public void testPersistentBundleCacheIsUsedAfterRestart() throws Exception
+    {
+        File plugin = new PluginJarBuilder("plugin")
+                .addResource("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n" +
+                        "Bundle-Version: 1.0\n" +
+                        "Bundle-SymbolicName: my.foo.symbolicName\n" +
+                        "Bundle-ManifestVersion: 2\n")
+                .addResource("foo.txt", "foo")
+                .build();
+        File otherPlugin = new PluginJarBuilder("plugin")
+                .addResource("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n" +
+                        "Bundle-Version: 1.0\n" +
+                        "Bundle-SymbolicName: my.bar.symbolicName\n" +
+                        "Bundle-ManifestVersion: 2\n")
+                .build();
+
+        System.setProperty(PluginUtils.ATLASSIAN_PLUGINS_OSGI_PERSISTENT_BUNDLE_CACHE, "true");
+        try
+        {
+            felix.start();
+            Bundle bundle = felix.installBundle(plugin);
+            bundle.start();
+            long bundleId = bundle.getBundleId();
+            felix.installBundle(otherPlugin);
+            felix.stop();
+
+            felix.start();
+            assertEquals(3, felix.getBundles().length);
+            bundle = felix.installBundle(plugin);
+            assertEquals(bundleId, bundle.getBundleId());
+            assertEquals(Bundle.RESOLVED, bundle.getState());
+            assertNotNull(bundle.getResource("foo.txt"));
+
+            felix.onStarted(null);
+            assertEquals(2, felix.getBundles().length);
+            felix.stop();
+
+            FileUtils.writeByteArrayToFile(plugin, FileUtils.readFileToByteArray(otherPlugin));
+            felix.start();
+            assertEquals(1, felix.getBundles().length);
+            bundle = felix.installBundle(plugin);
+            assertEquals("my.bar.symbolicName", bundle.getSymbolicName());
+        }
+        finally
+        {
+            System.clearProperty(PluginUtils.ATLASSIAN_PLUGINS_OSGI_PERSISTENT_BUNDLE_CACHE);
+        }
+    }
+
     public void testInstallFailure() throws Exception
     {
         File plugin = new PluginJarBuilder("plugin")
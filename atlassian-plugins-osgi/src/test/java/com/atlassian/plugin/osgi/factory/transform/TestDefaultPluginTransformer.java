@@ -16,6 +16,7 @@ import com.atlassian.plugin.test.PluginTestUtils;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
 import org.dom4j.Document;
 import org.dom4j.Element;
 import org.dom4j.io.SAXReader;
@@ -111,7 +112,7 @@ public class TestDefaultPluginTransformer extends TestCase
         });
 
         assertNotNull(copy);
-        assertTrue(copy.getName().contains(String.valueOf(file.lastModified())));
+        assertTrue(copy.getName().startsWith(file.getName().substring(0, file.getName().lastIndexOf('.')) + "_"));
         assertTrue(copy.getName().endsWith(".jar"));
         assertEquals(tmpDir.getAbsolutePath(), copy.getParentFile().getParentFile().getAbsolutePath());
         final JarFile jar = new JarFile(copy);
@@ -263,15 +264,68 @@ public class TestDefaultPluginTransformer extends TestCase
     public void testGenerateCacheName() throws IOException
     {
         File tmp = File.createTempFile("asdf", ".jar", tmpDir);
-        assertTrue(DefaultPluginTransformer.generateCacheName(tmp).endsWith(".jar"));
+        assertTrue(DefaultPluginTransformer.generateCacheName(tmp, "abc123").endsWith("_abc123.jar"));
         tmp = File.createTempFile("asdf", "asdf", tmpDir);
-        assertTrue(DefaultPluginTransformer.generateCacheName(tmp).endsWith(String.valueOf(tmp.lastModified())));
+        assertTrue(DefaultPluginTransformer.generateCacheName(tmp, "abc123").endsWith("_abc123"));
 
         tmp = File.createTempFile("asdf", "asdf.", tmpDir);
-        assertTrue(DefaultPluginTransformer.generateCacheName(tmp).endsWith(String.valueOf(tmp.lastModified())));
+        assertTrue(DefaultPluginTransformer.generateCacheName(tmp, "abc123").endsWith("_abc123"));
 
         tmp = File.createTempFile("asdf", "asdf.s", tmpDir);
-        assertTrue(DefaultPluginTransformer.generateCacheName(tmp).endsWith(String.valueOf(".s")));
+        assertTrue(DefaultPluginTransformer.generateCacheName(tmp, "abc123").endsWith(String.valueOf(".s")));
+    }
+
+    public void testIsStaleCacheName()
+    {
+        assertTrue(DefaultPluginTransformer.isStaleCacheName("my_plugin_1234.jar", "my_plugin_abcd.jar"));
+        assertFalse(DefaultPluginTransformer.isStaleCacheName("my_plugin_abcd.jar", "my_plugin_abcd.jar"));
+        assertFalse(DefaultPluginTransformer.isStaleCacheName("my_plugin_extra_1234.jar", "my_plugin_abcd.jar"));
+        assertFalse(DefaultPluginTransformer.isStaleCacheName("my_plugin_1234.zip", "my_plugin_abcd.jar"));
+        assertFalse(DefaultPluginTransformer.isStaleCacheName("cache.key", "cache_abcd.jar"));
+    }
+
+    public void testTransformedPluginIsCachedByContent() throws Exception
+    {
+        final File file = new PluginJarBuilder()
+                .addPluginInformation("foo", "foo", "1.1")
+                .build();
+        final List<HostComponentRegistration> regs = new ArrayList<HostComponentRegistration>();
+
+        final File copy = transformer.transform(new JarPluginArtifact(file), regs);
+        assertTrue(file.setLastModified(file.lastModified() - 60000));
+        assertEquals(copy, transformer.transform(new JarPluginArtifact(file), regs));
+
+        // a new transformer finds it in the cache directory
+        OsgiContainerManager osgiContainerManager = mock(OsgiContainerManager.class);
+        DefaultPluginTransformer other = new DefaultPluginTransformer(new DefaultOsgiPersistentCache(tmpDir), SystemExports.NONE, null, PluginAccessor.Descriptor.FILENAME, osgiContainerManager);
+        assertEquals(copy, other.transform(new JarPluginArtifact(file), regs));
+
+        // but not if the host components have changed
+        regs.add(new StubHostComponentRegistration(Fooable.class));
+        final File transformedAgain = other.transform(new JarPluginArtifact(file), regs);
+        assertFalse(copy.equals(transformedAgain));
+        assertTrue(transformedAgain.exists());
+    }
+
+    public void testStaleTransformedPluginIsRemoved() throws Exception
+    {
+        final File file = new File(PluginTestUtils.createTempDirectory("plugins"), "stale.jar");
+        FileUtils.copyFile(new PluginJarBuilder()
+                .addPluginInformation("foo", "foo", "1.1")
+                .build(), file);
+        final File copy = transformer.transform(new JarPluginArtifact(file), new ArrayList<HostComponentRegistration>());
+
+        final File changed = file;
+        FileUtils.copyFile(new PluginJarBuilder()
+                .addPluginInformation("foo", "foo", "1.2")
+                .build(), changed);
+        OsgiContainerManager osgiContainerManager = mock(OsgiContainerManager.class);
+        DefaultPluginTransformer other = new DefaultPluginTransformer(new DefaultOsgiPersistentCache(tmpDir), SystemExports.NONE, null, PluginAccessor.Descriptor.FILENAME, osgiContainerManager);
+        final File changedCopy = other.transform(new JarPluginArtifact(changed), new ArrayList<HostComponentRegistration>());
+
+        assertFalse(copy.equals(changedCopy));
+        assertFalse(copy.exists());
+        assertTrue(changedCopy.exists());
     }
 
     public void testTransformComponentMustNotPerformKeyConversion() throws Exception
@@ -0,0 +1,78 @@
+package com.atlassian.plugin.osgi.factory.transform;
+
+import com.atlassian.plugin.test.PluginJarBuilder;
+import com.google.common.collect.ImmutableMap;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.jar.Manifest;
+
+public class TestPluginJarIndex extends TestCase
+{
+    public void testIndexesEntriesInnerJarsAndClasses() throws Exception
+    {
+        final File innerJar = new PluginJarBuilder("innerjar")
+            .addFormattedJava("my.inner.InnerFoo",
+                    "package my.inner;",
+                    "public class InnerFoo {}")
+            .build();
+        final File plugin = new PluginJarBuilder("plugin")
+            .addFormattedJava("my.Foo",
+                    "package my;",
+                    "public class Foo extends com.atlassian.plugin.osgi.factory.transform.dummypackage2.DummyClass2 {}")
+            .addResource("foo.txt", "bar")
+            .addFile("META-INF/lib/inner.jar", innerJar)
+            .build();
+
+        final PluginJarIndex index = PluginJarIndex.build(plugin, JarUtils.getManifest(plugin));
+
+        assertTrue(index.containsEntry("my/Foo.class"));
+        assertTrue(index.containsEntry("foo.txt"));
+        assertFalse(index.containsEntry("bar.txt"));
+        assertTrue(index.getInnerJarEntryNames("META-INF/lib/inner.jar").contains("my/inner/InnerFoo.class"));
+        assertTrue(index.getInnerJarEntryNames("META-INF/lib/missing.jar").isEmpty());
+
+        // classes in inner jars are only scanned if they are on the bundle classpath
+        assertEquals("com/atlassian/plugin/osgi/factory/transform/dummypackage2/DummyClass2", index.getClassScanResults().get("my/Foo").getSuperClass());
+        assertFalse(index.getClassScanResults().containsKey("my/inner/InnerFoo"));
+    }
+
+    public void testScansClassesOfInnerJarsOnTheBundleClassPath() throws Exception
+    {
+        final File innerJar = new PluginJarBuilder("innerjar")
+            .addFormattedJava("my.inner.InnerFoo",
+                    "package my.inner;",
+                    "public class InnerFoo {}")
+            .build();
+        final File plugin = new PluginJarBuilder("plugin")
+            .manifest(ImmutableMap.of("Bundle-ClassPath", ".,lib/inner.jar"))
+            .addFile("lib/inner.jar", innerJar)
+            .build();
+
+        final Manifest manifest = JarUtils.getManifest(plugin);
+        final PluginJarIndex index = PluginJarIndex.build(plugin, manifest);
+
+        assertTrue(index.getInnerJarEntryNames("lib/inner.jar").contains("my/inner/InnerFoo.class"));
+        assertEquals("java/lang/Object", index.getClassScanResults().get("my/inner/InnerFoo").getSuperClass());
+    }
+
+    public void testClassesAreOnlyScannedWhenAskedFor() throws Exception
+    {
+        final File plugin = new PluginJarBuilder("plugin")
+            .addResource("my/Broken.class", "not a class")
+            .build();
+
+        final PluginJarIndex index = PluginJarIndex.build(plugin, JarUtils.getManifest(plugin));
+        assertTrue(index.containsEntry("my/Broken.class"));
+
+        try
+        {
+            index.getClassScanResults();
+            fail("The broken class should only be scanned now");
+        }
+        catch (final PluginTransformationException e)
+        {
+            // expected
+        }
+    }
+}
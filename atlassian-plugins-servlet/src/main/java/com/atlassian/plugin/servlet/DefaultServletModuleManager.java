@@ -32,17 +32,18 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.atlassian.plugin.servlet.descriptors.ServletFilterModuleDescriptor.byWeight;
 
@@ -64,6 +65,11 @@ public class DefaultServletModuleManager implements ServletModuleManager
     private final Map<String, ServletFilterModuleDescriptor> filterDescriptors = new HashMap<String, ServletFilterModuleDescriptor>();
     private final ConcurrentMap<String, LazyReference<Filter>> filterRefs = new ConcurrentHashMap<String, LazyReference<Filter>>();
 
+    // the weight sorted filters for each location, dispatcher condition and set of matched filter keys
+    private static final int MAX_CACHED_FILTER_CHAINS = 1000;
+    private final ConcurrentMap<FilterChainKey, FilterChainEntry> filterChains = new ConcurrentHashMap<FilterChainKey, FilterChainEntry>();
+    private final AtomicLong filterChainGeneration = new AtomicLong();
+
     private final ConcurrentMap<Plugin, ContextLifecycleReference> pluginContextRefs = new ConcurrentHashMap<Plugin, ContextLifecycleReference>();
 
     /**
@@ -171,6 +177,7 @@ public class DefaultServletModuleManager implements ServletModuleManager
         {
             filterMapper.put(descriptor.getCompleteKey(), path);
         }
+        invalidateFilterChains();
         final LazyReference<Filter> filterRef = filterRefs.remove(descriptor.getCompleteKey());
         if (filterRef != null)
         {
@@ -186,28 +193,36 @@ public class DefaultServletModuleManager implements ServletModuleManager
     public Iterable<Filter> getFilters(FilterLocation location, String path, FilterConfig filterConfig, FilterDispatcherCondition condition) throws ServletException
     {
         Validate.notNull(condition);
-        final List<ServletFilterModuleDescriptor> matchingFilterDescriptors = new ArrayList<ServletFilterModuleDescriptor>();
-
-        for (final String completeKey : filterMapper.getAll(path))
+        final FilterChainKey chainKey = new FilterChainKey(location, condition, filterMapper.getAll(path));
+        FilterChainEntry chain = filterChains.get(chainKey);
+        if (chain == null)
         {
-            final ServletFilterModuleDescriptor descriptor = filterDescriptors.get(completeKey);
-            if (!descriptor.getDispatcherConditions().contains(condition))
+            final long lookupGeneration = filterChainGeneration.get();
+            chain = new FilterChainEntry(getMatchingFilterDescriptors(chainKey));
+            if (filterChains.size() >= MAX_CACHED_FILTER_CHAINS)
             {
-                if (log.isTraceEnabled())
+                // the matched keys come from a fixed set of patterns, so this only happens with a very large number
+                // of overlapping filter paths
+                filterChains.clear();
+            }
+            if (filterChainGeneration.get() == lookupGeneration)
+            {
+                filterChains.put(chainKey, chain);
+                if (filterChainGeneration.get() != lookupGeneration)
                 {
-                    log.trace("Skipping filter " + descriptor.getCompleteKey() + " as condition " + condition +
-                            " doesn't match list:" + Arrays.asList(descriptor.getDispatcherConditions()));
+                    // a filter module was added or removed while storing, so the chain may already be stale
+                    filterChains.remove(chainKey, chain);
                 }
-                continue;
             }
+        }
 
-            if (location.equals(descriptor.getLocation()))
-            {
-                sortedInsert(matchingFilterDescriptors, descriptor, byWeight);
-            }
+        final List<Filter> resolved = chain.filters;
+        if (resolved != null)
+        {
+            return resolved;
         }
-        final List<Filter> filters = new LinkedList<Filter>();
-        for (final ServletFilterModuleDescriptor descriptor : matchingFilterDescriptors)
+        final List<Filter> filters = new ArrayList<Filter>(chain.descriptors.length);
+        for (final ServletFilterModuleDescriptor descriptor : chain.descriptors)
         {
             final Filter filter = getFilter(descriptor, filterConfig);
             if (filter == null)
@@ -216,13 +231,59 @@ public class DefaultServletModuleManager implements ServletModuleManager
             }
             else
             {
-                filters.add(getFilter(descriptor, filterConfig));
+                filters.add(filter);
             }
         }
-
+        if (filters.size() == chain.descriptors.length)
+        {
+            // every filter was created, so they can be reused until a filter module is added or removed
+            chain.filters = Collections.unmodifiableList(filters);
+            return chain.filters;
+        }
         return filters;
     }
 
+    /**
+     * Finds the descriptors of the filters in the chain, sorted by weight.  Filters with the same weight stay in the
+     * order they were matched in.
+     */
+    private ServletFilterModuleDescriptor[] getMatchingFilterDescriptors(final FilterChainKey chainKey)
+    {
+        final List<ServletFilterModuleDescriptor> matchingFilterDescriptors = new ArrayList<ServletFilterModuleDescriptor>();
+        for (final String completeKey : chainKey.matchedKeys)
+        {
+            final ServletFilterModuleDescriptor descriptor = filterDescriptors.get(completeKey);
+            if (descriptor == null)
+            {
+                continue;
+            }
+            if (!descriptor.getDispatcherConditions().contains(chainKey.condition))
+            {
+                if (log.isTraceEnabled())
+                {
+                    log.trace("Skipping filter " + descriptor.getCompleteKey() + " as condition " + chainKey.condition +
+                            " doesn't match list:" + Arrays.asList(descriptor.getDispatcherConditions()));
+                }
+                continue;
+            }
+
+            if (chainKey.location.equals(descriptor.getLocation()))
+            {
+                sortedInsert(matchingFilterDescriptors, descriptor, byWeight);
+            }
+        }
+        return matchingFilterDescriptors.toArray(new ServletFilterModuleDescriptor[matchingFilterDescriptors.size()]);
+    }
+
+    /**
+     * Drops the cached filter chains.  Must be called after any filter module is added or removed.
+     */
+    private void invalidateFilterChains()
+    {
+        filterChainGeneration.incrementAndGet();
+        filterChains.clear();
+    }
+
     static <T> void sortedInsert(final List<T> list, final T e, final Comparator<T> comparator)
     {
         int insertIndex = Collections.binarySearch(list, e, comparator);
@@ -248,6 +309,7 @@ public class DefaultServletModuleManager implements ServletModuleManager
     {
         filterDescriptors.remove(descriptor.getCompleteKey());
         filterMapper.put(descriptor.getCompleteKey(), null);
+        invalidateFilterChains();
 
         final LazyReference<Filter> filterRef = filterRefs.remove(descriptor.getCompleteKey());
         if (filterRef != null)
@@ -393,6 +455,60 @@ public class DefaultServletModuleManager implements ServletModuleManager
         return pluginContextRef.get().servletContext;
     }
 
+    /**
+     * Identifies a filter chain by the filter keys matched by the path rather than by the path itself, so that all the
+     * paths matched by the same patterns share a chain.
+     */
+    private static final class FilterChainKey
+    {
+        private final FilterLocation location;
+        private final FilterDispatcherCondition condition;
+        private final List<String> matchedKeys;
+        private final int hashCode;
+
+        private FilterChainKey(final FilterLocation location, final FilterDispatcherCondition condition, final Collection<String> matchedKeys)
+        {
+            this.location = location;
+            this.condition = condition;
+            this.matchedKeys = new ArrayList<String>(matchedKeys);
+            this.hashCode = (31 * (31 * location.hashCode() + condition.hashCode())) + this.matchedKeys.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof FilterChainKey))
+            {
+                return false;
+            }
+            final FilterChainKey other = (FilterChainKey) o;
+            return (hashCode == other.hashCode) && location.equals(other.location) && condition.equals(other.condition)
+                && matchedKeys.equals(other.matchedKeys);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+
+    private static final class FilterChainEntry
+    {
+        private final ServletFilterModuleDescriptor[] descriptors;
+        /** the filters, once all of them have been created */
+        private volatile List<Filter> filters;
+
+        private FilterChainEntry(final ServletFilterModuleDescriptor[] descriptors)
+        {
+            this.descriptors = descriptors;
+        }
+    }
+
     private static final class LazyLoadedFilterReference extends LazyReference<Filter>
     {
         private final ServletFilterModuleDescriptor descriptor;
@@ -0,0 +1,52 @@
+package com.atlassian.plugin.servlet.filter;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * This FilterChain passes control from the first Filter in a list to the last, by index rather than with an
+ * iterator.  When the last filter calls the chain.doFilter(request, response) method, the supplied "parent" chain
+ * has control returned to it.
+ *
+ * @see IteratingFilterChain
+ * @since 2.11.0
+ */
+public final class IndexedFilterChain implements FilterChain
+{
+    private final List<Filter> filters;
+    private final FilterChain chain;
+    private int index;
+
+    /**
+     * Create a new IndexedFilterChain which applies the Filters in the supplied list and then returns control to the
+     * main FilterChain.
+     *
+     * @param filters The Filters to apply, should support fast random access
+     * @param chain FilterChain to return control to after the last Filter in the list has called the
+     *              chain.doFilter(request, response) method.
+     */
+    public IndexedFilterChain(List<Filter> filters, FilterChain chain)
+    {
+        this.filters = filters;
+        this.chain = chain;
+    }
+
+    public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException
+    {
+        if (index < filters.size())
+        {
+            Filter filter = filters.get(index++);
+            filter.doFilter(request, response, this);
+        }
+        else
+        {
+            chain.doFilter(request, response);
+        }
+    }
+}
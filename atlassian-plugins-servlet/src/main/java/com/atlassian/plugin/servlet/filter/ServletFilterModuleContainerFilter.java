@@ -8,6 +8,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -73,7 +75,15 @@ public class ServletFilterModuleContainerFilter implements Filter
         }
 
         final Iterable<Filter> filters = getServletModuleManager().getFilters(location, getUri(request), filterConfig, condition);
-        FilterChain pluginFilterChain = new IteratingFilterChain(filters.iterator(), chain);
+        final FilterChain pluginFilterChain;
+        if (filters instanceof List && filters instanceof RandomAccess)
+        {
+            pluginFilterChain = new IndexedFilterChain((List<Filter>) filters, chain);
+        }
+        else
+        {
+            pluginFilterChain = new IteratingFilterChain(filters.iterator(), chain);
+        }
         pluginFilterChain.doFilter(request, response);
     }
 
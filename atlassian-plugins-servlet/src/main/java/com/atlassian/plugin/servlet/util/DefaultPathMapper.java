@@ -1,9 +1,12 @@
 package com.atlassian.plugin.servlet.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -11,9 +14,6 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.regex.Pattern;
 
 /**
  * Originally opied from Atlassian Seraph 1.0
@@ -23,44 +23,43 @@ import java.util.regex.Pattern;
  * path, while the getAll() method returns the aggregate matches.
  * <p/>
  * In practice, matching a servlet path should use the get() method and matching filters should use the getAll() method.
+ * <p/>
+ * Lookups don't lock: every put() compiles the mappings into an immutable {@link CompiledPatterns}, which matches
+ * patterns like <code>/foo/*</code> with a prefix trie and patterns like <code>*.ext</code> with a suffix trie, so
+ * the cost of a lookup depends on the length of the path rather than on the number of patterns.
  * 
  * @since 2.1.0
  */
 public class DefaultPathMapper implements Serializable, PathMapper
 {
 
-    private static final Pattern REDUNDANT_SLASHES = Pattern.compile("//+");
     private static final String[] DEFAULT_KEYS = { "/", "*", "/*" };
 
+    // guarded by this, and copied into the compiled patterns on every change
     private final Map<String, Collection<String>> mappings = new HashMap<String, Collection<String>>();
     private final Set<String> complexPaths = new HashSet<String>();
 
-    private final KeyMatcher matcher = new KeyMatcher();
+    private static final KeyMatcher matcher = new KeyMatcher();
 
     // common use of this class is reentrant read-mostly (quite expensive calls too)
-    // we don't want these reads to block each other so use a RWLock
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // so reads use an immutable copy, which is replaced whenever the mappings change
+    private transient volatile CompiledPatterns compiled = new CompiledPatterns(mappings, complexPaths);
 
-    public void put(final String key, final String pattern)
+    public synchronized void put(final String key, final String pattern)
     {
-        lock.writeLock().lock();
-        try
+        if (pattern == null)
+        {
+            removeMappingsForKey(key);
+        }
+        else
         {
-            if (pattern == null)
-            {
-                removeMappingsForKey(key);
-                return;
-            }
             addMapping(pattern, key);
             if ((pattern.indexOf('?') > -1) || ((pattern.indexOf("*") > -1) && (pattern.length() > 1)))
             {
                 complexPaths.add(pattern);
             }
         }
-        finally
-        {
-            lock.writeLock().unlock();
-        }
+        compiled = new CompiledPatterns(mappings, complexPaths);
     }
     
     private void addMapping(String pattern, String key)
@@ -91,29 +90,17 @@ public class DefaultPathMapper implements Serializable, PathMapper
     public String get(String path)
     {
         path = removeRedundantSlashes(path);
-        lock.readLock().lock();
-        try
+        if (path == null)
         {
-            if (path == null)
-            {
-                path = "/";
-            }
-            final String mapped = matcher.findKey(path, mappings, complexPaths);
-            if (mapped == null)
-            {
-                return null;
-            }
-            Collection<String> keys = mappings.get(mapped);
-            if (keys.isEmpty())
-            {
-                return null;
-            }
-            return keys.iterator().next();
+            path = "/";
         }
-        finally
+        final CompiledPatterns patterns = compiled;
+        final String mapped = patterns.findKey(path);
+        if (mapped == null)
         {
-            lock.readLock().unlock();
+            return null;
         }
+        return patterns.mappings.get(mapped).get(0);
     }
 
     /*
@@ -122,41 +109,29 @@ public class DefaultPathMapper implements Serializable, PathMapper
     public Collection<String> getAll(String path)
     {
         path = removeRedundantSlashes(path);
-        lock.readLock().lock();
-        try
+        if (path == null)
         {
-            if (path == null)
-            {
-                path = "/";
-            }
-            final Set<String> matches = new LinkedHashSet<String>();
-            // find exact keys
-            final String exactKey = matcher.findExactKey(path, mappings);
-            if (exactKey != null)
-            {
-                matches.addAll(mappings.get(exactKey));
-            }
-            // find complex keys
-            for (final Iterator<String> iterator = matcher.findComplexKeys(path, complexPaths).iterator(); iterator.hasNext();)
-            {
-                final String mapped = iterator.next();
-                if (mappings.containsKey(mapped))
-                {
-                    matches.addAll(mappings.get(mapped));
-                }
-            }
-            // find default keys
-            for (final Iterator<String> iterator = matcher.findDefaultKeys(mappings).iterator(); iterator.hasNext();)
-            {
-                final String mapped = iterator.next();
-                matches.addAll(mappings.get(mapped));
-            }
-            return Collections.unmodifiableCollection(matches);
+            path = "/";
         }
-        finally
+        final CompiledPatterns patterns = compiled;
+        final Set<String> matches = new LinkedHashSet<String>();
+        // find exact keys
+        final List<String> exactKeys = patterns.mappings.get(path);
+        if (exactKeys != null)
         {
-            lock.readLock().unlock();
+            matches.addAll(exactKeys);
         }
+        // find complex keys
+        for (final String mapped : patterns.findComplexKeys(path))
+        {
+            matches.addAll(patterns.mappings.get(mapped));
+        }
+        // find default keys
+        for (final String mapped : patterns.defaultKeys)
+        {
+            matches.addAll(patterns.mappings.get(mapped));
+        }
+        return Collections.unmodifiableCollection(matches);
     }
 
     /**
@@ -171,10 +146,25 @@ public class DefaultPathMapper implements Serializable, PathMapper
      */
     protected String removeRedundantSlashes(final String path)
     {
-        return path == null ? null : REDUNDANT_SLASHES.matcher(path).replaceAll("/");
+        if (path == null || path.indexOf("//") < 0)
+        {
+            return path;
+        }
+        final StringBuilder result = new StringBuilder(path.length());
+        char previous = 0;
+        for (int i = 0; i < path.length(); i++)
+        {
+            final char ch = path.charAt(i);
+            if (ch != '/' || previous != '/')
+            {
+                result.append(ch);
+            }
+            previous = ch;
+        }
+        return result.toString();
     }
 
-    public String toString()
+    public synchronized String toString()
     {
         final StringBuffer sb = new StringBuffer(30 * (mappings.size() + complexPaths.size()));
         sb.append("Mappings:\n");
@@ -193,89 +183,159 @@ public class DefaultPathMapper implements Serializable, PathMapper
         return sb.toString();
     }
 
-    private final class KeyMatcher
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException
     {
-        /** Find exact key in mappings. */
-        String findKey(final String path, final Map<String, Collection<String>> mappings, final Set<String> keys)
+        in.defaultReadObject();
+        compiled = new CompiledPatterns(mappings, complexPaths);
+    }
+
+    /**
+     * An immutable, compiled copy of the mappings.  Complex patterns of the form <code>literal*</code> are kept in a
+     * prefix trie, patterns of the form <code>*literal</code> in a suffix trie, and only the remaining patterns are
+     * matched one by one.  Matching is case insensitive, like {@link KeyMatcher#match}.
+     */
+    private static final class CompiledPatterns
+    {
+        final Map<String, List<String>> mappings = new HashMap<String, List<String>>();
+        final List<String> defaultKeys = new ArrayList<String>();
+        /** the position of each complex pattern, matches are returned in this order */
+        private final Map<String, Integer> complexOrder = new HashMap<String, Integer>();
+        private final TrieNode prefixes = new TrieNode();
+        private final TrieNode suffixes = new TrieNode();
+        private final List<String> otherPatterns = new ArrayList<String>();
+
+        CompiledPatterns(final Map<String, Collection<String>> mappings, final Set<String> complexPaths)
         {
-            String result = findExactKey(path, mappings);
-            if (result == null)
+            for (final Map.Entry<String, Collection<String>> entry : mappings.entrySet())
             {
-                result = findComplexKey(path, keys);
+                this.mappings.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
             }
-            if (result == null)
+            for (final String key : DEFAULT_KEYS)
             {
-                result = findDefaultKey(mappings);
+                if (mappings.containsKey(key))
+                {
+                    defaultKeys.add(key);
+                }
+            }
+            for (final String pattern : complexPaths)
+            {
+                complexOrder.put(pattern, complexOrder.size());
+                final int star = pattern.indexOf('*');
+                final boolean singleStar = (star > -1) && (pattern.indexOf('*', star + 1) < 0) && (pattern.indexOf('?') < 0);
+                if (singleStar && (star == pattern.length() - 1))
+                {
+                    prefixes.add(pattern, pattern.substring(0, star), false);
+                }
+                else if (singleStar && (star == 0))
+                {
+                    suffixes.add(pattern, pattern.substring(1), true);
+                }
+                else
+                {
+                    otherPatterns.add(pattern);
+                }
             }
-            return result;
         }
 
-        /** Check if path matches exact pattern ( /blah/blah.jsp ). */
-        String findExactKey(final String path, final Map<String, Collection<String>> mappings)
+        String findKey(final String path)
         {
             if (mappings.containsKey(path))
             {
                 return path;
             }
-            return null;
-        }
-
-        /** Find single matching complex key */
-        String findComplexKey(final String path, final Set<String> complexPaths)
-        {
-            for (String key : complexPaths)
+            String result = null;
+            int resultOrder = Integer.MAX_VALUE;
+            for (final String pattern : findComplexKeys(path))
             {
-                if (match(key, path, false))
+                final int order = complexOrder.get(pattern);
+                if (order < resultOrder)
                 {
-                    return key;
+                    result = pattern;
+                    resultOrder = order;
                 }
             }
-            return null;
+            if (result == null && !defaultKeys.isEmpty())
+            {
+                result = defaultKeys.get(0);
+            }
+            return result;
         }
 
-        /** Find all matching complex keys */
-        Collection<String> findComplexKeys(final String path, final Set<String> complexPaths)
+        /** Find all matching complex keys, in the order of the complex paths */
+        List<String> findComplexKeys(final String path)
         {
             final List<String> matches = new ArrayList<String>();
-            for (String key : complexPaths)
+            prefixes.collectMatches(path, false, matches);
+            suffixes.collectMatches(path, true, matches);
+            for (final String pattern : otherPatterns)
             {
-                if (match(key, path, false))
+                if (matcher.match(pattern, path, false))
                 {
-                    matches.add(key);
+                    matches.add(pattern);
                 }
             }
+            if (matches.size() > 1)
+            {
+                Collections.sort(matches, new Comparator<String>()
+                {
+                    public int compare(final String pattern1, final String pattern2)
+                    {
+                        return complexOrder.get(pattern1) - complexOrder.get(pattern2);
+                    }
+                });
+            }
             return matches;
         }
+    }
+
+    /**
+     * A case insensitive trie of the literal part of patterns with a single leading or trailing star.
+     */
+    private static final class TrieNode
+    {
+        private final Map<Character, TrieNode> children = new HashMap<Character, TrieNode>();
+        /** the patterns whose literal part ends at this node */
+        private final List<String> patterns = new ArrayList<String>(1);
 
-        /** Look for root pattern ( / ). */
-        String findDefaultKey(final Map<String, Collection<String>> mappings)
+        void add(final String pattern, final String literal, final boolean reversed)
         {
-            for (int i = 0; i < DefaultPathMapper.DEFAULT_KEYS.length; i++)
+            TrieNode node = this;
+            for (int i = 0; i < literal.length(); i++)
             {
-                if (mappings.containsKey(DefaultPathMapper.DEFAULT_KEYS[i]))
+                final Character ch = Character.toUpperCase(literal.charAt(reversed ? literal.length() - 1 - i : i));
+                TrieNode child = node.children.get(ch);
+                if (child == null)
                 {
-                    return DefaultPathMapper.DEFAULT_KEYS[i];
+                    child = new TrieNode();
+                    node.children.put(ch, child);
                 }
+                node = child;
             }
-            return null;
+            node.patterns.add(pattern);
         }
 
-        /** Look for root patterns ( / ). */
-        Collection<String> findDefaultKeys(final Map<String, Collection<String>> mappings)
+        /**
+         * Walks the path from the start, or from the end if reversed, adding the patterns of every node on the way, as
+         * the star matches the rest of the path.
+         */
+        void collectMatches(final String path, final boolean reversed, final List<String> matches)
         {
-            final List<String> matches = new ArrayList<String>();
-
-            for (int i = 0; i < DefaultPathMapper.DEFAULT_KEYS.length; i++)
+            TrieNode node = this;
+            matches.addAll(node.patterns);
+            for (int i = 0; i < path.length() && !node.children.isEmpty(); i++)
             {
-                if (mappings.containsKey(DefaultPathMapper.DEFAULT_KEYS[i]))
+                node = node.children.get(Character.toUpperCase(path.charAt(reversed ? path.length() - 1 - i : i)));
+                if (node == null)
                 {
-                    matches.add(DefaultPathMapper.DEFAULT_KEYS[i]);
+                    return;
                 }
+                matches.addAll(node.patterns);
             }
-
-            return matches;
         }
+    }
 
+    private static final class KeyMatcher
+    {
         boolean match(final String pattern, final String str, final boolean isCaseSensitive)
         {
             final char[] patArr = pattern.toCharArray();
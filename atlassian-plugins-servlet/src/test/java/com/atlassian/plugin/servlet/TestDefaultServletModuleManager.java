@@ -281,6 +281,43 @@ public class TestDefaultServletModuleManager extends TestCase
         assertTrue(servletModuleManager.getFilters(FilterLocation.BEFORE_DISPATCH, "/foo/jim", filterConfig).iterator().hasNext());
     }
 
+    public void testFilterChainIsReusedUntilFilterModulesChange() throws ServletException
+    {
+        ServletContext servletContext = mock(ServletContext.class);
+        FilterConfig filterConfig = mock(FilterConfig.class);
+        when(filterConfig.getServletContext()).thenReturn(servletContext);
+        when(servletContext.getInitParameterNames()).thenReturn(new Vector().elements());
+        Plugin plugin = new PluginBuilder().build();
+        ServletFilterModuleDescriptor filterDescriptor = new ServletFilterModuleDescriptorBuilder()
+            .with(plugin)
+            .withKey("foo")
+            .with(new FilterAdapter())
+            .withPath("/foo/*")
+            .with(servletModuleManager)
+            .build();
+
+        ServletFilterModuleDescriptor filterDescriptor2 = new ServletFilterModuleDescriptorBuilder()
+            .with(plugin)
+            .withKey("bar")
+            .with(new FilterAdapter())
+            .withPath("/foo/bar")
+            .with(servletModuleManager)
+            .build();
+        servletModuleManager.addFilterModule(filterDescriptor);
+
+        Iterable<Filter> filters = servletModuleManager.getFilters(FilterLocation.BEFORE_DISPATCH, "/foo/jim", filterConfig, REQUEST);
+        assertEquals(1, Iterables.size(filters));
+        assertSame(filters, servletModuleManager.getFilters(FilterLocation.BEFORE_DISPATCH, "/foo/bar", filterConfig, REQUEST));
+
+        servletModuleManager.addFilterModule(filterDescriptor2);
+        assertEquals(2, Iterables.size(servletModuleManager.getFilters(FilterLocation.BEFORE_DISPATCH, "/foo/bar", filterConfig, REQUEST)));
+        assertEquals(1, Iterables.size(servletModuleManager.getFilters(FilterLocation.BEFORE_DISPATCH, "/foo/jim", filterConfig, REQUEST)));
+
+        servletModuleManager.removeFilterModule(filterDescriptor);
+        assertEquals(1, Iterables.size(servletModuleManager.getFilters(FilterLocation.BEFORE_DISPATCH, "/foo/bar", filterConfig, REQUEST)));
+        assertEquals(0, Iterables.size(servletModuleManager.getFilters(FilterLocation.BEFORE_DISPATCH, "/foo/jim", filterConfig, REQUEST)));
+    }
+
     public void testMultipleFitlersWithTheSameSimplePath() throws ServletException
     {
         ServletContext servletContext = mock(ServletContext.class);
@@ -2,6 +2,9 @@ package com.atlassian.plugin.servlet.util;
 
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 public class TestPathMapper extends TestCase
 {
     /**
@@ -55,4 +58,41 @@ public class TestPathMapper extends TestCase
         assertEquals(0, pathMapper.getAll("/foo/bar").size());
         assertEquals("foo.baz", pathMapper.get("/bar/foo"));
     }
+
+    public void testPrefixAndSuffixPatterns()
+    {
+        final PathMapper pathMapper = new DefaultPathMapper();
+
+        pathMapper.put("prefix", "/download/*");
+        pathMapper.put("suffix", "*.css");
+        pathMapper.put("other", "/s/*/image?.png");
+
+        assertEquals("prefix", pathMapper.get("/download/"));
+        assertEquals("prefix", pathMapper.get("/DOWNLOAD/batch.js"));
+        assertEquals("suffix", pathMapper.get("/styles/main.CSS"));
+        assertEquals("other", pathMapper.get("/s/123/image1.png"));
+        assertNull(pathMapper.get("/download"));
+        assertNull(pathMapper.get("/s/123/image12.png"));
+        assertEquals(2, pathMapper.getAll("/download/main.css").size());
+        assertTrue(pathMapper.getAll("/download/main.css").containsAll(Arrays.asList("prefix", "suffix")));
+    }
+
+    public void testGetAllIncludesExactComplexAndDefaultKeys()
+    {
+        final PathMapper pathMapper = new DefaultPathMapper();
+
+        pathMapper.put("default", "/*");
+        pathMapper.put("exact", "/foo/bar");
+        pathMapper.put("complex", "/foo/*");
+        pathMapper.put("complex2", "/foo/*");
+
+        assertEquals("exact", pathMapper.get("/foo/bar"));
+        assertEquals("complex", pathMapper.get("/foo/baz"));
+        assertEquals("default", pathMapper.get("/baz"));
+        assertEquals(Arrays.asList("exact", "complex", "complex2", "default"), new ArrayList<String>(pathMapper.getAll("/foo/bar")));
+
+        pathMapper.put("complex", null);
+        assertEquals("complex2", pathMapper.get("/foo/baz"));
+        assertEquals(Arrays.asList("complex2", "default"), new ArrayList<String>(pathMapper.getAll("/foo/baz")));
+    }
 }
@@ -1,12 +1,21 @@
 package com.atlassian.plugin.web;
 
+import com.atlassian.plugin.ModuleDescriptor;
 import com.atlassian.plugin.PluginManager;
 import com.atlassian.plugin.PluginAccessor;
+import com.atlassian.plugin.event.PluginEventListener;
+import com.atlassian.plugin.event.PluginEventManager;
+import com.atlassian.plugin.event.events.PluginModuleDisabledEvent;
+import com.atlassian.plugin.event.events.PluginModuleEnabledEvent;
+import com.atlassian.plugin.web.conditions.ConditionCache;
 import com.atlassian.plugin.web.descriptors.*;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.atlassian.plugin.web.model.WebPanel;
+import com.atlassian.plugin.web.renderer.WebPanelRendererRegistry;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import org.slf4j.Logger;
@@ -14,14 +23,42 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Stores and manages flexible web interface sections available in the system.
+ * <p>
+ * The enabled sections, items and panels are indexed by location in a single pass the first time any location of
+ * that kind is requested.  If constructed with a {@link PluginEventManager}, the indexes are kept up to date as web
+ * fragment modules are enabled and disabled, otherwise {@link #refresh()} must be called to pick up changes, as the
+ * web fragment module descriptors do.  In that case the web panels also find their renderers in a
+ * {@link WebPanelRendererRegistry} kept up to date the same way.
+ * <p>
+ * Each condition shared by the fragments of a location is only evaluated once when finding the displayable ones, see
+ * {@link ConditionCache}.
  */
 public class DefaultWebInterfaceManager implements WebInterfaceManager
 {
     private PluginAccessor pluginAccessor;
     private WebFragmentHelper webFragmentHelper;
-    private Map<String, List<WebSectionModuleDescriptor>> sections;
-    private Map<String, List<WebItemModuleDescriptor>> items;
-    private Map<String, List<WebPanelModuleDescriptor>> panels;
+    private WebPanelRendererRegistry webPanelRendererRegistry;
+    private final LocationIndex<WebSectionModuleDescriptor> sections = new LocationIndex<WebSectionModuleDescriptor>(WebSectionModuleDescriptor.class)
+    {
+        String getLocation(WebSectionModuleDescriptor descriptor)
+        {
+            return descriptor.getLocation();
+        }
+    };
+    private final LocationIndex<WebItemModuleDescriptor> items = new LocationIndex<WebItemModuleDescriptor>(WebItemModuleDescriptor.class)
+    {
+        String getLocation(WebItemModuleDescriptor descriptor)
+        {
+            return descriptor.getSection();
+        }
+    };
+    private final LocationIndex<WebPanelModuleDescriptor> panels = new LocationIndex<WebPanelModuleDescriptor>(WebPanelModuleDescriptor.class)
+    {
+        String getLocation(WebPanelModuleDescriptor descriptor)
+        {
+            return descriptor.getLocation();
+        }
+    };
     private static final Logger log = LoggerFactory.getLogger(DefaultWebInterfaceManager.class);
 
     public static final WeightedDescriptorComparator WEIGHTED_DESCRIPTOR_COMPARATOR = new WeightedDescriptorComparator();
@@ -38,6 +75,20 @@ public class DefaultWebInterfaceManager implements WebInterfaceManager
         refresh();
     }
 
+    /**
+     * @param pluginAccessor The plugin accessor
+     * @param webFragmentHelper The web fragment helper
+     * @param pluginEventManager The plugin event manager, used to update the sections, items and panels as their
+     * modules are enabled and disabled, and the renderers of the web panels as theirs are
+     * @since 2.11.0
+     */
+    public DefaultWebInterfaceManager(PluginAccessor pluginAccessor, WebFragmentHelper webFragmentHelper, PluginEventManager pluginEventManager)
+    {
+        this(pluginAccessor, webFragmentHelper);
+        this.webPanelRendererRegistry = new WebPanelRendererRegistry(pluginEventManager);
+        pluginEventManager.register(this);
+    }
+
     public boolean hasSectionsForLocation(String location)
     {
         return !getSections(location).isEmpty();
@@ -49,23 +100,7 @@ public class DefaultWebInterfaceManager implements WebInterfaceManager
         {
             return Collections.emptyList();
         }
-
-        List<WebSectionModuleDescriptor> result = sections.get(location);
-
-        if (result == null)
-        {
-            result = new ArrayList<WebSectionModuleDescriptor>(); // use a tree map so we get nice weight sorting
-            List<WebSectionModuleDescriptor> descriptors = pluginAccessor.getEnabledModuleDescriptorsByClass(WebSectionModuleDescriptor.class);
-            for (WebSectionModuleDescriptor descriptor : descriptors) {
-                if (location.equalsIgnoreCase(descriptor.getLocation()))
-                    result.add(descriptor);
-            }
-
-            Collections.sort(result, WEIGHTED_DESCRIPTOR_COMPARATOR);
-            sections.put(location, result);
-        }
-
-        return result;
+        return sections.get(pluginAccessor, location);
     }
 
     public List<WebSectionModuleDescriptor> getDisplayableSections(String location, Map<String,Object> context)
@@ -79,23 +114,7 @@ public class DefaultWebInterfaceManager implements WebInterfaceManager
         {
             return Collections.emptyList();
         }
-
-        List<WebItemModuleDescriptor> result = items.get(section);
-
-        if (result == null)
-        {
-            result = new ArrayList<WebItemModuleDescriptor>(); // use a tree map so we get nice weight sorting
-            List<WebItemModuleDescriptor> descriptors = pluginAccessor.getEnabledModuleDescriptorsByClass(WebItemModuleDescriptor.class);
-            for (WebItemModuleDescriptor descriptor : descriptors) {
-                if (section.equalsIgnoreCase(descriptor.getSection()))
-                    result.add(descriptor);
-            }
-
-            Collections.sort(result, WEIGHTED_DESCRIPTOR_COMPARATOR);
-            items.put(section, result);
-        }
-
-        return result;
+        return items.get(pluginAccessor, section);
     }
 
     public List<WebItemModuleDescriptor> getDisplayableItems(String section, Map<String,Object> context)
@@ -137,22 +156,7 @@ public class DefaultWebInterfaceManager implements WebInterfaceManager
         }
         else
         {
-            List<WebPanelModuleDescriptor> result = panels.get(location);
-            if (result == null) {
-                result = new ArrayList<WebPanelModuleDescriptor>(); // use a tree map so we get nice weight sorting
-
-                List<WebPanelModuleDescriptor> descriptors = pluginAccessor.getEnabledModuleDescriptorsByClass(WebPanelModuleDescriptor.class);
-                for (WebPanelModuleDescriptor descriptor : descriptors)
-                {
-                    if (location.equalsIgnoreCase(descriptor.getLocation()))
-                    {
-                        result.add(descriptor);
-                    }
-                }
-                Collections.sort(result, WEIGHTED_DESCRIPTOR_COMPARATOR);
-                panels.put(location, result);
-            }
-            return result;
+            return panels.get(pluginAccessor, location);
         }
     }
 
@@ -163,22 +167,28 @@ public class DefaultWebInterfaceManager implements WebInterfaceManager
             return relevantItems;
         }
 
-        List<T> result = new ArrayList<T>(relevantItems);
-        for (Iterator<T> iterator = result.iterator(); iterator.hasNext();)
+        List<T> result = new ArrayList<T>(relevantItems.size());
+        ConditionCache.beginRender(context);
+        try
         {
-            ConditionalDescriptor descriptor = iterator.next();
-            try
+            for (T descriptor : relevantItems)
             {
-                if (descriptor.getCondition() != null && !descriptor.getCondition().shouldDisplay(context))
+                try
                 {
-                    iterator.remove();
+                    if (descriptor.getCondition() == null || ConditionCache.shouldDisplay(descriptor.getCondition(), context))
+                    {
+                        result.add(descriptor);
+                    }
+                }
+                catch (Throwable t)
+                {
+                    log.error("Could not evaluate condition '" + descriptor.getCondition() + "' for descriptor: " + descriptor, t);
                 }
             }
-            catch (Throwable t)
-            {
-                log.error("Could not evaluate condition '" + descriptor.getCondition() + "' for descriptor: " + descriptor, t);
-                iterator.remove();
-            }
+        }
+        finally
+        {
+            ConditionCache.endRender();
         }
 
         return result;
@@ -186,9 +196,39 @@ public class DefaultWebInterfaceManager implements WebInterfaceManager
 
     public void refresh()
     {
-        sections = Collections.synchronizedMap(new HashMap<String, List<WebSectionModuleDescriptor>>());
-        items = Collections.synchronizedMap(new HashMap<String, List<WebItemModuleDescriptor>>());
-        panels = Collections.synchronizedMap(new HashMap<String, List<WebPanelModuleDescriptor>>());
+        sections.clear();
+        items.clear();
+        panels.clear();
+    }
+
+    /**
+     * Adds the module to the sections, items or panels of its location, if they have been indexed
+     *
+     * @param event The module enabled event
+     * @since 2.11.0
+     */
+    @PluginEventListener
+    public void onPluginModuleEnabled(final PluginModuleEnabledEvent event)
+    {
+        final ModuleDescriptor<?> module = event.getModule();
+        sections.add(module);
+        items.add(module);
+        panels.add(module);
+    }
+
+    /**
+     * Removes the module from the sections, items or panels of its location, if they have been indexed
+     *
+     * @param event The module disabled event
+     * @since 2.11.0
+     */
+    @PluginEventListener
+    public void onPluginModuleDisabled(final PluginModuleDisabledEvent event)
+    {
+        final ModuleDescriptor<?> module = event.getModule();
+        sections.remove(module);
+        items.remove(module);
+        panels.remove(module);
     }
 
     /**
@@ -208,6 +248,7 @@ public class DefaultWebInterfaceManager implements WebInterfaceManager
     public void setPluginAccessor(PluginAccessor pluginAccessor)
     {
         this.pluginAccessor = pluginAccessor;
+        refresh();
     }
 
     public void setWebFragmentHelper(WebFragmentHelper webFragmentHelper)
@@ -220,4 +261,158 @@ public class DefaultWebInterfaceManager implements WebInterfaceManager
         return webFragmentHelper;
     }
 
+    /**
+     * @return true if the sections, items and panels are updated as their modules are enabled and disabled, so
+     * {@link #refresh()} needn't be called when they are
+     * @since 2.11.0
+     */
+    public boolean isUpdatedByModuleEvents()
+    {
+        return webPanelRendererRegistry != null;
+    }
+
+    /**
+     * @return The registry the web panels find their renderers in, or null if this manager wasn't constructed with a
+     * {@link PluginEventManager}
+     * @since 2.11.0
+     */
+    public WebPanelRendererRegistry getWebPanelRendererRegistry()
+    {
+        return webPanelRendererRegistry;
+    }
+
+    /**
+     * The enabled descriptors of one kind, sorted by weight and keyed by their location compared case insensitively.
+     * Reads don't lock; the index is built under the lock the first time it is needed, and each module event replaces
+     * only the list for that module's location.
+     */
+    private static abstract class LocationIndex<D extends WebFragmentModuleDescriptor<?>>
+    {
+        private final Class<D> descriptorClass;
+        private volatile ConcurrentMap<String, List<D>> descriptorsByLocation;
+
+        LocationIndex(final Class<D> descriptorClass)
+        {
+            this.descriptorClass = descriptorClass;
+        }
+
+        abstract String getLocation(D descriptor);
+
+        List<D> get(final PluginAccessor pluginAccessor, final String location)
+        {
+            ConcurrentMap<String, List<D>> index = descriptorsByLocation;
+            if (index == null)
+            {
+                index = build(pluginAccessor);
+            }
+            final List<D> result = index.get(toKey(location));
+            return result == null ? Collections.<D>emptyList() : result;
+        }
+
+        synchronized void add(final ModuleDescriptor<?> module)
+        {
+            if (descriptorsByLocation == null || !descriptorClass.isInstance(module))
+            {
+                return;
+            }
+            final D descriptor = descriptorClass.cast(module);
+            final String location = getLocation(descriptor);
+            if (location != null)
+            {
+                final List<D> result = copyWithout(descriptorsByLocation.get(toKey(location)), descriptor);
+                result.add(descriptor);
+                descriptorsByLocation.put(toKey(location), sort(result));
+            }
+        }
+
+        synchronized void remove(final ModuleDescriptor<?> module)
+        {
+            if (descriptorsByLocation == null || !descriptorClass.isInstance(module))
+            {
+                return;
+            }
+            final D descriptor = descriptorClass.cast(module);
+            final String location = getLocation(descriptor);
+            final List<D> existing = location == null ? null : descriptorsByLocation.get(toKey(location));
+            if (existing != null)
+            {
+                final List<D> result = copyWithout(existing, descriptor);
+                if (result.isEmpty())
+                {
+                    descriptorsByLocation.remove(toKey(location));
+                }
+                else
+                {
+                    descriptorsByLocation.put(toKey(location), sort(result));
+                }
+            }
+        }
+
+        synchronized void clear()
+        {
+            descriptorsByLocation = null;
+        }
+
+        private synchronized ConcurrentMap<String, List<D>> build(final PluginAccessor pluginAccessor)
+        {
+            if (descriptorsByLocation == null)
+            {
+                final Map<String, List<D>> grouped = new HashMap<String, List<D>>();
+                for (final D descriptor : pluginAccessor.getEnabledModuleDescriptorsByClass(descriptorClass))
+                {
+                    final String location = getLocation(descriptor);
+                    if (location != null)
+                    {
+                        List<D> result = grouped.get(toKey(location));
+                        if (result == null)
+                        {
+                            result = new ArrayList<D>();
+                            grouped.put(toKey(location), result);
+                        }
+                        result.add(descriptor);
+                    }
+                }
+
+                final ConcurrentMap<String, List<D>> index = new ConcurrentHashMap<String, List<D>>();
+                for (final Map.Entry<String, List<D>> entry : grouped.entrySet())
+                {
+                    index.put(entry.getKey(), sort(entry.getValue()));
+                }
+                descriptorsByLocation = index;
+            }
+            return descriptorsByLocation;
+        }
+
+        /**
+         * Copies the descriptors, leaving out any with the same complete key, so a module that is enabled again
+         * replaces its previous descriptor
+         */
+        private List<D> copyWithout(final List<D> descriptors, final D descriptor)
+        {
+            final List<D> result = new ArrayList<D>();
+            if (descriptors != null)
+            {
+                for (final D existing : descriptors)
+                {
+                    if (!existing.getCompleteKey().equals(descriptor.getCompleteKey()))
+                    {
+                        result.add(existing);
+                    }
+                }
+            }
+            return result;
+        }
+
+        private List<D> sort(final List<D> descriptors)
+        {
+            Collections.sort(descriptors, WEIGHTED_DESCRIPTOR_COMPARATOR);
+            return Collections.unmodifiableList(descriptors);
+        }
+
+        private static String toKey(final String location)
+        {
+            return location.toLowerCase(Locale.ENGLISH);
+        }
+    }
+
 }
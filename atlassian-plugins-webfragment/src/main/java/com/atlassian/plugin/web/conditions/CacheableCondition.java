@@ -0,0 +1,14 @@
+package com.atlassian.plugin.web.conditions;
+
+import com.atlassian.plugin.web.Condition;
+
+/**
+ * A condition whose result only depends on its parameters and the current request, such as whether the user is logged
+ * in, and not on the context it is evaluated with.  Within a request marked by {@link ConditionCache#beginRequest()}
+ * and {@link ConditionCache#endRequest()}, such a condition is only evaluated once, whatever the context.
+ *
+ * @since 2.11.0
+ */
+public interface CacheableCondition extends Condition
+{
+}
@@ -0,0 +1,158 @@
+package com.atlassian.plugin.web.conditions;
+
+import com.atlassian.plugin.web.Condition;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results of conditions on the current thread, so that a condition shared by many web fragments is only
+ * evaluated once.  The conditions built for the enabled modules of a plugin by
+ * {@link com.atlassian.plugin.web.descriptors.ConditionElementParser} with the same class and parameters are the same
+ * object, as are composites of the same conditions, so they are remembered as one.
+ * <p>
+ * While the displayable fragments of a location are found, the result of each condition is remembered for the
+ * context the fragments are displayed with.  The result of a {@link CacheableCondition} is remembered for the rest of
+ * the request, whatever the context, if the host application marks its requests with {@link #beginRequest()} and
+ * {@link #endRequest()}.  Outside of these, conditions are always evaluated.
+ *
+ * @since 2.11.0
+ */
+public final class ConditionCache
+{
+    private static final ThreadLocal<Scope> scope = new ThreadLocal<Scope>();
+
+    private ConditionCache()
+    {
+    }
+
+    /**
+     * Evaluates a condition, or returns its result if it has already been evaluated in the current render or request.
+     *
+     * @param condition the condition
+     * @param context the context to evaluate the condition with
+     * @return the result of the condition
+     */
+    public static boolean shouldDisplay(final Condition condition, final Map<String, Object> context)
+    {
+        final Scope current = scope.get();
+        final Map<Condition, Boolean> results = current == null ? null : current.getResults(condition, context);
+        if (results == null)
+        {
+            return condition.shouldDisplay(context);
+        }
+        Boolean result = results.get(condition);
+        if (result == null)
+        {
+            result = condition.shouldDisplay(context);
+            results.put(condition, result);
+        }
+        return result;
+    }
+
+    /**
+     * Starts remembering the results of {@link CacheableCondition}s on this thread, until a matching call to
+     * {@link #endRequest()}.  Calls may be nested.
+     */
+    public static void beginRequest()
+    {
+        getOrCreateScope().requestDepth++;
+    }
+
+    /**
+     * Forgets the results remembered since the matching call to {@link #beginRequest()}, unless that call was nested.
+     */
+    public static void endRequest()
+    {
+        final Scope current = scope.get();
+        if (current == null || current.requestDepth == 0)
+        {
+            return;
+        }
+        if (--current.requestDepth == 0)
+        {
+            current.requestResults.clear();
+            removeIfUnused(current);
+        }
+    }
+
+    /**
+     * Starts remembering the results of conditions evaluated with the context, until a matching call to
+     * {@link #endRender()}.  Renders may be nested, such as when a condition displays the fragments of another
+     * location.
+     *
+     * @param context the context the fragments are displayed with
+     */
+    public static void beginRender(final Map<String, Object> context)
+    {
+        final Scope current = getOrCreateScope();
+        current.render = new Render(context, current.render);
+    }
+
+    /**
+     * Forgets the results remembered since the matching call to {@link #beginRender(Map)}.
+     */
+    public static void endRender()
+    {
+        final Scope current = scope.get();
+        if (current == null || current.render == null)
+        {
+            return;
+        }
+        current.render = current.render.previous;
+        removeIfUnused(current);
+    }
+
+    private static Scope getOrCreateScope()
+    {
+        Scope current = scope.get();
+        if (current == null)
+        {
+            current = new Scope();
+            scope.set(current);
+        }
+        return current;
+    }
+
+    private static void removeIfUnused(final Scope current)
+    {
+        if (current.requestDepth == 0 && current.render == null)
+        {
+            scope.remove();
+        }
+    }
+
+    private static final class Scope
+    {
+        private int requestDepth;
+        private final Map<Condition, Boolean> requestResults = new IdentityHashMap<Condition, Boolean>();
+        private Render render;
+
+        Map<Condition, Boolean> getResults(final Condition condition, final Map<String, Object> context)
+        {
+            if (requestDepth > 0 && condition instanceof CacheableCondition)
+            {
+                return requestResults;
+            }
+            // the results of a render are only valid for the context it displays fragments with
+            if (render != null && render.context == context)
+            {
+                return render.results;
+            }
+            return null;
+        }
+    }
+
+    private static final class Render
+    {
+        private final Map<String, Object> context;
+        private final Render previous;
+        private final Map<Condition, Boolean> results = new IdentityHashMap<Condition, Boolean>();
+
+        Render(final Map<String, Object> context, final Render previous)
+        {
+            this.context = context;
+            this.previous = previous;
+        }
+    }
+}
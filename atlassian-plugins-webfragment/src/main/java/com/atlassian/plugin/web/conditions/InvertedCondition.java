@@ -20,6 +20,6 @@ public class InvertedCondition implements Condition
 
     public boolean shouldDisplay(Map<String,Object> context)
     {
-        return !wrappedCondition.shouldDisplay(context);
+        return !ConditionCache.shouldDisplay(wrappedCondition, context);
     }
 }
@@ -11,7 +11,7 @@ public class OrCompositeCondition extends AbstractCompositeCondition
     {
         for (Condition condition : conditions)
         {
-            if (condition.shouldDisplay(context))
+            if (ConditionCache.shouldDisplay(condition, context))
                 return true;
         }
 
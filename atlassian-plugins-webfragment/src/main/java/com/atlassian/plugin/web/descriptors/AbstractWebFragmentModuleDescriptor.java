@@ -8,6 +8,7 @@ import com.atlassian.plugin.descriptors.ModuleDescriptors;
 import com.atlassian.plugin.module.ModuleFactory;
 import com.atlassian.plugin.web.Condition;
 import com.atlassian.plugin.web.ContextProvider;
+import com.atlassian.plugin.web.DefaultWebInterfaceManager;
 import com.atlassian.plugin.web.WebInterfaceManager;
 import com.atlassian.plugin.web.conditions.ConditionLoadingException;
 import com.atlassian.plugin.web.model.DefaultWebLabel;
@@ -133,16 +134,29 @@ public abstract class AbstractWebFragmentModuleDescriptor<T> extends AbstractMod
             throw new RuntimeException("Unable to enable web fragment", e);
         }
 
-        webInterfaceManager.refresh();
+        refreshWebInterfaceManager();
     }
 
     @Override
     public void disabled()
     {
-        webInterfaceManager.refresh();
+        ConditionElementParser.releaseConditions(plugin);
+        refreshWebInterfaceManager();
         super.disabled();
     }
 
+    /**
+     * Refreshes the web interface manager, unless it updates itself as modules are enabled and disabled, in which
+     * case refreshing would only throw away what it has indexed
+     */
+    private void refreshWebInterfaceManager()
+    {
+        if (!(webInterfaceManager instanceof DefaultWebInterfaceManager) || !((DefaultWebInterfaceManager) webInterfaceManager).isUpdatedByModuleEvents())
+        {
+            webInterfaceManager.refresh();
+        }
+    }
+
     public int getWeight()
     {
         return weight;
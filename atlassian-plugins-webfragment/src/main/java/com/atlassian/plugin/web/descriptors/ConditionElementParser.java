@@ -1,7 +1,11 @@
 package com.atlassian.plugin.web.descriptors;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import com.atlassian.plugin.hostcontainer.HostContainer;
 import com.atlassian.plugin.util.Assertions;
@@ -24,6 +28,11 @@ import com.atlassian.plugin.web.conditions.OrCompositeCondition;
  * {@link com.atlassian.plugin.web.descriptors.AbstractWebFragmentModuleDescriptor}
  * and
  * {@link com.atlassian.plugin.web.descriptors.DefaultWebPanelModuleDescriptor}.
+ * <p>
+ * Conditions of the same class and parameters declared by the enabled modules of a plugin, and composites of the same
+ * conditions, are built as a single condition shared by all the fragments declaring them, so that
+ * {@link com.atlassian.plugin.web.conditions.ConditionCache} only evaluates them once per render.  Descriptors using
+ * this call {@link #releaseConditions(Plugin)} when they are disabled.
  * 
  * @since 2.5.0
  */
@@ -89,24 +98,22 @@ public class ConditionElementParser
         // make composite conditions (logical operator can be specified by
         // "type")
         final List<Element> nestedConditionsElements = element.elements("conditions");
-        AbstractCompositeCondition nestedConditions = null;
+        Condition nestedConditions = null;
         if ((nestedConditionsElements != null) && !nestedConditionsElements.isEmpty())
         {
-            nestedConditions = getCompositeCondition(type);
+            final List<Condition> conditions = new ArrayList<Condition>();
             for (final Iterator<Element> iterator = nestedConditionsElements.iterator(); iterator.hasNext();)
             {
                 final Element nestedElement = iterator.next();
-                nestedConditions.addCondition(makeConditions(plugin, nestedElement, CompositeType.parse(nestedElement.attributeValue("type"))));
+                conditions.add(makeConditions(plugin, nestedElement, CompositeType.parse(nestedElement.attributeValue("type"))));
             }
+            nestedConditions = makeCompositeCondition(plugin, type, conditions);
         }
 
         if ((singleConditions != null) && (nestedConditions != null))
         {
             // Join together the single and composite conditions by this type
-            final AbstractCompositeCondition compositeCondition = getCompositeCondition(type);
-            compositeCondition.addCondition(singleConditions);
-            compositeCondition.addCondition(nestedConditions);
-            return compositeCondition;
+            return makeCompositeCondition(plugin, type, Arrays.asList(singleConditions, nestedConditions));
         }
         else if (singleConditions != null)
         {
@@ -132,14 +139,14 @@ public class ConditionElementParser
         }
         else
         {
-            final AbstractCompositeCondition compositeCondition = getCompositeCondition(type);
+            final List<Condition> conditions = new ArrayList<Condition>();
             for (final Iterator<Element> it = elements.iterator(); it.hasNext();)
             {
                 final Element element = it.next();
-                compositeCondition.addCondition(makeCondition(plugin, element));
+                conditions.add(makeCondition(plugin, element));
             }
 
-            return compositeCondition;
+            return makeCompositeCondition(plugin, type, conditions);
         }
     }
 
@@ -147,12 +154,22 @@ public class ConditionElementParser
     {
         try
         {
-            final Condition condition = conditionFactory.create(element.attributeValue("class"), plugin);
-            condition.init(LoaderUtils.getParams(element));
+            final String className = element.attributeValue("class");
+            final Map<String, String> params = LoaderUtils.getParams(element);
+
+            // a condition of the same class and parameters declared before by the plugin is shared, as it is the same
+            final List<Object> key = Arrays.<Object>asList(className, new HashMap<String, String>(params));
+            Condition condition = ConditionInterner.get(plugin, key);
+            if (condition == null)
+            {
+                final Condition created = conditionFactory.create(className, plugin);
+                created.init(params);
+                condition = ConditionInterner.intern(plugin, key, created);
+            }
 
             if ((element.attribute("invert") != null) && "true".equals(element.attributeValue("invert")))
             {
-                return new InvertedCondition(condition);
+                return ConditionInterner.intern(plugin, Arrays.<Object>asList(InvertedCondition.class, condition), new InvertedCondition(condition));
             }
 
             return condition;
@@ -167,6 +184,28 @@ public class ConditionElementParser
         }
     }
 
+    /**
+     * Stops sharing the conditions built for the modules of a plugin, so the modules enabled afterwards get conditions
+     * built anew.  Called when a module of the plugin is disabled, as its conditions may no longer be valid.
+     *
+     * @param plugin the plugin whose module is disabled
+     * @since 2.11.0
+     */
+    public static void releaseConditions(final Plugin plugin)
+    {
+        ConditionInterner.release(plugin);
+    }
+
+    private Condition makeCompositeCondition(final Plugin plugin, final int type, final List<Condition> conditions) throws PluginParseException
+    {
+        final AbstractCompositeCondition compositeCondition = getCompositeCondition(type);
+        for (final Condition condition : conditions)
+        {
+            compositeCondition.addCondition(condition);
+        }
+        return ConditionInterner.intern(plugin, Arrays.<Object>asList(compositeCondition.getClass(), conditions), compositeCondition);
+    }
+
     private AbstractCompositeCondition getCompositeCondition(final int type) throws PluginParseException
     {
         switch (type)
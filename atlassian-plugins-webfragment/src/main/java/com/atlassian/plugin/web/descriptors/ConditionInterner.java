@@ -0,0 +1,70 @@
+package com.atlassian.plugin.web.descriptors;
+
+import com.atlassian.plugin.Plugin;
+import com.atlassian.plugin.web.Condition;
+import com.google.common.collect.MapMaker;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The conditions built by {@link ConditionElementParser} for the enabled modules of each plugin, by what they are built
+ * from: the class and parameters of a single condition, or the type and children of a composite one.  Building the
+ * conditions of all web fragments through this makes them a graph in which each distinct condition is a single node,
+ * so {@link com.atlassian.plugin.web.conditions.ConditionCache} can remember its result for all the fragments using it.
+ * <p>
+ * The conditions of a plugin are released as soon as one of its modules is disabled, so a module enabled afterwards,
+ * such as when the plugin is enabled again, gets conditions built anew rather than those of a previous enablement.
+ * They are also only weakly referenced, so they are dropped once no fragment uses them.
+ *
+ * @since 2.11.0
+ */
+final class ConditionInterner
+{
+    private static final ConcurrentMap<Plugin, ConcurrentMap<List<Object>, Condition>> conditionsByPlugin = new MapMaker().weakKeys().makeMap();
+
+    private ConditionInterner()
+    {
+    }
+
+    /**
+     * @param plugin the plugin the condition is built for
+     * @param key what the condition is built from
+     * @return the condition built from the key, or null if there isn't one
+     */
+    static Condition get(final Plugin plugin, final List<Object> key)
+    {
+        final ConcurrentMap<List<Object>, Condition> conditions = conditionsByPlugin.get(plugin);
+        return conditions == null ? null : conditions.get(key);
+    }
+
+    /**
+     * @param plugin the plugin the condition is built for
+     * @param key what the condition is built from
+     * @param condition the condition built from the key
+     * @return the condition built from the key, which is the given condition unless one has been built before
+     */
+    static Condition intern(final Plugin plugin, final List<Object> key, final Condition condition)
+    {
+        ConcurrentMap<List<Object>, Condition> conditions = conditionsByPlugin.get(plugin);
+        if (conditions == null)
+        {
+            final ConcurrentMap<List<Object>, Condition> created = new MapMaker().weakValues().makeMap();
+            conditions = conditionsByPlugin.putIfAbsent(plugin, created);
+            if (conditions == null)
+            {
+                conditions = created;
+            }
+        }
+        final Condition existing = conditions.putIfAbsent(key, condition);
+        return existing == null ? condition : existing;
+    }
+
+    /**
+     * @param plugin the plugin whose conditions are no longer to be shared
+     */
+    static void release(final Plugin plugin)
+    {
+        conditionsByPlugin.remove(plugin);
+    }
+}
@@ -13,6 +13,7 @@ import com.atlassian.plugin.module.ModuleFactory;
 import com.atlassian.plugin.util.validation.ValidationPattern;
 import com.atlassian.plugin.web.Condition;
 import com.atlassian.plugin.web.ContextProvider;
+import com.atlassian.plugin.web.DefaultWebInterfaceManager;
 import com.atlassian.plugin.web.WebInterfaceManager;
 import com.atlassian.plugin.web.model.WebPanel;
 import com.google.common.base.Supplier;
@@ -112,7 +113,8 @@ public class DefaultWebPanelModuleDescriptor extends AbstractWebFragmentModuleDe
     public DefaultWebPanelModuleDescriptor(final HostContainer hostContainer, final ModuleFactory moduleClassFactory, final WebInterfaceManager webInterfaceManager)
     {
         super(moduleClassFactory, webInterfaceManager);
-        this.webPanelSupplierFactory = new WebPanelSupplierFactory(this, hostContainer, moduleFactory);
+        this.webPanelSupplierFactory = new WebPanelSupplierFactory(this, hostContainer, moduleFactory,
+            webInterfaceManager instanceof DefaultWebInterfaceManager ? ((DefaultWebInterfaceManager) webInterfaceManager).getWebPanelRendererRegistry() : null);
         this.webInterfaceManager = webInterfaceManager;
     }
 
@@ -164,18 +166,4 @@ public class DefaultWebPanelModuleDescriptor extends AbstractWebFragmentModuleDe
     {
         return new ContextAwareWebPanel(webPanelFactory.get());
     }
-
-    @Override
-    public void enabled()
-    {
-        super.enabled();
-        webInterfaceManager.refresh();
-    }
-
-    @Override
-    public void disabled()
-    {
-        webInterfaceManager.refresh();
-        super.disabled();
-    }
 }
@@ -7,6 +7,7 @@ import com.atlassian.plugin.module.ModuleFactory;
 import com.atlassian.plugin.web.model.EmbeddedTemplateWebPanel;
 import com.atlassian.plugin.web.model.ResourceTemplateWebPanel;
 import com.atlassian.plugin.web.model.WebPanel;
+import com.atlassian.plugin.web.renderer.WebPanelRendererRegistry;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
@@ -29,14 +30,27 @@ class WebPanelSupplierFactory
     private final WebPanelModuleDescriptor webPanelModuleDescriptor;
     private final HostContainer hostContainer;
     private final ModuleFactory moduleFactory;
+    private final WebPanelRendererRegistry rendererRegistry;
 
     public WebPanelSupplierFactory(
         WebPanelModuleDescriptor webPanelModuleDescriptor,
         HostContainer hostContainer, ModuleFactory moduleFactory)
+    {
+        this(webPanelModuleDescriptor, hostContainer, moduleFactory, null);
+    }
+
+    /**
+     * @param rendererRegistry the registry the template web panels find their renderers in, or null if there is none
+     * @since 2.11.0
+     */
+    public WebPanelSupplierFactory(
+        WebPanelModuleDescriptor webPanelModuleDescriptor,
+        HostContainer hostContainer, ModuleFactory moduleFactory, WebPanelRendererRegistry rendererRegistry)
     {
         this.webPanelModuleDescriptor = webPanelModuleDescriptor;
         this.hostContainer = hostContainer;
         this.moduleFactory = moduleFactory;
+        this.rendererRegistry = rendererRegistry;
     }
 
     public Supplier<WebPanel> build(final String moduleClassName)
@@ -66,6 +80,7 @@ class WebPanelSupplierFactory
                     panel.setResourceFilename(filename);
                     panel.setResourceType(getRequiredResourceType(resource));
                     panel.setPlugin(webPanelModuleDescriptor.getPlugin());
+                    panel.setRendererRegistry(rendererRegistry);
                     return panel;
                 }
             };
@@ -82,6 +97,7 @@ class WebPanelSupplierFactory
                 panel.setTemplateBody(body);
                 panel.setResourceType(getRequiredResourceType(resource));
                 panel.setPlugin(webPanelModuleDescriptor.getPlugin());
+                panel.setRendererRegistry(rendererRegistry);
                 return panel;
             }
         };
@@ -32,6 +32,16 @@ public abstract class AbstractWebItem
         return Collections.EMPTY_MAP;
     }
 
+    /**
+     * @return a view of the context with the context provider's entries laid over it, leaving the context unchanged
+     * @since 2.11.0
+     */
+    Map<String,Object> getRenderContext(Map<String,Object> context)
+    {
+        final LayeredContextMap renderContext = new LayeredContextMap(context);
+        return renderContext.overlay(getContextMap(renderContext));
+    }
+
     public WebFragmentHelper getWebFragmentHelper()
     {
         return webFragmentHelper;
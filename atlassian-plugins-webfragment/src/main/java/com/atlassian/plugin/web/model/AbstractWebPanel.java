@@ -5,6 +5,7 @@ import com.atlassian.plugin.PluginAccessor;
 import com.atlassian.plugin.web.renderer.RendererException;
 import com.atlassian.plugin.web.renderer.StaticWebPanelRenderer;
 import com.atlassian.plugin.web.renderer.WebPanelRenderer;
+import com.atlassian.plugin.web.renderer.WebPanelRendererRegistry;
 import com.google.common.base.Preconditions;
 
 /**
@@ -15,6 +16,7 @@ public abstract class AbstractWebPanel implements WebPanel
     private final PluginAccessor pluginAccessor;
     protected Plugin plugin;
     private String resourceType;
+    private WebPanelRendererRegistry rendererRegistry;
 
     protected AbstractWebPanel(PluginAccessor pluginAccessor)
     {
@@ -31,8 +33,22 @@ public abstract class AbstractWebPanel implements WebPanel
         this.resourceType = Preconditions.checkNotNull(resourceType);
     }
 
+    /**
+     * @param rendererRegistry the registry to find the renderer in, or null to look through the enabled renderer
+     * modules every time
+     * @since 2.11.0
+     */
+    public void setRendererRegistry(WebPanelRendererRegistry rendererRegistry)
+    {
+        this.rendererRegistry = rendererRegistry;
+    }
+
     protected final WebPanelRenderer getRenderer()
     {
+        if (rendererRegistry != null)
+        {
+            return rendererRegistry.getRenderer(pluginAccessor, Preconditions.checkNotNull(resourceType));
+        }
         if (StaticWebPanelRenderer.RESOURCE_TYPE.equals(resourceType))
         {
             return StaticWebPanelRenderer.RENDERER;
@@ -11,11 +11,17 @@ import java.util.*;
 
 /**
  * A simple bean to represent labels in the web interface.
+ * <p>
+ * The label and its i18n arguments are analysed when the label is created, so those without any Velocity references
+ * or directives aren't rendered.
  */
 public class DefaultWebLabel extends DefaultWebParam implements WebLabel
 {
     private final String key;
     private final String noKeyValue;
+    private final FragmentTemplate noKeyValueTemplate;
+    /** The templates of the i18n arguments, from the params starting with "param" in alphabetical order */
+    private final List<FragmentTemplate> argumentTemplates = new ArrayList<FragmentTemplate>();
 
     public DefaultWebLabel(Element labelEl, WebFragmentHelper webFragmentHelper, ContextProvider contextProvider, WebFragmentModuleDescriptor descriptor) throws PluginParseException
     {
@@ -37,6 +43,14 @@ public class DefaultWebLabel extends DefaultWebParam implements WebLabel
                 this.noKeyValue = null;
             }
         }
+        this.noKeyValueTemplate = new FragmentTemplate(noKeyValue);
+
+        // we know here because it's a tree map that the params are in alphabetical order
+        for (Map.Entry<String,String> param : params.entrySet())
+        {
+            if (param.getKey().startsWith("param"))
+                argumentTemplates.add(new FragmentTemplate(param.getValue()));
+        }
     }
 
     public String getKey()
@@ -51,8 +65,12 @@ public class DefaultWebLabel extends DefaultWebParam implements WebLabel
 
     public String getDisplayableLabel(HttpServletRequest req, Map<String,Object> origContext)
     {
-        Map<String,Object> tmpContext = new HashMap<String,Object>(origContext);
-        tmpContext.putAll(getContextMap(tmpContext));
+        if (key == null && noKeyValueTemplate.isConstant())
+        {
+            return noKeyValue;
+        }
+
+        Map<String,Object> tmpContext = getRenderContext(origContext);
         if (key != null)
         {
             if (params == null || params.isEmpty())
@@ -61,14 +79,10 @@ public class DefaultWebLabel extends DefaultWebParam implements WebLabel
             }
             else
             {
-                List<String> arguments = new ArrayList<String>();
-
-                // we know here because it's a tree map that the params are in alphabetical order
-                for (Iterator iterator = params.keySet().iterator(); iterator.hasNext();)
+                List<String> arguments = new ArrayList<String>(argumentTemplates.size());
+                for (FragmentTemplate argumentTemplate : argumentTemplates)
                 {
-                    String key = (String) iterator.next();
-                    if (key.startsWith("param"))
-                        arguments.add(getWebFragmentHelper().renderVelocityFragment(params.get(key), tmpContext));
+                    arguments.add(argumentTemplate.render(getWebFragmentHelper(), tmpContext));
                 }
 
                 return getWebFragmentHelper().getI18nValue(key, arguments, tmpContext);
@@ -76,7 +90,7 @@ public class DefaultWebLabel extends DefaultWebParam implements WebLabel
         }
         else
         {
-            return getWebFragmentHelper().renderVelocityFragment(noKeyValue, tmpContext);
+            return noKeyValueTemplate.render(getWebFragmentHelper(), tmpContext);
         }
     }
 }
@@ -7,7 +7,6 @@ import org.dom4j.Element;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.Map;
-import java.util.HashMap;
 
 /**
  * Represents a single "href", with a variety of permutations.
@@ -15,6 +14,7 @@ import java.util.HashMap;
 public class DefaultWebLink extends AbstractWebItem implements WebLink
 {
     private final String url;
+    private final FragmentTemplate urlTemplate;
     private final boolean absoluteUrl;
     private final String accessKey;
     private final String id;
@@ -23,6 +23,7 @@ public class DefaultWebLink extends AbstractWebItem implements WebLink
     {
         super(webFragmentHelper, contextProvider, descriptor);
         this.url = linkEl.getTextTrim();
+        this.urlTemplate = new FragmentTemplate(url);
         this.accessKey = linkEl.attributeValue("accessKey");
         this.id = linkEl.attributeValue("linkId");
         this.absoluteUrl = "true".equals(linkEl.attributeValue("absolute"));
@@ -30,9 +31,11 @@ public class DefaultWebLink extends AbstractWebItem implements WebLink
 
     public String getRenderedUrl(Map<String,Object> context)
     {
-        Map<String,Object> tmpContext = new HashMap<String,Object>(context);
-        tmpContext.putAll(getContextMap(tmpContext));
-        return getWebFragmentHelper().renderVelocityFragment(url, tmpContext);
+        if (urlTemplate.isConstant())
+        {
+            return url;
+        }
+        return urlTemplate.render(getWebFragmentHelper(), getRenderContext(context));
     }
 
     private boolean isRelativeUrl(String url)
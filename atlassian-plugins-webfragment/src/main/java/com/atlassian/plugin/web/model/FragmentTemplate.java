@@ -0,0 +1,37 @@
+package com.atlassian.plugin.web.model;
+
+import com.atlassian.plugin.web.WebFragmentHelper;
+
+import java.util.Map;
+
+/**
+ * A string of a web fragment that is rendered as a Velocity template, analysed once when the fragment is created.  A
+ * string without any references or directives renders as itself, so it is returned as it is rather than rendered.
+ *
+ * @since 2.11.0
+ */
+final class FragmentTemplate
+{
+    private final String fragment;
+    private final boolean constant;
+
+    FragmentTemplate(final String fragment)
+    {
+        this.fragment = fragment;
+        // Velocity only treats text specially around references and directives, including escapes
+        this.constant = fragment != null && fragment.indexOf('$') < 0 && fragment.indexOf('#') < 0;
+    }
+
+    /**
+     * @return true if the fragment renders as itself, whatever the context
+     */
+    boolean isConstant()
+    {
+        return constant;
+    }
+
+    String render(final WebFragmentHelper webFragmentHelper, final Map<String, Object> context)
+    {
+        return constant ? fragment : webFragmentHelper.renderVelocityFragment(fragment, context);
+    }
+}
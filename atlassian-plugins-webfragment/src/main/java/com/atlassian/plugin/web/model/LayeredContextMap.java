@@ -0,0 +1,145 @@
+package com.atlassian.plugin.web.model;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A view of a context with the entries of another map, such as those of a
+ * {@link com.atlassian.plugin.web.ContextProvider}, laid over it, so a web item can be rendered with both without
+ * copying them into a new map.  Neither map is ever modified: entries put into or removed from the view are kept by
+ * the view itself, as they were in the copy the view replaces.
+ *
+ * @since 2.11.0
+ */
+final class LayeredContextMap extends AbstractMap<String, Object>
+{
+    private final Map<String, Object> base;
+    private Map<String, Object> overlay;
+
+    /** The entries put into the view, or null if there are none */
+    private Map<String, Object> written;
+    /** The keys removed from the view, or null if there are none */
+    private Set<Object> removed;
+
+    LayeredContextMap(final Map<String, Object> base)
+    {
+        this.base = base;
+        this.overlay = Collections.emptyMap();
+    }
+
+    /**
+     * Lays the entries of a map over the view, unless it is the view itself, as returned by a context provider that
+     * adds its entries to the context it is given.
+     *
+     * @param entries the entries to lay over the view
+     * @return this view
+     */
+    LayeredContextMap overlay(final Map<String, Object> entries)
+    {
+        if (entries == this || entries == null || entries.isEmpty())
+        {
+            return this;
+        }
+        if (written == null && removed == null)
+        {
+            overlay = entries;
+        }
+        else
+        {
+            // the entries must replace those already written
+            putAll(entries);
+        }
+        return this;
+    }
+
+    @Override
+    public Object get(final Object key)
+    {
+        if (written != null && written.containsKey(key))
+        {
+            return written.get(key);
+        }
+        if (removed != null && removed.contains(key))
+        {
+            return null;
+        }
+        if (overlay.containsKey(key))
+        {
+            return overlay.get(key);
+        }
+        return base.get(key);
+    }
+
+    @Override
+    public boolean containsKey(final Object key)
+    {
+        if (written != null && written.containsKey(key))
+        {
+            return true;
+        }
+        if (removed != null && removed.contains(key))
+        {
+            return false;
+        }
+        return overlay.containsKey(key) || base.containsKey(key);
+    }
+
+    @Override
+    public Object put(final String key, final Object value)
+    {
+        final Object previous = get(key);
+        if (written == null)
+        {
+            written = new HashMap<String, Object>();
+        }
+        written.put(key, value);
+        if (removed != null)
+        {
+            removed.remove(key);
+        }
+        return previous;
+    }
+
+    @Override
+    public Object remove(final Object key)
+    {
+        if (!containsKey(key))
+        {
+            return null;
+        }
+        final Object previous = get(key);
+        if (written != null)
+        {
+            written.remove(key);
+        }
+        if (removed == null)
+        {
+            removed = new HashSet<Object>();
+        }
+        removed.add(key);
+        return previous;
+    }
+
+    /**
+     * Iterating over the view copies its entries, which is no worse than the copy of the context it replaces.
+     */
+    @Override
+    public Set<Entry<String, Object>> entrySet()
+    {
+        final Map<String, Object> entries = new HashMap<String, Object>(base);
+        entries.putAll(overlay);
+        if (removed != null)
+        {
+            entries.keySet().removeAll(removed);
+        }
+        if (written != null)
+        {
+            entries.putAll(written);
+        }
+        return Collections.unmodifiableMap(entries).entrySet();
+    }
+}
@@ -1,33 +1,74 @@
 package com.atlassian.plugin.web.renderer;
 
 import com.atlassian.plugin.Plugin;
+import com.atlassian.plugin.PluginInformation;
+import com.atlassian.plugin.util.PluginUtils;
 import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Writer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * Static {@link WebPanelRenderer}, just returns the supplied text.
+ * <p>
+ * The most recently rendered templates are kept in memory by plugin version, so a template is only read from the
+ * class path again once its plugin has been reloaded, unless in dev mode.
  */
 public class StaticWebPanelRenderer implements WebPanelRenderer
 {
     public static final StaticWebPanelRenderer RENDERER = new StaticWebPanelRenderer();
     public static final String RESOURCE_TYPE = "static";
 
+    private static final int MAX_CACHED_TEMPLATES = 256;
+    private static final long MAX_CACHED_TEMPLATE_CHARS = 1024 * 1024;
+
+    // guarded by itself, in least recently used order
+    private final Map<String, String> templateCache = new LinkedHashMap<String, String>(16, 0.75f, true);
+    private long cachedTemplateChars;
+
     public String getResourceType()
     {
         return RESOURCE_TYPE;
     }
 
     public void render(String templateName, Plugin plugin, Map<String, Object> context, Writer writer) throws RendererException, IOException
+    {
+        final String key = getCacheKey(plugin, templateName);
+        if (key == null)
+        {
+            writer.write(readTemplate(plugin, templateName));
+            return;
+        }
+
+        String template;
+        synchronized (templateCache)
+        {
+            template = templateCache.get(key);
+        }
+        if (template == null)
+        {
+            template = readTemplate(plugin, templateName);
+            cache(key, template);
+        }
+        writer.write(template);
+    }
+
+    public String renderFragment(String fragment, Plugin plugin, Map<String, Object> context) throws RendererException
+    {
+        return fragment;
+    }
+
+    private String readTemplate(Plugin plugin, String templateName) throws IOException
     {
         InputStream in = null;
         try
         {
             in = loadTemplate(plugin, templateName);
-            IOUtils.copy(in, writer);
+            return IOUtils.toString(in);
         }
         finally
         {
@@ -35,9 +76,37 @@ public class StaticWebPanelRenderer implements WebPanelRenderer
         }
     }
 
-    public String renderFragment(String fragment, Plugin plugin, Map<String, Object> context) throws RendererException
+    private void cache(String key, String template)
     {
-        return fragment;
+        synchronized (templateCache)
+        {
+            final String previous = templateCache.put(key, template);
+            cachedTemplateChars += template.length() - (previous == null ? 0 : previous.length());
+            for (Iterator<String> it = templateCache.values().iterator();
+                 it.hasNext() && (templateCache.size() > MAX_CACHED_TEMPLATES || cachedTemplateChars > MAX_CACHED_TEMPLATE_CHARS); )
+            {
+                cachedTemplateChars -= it.next().length();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the key of the template in the cache, which changes whenever the plugin is reloaded, or null if the
+     * template shouldn't be cached
+     */
+    private static String getCacheKey(Plugin plugin, String templateName)
+    {
+        if (Boolean.getBoolean(PluginUtils.ATLASSIAN_DEV_MODE))
+        {
+            return null;
+        }
+        final PluginInformation information = plugin.getPluginInformation();
+        if (plugin.getKey() == null || information == null || plugin.getDateLoaded() == null)
+        {
+            return null;
+        }
+        return plugin.getKey() + ':' + information.getVersion() + ':' + plugin.getDateLoaded().getTime() + ':' + templateName;
     }
 
     private InputStream loadTemplate(Plugin plugin, String templateName) throws IOException
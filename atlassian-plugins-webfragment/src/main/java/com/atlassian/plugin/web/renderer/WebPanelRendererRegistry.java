@@ -0,0 +1,139 @@
+package com.atlassian.plugin.web.renderer;
+
+import com.atlassian.plugin.ModuleDescriptor;
+import com.atlassian.plugin.PluginAccessor;
+import com.atlassian.plugin.event.PluginEventListener;
+import com.atlassian.plugin.event.PluginEventManager;
+import com.atlassian.plugin.event.events.PluginModuleDisabledEvent;
+import com.atlassian.plugin.event.events.PluginModuleEnabledEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the {@link WebPanelRenderer} for a resource type.  The renderers of the enabled modules are looked up once and
+ * kept by resource type, so rendering a web panel doesn't have to go through all the enabled modules.  They are looked
+ * up again once a renderer module has been enabled or disabled, as told by the {@link PluginEventManager} the registry
+ * is constructed with.  Renderer modules are recognised by their class when enabled, and by their complete key when
+ * disabled, as the class of a module may no longer be known by then.
+ *
+ * @see com.atlassian.plugin.web.DefaultWebInterfaceManager#getWebPanelRendererRegistry()
+ * @since 2.11.0
+ */
+public class WebPanelRendererRegistry
+{
+    /** Incremented whenever a renderer module is enabled or disabled */
+    private final AtomicLong generation = new AtomicLong();
+    /** The complete keys of the renderer modules that have been enabled */
+    private final Set<String> rendererModuleKeys = new CopyOnWriteArraySet<String>();
+    private volatile Renderers renderers;
+
+    /**
+     * @param pluginEventManager the plugin event manager, used to look up the renderers again as their modules are
+     * enabled and disabled
+     */
+    public WebPanelRendererRegistry(final PluginEventManager pluginEventManager)
+    {
+        pluginEventManager.register(this);
+    }
+
+    /**
+     * @param pluginAccessor the plugin accessor to look up the renderers with
+     * @param resourceType the resource type
+     * @return the renderer of the first enabled module rendering the resource type, or
+     * {@link StaticWebPanelRenderer#RENDERER} for static resources
+     * @throws RendererException if no enabled module renders the resource type
+     */
+    public WebPanelRenderer getRenderer(final PluginAccessor pluginAccessor, final String resourceType)
+            throws RendererException
+    {
+        if (StaticWebPanelRenderer.RESOURCE_TYPE.equals(resourceType))
+        {
+            return StaticWebPanelRenderer.RENDERER;
+        }
+
+        Renderers current = renderers;
+        if (current == null || current.pluginAccessor != pluginAccessor || current.generation != generation.get())
+        {
+            current = load(pluginAccessor);
+        }
+        final WebPanelRenderer renderer = current.byResourceType.get(resourceType);
+        if (renderer == null)
+        {
+            throw new RendererException("No renderer found for resource type: " + resourceType);
+        }
+        return renderer;
+    }
+
+    /**
+     * Looks up the renderers again if the module is a renderer
+     *
+     * @param event The module enabled event
+     */
+    @PluginEventListener
+    public void onPluginModuleEnabled(final PluginModuleEnabledEvent event)
+    {
+        final ModuleDescriptor<?> module = event.getModule();
+        if (isRenderer(module))
+        {
+            rendererModuleKeys.add(module.getCompleteKey());
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Looks up the renderers again if the module is a renderer
+     *
+     * @param event The module disabled event
+     */
+    @PluginEventListener
+    public void onPluginModuleDisabled(final PluginModuleDisabledEvent event)
+    {
+        final ModuleDescriptor<?> module = event.getModule();
+        if (rendererModuleKeys.remove(module.getCompleteKey()) || isRenderer(module))
+        {
+            generation.incrementAndGet();
+        }
+    }
+
+    private static boolean isRenderer(final ModuleDescriptor<?> module)
+    {
+        final Class<?> moduleClass = module.getModuleClass();
+        return moduleClass != null && WebPanelRenderer.class.isAssignableFrom(moduleClass);
+    }
+
+    private Renderers load(final PluginAccessor pluginAccessor)
+    {
+        // read before looking up the modules, so the renderers are looked up again if a module changes meanwhile
+        final long currentGeneration = generation.get();
+        final Map<String, WebPanelRenderer> byResourceType = new HashMap<String, WebPanelRenderer>();
+        for (final WebPanelRenderer renderer : pluginAccessor.getEnabledModulesByClass(WebPanelRenderer.class))
+        {
+            final String resourceType = renderer.getResourceType();
+            if (resourceType != null && !byResourceType.containsKey(resourceType))
+            {
+                byResourceType.put(resourceType, renderer);
+            }
+        }
+        final Renderers loaded = new Renderers(pluginAccessor, currentGeneration, byResourceType);
+        renderers = loaded;
+        return loaded;
+    }
+
+    private static final class Renderers
+    {
+        private final PluginAccessor pluginAccessor;
+        private final long generation;
+        private final Map<String, WebPanelRenderer> byResourceType;
+
+        Renderers(final PluginAccessor pluginAccessor, final long generation, final Map<String, WebPanelRenderer> byResourceType)
+        {
+            this.pluginAccessor = pluginAccessor;
+            this.generation = generation;
+            this.byResourceType = byResourceType;
+        }
+    }
+}
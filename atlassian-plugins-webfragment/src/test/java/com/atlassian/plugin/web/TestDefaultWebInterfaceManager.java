@@ -0,0 +1,162 @@
+package com.atlassian.plugin.web;
+
+import com.atlassian.plugin.PluginAccessor;
+import com.atlassian.plugin.PluginParseException;
+import com.atlassian.plugin.event.PluginEventManager;
+import com.atlassian.plugin.event.events.PluginModuleDisabledEvent;
+import com.atlassian.plugin.event.events.PluginModuleEnabledEvent;
+import com.atlassian.plugin.event.impl.DefaultPluginEventManager;
+import com.atlassian.plugin.impl.StaticPlugin;
+import com.atlassian.plugin.web.conditions.AndCompositeCondition;
+import com.atlassian.plugin.web.descriptors.DefaultWebItemModuleDescriptor;
+import com.atlassian.plugin.web.descriptors.WebItemModuleDescriptor;
+import com.atlassian.plugin.web.descriptors.WebSectionModuleDescriptor;
+import com.google.common.collect.ImmutableList;
+import junit.framework.TestCase;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestDefaultWebInterfaceManager extends TestCase
+{
+    private PluginAccessor pluginAccessor;
+    private PluginEventManager pluginEventManager;
+    private DefaultWebInterfaceManager webInterfaceManager;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        pluginAccessor = mock(PluginAccessor.class);
+        pluginEventManager = new DefaultPluginEventManager();
+        webInterfaceManager = new DefaultWebInterfaceManager(pluginAccessor, null, pluginEventManager);
+    }
+
+    public void testGetSectionsIndexesAllLocationsInOnePass()
+    {
+        final WebSectionModuleDescriptor heavy = mockSection("plugin:heavy", "system.admin", 20);
+        final WebSectionModuleDescriptor light = mockSection("plugin:light", "System.Admin", 10);
+        final WebSectionModuleDescriptor other = mockSection("plugin:other", "system.user", 10);
+        when(pluginAccessor.getEnabledModuleDescriptorsByClass(WebSectionModuleDescriptor.class)).thenReturn(ImmutableList.of(heavy, light, other));
+
+        assertEquals(Arrays.asList(light, heavy), webInterfaceManager.getSections("system.admin"));
+        assertEquals(Arrays.asList(other), webInterfaceManager.getSections("system.user"));
+        assertTrue(webInterfaceManager.getSections("system.unknown").isEmpty());
+        assertFalse(webInterfaceManager.hasSectionsForLocation("system.unknown"));
+
+        verify(pluginAccessor, times(1)).getEnabledModuleDescriptorsByClass(WebSectionModuleDescriptor.class);
+    }
+
+    public void testModuleEventsUpdateIndexedLocations()
+    {
+        final WebItemModuleDescriptor first = mockItem("plugin:first", "system.admin/general", 10);
+        final WebItemModuleDescriptor second = mockItem("plugin:second", "system.admin/general", 20);
+        when(pluginAccessor.getEnabledModuleDescriptorsByClass(WebItemModuleDescriptor.class)).thenReturn(ImmutableList.of(second));
+
+        assertEquals(Arrays.asList(second), webInterfaceManager.getItems("system.admin/general"));
+
+        pluginEventManager.broadcast(new PluginModuleEnabledEvent(first));
+        assertEquals(Arrays.asList(first, second), webInterfaceManager.getItems("system.admin/general"));
+
+        pluginEventManager.broadcast(new PluginModuleDisabledEvent(second, false));
+        assertEquals(Arrays.asList(first), webInterfaceManager.getItems("system.admin/general"));
+
+        verify(pluginAccessor, times(1)).getEnabledModuleDescriptorsByClass(WebItemModuleDescriptor.class);
+    }
+
+    public void testEnabledAndDisabledDescriptorsUpdateIndexedLocations() throws DocumentException, PluginParseException
+    {
+        final StaticPlugin plugin = new StaticPlugin();
+        plugin.setKey("plugin");
+        final WebItemModuleDescriptor indexed = createItem(plugin, "indexed", "system.admin/general", 20);
+        final WebItemModuleDescriptor enabled = createItem(plugin, "enabled", "system.admin/general", 10);
+        when(pluginAccessor.getEnabledModuleDescriptorsByClass(WebItemModuleDescriptor.class)).thenReturn(ImmutableList.of(indexed));
+
+        assertEquals(Arrays.asList(indexed), webInterfaceManager.getItems("system.admin/general"));
+
+        // as the plugin manager enables and disables modules
+        enabled.enabled();
+        pluginEventManager.broadcast(new PluginModuleEnabledEvent(enabled));
+        assertEquals(Arrays.asList(enabled, indexed), webInterfaceManager.getItems("system.admin/general"));
+
+        indexed.disabled();
+        pluginEventManager.broadcast(new PluginModuleDisabledEvent(indexed, false));
+        assertEquals(Arrays.asList(enabled), webInterfaceManager.getItems("system.admin/general"));
+
+        verify(pluginAccessor, times(1)).getEnabledModuleDescriptorsByClass(WebItemModuleDescriptor.class);
+    }
+
+    public void testRefreshRebuildsIndex()
+    {
+        final WebSectionModuleDescriptor section = mockSection("plugin:section", "system.admin", 10);
+        when(pluginAccessor.getEnabledModuleDescriptorsByClass(WebSectionModuleDescriptor.class)).thenReturn(
+            Collections.<WebSectionModuleDescriptor>emptyList(), ImmutableList.of(section));
+
+        assertTrue(webInterfaceManager.getSections("system.admin").isEmpty());
+        webInterfaceManager.refresh();
+        assertEquals(Arrays.asList(section), webInterfaceManager.getSections("system.admin"));
+    }
+
+    public void testSharedConditionIsEvaluatedOncePerRender()
+    {
+        final Condition loggedIn = mock(Condition.class);
+        final Condition hidden = mock(Condition.class);
+        final Map<String, Object> context = new HashMap<String, Object>();
+        when(loggedIn.shouldDisplay(context)).thenReturn(true);
+        when(hidden.shouldDisplay(context)).thenReturn(false);
+        final AndCompositeCondition loggedInAndHidden = new AndCompositeCondition();
+        loggedInAndHidden.addCondition(loggedIn);
+        loggedInAndHidden.addCondition(hidden);
+
+        final WebItemModuleDescriptor first = mockItem("plugin:first", "system.admin/general", 10);
+        final WebItemModuleDescriptor second = mockItem("plugin:second", "system.admin/general", 20);
+        final WebItemModuleDescriptor third = mockItem("plugin:third", "system.admin/general", 30);
+        when(first.getCondition()).thenReturn(loggedIn);
+        when(second.getCondition()).thenReturn(loggedIn);
+        when(third.getCondition()).thenReturn(loggedInAndHidden);
+        when(pluginAccessor.getEnabledModuleDescriptorsByClass(WebItemModuleDescriptor.class)).thenReturn(ImmutableList.of(first, second, third));
+
+        assertEquals(Arrays.asList(first, second), webInterfaceManager.getDisplayableItems("system.admin/general", context));
+        verify(loggedIn, times(1)).shouldDisplay(context);
+
+        // the results are only remembered for a single render
+        assertEquals(Arrays.asList(first, second), webInterfaceManager.getDisplayableItems("system.admin/general", context));
+        verify(loggedIn, times(2)).shouldDisplay(context);
+    }
+
+    private WebItemModuleDescriptor createItem(final StaticPlugin plugin, final String key, final String section, final int weight)
+        throws DocumentException, PluginParseException
+    {
+        final DefaultWebItemModuleDescriptor descriptor = new DefaultWebItemModuleDescriptor(webInterfaceManager);
+        descriptor.init(plugin, DocumentHelper.parseText(
+            "<web-item key=\"" + key + "\" section=\"" + section + "\" weight=\"" + weight + "\"/>").getRootElement());
+        return descriptor;
+    }
+
+    private static WebSectionModuleDescriptor mockSection(final String completeKey, final String location, final int weight)
+    {
+        final WebSectionModuleDescriptor descriptor = mock(WebSectionModuleDescriptor.class);
+        when(descriptor.getCompleteKey()).thenReturn(completeKey);
+        when(descriptor.getLocation()).thenReturn(location);
+        when(descriptor.getWeight()).thenReturn(weight);
+        return descriptor;
+    }
+
+    private static WebItemModuleDescriptor mockItem(final String completeKey, final String section, final int weight)
+    {
+        final WebItemModuleDescriptor descriptor = mock(WebItemModuleDescriptor.class);
+        when(descriptor.getCompleteKey()).thenReturn(completeKey);
+        when(descriptor.getSection()).thenReturn(section);
+        when(descriptor.getWeight()).thenReturn(weight);
+        return descriptor;
+    }
+}
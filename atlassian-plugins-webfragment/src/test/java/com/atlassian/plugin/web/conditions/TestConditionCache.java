@@ -0,0 +1,109 @@
+package com.atlassian.plugin.web.conditions;
+
+import com.atlassian.plugin.web.Condition;
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestConditionCache extends TestCase
+{
+    private final Map<String, Object> context = new HashMap<String, Object>();
+    private final Map<String, Object> otherContext = new HashMap<String, Object>();
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        otherContext.put("user", "fred");
+    }
+
+    public void testConditionsAreEvaluatedOutsideRenders()
+    {
+        final Condition condition = mockCondition(Condition.class);
+        assertTrue(ConditionCache.shouldDisplay(condition, context));
+        assertTrue(ConditionCache.shouldDisplay(condition, context));
+        verify(condition, times(2)).shouldDisplay(context);
+    }
+
+    public void testRenderRemembersResultsForItsContext()
+    {
+        final Condition condition = mockCondition(Condition.class);
+        ConditionCache.beginRender(context);
+        try
+        {
+            assertTrue(ConditionCache.shouldDisplay(condition, context));
+            assertTrue(ConditionCache.shouldDisplay(condition, context));
+            assertTrue(ConditionCache.shouldDisplay(condition, otherContext));
+        }
+        finally
+        {
+            ConditionCache.endRender();
+        }
+        verify(condition, times(1)).shouldDisplay(context);
+        verify(condition, times(1)).shouldDisplay(otherContext);
+    }
+
+    public void testNestedRender()
+    {
+        final Condition condition = mockCondition(Condition.class);
+        ConditionCache.beginRender(context);
+        try
+        {
+            assertTrue(ConditionCache.shouldDisplay(condition, context));
+            ConditionCache.beginRender(otherContext);
+            try
+            {
+                assertTrue(ConditionCache.shouldDisplay(condition, otherContext));
+                assertTrue(ConditionCache.shouldDisplay(condition, otherContext));
+            }
+            finally
+            {
+                ConditionCache.endRender();
+            }
+            assertTrue(ConditionCache.shouldDisplay(condition, context));
+        }
+        finally
+        {
+            ConditionCache.endRender();
+        }
+        verify(condition, times(1)).shouldDisplay(context);
+        verify(condition, times(1)).shouldDisplay(otherContext);
+    }
+
+    public void testCacheableConditionIsRememberedForRequest()
+    {
+        final CacheableCondition cacheable = mockCondition(CacheableCondition.class);
+        final Condition condition = mockCondition(Condition.class);
+        ConditionCache.beginRequest();
+        try
+        {
+            assertTrue(ConditionCache.shouldDisplay(cacheable, context));
+            assertTrue(ConditionCache.shouldDisplay(cacheable, otherContext));
+            assertTrue(ConditionCache.shouldDisplay(condition, context));
+            assertTrue(ConditionCache.shouldDisplay(condition, context));
+        }
+        finally
+        {
+            ConditionCache.endRequest();
+        }
+        assertTrue(ConditionCache.shouldDisplay(cacheable, context));
+
+        verify(cacheable, times(2)).shouldDisplay(context);
+        verify(cacheable, times(0)).shouldDisplay(otherContext);
+        verify(condition, times(2)).shouldDisplay(context);
+    }
+
+    private <C extends Condition> C mockCondition(final Class<C> conditionClass)
+    {
+        final C condition = mock(conditionClass);
+        when(condition.shouldDisplay(context)).thenReturn(true);
+        when(condition.shouldDisplay(otherContext)).thenReturn(true);
+        return condition;
+    }
+}
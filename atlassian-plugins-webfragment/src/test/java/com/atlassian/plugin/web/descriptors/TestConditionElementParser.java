@@ -10,6 +10,10 @@ import org.dom4j.DocumentException;
 import org.dom4j.DocumentHelper;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 public class TestConditionElementParser extends TestCase
 {
     private static final String TYPE_OR = "<conditions type=\"OR\">";
@@ -135,6 +139,64 @@ public class TestConditionElementParser extends TestCase
                          TYPE_CLOSE, true);//true AND ((false AND false) OR false OR (true AND (false OR true))) = true
     }
 
+    public void testIdenticalConditionsAreShared() throws DocumentException, PluginParseException
+    {
+        final Plugin plugin = Mockito.mock(Plugin.class);
+        Mockito.when(plugin.getKey()).thenReturn("shared-conditions");
+
+        final Condition first = makeConditions(plugin, TYPE_OR + TRUE + NOT_FALSE + TYPE_CLOSE);
+        final Condition second = makeConditions(plugin, TYPE_OR + TRUE + NOT_FALSE + TYPE_CLOSE);
+        assertSame(first, second);
+        assertNotSame(first, makeConditions(plugin, TYPE_AND + TRUE + NOT_FALSE + TYPE_CLOSE));
+        assertNotSame(makeConditions(plugin, TRUE), makeConditions(plugin, NOT_TRUE));
+        assertNotSame(makeConditions(plugin, "<condition class=\"com.atlassian.plugin.web.conditions.AlwaysDisplayCondition\"><param name=\"a\" value=\"b\"/></condition>"),
+            makeConditions(plugin, TRUE));
+
+        final Plugin otherPlugin = Mockito.mock(Plugin.class);
+        Mockito.when(otherPlugin.getKey()).thenReturn("other-shared-conditions");
+        assertNotSame(makeConditions(plugin, TRUE), makeConditions(otherPlugin, TRUE));
+    }
+
+    public void testReleasedConditionsAreBuiltAnew() throws DocumentException, PluginParseException
+    {
+        final Plugin plugin = Mockito.mock(Plugin.class);
+        Mockito.when(plugin.getKey()).thenReturn("released-conditions");
+
+        final Condition first = makeConditions(plugin, TYPE_OR + TRUE + NOT_FALSE + TYPE_CLOSE);
+        ConditionElementParser.releaseConditions(plugin);
+        final Condition second = makeConditions(plugin, TYPE_OR + TRUE + NOT_FALSE + TYPE_CLOSE);
+        assertNotSame(first, second);
+        assertSame(second, makeConditions(plugin, TYPE_OR + TRUE + NOT_FALSE + TYPE_CLOSE));
+    }
+
+    public void testSharedConditionsAreOnlyCreatedOnce() throws DocumentException, PluginParseException
+    {
+        final Plugin plugin = Mockito.mock(Plugin.class);
+        Mockito.when(plugin.getKey()).thenReturn("created-conditions");
+        final List<String> created = new ArrayList<String>();
+        final ConditionElementParser parser = new ConditionElementParser(new ConditionElementParser.ConditionFactory()
+        {
+            public Condition create(String className, Plugin plugin) throws ConditionLoadingException
+            {
+                created.add(className);
+                return new MockWebFragmentHelper().loadCondition(className, plugin);
+            }
+        });
+
+        final Document document = DocumentHelper.parseText("<root>" + TRUE + "</root>");
+        final Condition first = parser.makeConditions(plugin, document.getRootElement(), AbstractWebFragmentModuleDescriptor.COMPOSITE_TYPE_AND);
+        final Condition second = parser.makeConditions(plugin, document.getRootElement(), AbstractWebFragmentModuleDescriptor.COMPOSITE_TYPE_AND);
+
+        assertSame(first, second);
+        assertEquals(Collections.singletonList("com.atlassian.plugin.web.conditions.AlwaysDisplayCondition"), created);
+    }
+
+    private Condition makeConditions(Plugin plugin, String conditionElement) throws DocumentException, PluginParseException
+    {
+        Document document = DocumentHelper.parseText("<root>" + conditionElement + "</root>");
+        return conditionElementParser.makeConditions(plugin, document.getRootElement(), AbstractWebFragmentModuleDescriptor.COMPOSITE_TYPE_AND);
+    }
+
     public void assertConditions(String conditionElement, boolean expectedResult) throws DocumentException, PluginParseException
     {
         String rootElement = "<root>" + conditionElement + "</root>";
@@ -13,6 +13,7 @@ import org.dom4j.Element;
 import com.atlassian.plugin.Plugin;
 import com.atlassian.plugin.PluginParseException;
 import com.atlassian.plugin.impl.AbstractPlugin;
+import com.atlassian.plugin.web.Condition;
 
 public class TestDefaultWebItemModuleDescriptor extends TestCase
 {
@@ -79,6 +80,26 @@ public class TestDefaultWebItemModuleDescriptor extends TestCase
         assertEquals("", descriptor.getStyleClass());
     }
 
+    public void testConditionsAreBuiltAnewWhenEnabledAgain() throws DocumentException, PluginParseException
+    {
+        final String condition = "<condition class=\"com.atlassian.plugin.web.conditions.AlwaysDisplayCondition\"><param name=\"a\" value=\"b\"/></condition>";
+        final WebItemModuleDescriptor other = new DefaultWebItemModuleDescriptor(new MockWebInterfaceManager());
+        descriptor.init(plugin, createElement(condition));
+        other.init(plugin, createElement(condition));
+
+        descriptor.enabled();
+        other.enabled();
+        final Condition shared = descriptor.getCondition();
+        assertSame(shared, other.getCondition());
+
+        descriptor.disabled();
+        other.disabled();
+        descriptor.enabled();
+        other.enabled();
+        assertNotSame(shared, descriptor.getCondition());
+        assertSame(descriptor.getCondition(), other.getCondition());
+    }
+
     private Element createElement(final String childElement) throws DocumentException
     {
         final String rootElement = "<root key=\"key\">" + childElement + "</root>";
@@ -1,9 +1,11 @@
 package com.atlassian.plugin.web.model;
 
 import com.atlassian.plugin.PluginAccessor;
+import com.atlassian.plugin.event.PluginEventManager;
 import com.atlassian.plugin.web.renderer.RendererException;
 import com.atlassian.plugin.web.renderer.StaticWebPanelRenderer;
 import com.atlassian.plugin.web.renderer.WebPanelRenderer;
+import com.atlassian.plugin.web.renderer.WebPanelRendererRegistry;
 import com.google.common.collect.ImmutableList;
 import junit.framework.TestCase;
 
@@ -79,4 +81,27 @@ public class AbstractWebPanelTest extends TestCase
         panel.setResourceType("velocity");
         panel.getHtml(null);
     }
+
+    public void testRendererIsFoundInRegistry()
+    {
+        final PluginAccessor accessorMock = mock(PluginAccessor.class);
+        final WebPanelRenderer velocityRenderer = mock(WebPanelRenderer.class);
+        when(velocityRenderer.getResourceType()).thenReturn("velocity");
+        when(accessorMock.getEnabledModulesByClass(WebPanelRenderer.class)).thenReturn(ImmutableList.of(velocityRenderer));
+
+        AbstractWebPanel panel = new AbstractWebPanel(accessorMock)
+        {
+            public String getHtml(Map<String, Object> context)
+            {
+                assertEquals(velocityRenderer, getRenderer());
+                return null;
+            }
+        };
+
+        panel.setResourceType("velocity");
+        panel.setRendererRegistry(new WebPanelRendererRegistry(mock(PluginEventManager.class)));
+        panel.getHtml(null);
+        panel.getHtml(null);
+        verify(accessorMock, times(1)).getEnabledModulesByClass(WebPanelRenderer.class);
+    }
 }
@@ -0,0 +1,95 @@
+package com.atlassian.plugin.web.model;
+
+import com.atlassian.plugin.web.ContextProvider;
+import com.atlassian.plugin.web.WebFragmentHelper;
+import junit.framework.TestCase;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultWebLabelTest extends TestCase
+{
+    private WebFragmentHelper webFragmentHelper;
+    private ContextProvider contextProvider;
+    private Map<String, Object> context;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        webFragmentHelper = mock(WebFragmentHelper.class);
+        contextProvider = mock(ContextProvider.class);
+        context = new HashMap<String, Object>();
+        context.put("user", "fred");
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testConstantLabelIsNotRendered() throws DocumentException
+    {
+        final DefaultWebLabel label = new DefaultWebLabel(createElement("<label>Administration</label>"), webFragmentHelper, contextProvider, null);
+
+        assertEquals("Administration", label.getDisplayableLabel(null, context));
+        verify(webFragmentHelper, never()).renderVelocityFragment(anyString(), anyMap());
+        verify(contextProvider, never()).getContextMap(anyMap());
+    }
+
+    public void testTemplatedLabelIsRenderedWithProvidedContext() throws DocumentException
+    {
+        final Map<String, Object> provided = new HashMap<String, Object>();
+        provided.put("count", 3);
+        when(contextProvider.getContextMap(any(Map.class))).thenReturn(provided);
+        when(webFragmentHelper.renderVelocityFragment(eq("$user has $count issues"), any(Map.class))).thenAnswer(new Answer<Object>()
+        {
+            public Object answer(final InvocationOnMock invocation)
+            {
+                final Map<?, ?> renderContext = (Map<?, ?>) invocation.getArguments()[1];
+                return renderContext.get("user") + " has " + renderContext.get("count") + " issues";
+            }
+        });
+        final DefaultWebLabel label = new DefaultWebLabel(createElement("<label>$user has $count issues</label>"), webFragmentHelper, contextProvider, null);
+
+        assertEquals("fred has 3 issues", label.getDisplayableLabel(null, context));
+        assertEquals(1, context.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testOnlyTemplatedArgumentsAreRendered() throws DocumentException
+    {
+        when(contextProvider.getContextMap(any(Map.class))).thenReturn(new HashMap<String, Object>());
+        when(webFragmentHelper.renderVelocityFragment(eq("$user"), any(Map.class))).thenReturn("fred");
+        when(webFragmentHelper.getI18nValue(eq("greeting"), any(List.class), any(Map.class))).thenAnswer(new Answer<Object>()
+        {
+            public Object answer(final InvocationOnMock invocation)
+            {
+                return invocation.getArguments()[1].toString();
+            }
+        });
+        final DefaultWebLabel label = new DefaultWebLabel(createElement("<label key=\"greeting\">" +
+            "<param name=\"param1\" value=\"Hello\"/><param name=\"param0\" value=\"$user\"/><param name=\"other\" value=\"$other\"/>" +
+            "</label>"), webFragmentHelper, contextProvider, null);
+
+        assertEquals(Arrays.asList("fred", "Hello").toString(), label.getDisplayableLabel(null, context));
+        verify(webFragmentHelper, never()).renderVelocityFragment(eq("Hello"), anyMap());
+    }
+
+    private static Element createElement(final String xml) throws DocumentException
+    {
+        return DocumentHelper.parseText(xml).getRootElement();
+    }
+}
@@ -0,0 +1,60 @@
+package com.atlassian.plugin.web.model;
+
+import com.atlassian.plugin.web.ContextProvider;
+import com.atlassian.plugin.web.WebFragmentHelper;
+import junit.framework.TestCase;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultWebLinkTest extends TestCase
+{
+    private WebFragmentHelper webFragmentHelper;
+    private ContextProvider contextProvider;
+    private Map<String, Object> context;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        webFragmentHelper = mock(WebFragmentHelper.class);
+        contextProvider = mock(ContextProvider.class);
+        context = new HashMap<String, Object>();
+        context.put("user", "fred");
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testConstantUrlIsNotRendered() throws DocumentException
+    {
+        final DefaultWebLink link = new DefaultWebLink(createElement("<link>/secure/admin</link>"), webFragmentHelper, contextProvider, null);
+
+        assertEquals("/secure/admin", link.getRenderedUrl(context));
+        verify(webFragmentHelper, never()).renderVelocityFragment(anyString(), anyMap());
+    }
+
+    public void testTemplatedUrlIsRendered() throws DocumentException
+    {
+        when(contextProvider.getContextMap(any(Map.class))).thenReturn(new HashMap<String, Object>());
+        when(webFragmentHelper.renderVelocityFragment(eq("/users/$user"), any(Map.class))).thenReturn("/users/fred");
+        final DefaultWebLink link = new DefaultWebLink(createElement("<link>/users/$user</link>"), webFragmentHelper, contextProvider, null);
+
+        assertEquals("/users/fred", link.getRenderedUrl(context));
+    }
+
+    private static Element createElement(final String xml) throws DocumentException
+    {
+        return DocumentHelper.parseText(xml).getRootElement();
+    }
+}
@@ -0,0 +1,75 @@
+package com.atlassian.plugin.web.model;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class LayeredContextMapTest extends TestCase
+{
+    private Map<String, Object> context;
+    private Map<String, Object> provided;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        context = new HashMap<String, Object>();
+        context.put("user", "fred");
+        context.put("project", "TST");
+        provided = new HashMap<String, Object>();
+        provided.put("project", "ABC");
+        provided.put("count", 3);
+    }
+
+    public void testOverlayHidesContext()
+    {
+        final Map<String, Object> view = new LayeredContextMap(context).overlay(provided);
+
+        assertEquals("fred", view.get("user"));
+        assertEquals("ABC", view.get("project"));
+        assertEquals(3, view.get("count"));
+        assertFalse(view.containsKey("missing"));
+
+        final Map<String, Object> expected = new HashMap<String, Object>(context);
+        expected.putAll(provided);
+        assertEquals(expected, new HashMap<String, Object>(view));
+    }
+
+    public void testWritesDoNotChangeLayers()
+    {
+        final Map<String, Object> view = new LayeredContextMap(context).overlay(provided);
+
+        assertEquals("fred", view.put("user", "barney"));
+        assertEquals("ABC", view.remove("project"));
+        assertEquals("barney", view.get("user"));
+        assertFalse(view.containsKey("project"));
+        assertEquals(2, view.size());
+
+        assertEquals("fred", context.get("user"));
+        assertEquals("TST", context.get("project"));
+        assertEquals("ABC", provided.get("project"));
+    }
+
+    public void testOverlayReplacesWrittenEntries()
+    {
+        final LayeredContextMap view = new LayeredContextMap(context);
+        view.put("project", "XYZ");
+        view.put("written", true);
+        view.overlay(provided);
+
+        assertEquals("ABC", view.get("project"));
+        assertEquals(true, view.get("written"));
+        assertEquals(3, view.get("count"));
+    }
+
+    public void testOverlayWithItself()
+    {
+        final LayeredContextMap view = new LayeredContextMap(context);
+        view.put("count", 3);
+
+        assertSame(view, view.overlay(view));
+        assertEquals(3, view.get("count"));
+        assertEquals("fred", view.get("user"));
+    }
+}
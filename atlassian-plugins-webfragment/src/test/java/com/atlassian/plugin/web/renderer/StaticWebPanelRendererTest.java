@@ -0,0 +1,84 @@
+package com.atlassian.plugin.web.renderer;
+
+import com.atlassian.plugin.Plugin;
+import com.atlassian.plugin.PluginInformation;
+import com.atlassian.plugin.util.PluginUtils;
+import junit.framework.TestCase;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StaticWebPanelRendererTest extends TestCase
+{
+    private static final String TEMPLATE = "ResourceTemplateWebPanelTest.txt";
+
+    private ClassLoader classLoader;
+    private Plugin plugin;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        classLoader = mock(ClassLoader.class);
+        when(classLoader.getResourceAsStream(TEMPLATE)).thenAnswer(new Answer<Object>()
+        {
+            public Object answer(final InvocationOnMock invocation)
+            {
+                return StaticWebPanelRendererTest.class.getClassLoader().getResourceAsStream(TEMPLATE);
+            }
+        });
+        final PluginInformation information = new PluginInformation();
+        information.setVersion("1.0");
+        plugin = mock(Plugin.class);
+        when(plugin.getKey()).thenReturn("static-renderer-test-" + getName());
+        when(plugin.getPluginInformation()).thenReturn(information);
+        when(plugin.getDateLoaded()).thenReturn(new Date());
+        when(plugin.getClassLoader()).thenReturn(classLoader);
+    }
+
+    public void testTemplateIsReadOnce() throws IOException
+    {
+        assertTrue(render().contains("This file is used as web panel contents in unit tests."));
+        assertEquals(render(), render());
+        verify(classLoader, times(1)).getResourceAsStream(TEMPLATE);
+    }
+
+    public void testTemplateIsReadAgainWhenPluginIsReloaded() throws IOException
+    {
+        render();
+        when(plugin.getDateLoaded()).thenReturn(new Date(System.currentTimeMillis() + 1000));
+        render();
+        verify(classLoader, times(2)).getResourceAsStream(TEMPLATE);
+    }
+
+    public void testTemplateIsNotCachedInDevMode() throws IOException
+    {
+        System.setProperty(PluginUtils.ATLASSIAN_DEV_MODE, "true");
+        try
+        {
+            render();
+            render();
+        }
+        finally
+        {
+            System.clearProperty(PluginUtils.ATLASSIAN_DEV_MODE);
+        }
+        verify(classLoader, times(2)).getResourceAsStream(TEMPLATE);
+    }
+
+    private String render() throws IOException
+    {
+        final StringWriter writer = new StringWriter();
+        StaticWebPanelRenderer.RENDERER.render(TEMPLATE, plugin, Collections.<String, Object>emptyMap(), writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,145 @@
+package com.atlassian.plugin.web.renderer;
+
+import com.atlassian.plugin.ModuleDescriptor;
+import com.atlassian.plugin.PluginAccessor;
+import com.atlassian.plugin.event.PluginEventManager;
+import com.atlassian.plugin.event.events.PluginModuleDisabledEvent;
+import com.atlassian.plugin.event.events.PluginModuleEnabledEvent;
+import com.atlassian.plugin.event.impl.DefaultPluginEventManager;
+import com.google.common.collect.ImmutableList;
+import junit.framework.TestCase;
+
+import java.util.Collections;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WebPanelRendererRegistryTest extends TestCase
+{
+    private PluginEventManager pluginEventManager;
+    private PluginAccessor pluginAccessor;
+    private WebPanelRenderer velocityRenderer;
+    private WebPanelRendererRegistry registry;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        pluginEventManager = new DefaultPluginEventManager();
+        pluginAccessor = mock(PluginAccessor.class);
+        velocityRenderer = mock(WebPanelRenderer.class);
+        when(velocityRenderer.getResourceType()).thenReturn("velocity");
+        when(pluginAccessor.getEnabledModulesByClass(WebPanelRenderer.class)).thenReturn(ImmutableList.of(velocityRenderer));
+        registry = new WebPanelRendererRegistry(pluginEventManager);
+    }
+
+    public void testRenderersAreLookedUpOnce()
+    {
+        assertSame(velocityRenderer, registry.getRenderer(pluginAccessor, "velocity"));
+        assertSame(velocityRenderer, registry.getRenderer(pluginAccessor, "velocity"));
+        verify(pluginAccessor, times(1)).getEnabledModulesByClass(WebPanelRenderer.class);
+    }
+
+    public void testStaticRendererIsNotLookedUp()
+    {
+        assertSame(StaticWebPanelRenderer.RENDERER, registry.getRenderer(pluginAccessor, StaticWebPanelRenderer.RESOURCE_TYPE));
+        verify(pluginAccessor, times(0)).getEnabledModulesByClass(WebPanelRenderer.class);
+    }
+
+    public void testEnabledRendererIsFound()
+    {
+        assertSame(velocityRenderer, registry.getRenderer(pluginAccessor, "velocity"));
+
+        final WebPanelRenderer soyRenderer = mock(WebPanelRenderer.class);
+        when(soyRenderer.getResourceType()).thenReturn("soy");
+        when(pluginAccessor.getEnabledModulesByClass(WebPanelRenderer.class)).thenReturn(ImmutableList.of(velocityRenderer, soyRenderer));
+        pluginEventManager.broadcast(new PluginModuleEnabledEvent(mockModuleDescriptor(WebPanelRenderer.class)));
+
+        assertSame(soyRenderer, registry.getRenderer(pluginAccessor, "soy"));
+    }
+
+    public void testDisabledRendererIsNotReturned()
+    {
+        assertSame(velocityRenderer, registry.getRenderer(pluginAccessor, "velocity"));
+
+        when(pluginAccessor.getEnabledModulesByClass(WebPanelRenderer.class)).thenReturn(Collections.<WebPanelRenderer>emptyList());
+        pluginEventManager.broadcast(new PluginModuleDisabledEvent(mockModuleDescriptor(WebPanelRenderer.class), false));
+
+        try
+        {
+            registry.getRenderer(pluginAccessor, "velocity");
+            fail();
+        }
+        catch (RendererException re)
+        {
+            // expected
+        }
+    }
+
+    public void testDisabledRendererIsNotReturnedWhenItsClassIsNoLongerKnown()
+    {
+        final ModuleDescriptor<?> enabled = mockModuleDescriptor(WebPanelRenderer.class);
+        when(enabled.getCompleteKey()).thenReturn("plugin:velocity");
+        pluginEventManager.broadcast(new PluginModuleEnabledEvent(enabled));
+        assertSame(velocityRenderer, registry.getRenderer(pluginAccessor, "velocity"));
+
+        when(pluginAccessor.getEnabledModulesByClass(WebPanelRenderer.class)).thenReturn(Collections.<WebPanelRenderer>emptyList());
+        final ModuleDescriptor<?> disabled = mockModuleDescriptor(null);
+        when(disabled.getCompleteKey()).thenReturn("plugin:velocity");
+        pluginEventManager.broadcast(new PluginModuleDisabledEvent(disabled, false));
+
+        try
+        {
+            registry.getRenderer(pluginAccessor, "velocity");
+            fail();
+        }
+        catch (RendererException re)
+        {
+            // expected
+        }
+    }
+
+    public void testOtherModulesDoNotCauseLookUp()
+    {
+        assertSame(velocityRenderer, registry.getRenderer(pluginAccessor, "velocity"));
+        pluginEventManager.broadcast(new PluginModuleEnabledEvent(mockModuleDescriptor(Object.class)));
+        pluginEventManager.broadcast(new PluginModuleDisabledEvent(mockModuleDescriptor(null), false));
+
+        assertSame(velocityRenderer, registry.getRenderer(pluginAccessor, "velocity"));
+        verify(pluginAccessor, times(1)).getEnabledModulesByClass(WebPanelRenderer.class);
+    }
+
+    public void testRenderersAreLookedUpForEachPluginAccessor()
+    {
+        assertSame(velocityRenderer, registry.getRenderer(pluginAccessor, "velocity"));
+
+        final PluginAccessor otherPluginAccessor = mock(PluginAccessor.class);
+        when(otherPluginAccessor.getEnabledModulesByClass(WebPanelRenderer.class)).thenReturn(Collections.<WebPanelRenderer>emptyList());
+        try
+        {
+            registry.getRenderer(otherPluginAccessor, "velocity");
+            fail();
+        }
+        catch (RendererException re)
+        {
+            // expected
+        }
+    }
+
+    public void testRegistriesAreIndependent()
+    {
+        assertSame(velocityRenderer, registry.getRenderer(pluginAccessor, "velocity"));
+        assertSame(velocityRenderer, new WebPanelRendererRegistry(mock(PluginEventManager.class)).getRenderer(pluginAccessor, "velocity"));
+        verify(pluginAccessor, times(2)).getEnabledModulesByClass(WebPanelRenderer.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ModuleDescriptor<?> mockModuleDescriptor(final Class<?> moduleClass)
+    {
+        final ModuleDescriptor descriptor = mock(ModuleDescriptor.class);
+        when(descriptor.getModuleClass()).thenReturn(moduleClass);
+        return descriptor;
+    }
+}
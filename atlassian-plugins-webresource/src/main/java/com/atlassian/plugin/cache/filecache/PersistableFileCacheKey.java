@@ -0,0 +1,14 @@
+package com.atlassian.plugin.cache.filecache;
+
+/**
+ * A {@link FileCacheKey} that can be written to disk, so that a persistent file cache can find the file cached for it
+ * after a restart.
+ * @since 2.11.0
+ */
+public interface PersistableFileCacheKey extends FileCacheKey
+{
+    /**
+     * @return a string that uniquely identifies this key, and is the same for equal keys across restarts. Never null.
+     */
+    String getPersistentKey();
+}
@@ -14,6 +14,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -47,6 +48,18 @@ class CachedFile
     }
 
     private final File file;
+    private final String version;
+    private volatile long fileSize;
+    private volatile long lastAccess;
+    /**
+     * the bytes of this file counted in the size of the owning cache, or {@link #RELEASED} once they no longer count
+     */
+    private final AtomicLong accountedSize = new AtomicLong();
+    private static final long RELEASED = -1;
+    /**
+     * set once the file has been evicted, guarded by the write lock
+     */
+    private boolean evicted;
 //    private transient State state;
 
     /**
@@ -55,12 +68,22 @@ class CachedFile
     final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     /**
-     * Sole constructor.
      * @param file file to create/read when requested.
      */
     public CachedFile(File file) throws IOException
+    {
+        this(file, null);
+    }
+
+    /**
+     * @param file file to create/read when requested.
+     * @param version the version of the contents that will be cached, recorded by persistent caches. May be null.
+     * @since 2.11.0
+     */
+    CachedFile(File file, String version) throws IOException
     {
         this.file = file;
+        this.version = version;
         if (file.exists())
         {
             // delete it, we own this directory
@@ -71,13 +94,76 @@ class CachedFile
         }
     }
 
+    private CachedFile(File file, String version, long fileSize)
+    {
+        this.file = file;
+        this.version = version;
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * Wraps a file that was cached before a restart, rather than deleting it.
+     * @param file the existing cached file
+     * @param version the version of the contents recorded when the file was cached
+     * @param fileSize the size of the file recorded when it was cached
+     * @since 2.11.0
+     */
+    static CachedFile restore(File file, String version, long fileSize)
+    {
+        return new CachedFile(file, version, fileSize);
+    }
+
+    File getFile()
+    {
+        return file;
+    }
+
+    String getVersion()
+    {
+        return version;
+    }
+
     /**
-     * Stream the file to the destination, making use of the cached file if it exists.
+     * @return the size of the cached file in bytes
+     */
+    long fileSize()
+    {
+        return fileSize;
+    }
+
+    /**
+     * Counts the size of this file towards the size of the owning cache, once the file is committed to the cache.
+     * @return the bytes to add to the size of the cache, which is zero if they were already counted, or the file has
+     * been released from the cache
+     * @since 2.11.0
+     */
+    long accountSize()
+    {
+        final long size = fileSize;
+        return accountedSize.compareAndSet(0, size) ? size : 0;
+    }
+
+    /**
+     * Stops counting the size of this file towards the size of the owning cache, once it is removed from the cache.
+     * Later calls to {@link #accountSize()} don't count it again.
+     * @return the bytes to subtract from the size of the cache, which is zero unless they were counted
+     * @since 2.11.0
+     */
+    long releaseSize()
+    {
+        final long size = accountedSize.getAndSet(RELEASED);
+        return size == RELEASED ? 0 : size;
+    }
+
+    /**
+     * Stream the file to the destination, making use of the cached file if it exists. If the file has been evicted,
+     * the input is streamed to the destination without being cached again.
      * @throws IOException on any error caching the file, or writing the file to dest
      */
     public StreamResult stream(OutputStream dest, FileCacheStreamProvider input) throws DownloadException
     {
         boolean cacheHit = true;
+        boolean uncached = false;
 
             Lock currentLock;
             lock.readLock().lock();
@@ -88,18 +174,27 @@ class CachedFile
                 if (!file.exists()) //file has been deleted, we need to re-create it
                 {
                     lock.readLock().unlock();
+                    currentLock = null;
                     lock.writeLock().lock();
                     currentLock = lock.writeLock();
 
-                    if (!file.exists()) //someone else may have written the file while we waited for the writelock..
+                    if (evicted) //evicted while we waited for the writelock, re-creating it would leave an orphaned file
                     {
                         cacheHit = false;
-                        streamToFile(input);
+                        uncached = true;
+                    }
+                    else
+                    {
+                        if (!file.exists()) //someone else may have written the file while we waited for the writelock..
+                        {
+                            cacheHit = false;
+                            streamToFile(input);
+                        }
+                        lock.readLock().lock(); //downgrading the lock
+                        lock.writeLock().unlock();
+                        currentLock = lock.readLock();
+                        streamToDestination(dest);
                     }
-                    lock.readLock().lock(); //downgrading the lock
-                    lock.writeLock().unlock();
-                    currentLock = lock.readLock();
-                    streamToDestination(dest);
                 }
                 else
                 {
@@ -108,9 +203,16 @@ class CachedFile
             }
             finally
             {
-                currentLock.unlock();
+                if (currentLock != null)
+                {
+                    currentLock.unlock();
+                }
             }
 
+        if (uncached)
+        {
+            streamUncached(dest, input);
+        }
         return cacheHit ? StreamResult.SUCCESS_CACHED : StreamResult.SUCCESS_CREATED;
     }
 
@@ -119,10 +221,26 @@ class CachedFile
      * Delete the file, will block until all current reads are completed.
      */
     public void delete() throws DownloadException
+    {
+        delete(false);
+    }
+
+    /**
+     * Delete the file for good, will block until all current reads are completed. Unlike {@link #delete()}, later
+     * calls to stream() will not create the file again, as the cache no longer tracks it.
+     * @since 2.11.0
+     */
+    void evict() throws DownloadException
+    {
+        delete(true);
+    }
+
+    private void delete(boolean evict) throws DownloadException
     {
         try
         {
             lock.writeLock().lock(); // no other readers! safe to delete
+            evicted |= evict;
 
             if (file.exists())
             {
@@ -138,6 +256,24 @@ class CachedFile
         }
     }
 
+    /**
+     * Records the time this file was last used, in ticks of the owning cache.
+     * @since 2.11.0
+     */
+    void touch(long tick)
+    {
+        lastAccess = tick;
+    }
+
+    /**
+     * @return the tick passed to the last call to {@link #touch(long)}
+     * @since 2.11.0
+     */
+    long lastAccess()
+    {
+        return lastAccess;
+    }
+
 
     private void streamToFile(FileCacheStreamProvider input) throws DownloadException
     {
@@ -155,6 +291,20 @@ class CachedFile
         {
             IOUtils.closeQuietly(cacheout);
         }
+        fileSize = file.length();
+    }
+
+    private void streamUncached(OutputStream dest, FileCacheStreamProvider input) throws DownloadException
+    {
+        try
+        {
+            input.writeStream(dest);
+            dest.flush();
+        }
+        catch(IOException e)
+        {
+            throw new DownloadException(e);
+        }
     }
 
     /**
@@ -4,35 +4,58 @@ package com.atlassian.plugin.cache.filecache.impl;
 import com.atlassian.plugin.cache.filecache.FileCache;
 import com.atlassian.plugin.cache.filecache.FileCacheKey;
 import com.atlassian.plugin.cache.filecache.FileCacheStreamProvider;
+import com.atlassian.plugin.cache.filecache.PersistableFileCacheKey;
 import com.atlassian.plugin.servlet.DownloadException;
+import com.google.common.base.Supplier;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * This implementation does not remember its state across restarts.
+ * By default this implementation does not remember its state across restarts. If constructed with a version supplier,
+ * it records the cached files in a manifest in the temp directory, and the files that survive a restart are used again
+ * for the same keys, as long as their version still matches. Only keys that are {@link PersistableFileCacheKey}s are
+ * recorded.
  * <p/>
- * If a key is cached, calls to stream() will not block other calls trying to stream the same key, or other keys.
+ * Cached files are looked up in a concurrent map, so calls to stream() for cached keys never block each other, or
+ * calls for keys that are not cached.
  * <p/>
  * If a key is not cached:
- * - calling stream() will not block the stream of other cached keys.
- * - it will block other calls to stream() for the same key (it waits for the file to be finished caching)
- * - a cache-size check is performed
+ * - the first call to stream() creates the file, other calls to stream() for the same key wait for it to be finished
+ * caching, rather than creating it again
+ * - a cache-size check is scheduled once the file has been created
  * <p/>
- * During a cache-size check:
- * - in-progress calls to stream() will not block
- * - new calls to stream() WILL block
- * - other cache-size checks will block
+ * Cache-size checks, deletion of evicted files and writing the manifest happen on a background thread, so they never
+ * hold up a call to stream(). Each file records when it was last used, and the least recently used files are evicted
+ * first, starting with any files cached before a restart that haven't been requested since.
  * <p/>
+ * The cache size is limited by both the number of files and their total size in bytes. The number of hits, misses and
+ * evictions is counted, to help choose the limits.
  * <p/>
  *
  * @since 2.11.0
@@ -41,18 +64,43 @@ public class LRUFileCache implements FileCache
 {
 
     private static final String EXT = ".cachedfile";
+    static final String MANIFEST = "filecache.manifest";
+    private static final String MANIFEST_FORMAT = "1";
 
     private final File tmpDir;
     private final int maxFiles;
+    private final long maxBytes;
+    private final Supplier<String> versionSupplier;
 
-    private final LinkedHashMap<FileCacheKey, CachedFile> nodes;
-    private final Lock nodesLock = new ReentrantLock();
+    private final ConcurrentMap<FileCacheKey, CachedFile> nodes = new ConcurrentHashMap<FileCacheKey, CachedFile>();
+    /**
+     * Files cached before a restart that haven't been requested yet, by persistent key
+     */
+    private final ConcurrentMap<String, CachedFile> restored = new ConcurrentHashMap<String, CachedFile>();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final Executor maintenanceExecutor;
+    private final AtomicBoolean maintenanceScheduled = new AtomicBoolean();
+    private final AtomicBoolean manifestChanged = new AtomicBoolean();
+    private final Object maintenanceLock = new Object();
+    private final Runnable maintenance = new Runnable()
+    {
+        public void run()
+        {
+            maintain();
+        }
+    };
     private static final Logger log = LoggerFactory.getLogger(LRUFileCache.class);
 
     private final AtomicInteger filenameCounter = new AtomicInteger(0);
 
     /**
-     * Sole constructor.
+     * Creates a cache that is cleared on startup, limited by the number of files only.
      *
      * @param tempDir provides information as to where to store cache files.
      * @param maxFiles               maximum number of files to retain. This class will try to honour this but at any point there may be
@@ -60,6 +108,41 @@ public class LRUFileCache implements FileCache
      * @throws IOException if the temp directory could not be created, or is not a directory.
      */
     public LRUFileCache(File tempDir, int maxFiles) throws IOException
+    {
+        this(tempDir, maxFiles, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param tempDir provides information as to where to store cache files.
+     * @param maxFiles maximum number of files to retain, see {@link #LRUFileCache(File, int)}
+     * @param maxBytes maximum total size of the files to retain. Like maxFiles, this is honoured after each new file is
+     *                 cached, so it may be exceeded while files are being created.
+     * @throws IOException if the temp directory could not be created, or is not a directory.
+     * @since 2.11.0
+     */
+    public LRUFileCache(File tempDir, int maxFiles, long maxBytes) throws IOException
+    {
+        this(tempDir, maxFiles, maxBytes, null);
+    }
+
+    /**
+     * Creates a persistent cache, which keeps the files cached by a previous instance using the same directory.
+     *
+     * @param tempDir provides information as to where to store cache files.
+     * @param maxFiles maximum number of files to retain, see {@link #LRUFileCache(File, int)}
+     * @param maxBytes maximum total size of the files to retain, see {@link #LRUFileCache(File, int, long)}
+     * @param versionSupplier supplies the current version of the cached contents, such as a digest of the system
+     *                        counter and plugin versions. A file cached before a restart is only used again if it was
+     *                        cached with the current version. If null, the cache is not persistent.
+     * @throws IOException if the temp directory could not be created, or is not a directory.
+     * @since 2.11.0
+     */
+    public LRUFileCache(File tempDir, int maxFiles, long maxBytes, Supplier<String> versionSupplier) throws IOException
+    {
+        this(tempDir, maxFiles, maxBytes, versionSupplier, createMaintenanceExecutor());
+    }
+
+    LRUFileCache(File tempDir, int maxFiles, long maxBytes, Supplier<String> versionSupplier, Executor maintenanceExecutor) throws IOException
     {
         this.tmpDir = tempDir;
 
@@ -67,19 +150,29 @@ public class LRUFileCache implements FileCache
         {
             throw new IllegalArgumentException("Max files can not be less than one");
         }
+        if (maxBytes < 1)
+        {
+            throw new IllegalArgumentException("Max bytes can not be less than one");
+        }
         this.maxFiles = maxFiles;
-
-        nodes = new LinkedHashMap<FileCacheKey, CachedFile>(16, 0.75f, true);
+        this.maxBytes = maxBytes;
+        this.versionSupplier = versionSupplier;
+        this.maintenanceExecutor = maintenanceExecutor;
 
         if (!tmpDir.mkdirs())
         {
-            //if the directory exists the above will return false, and if it does exist we must clear it as we do not allow for restarts
+            //if the directory exists the above will return false, and if it does exist we must clear whatever we can't
+            //use again, which is everything unless we are persistent
             if (tmpDir.exists() && tmpDir.isDirectory())
             {
+                if (isPersistent())
+                {
+                    restore();
+                }
                 File[] files = tmpDir.listFiles();
                 for (File f : files)
                 {
-                    if (!f.delete())
+                    if (!isRestored(f) && !f.delete())
                     {
                         log.warn("Could not delete file: " + f.getAbsolutePath());
                     }
@@ -91,6 +184,11 @@ public class LRUFileCache implements FileCache
             throw new IOException("Could not create tmp directory " + tmpDir);
         }
 
+        if (isPersistent())
+        {
+            manifestChanged.set(true);
+            maintain();
+        }
     }
 
     /**
@@ -107,6 +205,52 @@ public class LRUFileCache implements FileCache
         streamImpl(key, dest, input);
     }
 
+    /**
+     * @return the number of calls to stream() that used a cached file, including calls that waited for another call
+     * to cache the file
+     * @since 2.11.0
+     */
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of calls to stream() that had to cache a new file
+     * @since 2.11.0
+     */
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of files evicted to keep the cache within its limits
+     * @since 2.11.0
+     */
+    public long getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of files currently in the cache, including files cached before a restart
+     * @since 2.11.0
+     */
+    public int getFileCount()
+    {
+        return nodes.size() + restored.size();
+    }
+
+    /**
+     * @return the total size of the files currently in the cache
+     * @since 2.11.0
+     */
+    public long getTotalBytes()
+    {
+        return totalBytes.get();
+    }
+
     /**
      * Stream from file if exists, otherwise create file and stream from it.
      *
@@ -114,102 +258,416 @@ public class LRUFileCache implements FileCache
      */
     boolean streamImpl(FileCacheKey key, OutputStream dest, FileCacheStreamProvider input) throws DownloadException
     {
-
         boolean newNode = false;
 
-        CachedFile cachedFile = null;
-        try
+        CachedFile cachedFile = nodes.get(key);
+        if (cachedFile == null)
         {
-                nodesLock.lock();
-                try
-                {
-                    cachedFile = nodes.get(key);
-                    if (cachedFile == null)
-                    {
-                        cachedFile = newNode();
-                        nodes.put(key, cachedFile);
-                        newNode = true;
-                    }
-                }
-                finally
-                {
-                    nodesLock.unlock();
-                }
+            // only work out the version on a miss, as it may need to look at every plugin
+            final String version = isPersistent() ? versionSupplier.get() : null;
+            CachedFile candidate = takeRestored(key, version);
+            final boolean restoredCandidate = candidate != null;
+            if (candidate == null)
+            {
+                candidate = newNode(version);
+            }
+            cachedFile = nodes.putIfAbsent(key, candidate);
+            if (cachedFile == null)
+            {
+                cachedFile = candidate;
+                newNode = !restoredCandidate;
+            }
+            else if (restoredCandidate)
+            {
+                // another call cached the key first, so the restored file is no longer needed
+                totalBytes.addAndGet(-candidate.releaseSize());
+                deleteLater(candidate);
+            }
+        }
+        cachedFile.touch(clock.incrementAndGet());
 
-                cachedFile.stream(dest, input);
+        try
+        {
+            cachedFile.stream(dest, input);
         }
-        catch (IOException e)
+        catch (DownloadException e)
         {
-
-            clean(key, newNode);
-            new DownloadException(e);
+            clean(key, cachedFile, newNode);
+            throw e;
         }
         catch (RuntimeException e)
         {
-            clean(key, newNode);
+            clean(key, cachedFile, newNode);
             throw e;
         }
-        finally
+
+        if (newNode)
         {
-            if (newNode)
+            misses.incrementAndGet();
+            // the file is committed now that it has been written, so update the size of the cache, unless it has
+            // already been evicted, and maybe evict some nodes
+            totalBytes.addAndGet(cachedFile.accountSize());
+            if (isPersistent())
             {
-                nodesLock.lock();
-                // update the size of the cache, and maybe evict some nodes
-                try
-                {
-                    while (nodes.size() > maxFiles)
-                    {
-                        Iterator<Map.Entry<FileCacheKey, CachedFile>> iterator = nodes.entrySet().iterator();
-                        Map.Entry<FileCacheKey, CachedFile> evictEntry = iterator.next();
-                        iterator.remove();
+                manifestChanged.set(true);
+            }
+            if (isPersistent() || isOverLimits())
+            {
+                scheduleMaintenance();
+            }
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
+        return !newNode;
+    }
 
-                        CachedFile evictee = evictEntry.getValue();
-                        evictee.delete();
-                    }
-                }
-                finally
-                {
-                    nodesLock.unlock();
-                }
+    private boolean isPersistent()
+    {
+        return versionSupplier != null;
+    }
+
+    private boolean isOverLimits()
+    {
+        return getFileCount() > maxFiles || totalBytes.get() > maxBytes;
+    }
+
+    private void scheduleMaintenance()
+    {
+        if (maintenanceScheduled.compareAndSet(false, true))
+        {
+            maintenanceExecutor.execute(maintenance);
+        }
+    }
+
+    private void maintain()
+    {
+        synchronized (maintenanceLock)
+        {
+            // clear the flag first, so that changes made while we run schedule another run
+            maintenanceScheduled.set(false);
+            evict();
+            if (isPersistent() && manifestChanged.getAndSet(false))
+            {
+                writeManifest();
             }
         }
+    }
 
+    /**
+     * Must be called while holding the maintenance lock. Evicts the least recently used files until the cache is within
+     * its limits, always keeping the most recently used file.
+     */
+    private void evict()
+    {
+        if (!isOverLimits())
+        {
+            return;
+        }
+        final List<Entry> entries = snapshot();
+        for (int i = 0; i < entries.size() - 1 && isOverLimits(); i++)
+        {
+            final Entry entry = entries.get(i);
+            if (entry.remove())
+            {
+                evictions.incrementAndGet();
+                manifestChanged.set(true);
+                // only the bytes that were counted are subtracted, even if the file is still being written
+                totalBytes.addAndGet(-entry.cachedFile.releaseSize());
+                delete(entry.cachedFile);
+            }
+        }
+        if (log.isDebugEnabled())
+        {
+            log.debug("File cache in " + tmpDir.getAbsolutePath() + " holds " + getFileCount() + " files, " + totalBytes.get() +
+                " bytes, after " + hits.get() + " hits, " + misses.get() + " misses and " + evictions.get() + " evictions");
+        }
+    }
 
-        return !newNode;
+    /**
+     * @return all the files in the cache, least recently used first
+     */
+    private List<Entry> snapshot()
+    {
+        final List<Entry> entries = new ArrayList<Entry>(getFileCount());
+        for (Map.Entry<String, CachedFile> entry : restored.entrySet())
+        {
+            entries.add(new Entry(restored, entry.getKey(), entry.getValue()));
+        }
+        for (Map.Entry<FileCacheKey, CachedFile> entry : nodes.entrySet())
+        {
+            entries.add(new Entry(nodes, entry.getKey(), entry.getValue()));
+        }
+        Collections.sort(entries);
+        return entries;
     }
 
-    private void clean(FileCacheKey key, boolean newNode)
+    /**
+     * Takes the file cached for the key before a restart, if it is still the current version.
+     */
+    private CachedFile takeRestored(FileCacheKey key, String version)
     {
-        if (newNode)
+        if (!(key instanceof PersistableFileCacheKey) || restored.isEmpty())
+        {
+            return null;
+        }
+        final CachedFile cachedFile = restored.remove(((PersistableFileCacheKey) key).getPersistentKey());
+        if (cachedFile == null)
+        {
+            return null;
+        }
+        if (version != null && version.equals(cachedFile.getVersion()))
+        {
+            return cachedFile;
+        }
+        totalBytes.addAndGet(-cachedFile.releaseSize());
+        manifestChanged.set(true);
+        deleteLater(cachedFile);
+        return null;
+    }
+
+    private void clean(FileCacheKey key, CachedFile cachedFile, boolean newNode)
+    {
+        if (newNode && nodes.remove(key, cachedFile))
+        {
+            // never committed, but released so that a later commit can't count it
+            totalBytes.addAndGet(-cachedFile.releaseSize());
+            deleteLater(cachedFile);
+        }
+    }
+
+    private void deleteLater(final CachedFile cachedFile)
+    {
+        maintenanceExecutor.execute(new Runnable()
+        {
+            public void run()
+            {
+                delete(cachedFile);
+            }
+        });
+    }
+
+    private static void delete(CachedFile cachedFile)
+    {
+        try
+        {
+            cachedFile.evict();
+        }
+        catch (DownloadException e)
         {
-            CachedFile item;
-            nodesLock.lock();
+            log.warn("Could not delete file ", e);
+        }
+    }
+
+    private static ExecutorService createMaintenanceExecutor()
+    {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                final Thread thread = new Thread(r, "LRUFileCache:maintenance");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // let the thread die when the cache is idle, as nothing shuts the cache down
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private CachedFile newNode(String version) throws DownloadException
+    {
+        int id = filenameCounter.incrementAndGet();
+        File file = new File(tmpDir, id + EXT);
+        try
+        {
+            return new CachedFile(file, version);
+        }
+        catch (IOException e)
+        {
+            throw new DownloadException(e);
+        }
+    }
+
+    private boolean isRestored(File file)
+    {
+        if (file.getName().equals(MANIFEST))
+        {
+            return isPersistent();
+        }
+        for (CachedFile cachedFile : restored.values())
+        {
+            if (cachedFile.getFile().equals(file))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the manifest written before a restart, keeping the entries whose files are intact.
+     */
+    private void restore()
+    {
+        final File manifestFile = new File(tmpDir, MANIFEST);
+        if (!manifestFile.isFile())
+        {
+            return;
+        }
+        final Properties manifest = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new BufferedInputStream(new FileInputStream(manifestFile));
+            manifest.load(in);
+        }
+        catch (IOException e)
+        {
+            log.warn("Could not read file cache manifest " + manifestFile.getAbsolutePath() + ", starting with an empty cache", e);
+            return;
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+        if (!MANIFEST_FORMAT.equals(manifest.getProperty("format")))
+        {
+            return;
+        }
+
+        int maxId = 0;
+        for (int i = 0; manifest.getProperty(entryProperty(i, "key")) != null; i++)
+        {
+            final String key = manifest.getProperty(entryProperty(i, "key"));
+            final String fileName = manifest.getProperty(entryProperty(i, "file"), "");
+            final String version = manifest.getProperty(entryProperty(i, "version"));
+            final long size;
+            final int id;
             try
             {
-                item = nodes.remove(key);
+                size = Long.parseLong(manifest.getProperty(entryProperty(i, "size"), ""));
+                id = Integer.parseInt(fileName.substring(0, Math.max(0, fileName.length() - EXT.length())));
             }
-            finally
+            catch (NumberFormatException e)
             {
-                nodesLock.unlock();
+                continue;
             }
-            if (item != null)
+            final File file = new File(tmpDir, id + EXT);
+            if (version != null && file.isFile() && file.length() == size)
             {
-                try
-                {
-                    item.delete();
-                }
-                catch (DownloadException e)
+                // restored files keep the order they were used in, and are older than anything used after startup
+                final CachedFile cachedFile = CachedFile.restore(file, version, size);
+                cachedFile.touch(clock.incrementAndGet());
+                restored.put(key, cachedFile);
+                totalBytes.addAndGet(cachedFile.accountSize());
+                maxId = Math.max(maxId, id);
+            }
+        }
+        filenameCounter.set(maxId);
+        if (log.isDebugEnabled())
+        {
+            log.debug("Restored " + restored.size() + " cached files from " + tmpDir.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Must be called while holding the maintenance lock. Writes the persistable entries to the manifest, least recently
+     * used first.
+     */
+    private void writeManifest()
+    {
+        final Properties manifest = new Properties();
+        manifest.setProperty("format", MANIFEST_FORMAT);
+        int i = 0;
+        for (Entry entry : snapshot())
+        {
+            final String key = entry.getPersistentKey();
+            if (key != null && entry.cachedFile.getVersion() != null && entry.cachedFile.fileSize() > 0)
+            {
+                addEntry(manifest, i++, key, entry.cachedFile);
+            }
+        }
+
+        final File manifestFile = new File(tmpDir, MANIFEST);
+        final File newManifestFile = new File(tmpDir, MANIFEST + ".new");
+        OutputStream out = null;
+        try
+        {
+            out = new BufferedOutputStream(new FileOutputStream(newManifestFile));
+            manifest.store(out, "Atlassian Plugins file cache");
+            out.close();
+            out = null;
+            if (!newManifestFile.renameTo(manifestFile))
+            {
+                // some platforms won't rename over an existing file
+                manifestFile.delete();
+                if (!newManifestFile.renameTo(manifestFile))
                 {
-                    log.warn("Could not delete file ", e);
+                    throw new IOException("Could not rename " + newManifestFile + " to " + manifestFile);
                 }
             }
         }
+        catch (IOException e)
+        {
+            log.warn("Could not write file cache manifest " + manifestFile.getAbsolutePath(), e);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(out);
+        }
     }
 
-    private CachedFile newNode() throws IOException
+    private static void addEntry(Properties manifest, int i, String key, CachedFile cachedFile)
     {
-        int id = filenameCounter.incrementAndGet();
-        File file = new File(tmpDir, id + EXT);
-        return new CachedFile(file);
+        manifest.setProperty(entryProperty(i, "key"), key);
+        manifest.setProperty(entryProperty(i, "file"), cachedFile.getFile().getName());
+        manifest.setProperty(entryProperty(i, "version"), cachedFile.getVersion());
+        manifest.setProperty(entryProperty(i, "size"), String.valueOf(cachedFile.fileSize()));
+    }
+
+    private static String entryProperty(int i, String name)
+    {
+        return "entry." + i + "." + name;
+    }
+
+    /**
+     * A cached file, and the map and key it is cached under, ordered by when it was last used.
+     */
+    private static final class Entry implements Comparable<Entry>
+    {
+        private final ConcurrentMap<?, CachedFile> map;
+        private final Object key;
+        private final CachedFile cachedFile;
+        private final long lastAccess;
+
+        Entry(ConcurrentMap<?, CachedFile> map, Object key, CachedFile cachedFile)
+        {
+            this.map = map;
+            this.key = key;
+            this.cachedFile = cachedFile;
+            // read once, so the order can't change while sorting
+            this.lastAccess = cachedFile.lastAccess();
+        }
+
+        boolean remove()
+        {
+            return map.remove(key, cachedFile);
+        }
+
+        String getPersistentKey()
+        {
+            if (key instanceof String)
+            {
+                return (String) key;
+            }
+            return key instanceof PersistableFileCacheKey ? ((PersistableFileCacheKey) key).getPersistentKey() : null;
+        }
+
+        public int compareTo(Entry other)
+        {
+            return lastAccess < other.lastAccess ? -1 : (lastAccess == other.lastAccess ? 0 : 1);
+        }
     }
-}
\ No newline at end of file
+}
@@ -4,7 +4,6 @@ import static com.atlassian.plugin.webresource.ContextBatchPluginResource.CONTEX
 import static com.atlassian.plugin.webresource.ResourceUtils.getType;
 import static com.google.common.collect.ImmutableList.copyOf;
 import static com.google.common.collect.Iterables.concat;
-import static com.google.common.collect.Iterables.contains;
 import static com.google.common.collect.Iterables.transform;
 import static com.google.common.collect.Sets.newHashSet;
 
@@ -12,6 +11,7 @@ import com.atlassian.plugin.ModuleDescriptor;
 import com.atlassian.plugin.cache.filecache.impl.NonCachingFileCache;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Ordering;
 import org.apache.commons.codec.binary.Hex;
@@ -59,7 +59,7 @@ class ContextBatch
     private final String key;
     private final Iterable<String> contexts;
     private final Iterable<WebResourceModuleDescriptor> resources;
-    private final Iterable<String> resourceKeys;
+    private final Set<String> resourceKeys;
     private final Set<PluginResourceBatchParams> resourceParams;
 
     ContextBatch(final String context, final Iterable<WebResourceModuleDescriptor> resources)
@@ -79,12 +79,12 @@ class ContextBatch
         // this.
         this.resources = ImmutableSortedSet.copyOf(MODULE_KEY_ORDERING, resources);
         // A convenience object to make searching easier
-        this.resourceKeys = transform(resources, new TransformDescriptorToKey());
+        this.resourceKeys = ImmutableSet.copyOf(transform(this.resources, new TransformDescriptorToKey()));
     }
 
     boolean isResourceIncluded(final String resourceModuleKey)
     {
-        return contains(resourceKeys, resourceModuleKey);
+        return resourceKeys.contains(resourceModuleKey);
     }
 
     void addResourceType(final PluginResource pluginResource)
@@ -7,12 +7,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Performs a calculation on many referenced contexts, and produces an set of intermingled batched-contexts and residual
@@ -29,15 +35,26 @@ class ContextBatchBuilder
     private final PluginResourceLocator pluginResourceLocator;
     private final ResourceDependencyResolver dependencyResolver;
     private final ResourceBatchingConfiguration batchingConfiguration;
+    private final PlanCache planCache;
 
-    private final List<String> allIncludedResources = new ArrayList<String>();
+    private final Set<String> allIncludedResources = new LinkedHashSet<String>();
     private final Set<String> skippedResources = new HashSet<String>();
 
     ContextBatchBuilder(final PluginResourceLocator pluginResourceLocator, final ResourceDependencyResolver dependencyResolver, ResourceBatchingConfiguration batchingConfiguration)
+    {
+        this(pluginResourceLocator, dependencyResolver, batchingConfiguration, null);
+    }
+
+    /**
+     * @param planCache the plans built for earlier requests, may be null to always build a new plan
+     * @since 2.11.0
+     */
+    ContextBatchBuilder(final PluginResourceLocator pluginResourceLocator, final ResourceDependencyResolver dependencyResolver, ResourceBatchingConfiguration batchingConfiguration, final PlanCache planCache)
     {
         this.pluginResourceLocator = pluginResourceLocator;
         this.dependencyResolver = dependencyResolver;
         this.batchingConfiguration = batchingConfiguration;
+        this.planCache = planCache;
     }
 
     Iterable<PluginResource> build(final Iterable<String> includedContexts)
@@ -47,25 +64,65 @@ class ContextBatchBuilder
 
     Iterable<PluginResource> build(final Iterable<String> includedContexts, final WebResourceFilter filter)
     {
+        final List<String> contexts = ImmutableList.copyOf(includedContexts);
+        final List<Iterable<WebResourceModuleDescriptor>> contextResources = new ArrayList<Iterable<WebResourceModuleDescriptor>>(contexts.size());
+        for (final String context : contexts)
+        {
+            contextResources.add(dependencyResolver.getDependenciesInContext(context, skippedResources));
+        }
+
+        // a plan only applies to a builder that hasn't included anything yet
+        final PlanKey planKey = (planCache != null) && allIncludedResources.isEmpty() ? new PlanKey(contexts, filter,
+            batchingConfiguration.isContextBatchingEnabled(), batchingConfiguration.isPluginWebResourceBatchingEnabled()) : null;
+        if (planKey != null)
+        {
+            final Plan plan = planCache.get(planKey, contextResources);
+            if (plan != null)
+            {
+                allIncludedResources.addAll(plan.includedResources);
+                // callers remove the resources as they write them
+                return new ArrayList<PluginResource>(plan.resources);
+            }
+        }
+
+        final Iterable<PluginResource> resources;
         if (!batchingConfiguration.isContextBatchingEnabled())
         {
-             return getUnbatchedResources(includedContexts, filter);
+            resources = getUnbatchedResources(contextResources, filter);
+        }
+        else
+        {
+            resources = getBatchedResources(contexts, contextResources, filter);
         }
 
+        if (planKey != null)
+        {
+            final Plan plan = new Plan(contextResources, resources, allIncludedResources);
+            planCache.put(planKey, plan);
+            return new ArrayList<PluginResource>(plan.resources);
+        }
+        return resources;
+    }
+
+    private Iterable<PluginResource> getBatchedResources(final List<String> contexts, final List<Iterable<WebResourceModuleDescriptor>> contextResources, final WebResourceFilter filter)
+    {
         // There are three levels to consider here. In order:
         // 1. Type (CSS/JS)
         // 2. Parameters (ieOnly, media, etc)
         // 3. Context
-        final List<ContextBatch> batches = new ArrayList<ContextBatch>();
+        final Set<ContextBatch> batches = new LinkedHashSet<ContextBatch>();
+        // the batch each included resource ended up in
+        final Map<String, ContextBatch> batchesByResource = new HashMap<String, ContextBatch>();
 
-        for (final String context : includedContexts)
+        for (int c = 0; c < contexts.size(); c++)
         {
-            final ContextBatch contextBatch = new ContextBatch(context, dependencyResolver.getDependenciesInContext(context, skippedResources));
-            final List<ContextBatch> mergeList = new ArrayList<ContextBatch>();
+            final String context = contexts.get(c);
+            final ContextBatch contextBatch = new ContextBatch(context, contextResources.get(c));
+            final Set<ContextBatch> mergeList = new LinkedHashSet<ContextBatch>();
             for (final WebResourceModuleDescriptor contextResource : contextBatch.getResources())
             {
                 // only go deeper if it is not already included
-                if (!allIncludedResources.contains(contextResource.getCompleteKey()))
+                if (allIncludedResources.add(contextResource.getCompleteKey()))
                 {
                     for (final PluginResource pluginResource : pluginResourceLocator.getPluginResources(contextResource.getCompleteKey()))
                     {
@@ -74,48 +131,44 @@ class ContextBatchBuilder
                             contextBatch.addResourceType(pluginResource);
                         }
                     }
-
-                    allIncludedResources.add(contextResource.getCompleteKey());
                 }
                 else
                 {
                     // we have an overlapping context, find it.
                     // IMPORTANT: Don't add the overlapping resource to the batch otherwise there'll be duplicates
-                    for (final ContextBatch batch : batches)
+                    final ContextBatch batch = batchesByResource.get(contextResource.getCompleteKey());
+                    if ((batch != null) && mergeList.add(batch))
                     {
-                        if (!mergeList.contains(batch) && batch.isResourceIncluded(contextResource.getCompleteKey()))
+                        if (log.isDebugEnabled())
                         {
-                            if (log.isDebugEnabled())
-                            {
-                                log.debug("Context: {} shares a resource with {}: {}", new String[] { context, batch.getKey(), contextResource.getCompleteKey() });
-                            }
-
-                            mergeList.add(batch);
+                            log.debug("Context: {} shares a resource with {}: {}", new String[] { context, batch.getKey(), contextResource.getCompleteKey() });
                         }
                     }
                 }
             }
 
             // Merge all the flagged contexts
+            ContextBatch resultBatch = contextBatch;
             if (!mergeList.isEmpty())
             {
-                ContextBatch mergedBatch = mergeList.get(0);
+                final Iterator<ContextBatch> mergingBatches = mergeList.iterator();
+                ContextBatch mergedBatch = mergingBatches.next();
                 batches.remove(mergedBatch);
 
-                for (int i = 1; i < mergeList.size(); i++)
+                while (mergingBatches.hasNext())
                 {
-                    final ContextBatch mergingBatch = mergeList.get(i);
+                    final ContextBatch mergingBatch = mergingBatches.next();
                     mergedBatch = ContextBatch.merge(mergedBatch, mergingBatch);
                     batches.remove(mergingBatch);
                 }
 
-                mergedBatch = ContextBatch.merge(mergedBatch, contextBatch);
-                batches.add(mergedBatch);
+                resultBatch = ContextBatch.merge(mergedBatch, contextBatch);
             }
-            else
+            // Otherwise just add a new one
+            batches.add(resultBatch);
+            for (final WebResourceModuleDescriptor resource : resultBatch.getResources())
             {
-                // Otherwise just add a new one
-                batches.add(contextBatch);
+                batchesByResource.put(resource.getCompleteKey(), resultBatch);
             }
         }
 
@@ -130,16 +183,14 @@ class ContextBatchBuilder
     }
 
     // If context batching is not enabled, then just add all the resources that would have been added in the context anyway.
-    private Iterable<PluginResource> getUnbatchedResources(final Iterable<String> includedContexts, final WebResourceFilter filter)
+    private Iterable<PluginResource> getUnbatchedResources(final List<Iterable<WebResourceModuleDescriptor>> contextResources, final WebResourceFilter filter)
     {
         LinkedHashSet<PluginResource> includedResources = new LinkedHashSet<PluginResource>();
-        for (final String context : includedContexts)
+        for (final Iterable<WebResourceModuleDescriptor> resources : contextResources)
         {
-            Iterable<WebResourceModuleDescriptor> contextResources = dependencyResolver.getDependenciesInContext(context, skippedResources);
-
-            for (final WebResourceModuleDescriptor contextResource : contextResources)
+            for (final WebResourceModuleDescriptor contextResource : resources)
             {
-                if (!allIncludedResources.contains(contextResource.getCompleteKey()))
+                if (allIncludedResources.add(contextResource.getCompleteKey()))
                 {
                     final List<PluginResource> moduleResources = pluginResourceLocator.getPluginResources(contextResource.getCompleteKey());
                     for (final PluginResource moduleResource : moduleResources)
@@ -149,8 +200,6 @@ class ContextBatchBuilder
                             includedResources.add(moduleResource);
                         }
                     }
-
-                    allIncludedResources.add(contextResource.getCompleteKey());
                 }
             }
         }
@@ -167,4 +216,105 @@ class ContextBatchBuilder
     {
         return skippedResources;
     }
+
+    /**
+     * Remembers the resources built for each combination of contexts, so that pages requiring the same contexts don't
+     * build and merge their batches again. A plan is only reused if the dependency resolver returns the same resolved
+     * resources for each context, which a resolver that memoizes its resolutions does until the web resources change.
+     *
+     * @since 2.11.0
+     */
+    static final class PlanCache
+    {
+        private static final int MAX_PLANS = 500;
+
+        private final ConcurrentMap<PlanKey, Plan> plans = new ConcurrentHashMap<PlanKey, Plan>();
+
+        Plan get(final PlanKey key, final List<Iterable<WebResourceModuleDescriptor>> contextResources)
+        {
+            final Plan plan = plans.get(key);
+            if ((plan == null) || !plan.isBuiltFrom(contextResources))
+            {
+                return null;
+            }
+            return plan;
+        }
+
+        void put(final PlanKey key, final Plan plan)
+        {
+            if (plans.size() >= MAX_PLANS)
+            {
+                // an unusual number of context combinations, start again rather than keep them all
+                plans.clear();
+            }
+            plans.put(key, plan);
+        }
+    }
+
+    static final class Plan
+    {
+        private final List<Iterable<WebResourceModuleDescriptor>> contextResources;
+        private final List<PluginResource> resources;
+        private final List<String> includedResources;
+
+        Plan(final List<Iterable<WebResourceModuleDescriptor>> contextResources, final Iterable<PluginResource> resources, final Iterable<String> includedResources)
+        {
+            this.contextResources = ImmutableList.copyOf(contextResources);
+            this.resources = ImmutableList.copyOf(resources);
+            this.includedResources = ImmutableList.copyOf(includedResources);
+        }
+
+        boolean isBuiltFrom(final List<Iterable<WebResourceModuleDescriptor>> current)
+        {
+            for (int i = 0; i < current.size(); i++)
+            {
+                if (current.get(i) != contextResources.get(i))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static final class PlanKey
+    {
+        private final List<String> contexts;
+        private final WebResourceFilter filter;
+        private final boolean contextBatching;
+        private final boolean pluginBatching;
+
+        PlanKey(final List<String> contexts, final WebResourceFilter filter, final boolean contextBatching, final boolean pluginBatching)
+        {
+            this.contexts = contexts;
+            this.filter = filter;
+            this.contextBatching = contextBatching;
+            this.pluginBatching = pluginBatching;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof PlanKey))
+            {
+                return false;
+            }
+            final PlanKey other = (PlanKey) o;
+            return contexts.equals(other.contexts) && filter.equals(other.filter) && (contextBatching == other.contextBatching) && (pluginBatching == other.pluginBatching);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = contexts.hashCode();
+            result = 31 * result + filter.hashCode();
+            result = 31 * result + (contextBatching ? 1 : 0);
+            result = 31 * result + (pluginBatching ? 1 : 0);
+            return result;
+        }
+    }
 }
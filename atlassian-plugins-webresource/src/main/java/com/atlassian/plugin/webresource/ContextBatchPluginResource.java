@@ -8,7 +8,6 @@ import com.atlassian.util.concurrent.NotNull;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collections;
 import java.util.Map;
@@ -73,14 +72,7 @@ class ContextBatchPluginResource implements DownloadableResource, BatchResource,
 
     public void serveResource(final HttpServletRequest request, final HttpServletResponse response) throws DownloadException
     {
-        try
-        {
-            fileCache.stream(cacheKey, response.getOutputStream(), delegate);
-        }
-        catch (IOException e)
-        {
-            throw new DownloadException(e);
-        }
+        GzipVariant.serve(fileCache, cacheKey, delegate, getType(), request, response);
     }
 
     public void streamResource(final OutputStream out) throws DownloadException
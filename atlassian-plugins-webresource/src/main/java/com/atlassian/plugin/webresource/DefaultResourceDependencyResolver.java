@@ -1,26 +1,45 @@
 package com.atlassian.plugin.webresource;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.Iterables.contains;
 import static java.util.Collections.emptyMap;
-import static java.util.Collections.unmodifiableCollection;
 
 import com.atlassian.plugin.ModuleDescriptor;
+import com.atlassian.plugin.event.PluginEventListener;
+import com.atlassian.plugin.event.PluginEventManager;
+import com.atlassian.plugin.event.events.PluginModuleDisabledEvent;
+import com.atlassian.plugin.event.events.PluginModuleEnabledEvent;
 import com.atlassian.util.concurrent.ResettableLazyReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Resolves web resource dependencies against a graph of the enabled web resources, which indexes them by key and by
+ * context. The graph is rebuilt whenever the enabled web resources change, and it memoizes the order of each resolved
+ * module and context, so repeated lookups during page rendering don't walk the dependency tree again. Resolutions that
+ * evaluate a condition, or need a module that isn't in the graph, are not memoized.
+ * <p>
+ * If constructed with a {@link PluginEventManager}, the graph is rebuilt once a web resource module has been enabled
+ * or disabled, and is otherwise used without asking the plugin accessor. Without one, the enabled web resources are
+ * compared with those of the graph on every lookup.
+ */
 class DefaultResourceDependencyResolver implements ResourceDependencyResolver
 {
     private static final Logger log = LoggerFactory.getLogger(DefaultResourceDependencyResolver.class);
@@ -28,11 +47,30 @@ class DefaultResourceDependencyResolver implements ResourceDependencyResolver
     private final WebResourceIntegration webResourceIntegration;
     private final ResourceBatchingConfiguration batchingConfiguration;
     private final Cache cached = new Cache();
+    private final boolean updatedByModuleEvents;
+    /** Incremented whenever a web resource module is enabled or disabled, if updated by module events */
+    private final AtomicLong generation = new AtomicLong();
+    private volatile DependencyGraph graph = new DependencyGraph(null, -1, Collections.<WebResourceModuleDescriptor> emptyList());
 
     public DefaultResourceDependencyResolver(final WebResourceIntegration webResourceIntegration, final ResourceBatchingConfiguration batchingConfiguration)
     {
         this.webResourceIntegration = webResourceIntegration;
         this.batchingConfiguration = batchingConfiguration;
+        this.updatedByModuleEvents = false;
+    }
+
+    /**
+     * @param pluginEventManager the plugin event manager, used to rebuild the graph as web resource modules are
+     * enabled and disabled
+     * @since 2.11.0
+     */
+    public DefaultResourceDependencyResolver(final WebResourceIntegration webResourceIntegration, final ResourceBatchingConfiguration batchingConfiguration,
+        final PluginEventManager pluginEventManager)
+    {
+        this.webResourceIntegration = webResourceIntegration;
+        this.batchingConfiguration = batchingConfiguration;
+        this.updatedByModuleEvents = true;
+        pluginEventManager.register(this);
     }
 
     public Iterable<WebResourceModuleDescriptor> getSuperBatchDependencies()
@@ -40,17 +78,31 @@ class DefaultResourceDependencyResolver implements ResourceDependencyResolver
         return cached.resourceMap().values();
     }
 
-    private Iterable<String> getSuperBatchDependencyKeys()
+    private Set<String> getSuperBatchDependencyKeys()
     {
         return cached.resourceMap().keySet();
     }
 
     public Iterable<WebResourceModuleDescriptor> getDependencies(final String moduleKey, final boolean excludeSuperBatchedResources)
     {
+        final DependencyGraph graph = graph();
+        final Set<String> superBatchResources = excludeSuperBatchedResources ? getSuperBatchDependencyKeys() : Collections.<String> emptySet();
+        final String memoKey = (excludeSuperBatchedResources ? "module-excluding-superbatch:" : "module:") + moduleKey;
+        final Resolved memoized = graph.getResolved(memoKey, superBatchResources);
+        if (memoized != null)
+        {
+            return memoized.resources;
+        }
+
         final LinkedHashMap<String, WebResourceModuleDescriptor> orderedResources = new LinkedHashMap<String, WebResourceModuleDescriptor>();
-        final Iterable<String> superBatchResources = excludeSuperBatchedResources ? getSuperBatchDependencyKeys() : Collections.<String> emptyList();
-        resolveDependencies(moduleKey, orderedResources, superBatchResources, new Stack<String>(), null);
-        return orderedResources.values();
+        final Resolution resolution = new Resolution(graph, null);
+        resolveDependencies(moduleKey, orderedResources, superBatchResources, resolution);
+        final Resolved resolved = new Resolved(superBatchResources, orderedResources.values(), resolution.skippedResources);
+        if (resolution.memoizable)
+        {
+            graph.putResolved(memoKey, resolved);
+        }
+        return resolved.resources;
     }
 
     public Iterable<WebResourceModuleDescriptor> getDependenciesInContext(final String context)
@@ -60,27 +112,92 @@ class DefaultResourceDependencyResolver implements ResourceDependencyResolver
 
     public Iterable<WebResourceModuleDescriptor> getDependenciesInContext(final String context, final Set<String> skippedResources)
     {
-        final Set<WebResourceModuleDescriptor> contextResources = new LinkedHashSet<WebResourceModuleDescriptor>();
-        final Class<WebResourceModuleDescriptor> clazz = WebResourceModuleDescriptor.class;
-        for (final WebResourceModuleDescriptor descriptor : webResourceIntegration.getPluginAccessor().getEnabledModuleDescriptorsByClass(clazz))
+        final DependencyGraph graph = graph();
+        final Set<String> superBatchResources = getSuperBatchDependencyKeys();
+        final String memoKey = "context:" + context;
+        Resolved resolved = graph.getResolved(memoKey, superBatchResources);
+        if (resolved == null)
         {
-            if (descriptor.getContexts().contains(context))
+            final Set<WebResourceModuleDescriptor> contextResources = new LinkedHashSet<WebResourceModuleDescriptor>();
+            final Resolution resolution = new Resolution(graph, new LinkedHashSet<String>());
+            for (final WebResourceModuleDescriptor descriptor : graph.getDescriptorsInContext(context))
             {
                 final LinkedHashMap<String, WebResourceModuleDescriptor> dependencies = new LinkedHashMap<String, WebResourceModuleDescriptor>();
-                resolveDependencies(descriptor.getCompleteKey(), dependencies, getSuperBatchDependencyKeys(), new Stack<String>(), skippedResources);
+                resolveDependencies(descriptor.getCompleteKey(), dependencies, superBatchResources, resolution);
                 for (final WebResourceModuleDescriptor dependency : dependencies.values())
                 {
                     contextResources.add(dependency);
                 }
             }
+            resolved = new Resolved(superBatchResources, contextResources, resolution.skippedResources);
+            if (resolution.memoizable)
+            {
+                graph.putResolved(memoKey, resolved);
+            }
+        }
+        skippedResources.addAll(resolved.skippedResources);
+        return resolved.resources;
+    }
+
+    /**
+     * Rebuilds the graph if the module is a web resource
+     *
+     * @param event The module enabled event
+     * @since 2.11.0
+     */
+    @PluginEventListener
+    public void onPluginModuleEnabled(final PluginModuleEnabledEvent event)
+    {
+        if (event.getModule() instanceof WebResourceModuleDescriptor)
+        {
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Rebuilds the graph if the module is a web resource
+     *
+     * @param event The module disabled event
+     * @since 2.11.0
+     */
+    @PluginEventListener
+    public void onPluginModuleDisabled(final PluginModuleDisabledEvent event)
+    {
+        if (event.getModule() instanceof WebResourceModuleDescriptor)
+        {
+            generation.incrementAndGet();
         }
-        return unmodifiableCollection(contextResources);
+    }
+
+    /**
+     * @return the graph of the currently enabled web resources, rebuilding it if they have changed
+     */
+    private DependencyGraph graph()
+    {
+        DependencyGraph current = graph;
+        if (updatedByModuleEvents && (current.generation == generation.get()))
+        {
+            return current;
+        }
+
+        // read before looking up the descriptors, so the graph is rebuilt again if a module changes meanwhile
+        final long currentGeneration = generation.get();
+        List<WebResourceModuleDescriptor> descriptors = webResourceIntegration.getPluginAccessor().getEnabledModuleDescriptorsByClass(WebResourceModuleDescriptor.class);
+        if (descriptors == null)
+        {
+            descriptors = Collections.emptyList();
+        }
+        if (updatedByModuleEvents || !current.isBuiltFrom(descriptors))
+        {
+            current = new DependencyGraph(descriptors, currentGeneration, descriptors);
+            graph = current;
+        }
+        return current;
     }
 
     /**
      * Adds the resources as well as its dependencies in order to the given ordered set. This method uses recursion
-     * to add a resouce's dependent resources also to the set. You should call this method with a new stack
-     * passed to the last parameter.
+     * to add a resouce's dependent resources also to the set. You should call this method with a new resolution.
      *
      * Note that resources already in the given super batch will be exluded when resolving dependencies. You
      * should pass in an empty set for the super batch to include super batch resources.
@@ -88,23 +205,29 @@ class DefaultResourceDependencyResolver implements ResourceDependencyResolver
      * @param moduleKey the module complete key to add as well as its dependencies
      * @param orderedResourceKeys an ordered list set where the resources are added in order
      * @param superBatchResources the set of super batch resources to exclude when resolving dependencies
-     * @param stack where we are in the dependency tree
-     * @param skippedResources if not null, all resources with conditions are skipped and added to this set.
+     * @param resolution where we are in the dependency tree, and the resources with conditions that were skipped, if
+     * they are being skipped.
      */
-    private void resolveDependencies(final String moduleKey, final Map<String, WebResourceModuleDescriptor> orderedResourceKeys, final Iterable<String> superBatchResources, final Stack<String> stack, final Set<String> skippedResources)
+    private void resolveDependencies(final String moduleKey, final Map<String, WebResourceModuleDescriptor> orderedResourceKeys, final Set<String> superBatchResources, final Resolution resolution)
     {
-        if (contains(superBatchResources, moduleKey))
+        if (superBatchResources.contains(moduleKey))
         {
             log.debug("Not requiring resource: {0} because it is part of a super-batch", moduleKey);
             return;
         }
-        if (stack.contains(moduleKey))
+        if (resolution.stack.contains(moduleKey))
         {
-            log.warn("Cyclic plugin resource dependency has been detected with: {0} \nStack trace: {1}", moduleKey, stack);
+            log.warn("Cyclic plugin resource dependency has been detected with: {0} \nStack trace: {1}", moduleKey, resolution.stack);
             return;
         }
 
-        final ModuleDescriptor<?> moduleDescriptor = webResourceIntegration.getPluginAccessor().getEnabledPluginModule(moduleKey);
+        ModuleDescriptor<?> moduleDescriptor = resolution.graph.getDescriptor(moduleKey);
+        if (moduleDescriptor == null)
+        {
+            // not one of the enabled web resources the graph was built from, so the result can't be memoized
+            resolution.memoizable = false;
+            moduleDescriptor = webResourceIntegration.getPluginAccessor().getEnabledPluginModule(moduleKey);
+        }
         if (!(moduleDescriptor instanceof WebResourceModuleDescriptor))
         {
             if (webResourceIntegration.getPluginAccessor().getPluginModule(moduleKey) != null)
@@ -120,15 +243,20 @@ class DefaultResourceDependencyResolver implements ResourceDependencyResolver
 
         final WebResourceModuleDescriptor webResourceModuleDescriptor = (WebResourceModuleDescriptor) moduleDescriptor;
 
-        if ((skippedResources != null) && (webResourceModuleDescriptor.getCondition() != null))
+        if ((resolution.skippedResources != null) && (webResourceModuleDescriptor.getCondition() != null))
         {
-            skippedResources.add(moduleKey);
+            resolution.skippedResources.add(moduleKey);
             return;
         }
-        else if (!webResourceModuleDescriptor.shouldDisplay())
+        else if (webResourceModuleDescriptor.getCondition() != null)
         {
-            log.debug("Cannot include web resource module {0} as its condition fails", moduleDescriptor.getCompleteKey());
-            return;
+            // conditions are evaluated every time
+            resolution.memoizable = false;
+            if (!webResourceModuleDescriptor.shouldDisplay())
+            {
+                log.debug("Cannot include web resource module {0} as its condition fails", moduleDescriptor.getCompleteKey());
+                return;
+            }
         }
 
         final List<String> dependencies = webResourceModuleDescriptor.getDependencies();
@@ -136,20 +264,20 @@ class DefaultResourceDependencyResolver implements ResourceDependencyResolver
         {
             log.debug("About to add resource [{0}] and its dependencies: {1}", moduleKey, dependencies);
         }
-        stack.push(moduleKey);
+        resolution.stack.add(moduleKey);
         try
         {
             for (final String dependency : dependencies)
             {
                 if (orderedResourceKeys.get(dependency) == null)
                 {
-                    resolveDependencies(dependency, orderedResourceKeys, superBatchResources, stack, skippedResources);
+                    resolveDependencies(dependency, orderedResourceKeys, superBatchResources, resolution);
                 }
             }
         }
         finally
         {
-            stack.pop();
+            resolution.stack.remove(moduleKey);
         }
         orderedResourceKeys.put(moduleKey, webResourceModuleDescriptor);
     }
@@ -173,9 +301,10 @@ class DefaultResourceDependencyResolver implements ResourceDependencyResolver
                     return emptyMap();
                 }
                 final Map<String, WebResourceModuleDescriptor> resources = new LinkedHashMap<String, WebResourceModuleDescriptor>();
+                final Resolution resolution = new Resolution(graph(), null);
                 for (final String moduleKey : moduleKeys)
                 {
-                    resolveDependencies(moduleKey, resources, Collections.<String> emptyList(), new Stack<String>(), null);
+                    resolveDependencies(moduleKey, resources, Collections.<String> emptySet(), resolution);
                 }
                 return resources;
                 //return unmodifiableMap(resources);
@@ -214,4 +343,132 @@ class DefaultResourceDependencyResolver implements ResourceDependencyResolver
             this.resources = checkNotNull(resources);
         }
     }
+
+    /**
+     * The state of a single resolution.
+     */
+    private static final class Resolution
+    {
+        final DependencyGraph graph;
+        final Set<String> stack = new LinkedHashSet<String>();
+        final Set<String> skippedResources;
+        boolean memoizable = true;
+
+        Resolution(final DependencyGraph graph, final Set<String> skippedResources)
+        {
+            this.graph = graph;
+            this.skippedResources = skippedResources;
+        }
+    }
+
+    /**
+     * The memoized result of a resolution, along with the super batch it excluded.
+     */
+    static final class Resolved
+    {
+        final Set<String> superBatchResources;
+        final List<WebResourceModuleDescriptor> resources;
+        final Set<String> skippedResources;
+
+        Resolved(final Set<String> superBatchResources, final Collection<WebResourceModuleDescriptor> resources, final Set<String> skippedResources)
+        {
+            this.superBatchResources = superBatchResources;
+            this.resources = ImmutableList.copyOf(resources);
+            this.skippedResources = skippedResources == null ? Collections.<String> emptySet() : ImmutableSet.copyOf(skippedResources);
+        }
+    }
+
+    /**
+     * An immutable index of the enabled web resources by key and by context, and the resolutions memoized against it.
+     */
+    static final class DependencyGraph
+    {
+        private final List<WebResourceModuleDescriptor> source;
+        private final long generation;
+        private final List<WebResourceModuleDescriptor> descriptors;
+        private final Map<String, WebResourceModuleDescriptor> byKey = new HashMap<String, WebResourceModuleDescriptor>();
+        private final Map<String, List<WebResourceModuleDescriptor>> byContext = new HashMap<String, List<WebResourceModuleDescriptor>>();
+        private final ConcurrentMap<String, Resolved> resolved = new ConcurrentHashMap<String, Resolved>();
+
+        /**
+         * @param source the list returned by the plugin accessor, used to detect changes cheaply
+         * @param generation the module events seen when the descriptors were looked up
+         * @param descriptors the enabled web resources
+         */
+        DependencyGraph(final List<WebResourceModuleDescriptor> source, final long generation, final Collection<WebResourceModuleDescriptor> descriptors)
+        {
+            this.source = source;
+            this.generation = generation;
+            this.descriptors = ImmutableList.copyOf(descriptors);
+            final Map<String, ImmutableList.Builder<WebResourceModuleDescriptor>> contexts = new LinkedHashMap<String, ImmutableList.Builder<WebResourceModuleDescriptor>>();
+            for (final WebResourceModuleDescriptor descriptor : this.descriptors)
+            {
+                byKey.put(descriptor.getCompleteKey(), descriptor);
+                for (final String context : descriptor.getContexts())
+                {
+                    ImmutableList.Builder<WebResourceModuleDescriptor> builder = contexts.get(context);
+                    if (builder == null)
+                    {
+                        builder = ImmutableList.builder();
+                        contexts.put(context, builder);
+                    }
+                    builder.add(descriptor);
+                }
+            }
+            for (final Map.Entry<String, ImmutableList.Builder<WebResourceModuleDescriptor>> entry : contexts.entrySet())
+            {
+                byContext.put(entry.getKey(), entry.getValue().build());
+            }
+        }
+
+        /**
+         * @return true if the graph was built from the same descriptors. An immutable list returned again by the
+         * plugin accessor can't have changed, otherwise the descriptors are compared one by one.
+         */
+        boolean isBuiltFrom(final List<WebResourceModuleDescriptor> current)
+        {
+            if (current == source && current instanceof ImmutableList)
+            {
+                return true;
+            }
+            if (current.size() != descriptors.size())
+            {
+                return false;
+            }
+            final Iterator<WebResourceModuleDescriptor> iterator = descriptors.iterator();
+            for (final WebResourceModuleDescriptor descriptor : current)
+            {
+                if (descriptor != iterator.next())
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        WebResourceModuleDescriptor getDescriptor(final String moduleKey)
+        {
+            return byKey.get(moduleKey);
+        }
+
+        List<WebResourceModuleDescriptor> getDescriptorsInContext(final String context)
+        {
+            final List<WebResourceModuleDescriptor> descriptors = byContext.get(context);
+            return descriptors != null ? descriptors : Collections.<WebResourceModuleDescriptor> emptyList();
+        }
+
+        /**
+         * @return the memoized resolution, if it excluded the same super batch
+         */
+        Resolved getResolved(final String memoKey, final Set<String> superBatchResources)
+        {
+            final Resolved result = resolved.get(memoKey);
+            return result != null && result.superBatchResources == superBatchResources ? result : null;
+        }
+
+        void putResolved(final String memoKey, final Resolved result)
+        {
+            resolved.put(memoKey, result);
+        }
+    }
 }
@@ -0,0 +1,73 @@
+package com.atlassian.plugin.webresource;
+
+import com.atlassian.plugin.Plugin;
+import com.google.common.base.Supplier;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Supplies the version of the contents cached by a persistent file cache: a digest of the system build number, the
+ * system counter, the super batch version and the versions of all enabled plugins. Files cached before a restart are
+ * only used again if none of these have changed.
+ *
+ * @since 2.11.0
+ */
+class FileCacheVersionSupplier implements Supplier<String>
+{
+    private static final String MD5 = "MD5";
+    private static final String UTF8 = "UTF-8";
+
+    private final WebResourceIntegration webResourceIntegration;
+
+    FileCacheVersionSupplier(final WebResourceIntegration webResourceIntegration)
+    {
+        this.webResourceIntegration = webResourceIntegration;
+    }
+
+    public String get()
+    {
+        // sort the plugins so the digest doesn't depend on the order they were loaded in
+        final Map<String, String> pluginVersions = new TreeMap<String, String>();
+        for (final Plugin plugin : webResourceIntegration.getPluginAccessor().getEnabledPlugins())
+        {
+            pluginVersions.put(plugin.getKey(), plugin.getPluginInformation().getVersion());
+        }
+
+        try
+        {
+            final MessageDigest md5 = MessageDigest.getInstance(MD5);
+            update(md5, webResourceIntegration.getSystemBuildNumber());
+            update(md5, webResourceIntegration.getSystemCounter());
+            update(md5, webResourceIntegration.getSuperBatchVersion());
+            for (final Map.Entry<String, String> pluginVersion : pluginVersions.entrySet())
+            {
+                update(md5, pluginVersion.getKey());
+                update(md5, pluginVersion.getValue());
+            }
+            return new String(Hex.encodeHex(md5.digest()));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new AssertionError("MD5 hashing algorithm is not available.");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new AssertionError("UTF-8 encoding is not available.");
+        }
+    }
+
+    private static void update(final MessageDigest md5, final String value) throws UnsupportedEncodingException
+    {
+        if (value != null)
+        {
+            md5.update(value.getBytes(UTF8));
+        }
+        // separate the values, so that moving characters from one value to the next changes the digest
+        md5.update((byte) 0);
+    }
+}
@@ -0,0 +1,175 @@
+package com.atlassian.plugin.webresource;
+
+import com.atlassian.plugin.cache.filecache.FileCache;
+import com.atlassian.plugin.cache.filecache.FileCacheKey;
+import com.atlassian.plugin.cache.filecache.FileCacheStreamProvider;
+import com.atlassian.plugin.cache.filecache.PersistableFileCacheKey;
+import com.atlassian.plugin.servlet.DownloadException;
+import com.atlassian.plugin.util.PluginUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves cached batches gzipped to clients that accept it. The gzipped copy is cached under its own key in the same
+ * file cache as the uncompressed batch, and is created from the cached uncompressed batch, so each batch is built once
+ * and compressed once.
+ *
+ * @since 2.11.0
+ */
+final class GzipVariant
+{
+    static final String GZIP = "gzip";
+
+    private GzipVariant()
+    {
+    }
+
+    /**
+     * Streams the batch to the response, gzipped if precompression is enabled and the request accepts it.
+     *
+     * @param fileCache the cache holding the batch
+     * @param cacheKey the key of the uncompressed batch
+     * @param input provides the uncompressed batch on a cache-miss
+     * @param type the type of the batch, only CSS and JavaScript batches are compressed
+     */
+    static void serve(final FileCache fileCache, final FileCacheKey cacheKey, final FileCacheStreamProvider input, final String type,
+        final HttpServletRequest request, final HttpServletResponse response) throws DownloadException
+    {
+        try
+        {
+            if (Boolean.getBoolean(PluginUtils.PRECOMPRESS_FILE_CACHE) && isCompressible(type))
+            {
+                response.addHeader("Vary", "Accept-Encoding");
+                if (acceptsGzip(request.getHeader("Accept-Encoding")))
+                {
+                    response.setHeader("Content-Encoding", GZIP);
+                    fileCache.stream(keyFor(cacheKey), response.getOutputStream(), new GzipStreamProvider(fileCache, cacheKey, input));
+                    return;
+                }
+            }
+            fileCache.stream(cacheKey, response.getOutputStream(), input);
+        }
+        catch (IOException e)
+        {
+            throw new DownloadException(e);
+        }
+    }
+
+    static boolean isCompressible(final String type)
+    {
+        return "js".equals(type) || "css".equals(type);
+    }
+
+    /**
+     * @param acceptEncoding the value of the Accept-Encoding request header, may be null
+     * @return true if the header lists gzip with a non-zero quality
+     */
+    static boolean acceptsGzip(final String acceptEncoding)
+    {
+        if (acceptEncoding == null)
+        {
+            return false;
+        }
+        for (final String coding : acceptEncoding.split(","))
+        {
+            final String[] parts = coding.split(";");
+            if (!GZIP.equalsIgnoreCase(parts[0].trim()))
+            {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++)
+            {
+                final String param = parts[i].trim();
+                if (param.startsWith("q="))
+                {
+                    try
+                    {
+                        return Float.parseFloat(param.substring(2)) > 0;
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    static FileCacheKey keyFor(final FileCacheKey cacheKey)
+    {
+        return cacheKey instanceof PersistableFileCacheKey ? new PersistableGzipKey((PersistableFileCacheKey) cacheKey) : new GzipKey(cacheKey);
+    }
+
+    /**
+     * Gzips the uncompressed batch, streaming it from the file cache.
+     */
+    private static final class GzipStreamProvider implements FileCacheStreamProvider
+    {
+        private final FileCache fileCache;
+        private final FileCacheKey cacheKey;
+        private final FileCacheStreamProvider input;
+
+        GzipStreamProvider(final FileCache fileCache, final FileCacheKey cacheKey, final FileCacheStreamProvider input)
+        {
+            this.fileCache = fileCache;
+            this.cacheKey = cacheKey;
+            this.input = input;
+        }
+
+        public void writeStream(final OutputStream dest) throws DownloadException
+        {
+            try
+            {
+                final GZIPOutputStream gzip = new GZIPOutputStream(dest);
+                fileCache.stream(cacheKey, gzip, input);
+                // finish rather than close, the destination belongs to the caller
+                gzip.finish();
+            }
+            catch (IOException e)
+            {
+                throw new DownloadException(e);
+            }
+        }
+    }
+
+    private static class GzipKey implements FileCacheKey
+    {
+        final FileCacheKey delegate;
+
+        GzipKey(final FileCacheKey delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            return o != null && o.getClass() == getClass() && delegate.equals(((GzipKey) o).delegate);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * delegate.hashCode() + 1;
+        }
+    }
+
+    private static final class PersistableGzipKey extends GzipKey implements PersistableFileCacheKey
+    {
+        PersistableGzipKey(final PersistableFileCacheKey delegate)
+        {
+            super(delegate);
+        }
+
+        public String getPersistentKey()
+        {
+            return ((PersistableFileCacheKey) delegate).getPersistentKey() + "#" + GZIP;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.atlassian.plugin.cache.filecache.FileCache;
 import com.atlassian.plugin.cache.filecache.impl.LRUFileCache;
 import com.atlassian.plugin.cache.filecache.impl.NonCachingFileCache;
 import com.atlassian.plugin.elements.ResourceDescriptor;
+import com.atlassian.plugin.event.PluginEventManager;
 import com.atlassian.plugin.servlet.DownloadableResource;
 import com.atlassian.plugin.servlet.ServletContextFactory;
 import com.atlassian.plugin.util.PluginUtils;
@@ -15,6 +16,7 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -51,22 +53,22 @@ public class PluginResourceLocatorImpl implements PluginResourceLocator
         this(webResourceIntegration, servletContextFactory, webResourceUrlProvider, new DefaultResourceDependencyResolver(webResourceIntegration, batchingConfiguration), batchingConfiguration);
     }
 
+    /**
+     * @param pluginEventManager the plugin event manager, used to resolve dependencies against the enabled web
+     * resources without looking them up on every request
+     * @since 2.11.0
+     */
+    public PluginResourceLocatorImpl(final WebResourceIntegration webResourceIntegration, final ServletContextFactory servletContextFactory, final WebResourceUrlProvider webResourceUrlProvider,
+                                     final ResourceBatchingConfiguration batchingConfiguration, final PluginEventManager pluginEventManager)
+    {
+        this(webResourceIntegration, servletContextFactory, webResourceUrlProvider, new DefaultResourceDependencyResolver(webResourceIntegration, batchingConfiguration, pluginEventManager), batchingConfiguration);
+    }
+
     private PluginResourceLocatorImpl(final WebResourceIntegration webResourceIntegration, final ServletContextFactory servletContextFactory, final WebResourceUrlProvider webResourceUrlProvider,
                                       final ResourceDependencyResolver dependencyResolver, final ResourceBatchingConfiguration batchingConfiguration)
     {
 
-        FileCache fileCache = new NonCachingFileCache();
-        if(!Boolean.getBoolean(PluginUtils.DISABLE_FILE_CACHE))
-        {
-            try
-            {
-                fileCache = new LRUFileCache(webResourceIntegration.getTemporaryDirectory(), Integer.getInteger(PluginUtils.FILE_CACHE_SIZE, 200));
-            }
-            catch (IOException e)
-            {
-                log.error("Could not create file cache object, will startup with filecaching disabled, please investigate the cause and correct it.", e);
-            }
-        }
+        final FileCache fileCache = createFileCache(webResourceIntegration);
         this.pluginAccessor = webResourceIntegration.getPluginAccessor();
         this.webResourceUrlProvider = webResourceUrlProvider;
         this.batchingConfiguration = batchingConfiguration;
@@ -79,6 +81,30 @@ public class PluginResourceLocatorImpl implements PluginResourceLocator
 
     }
 
+    private static FileCache createFileCache(final WebResourceIntegration webResourceIntegration)
+    {
+        if (Boolean.getBoolean(PluginUtils.DISABLE_FILE_CACHE))
+        {
+            return new NonCachingFileCache();
+        }
+        try
+        {
+            final int maxFiles = Integer.getInteger(PluginUtils.FILE_CACHE_SIZE, 200);
+            final long maxBytes = Long.getLong(PluginUtils.FILE_CACHE_MAX_BYTES, Long.MAX_VALUE);
+            final File directory = webResourceIntegration.getTemporaryDirectory();
+            if (Boolean.getBoolean(PluginUtils.PERSISTENT_FILE_CACHE) && !Boolean.getBoolean(PluginUtils.ATLASSIAN_DEV_MODE))
+            {
+                return new LRUFileCache(directory, maxFiles, maxBytes, new FileCacheVersionSupplier(webResourceIntegration));
+            }
+            return new LRUFileCache(directory, maxFiles, maxBytes);
+        }
+        catch (IOException e)
+        {
+            log.error("Could not create file cache object, will startup with filecaching disabled, please investigate the cause and correct it.", e);
+            return new NonCachingFileCache();
+        }
+    }
+
     public boolean matches(final String url)
     {
         for (final DownloadableResourceBuilder builder : builders)
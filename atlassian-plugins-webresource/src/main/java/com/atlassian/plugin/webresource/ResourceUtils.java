@@ -1,8 +1,11 @@
 package com.atlassian.plugin.webresource;
 
 import com.atlassian.plugin.cache.filecache.FileCacheKey;
+import com.atlassian.plugin.cache.filecache.PersistableFileCacheKey;
 import com.atlassian.util.concurrent.NotNull;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -46,7 +49,7 @@ class ResourceUtils
         return new UrlBasedFileCacheKey(path,sortedParams);
     }
 
-    private static class UrlBasedFileCacheKey implements FileCacheKey
+    private static class UrlBasedFileCacheKey implements PersistableFileCacheKey
     {
         private final String url;
         private final SortedMap<String,String> sortedArguments;
@@ -57,6 +60,34 @@ class ResourceUtils
             this.url = url;
         }
 
+        public String getPersistentKey()
+        {
+            final StringBuilder result = new StringBuilder(encode(url));
+            char separator = '?';
+            for (Map.Entry<String, String> argument : sortedArguments.entrySet())
+            {
+                result.append(separator).append(encode(argument.getKey())).append('=').append(encode(argument.getValue()));
+                separator = '&';
+            }
+            return result.toString();
+        }
+
+        private static String encode(String value)
+        {
+            if (value == null)
+            {
+                return "";
+            }
+            try
+            {
+                return URLEncoder.encode(value, "UTF-8");
+            }
+            catch (UnsupportedEncodingException e)
+            {
+                throw new AssertionError("UTF-8 encoding is not available.");
+            }
+        }
+
         @Override
         public boolean equals(Object o)
         {
@@ -10,7 +10,6 @@ import static com.atlassian.plugin.servlet.AbstractFileServerServlet.SERVLET_PAT
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collections;
 import java.util.Map;
@@ -72,14 +71,7 @@ public class SuperBatchPluginResource implements DownloadableResource, BatchReso
 
     public void serveResource(final HttpServletRequest request, final HttpServletResponse response) throws DownloadException
     {
-        try
-        {
-            fileCache.stream(cacheKey, response.getOutputStream(), delegate);
-        }
-        catch (IOException e)
-        {
-            throw new DownloadException(e);
-        }
+        GzipVariant.serve(fileCache, cacheKey, delegate, getType(), request, response);
     }
 
     public void streamResource(final OutputStream out) throws DownloadException
@@ -8,6 +8,7 @@ import static com.google.common.collect.Iterables.contains;
 import static com.google.common.collect.Iterables.transform;
 
 import com.atlassian.plugin.ModuleDescriptor;
+import com.atlassian.plugin.event.PluginEventManager;
 
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableSet;
@@ -59,6 +60,8 @@ public class WebResourceManagerImpl implements WebResourceManager
 
     private static final boolean IGNORE_SUPERBATCHING = false;
 
+    private final ContextBatchBuilder.PlanCache contextBatchPlans = new ContextBatchBuilder.PlanCache();
+
     public WebResourceManagerImpl(final PluginResourceLocator pluginResourceLocator, final WebResourceIntegration webResourceIntegration, final WebResourceUrlProvider webResourceUrlProvider)
     {
         this(pluginResourceLocator, webResourceIntegration, webResourceUrlProvider, new DefaultResourceBatchingConfiguration());
@@ -70,6 +73,17 @@ public class WebResourceManagerImpl implements WebResourceManager
                 webResourceIntegration, batchingConfiguration));
     }
 
+    /**
+     * @param pluginEventManager the plugin event manager, used to resolve dependencies against the enabled web
+     * resources without looking them up on every request
+     * @since 2.11.0
+     */
+    public WebResourceManagerImpl(final PluginResourceLocator pluginResourceLocator, final WebResourceIntegration webResourceIntegration, final WebResourceUrlProvider webResourceUrlProvider, final ResourceBatchingConfiguration batchingConfiguration, final PluginEventManager pluginEventManager)
+    {
+        this(pluginResourceLocator, webResourceIntegration, webResourceUrlProvider, batchingConfiguration, new DefaultResourceDependencyResolver(
+                webResourceIntegration, batchingConfiguration, pluginEventManager));
+    }
+
     public WebResourceManagerImpl(final PluginResourceLocator pluginResourceLocator, final WebResourceIntegration webResourceIntegration, final WebResourceUrlProvider webResourceUrlProvider, final ResourceBatchingConfiguration batchingConfiguration, final ResourceDependencyResolver dependencyResolver)
     {
         this.pluginResourceLocator = notNull("pluginResourceLocator", pluginResourceLocator);
@@ -162,7 +176,7 @@ public class WebResourceManagerImpl implements WebResourceManager
      */
     private <W extends Writer> W writeIncludedResources(final W writer, final UrlMode urlMode, final WebResourceFilter filter)
     {
-        final ContextBatchBuilder builder = new ContextBatchBuilder(pluginResourceLocator, dependencyResolver, batchingConfiguration);
+        final ContextBatchBuilder builder = new ContextBatchBuilder(pluginResourceLocator, dependencyResolver, batchingConfiguration, contextBatchPlans);
         final Iterable<PluginResource> resourcesToInclude = concat(getSuperBatchResources(filter), builder.build(getIncludedContexts(), filter));
         for (final String skippedResource : builder.getSkippedResources())
         {
@@ -120,6 +120,7 @@ public class WebResourceModuleDescriptor extends AbstractModuleDescriptor<Void>
     public void disabled()
     {
         super.disabled();
+        ConditionElementParser.releaseConditions(plugin);
         condition = null;
     }
 
@@ -32,6 +32,34 @@ public class CachedFileTest extends TestCase {
 
     }
 
+    public void testEvictedFileIsNotRecreated() throws Exception {
+        CachedFile f = new CachedFile(tmp);
+
+        assertEquals(CachedFile.StreamResult.SUCCESS_CREATED, stream(f, true));
+        f.evict();
+        assertFalse(tmp.exists());
+        assertEquals(CachedFile.StreamResult.SUCCESS_CREATED, stream(f, true));
+        assertFalse(tmp.exists());
+    }
+
+    public void testSizeIsOnlyAccountedOnceAndReleasedOnce() throws Exception {
+        CachedFile f = new CachedFile(tmp);
+        stream(f, true);
+
+        assertEquals(3, f.accountSize());
+        assertEquals(0, f.accountSize());
+        assertEquals(3, f.releaseSize());
+        assertEquals(0, f.releaseSize());
+    }
+
+    public void testReleasedSizeIsNotAccounted() throws Exception {
+        CachedFile f = new CachedFile(tmp);
+        assertEquals(0, f.releaseSize());
+
+        stream(f, true);
+        assertEquals(0, f.accountSize());
+    }
+
     private CachedFile.StreamResult stream(CachedFile f, boolean streamCalled) throws Exception {
         ByteArrayOutputStream dest = new ByteArrayOutputStream();
         MockFileCacheStreamProvider provider = new MockFileCacheStreamProvider(new byte[]{1, 2, 3});
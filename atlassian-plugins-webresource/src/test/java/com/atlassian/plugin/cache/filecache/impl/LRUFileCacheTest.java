@@ -1,18 +1,31 @@
 package com.atlassian.plugin.cache.filecache.impl;
 
 import com.atlassian.plugin.cache.filecache.FileCacheKey;
+import com.atlassian.plugin.cache.filecache.FileCacheStreamProvider;
+import com.atlassian.plugin.cache.filecache.PersistableFileCacheKey;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 
+import com.atlassian.plugin.servlet.DownloadException;
 import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
 
 
 public class LRUFileCacheTest extends TestCase {
 
 
     public void testSizeLRU() throws Exception {
-        LRUFileCache cache = new LRUFileCache(new File(System.getProperty("java.io.tmpdir"),"test"), 2);
+        LRUFileCache cache = new LRUFileCache(new File(System.getProperty("java.io.tmpdir"),"test"), 2, Long.MAX_VALUE, null, sameThreadExecutor());
 
         byte[] afile = "this is the first one".getBytes();
         byte[] bfile = "this is the other one".getBytes();
@@ -38,7 +51,250 @@ public class LRUFileCacheTest extends TestCase {
 
     }
 
+    public void testSizeInBytes() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "test-bytes");
+        FileUtils.deleteDirectory(dir);
+        byte[] afile = "0123456789".getBytes();
+        byte[] bfile = "abcdefghij".getBytes();
+        byte[] cfile = "ABCDEFGHIJ".getBytes();
+        LRUFileCache cache = new LRUFileCache(dir, 10, 25, null, sameThreadExecutor());
+
+        cache(cache, new MockCacheKey("a"), afile, false);
+        cache(cache, new MockCacheKey("b"), bfile, false);
+        cache(cache, new MockCacheKey("a"), afile, true);
+
+        cache(cache, new MockCacheKey("c"), cfile, false); // over 25 bytes, b is the least recently used
+        cache(cache, new MockCacheKey("a"), afile, true);
+        cache(cache, new MockCacheKey("c"), cfile, true);
+        cache(cache, new MockCacheKey("b"), bfile, false);
+    }
+
+    public void testPersistentCacheSurvivesRestart() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "test-persistent");
+        FileUtils.deleteDirectory(dir);
+        byte[] afile = "this is the first one".getBytes();
+        byte[] bfile = "this is the other one".getBytes();
+
+        LRUFileCache cache = new LRUFileCache(dir, 10, Long.MAX_VALUE, Suppliers.ofInstance("1"), sameThreadExecutor());
+        cache(cache, new MockPersistableCacheKey("a"), afile, false);
+        cache(cache, new MockCacheKey("b"), bfile, false);
+
+        cache = new LRUFileCache(dir, 10, Long.MAX_VALUE, Suppliers.ofInstance("1"), sameThreadExecutor());
+        cache(cache, new MockPersistableCacheKey("a"), afile, true);
+        cache(cache, new MockCacheKey("b"), bfile, false); // not persistable, so not kept
+        assertEquals(3, dir.listFiles().length); // two cached files and the manifest
+
+        cache = new LRUFileCache(dir, 10, Long.MAX_VALUE);
+        assertEquals(0, dir.listFiles().length); // not persistent, so everything is cleared
+    }
+
+    public void testPersistentCacheChecksVersion() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "test-versioned");
+        FileUtils.deleteDirectory(dir);
+        byte[] afile = "this is the first one".getBytes();
+        Supplier<String> version = Suppliers.ofInstance("1");
+
+        LRUFileCache cache = new LRUFileCache(dir, 10, Long.MAX_VALUE, version, sameThreadExecutor());
+        cache(cache, new MockPersistableCacheKey("a"), afile, false);
+
+        cache = new LRUFileCache(dir, 10, Long.MAX_VALUE, Suppliers.ofInstance("2"), sameThreadExecutor());
+        cache(cache, new MockPersistableCacheKey("a"), afile, false);
+        cache(cache, new MockPersistableCacheKey("a"), afile, true);
+        assertEquals(2, dir.listFiles().length); // the out of date file is deleted
+    }
+
+    public void testConcurrentMissesCreateFileOnce() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "test-concurrent");
+        FileUtils.deleteDirectory(dir);
+        final LRUFileCache cache = new LRUFileCache(dir, 10, Long.MAX_VALUE, null, sameThreadExecutor());
+        final byte[] bytes = "this is the only one".getBytes();
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger writes = new AtomicInteger();
+        final FileCacheStreamProvider slowInput = new FileCacheStreamProvider()
+        {
+            public void writeStream(OutputStream dest) throws DownloadException
+            {
+                writes.incrementAndGet();
+                writing.countDown();
+                try
+                {
+                    release.await(10, TimeUnit.SECONDS);
+                    dest.write(bytes);
+                }
+                catch (InterruptedException e)
+                {
+                    throw new DownloadException(e);
+                }
+                catch (IOException e)
+                {
+                    throw new DownloadException(e);
+                }
+            }
+        };
+
+        final ByteArrayOutputStream firstDest = new ByteArrayOutputStream();
+        Thread first = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    cache.stream(new MockCacheKey("a"), firstDest, slowInput);
+                }
+                catch (DownloadException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        first.start();
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+        final ByteArrayOutputStream secondDest = new ByteArrayOutputStream();
+        Thread second = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    cache.stream(new MockCacheKey("a"), secondDest, slowInput);
+                }
+                catch (DownloadException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        second.start();
+        release.countDown();
+        first.join(10000);
+        second.join(10000);
+
+        assertEquals(1, writes.get());
+        assertEquals(new String(bytes), firstDest.toString());
+        assertEquals(new String(bytes), secondDest.toString());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    public void testFileEvictedWhileBeingWrittenIsNotCounted() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "test-evict-writing");
+        FileUtils.deleteDirectory(dir);
+        final LRUFileCache cache = new LRUFileCache(dir, 1, Long.MAX_VALUE, null, sameThreadExecutor());
+        final byte[] afile = "this is the slow one".getBytes();
+        final byte[] bfile = "this is the other one".getBytes();
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final FileCacheStreamProvider slowInput = new FileCacheStreamProvider()
+        {
+            public void writeStream(OutputStream dest) throws DownloadException
+            {
+                writing.countDown();
+                try
+                {
+                    release.await(10, TimeUnit.SECONDS);
+                    dest.write(afile);
+                }
+                catch (InterruptedException e)
+                {
+                    throw new DownloadException(e);
+                }
+                catch (IOException e)
+                {
+                    throw new DownloadException(e);
+                }
+            }
+        };
+
+        Thread first = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    cache.stream(new MockCacheKey("a"), new ByteArrayOutputStream(), slowInput);
+                }
+                catch (DownloadException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        first.start();
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+        // caching another file evicts the one still being written, waiting for it to be written before deleting it
+        Thread second = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    cache.stream(new MockCacheKey("b"), new ByteArrayOutputStream(), new MockFileCacheStreamProvider(bfile));
+                }
+                catch (DownloadException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        second.start();
+        for (int i = 0; i < 1000 && cache.getEvictionCount() == 0; i++)
+        {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        first.join(10000);
+        second.join(10000);
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1, cache.getFileCount());
+        assertEquals(bfile.length, cache.getTotalBytes());
+    }
+
+    public void testFailedFileIsNotCounted() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "test-failed");
+        FileUtils.deleteDirectory(dir);
+        LRUFileCache cache = new LRUFileCache(dir, 10, Long.MAX_VALUE, null, sameThreadExecutor());
+        try
+        {
+            cache.stream(new MockCacheKey("a"), new ByteArrayOutputStream(), new FileCacheStreamProvider()
+            {
+                public void writeStream(OutputStream dest) throws DownloadException
+                {
+                    throw new DownloadException("failed");
+                }
+            });
+            fail();
+        }
+        catch (DownloadException e)
+        {
+            // expected
+        }
+
+        assertEquals(0, cache.getFileCount());
+        assertEquals(0, cache.getTotalBytes());
+    }
+
+    public void testCountsHitsMissesAndEvictions() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "test-counts");
+        FileUtils.deleteDirectory(dir);
+        LRUFileCache cache = new LRUFileCache(dir, 1, Long.MAX_VALUE, null, sameThreadExecutor());
+        byte[] afile = "this is the first one".getBytes();
+        byte[] bfile = "this is the other one".getBytes();
+
+        cache(cache, new MockCacheKey("a"), afile, false);
+        cache(cache, new MockCacheKey("a"), afile, true);
+        cache(cache, new MockCacheKey("b"), bfile, false);
 
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1, cache.getFileCount());
+        assertEquals(bfile.length, cache.getTotalBytes());
+        assertEquals(1, dir.listFiles().length);
+    }
 
     private void cache(LRUFileCache cache, FileCacheKey key, byte[] bytes, boolean hitExpected) throws Exception {
         ByteArrayOutputStream dest = new ByteArrayOutputStream();
@@ -82,4 +338,17 @@ public class LRUFileCacheTest extends TestCase {
         }
     }
 
-}
\ No newline at end of file
+    private static class MockPersistableCacheKey extends MockCacheKey implements PersistableFileCacheKey
+    {
+        private MockPersistableCacheKey(String key)
+        {
+            super(key);
+        }
+
+        public String getPersistentKey()
+        {
+            return key;
+        }
+    }
+
+}
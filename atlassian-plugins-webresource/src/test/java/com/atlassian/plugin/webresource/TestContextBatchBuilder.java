@@ -2,6 +2,9 @@ package com.atlassian.plugin.webresource;
 
 import static com.google.common.collect.Iterables.find;
 import static com.google.common.collect.Iterables.size;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.atlassian.plugin.Plugin;
@@ -339,6 +342,33 @@ public class TestContextBatchBuilder extends TestCase
         assertEquals(2, size(builder.getAllIncludedResources()));
     }
 
+    public void testPlanIsReusedForTheSameContexts() throws Exception
+    {
+        final List<String> contexts = Arrays.asList("xmen", "brotherhood");
+        addModuleDescriptor("xavier-resources", TestUtils.createResourceDescriptors("professorx.js", "professorx.css"));
+        addModuleDescriptor("magneto-resources", TestUtils.createResourceDescriptors("magneto.js"));
+        addContext("xmen", Arrays.asList("xavier-resources", "magneto-resources"));
+        addContext("brotherhood", Arrays.asList("magneto-resources"));
+
+        final ContextBatchBuilder.PlanCache planCache = new ContextBatchBuilder.PlanCache();
+        final ContextBatchBuilder first = new ContextBatchBuilder(mockPluginResourceLocator, mockDependencyResolver, mockBatchingConfiguration, planCache);
+        final List<PluginResource> firstResources = newArrayList(first.build(contexts));
+
+        final ContextBatchBuilder second = new ContextBatchBuilder(mockPluginResourceLocator, mockDependencyResolver, mockBatchingConfiguration, planCache);
+        final List<PluginResource> secondResources = newArrayList(second.build(contexts));
+
+        assertEquals(2, firstResources.size());
+        assertEquals(firstResources, secondResources);
+        assertEquals(newArrayList(first.getAllIncludedResources()), newArrayList(second.getAllIncludedResources()));
+        verify(mockPluginResourceLocator, times(1)).getPluginResources(testPlugin.getKey() + ":xavier-resources");
+
+        // the resolver returns new resources, so the plan is built again
+        addContext("brotherhood", Arrays.asList("magneto-resources"));
+        final ContextBatchBuilder third = new ContextBatchBuilder(mockPluginResourceLocator, mockDependencyResolver, mockBatchingConfiguration, planCache);
+        assertEquals(2, size(third.build(contexts)));
+        verify(mockPluginResourceLocator, times(2)).getPluginResources(testPlugin.getKey() + ":xavier-resources");
+    }
+
     private void addContext(final String context, final List<String> descriptors)
     {
         final List<WebResourceModuleDescriptor> moduleDescriptors = new ArrayList<WebResourceModuleDescriptor>();
@@ -2,15 +2,27 @@ package com.atlassian.plugin.webresource;
 
 import static com.google.common.collect.Iterables.isEmpty;
 import static com.google.common.collect.Iterables.size;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.atlassian.plugin.ModuleDescriptor;
 import com.atlassian.plugin.Plugin;
 import com.atlassian.plugin.PluginAccessor;
 import com.atlassian.plugin.elements.ResourceDescriptor;
+import com.atlassian.plugin.event.PluginEventManager;
+import com.atlassian.plugin.event.events.PluginModuleDisabledEvent;
+import com.atlassian.plugin.event.events.PluginModuleEnabledEvent;
+import com.atlassian.plugin.event.impl.DefaultPluginEventManager;
+
+import com.google.common.collect.ImmutableList;
 
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -302,6 +314,65 @@ public class TestDefaultResourceDependencyResolver extends TestCase
         assertEquals(skippedModuleKey, skippedResources.toArray()[0]);
     }
 
+    public void testResolvedDependenciesAreMemoizedUntilWebResourcesChange()
+    {
+        final String moduleKey = "test.atlassian:foo";
+        final String dependencyKey = "test.atlassian:bar";
+        addModuleDescriptor(dependencyKey);
+        addModuleDescriptor(moduleKey, Arrays.asList(dependencyKey), new HashSet<String>(Arrays.asList("contextA")));
+        when(mockPluginAccessor.getEnabledModuleDescriptorsByClass(WebResourceModuleDescriptor.class)).thenReturn(ImmutableList.copyOf(moduleDescriptors));
+
+        final Iterable<WebResourceModuleDescriptor> resources = dependencyResolver.getDependencies(moduleKey, false);
+        assertOrder(resources, dependencyKey, moduleKey);
+        assertSame(resources, dependencyResolver.getDependencies(moduleKey, false));
+        final Iterable<WebResourceModuleDescriptor> contextResources = dependencyResolver.getDependenciesInContext("contextA");
+        assertOrder(contextResources, dependencyKey, moduleKey);
+        assertSame(contextResources, dependencyResolver.getDependenciesInContext("contextA"));
+        verify(mockPluginAccessor, never()).getEnabledPluginModule(anyString());
+
+        final String otherKey = "test.atlassian:baz";
+        addModuleDescriptor(otherKey, Collections.<String> emptyList(), new HashSet<String>(Arrays.asList("contextA")));
+        when(mockPluginAccessor.getEnabledModuleDescriptorsByClass(WebResourceModuleDescriptor.class)).thenReturn(ImmutableList.copyOf(moduleDescriptors));
+
+        assertOrder(dependencyResolver.getDependenciesInContext("contextA"), dependencyKey, moduleKey, otherKey);
+    }
+
+    public void testGraphIsOnlyRebuiltOnModuleEvents()
+    {
+        final PluginEventManager pluginEventManager = new DefaultPluginEventManager();
+        dependencyResolver = new DefaultResourceDependencyResolver(mockWebResourceIntegration, mockBatchingConfiguration, pluginEventManager);
+        final String moduleKey = "test.atlassian:foo";
+        final String dependencyKey = "test.atlassian:bar";
+        addModuleDescriptor(dependencyKey);
+        addModuleDescriptor(moduleKey, Arrays.asList(dependencyKey), new HashSet<String>(Arrays.asList("contextA")));
+        // like the plugin manager, return a new list every time
+        when(mockPluginAccessor.getEnabledModuleDescriptorsByClass(WebResourceModuleDescriptor.class)).thenAnswer(new Answer<List<WebResourceModuleDescriptor>>()
+        {
+            public List<WebResourceModuleDescriptor> answer(final InvocationOnMock invocation)
+            {
+                return new ArrayList<WebResourceModuleDescriptor>(moduleDescriptors);
+            }
+        });
+
+        final Iterable<WebResourceModuleDescriptor> resources = dependencyResolver.getDependencies(moduleKey, false);
+        assertOrder(resources, dependencyKey, moduleKey);
+        assertSame(resources, dependencyResolver.getDependencies(moduleKey, false));
+        assertOrder(dependencyResolver.getDependenciesInContext("contextA"), dependencyKey, moduleKey);
+        assertOrder(dependencyResolver.getDependenciesInContext("contextA"), dependencyKey, moduleKey);
+        verify(mockPluginAccessor, times(1)).getEnabledModuleDescriptorsByClass(WebResourceModuleDescriptor.class);
+
+        final String otherKey = "test.atlassian:baz";
+        addModuleDescriptor(otherKey, Collections.<String> emptyList(), new HashSet<String>(Arrays.asList("contextA")));
+        pluginEventManager.broadcast(new PluginModuleEnabledEvent(moduleDescriptors.get(2)));
+        assertOrder(dependencyResolver.getDependenciesInContext("contextA"), dependencyKey, moduleKey, otherKey);
+
+        final WebResourceModuleDescriptor disabled = moduleDescriptors.remove(2);
+        pluginEventManager.broadcast(new PluginModuleDisabledEvent(disabled, false));
+        assertOrder(dependencyResolver.getDependenciesInContext("contextA"), dependencyKey, moduleKey);
+        assertOrder(dependencyResolver.getDependenciesInContext("contextA"), dependencyKey, moduleKey);
+        verify(mockPluginAccessor, times(3)).getEnabledModuleDescriptorsByClass(WebResourceModuleDescriptor.class);
+    }
+
     private void addModuleDescriptor(final String moduleKey)
     {
         addModuleDescriptor(moduleKey, Collections.<String> emptyList());
@@ -0,0 +1,133 @@
+package com.atlassian.plugin.webresource;
+
+import com.atlassian.plugin.cache.filecache.FileCacheStreamProvider;
+import com.atlassian.plugin.cache.filecache.impl.LRUFileCache;
+import com.atlassian.plugin.servlet.DownloadException;
+import com.atlassian.plugin.util.PluginUtils;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestGzipVariant extends TestCase
+{
+    private static final String CONTENT = "var batched = 'javascript';";
+
+    private LRUFileCache fileCache;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private ByteArrayOutputStream output;
+    private int builds;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        System.setProperty(PluginUtils.PRECOMPRESS_FILE_CACHE, "true");
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "test-gzip-variant");
+        FileUtils.deleteDirectory(dir);
+        fileCache = new LRUFileCache(dir, 10);
+        request = mock(HttpServletRequest.class);
+        response = mock(HttpServletResponse.class);
+        output = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream()
+        {
+            @Override
+            public void write(final int b) throws IOException
+            {
+                output.write(b);
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        System.clearProperty(PluginUtils.PRECOMPRESS_FILE_CACHE);
+        super.tearDown();
+    }
+
+    public void testAcceptsGzip()
+    {
+        assertTrue(GzipVariant.acceptsGzip("gzip"));
+        assertTrue(GzipVariant.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertFalse(GzipVariant.acceptsGzip("gzip;q=0"));
+        assertFalse(GzipVariant.acceptsGzip("deflate, x-foo"));
+        assertFalse(GzipVariant.acceptsGzip(null));
+    }
+
+    public void testServesCachedGzipCopyWhenAccepted() throws Exception
+    {
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+
+        serve("js");
+        assertEquals(CONTENT, gunzip(output.toByteArray()));
+        output.reset();
+        serve("js");
+        assertEquals(CONTENT, gunzip(output.toByteArray()));
+
+        assertEquals(1, builds);
+        assertEquals(2, fileCache.getMissCount()); // the uncompressed batch and its gzipped copy
+        verify(response, times(2)).setHeader("Content-Encoding", "gzip");
+    }
+
+    public void testServesUncompressedWhenNotAccepted() throws Exception
+    {
+        serve("js");
+
+        assertEquals(CONTENT, output.toString("UTF-8"));
+        verify(response).addHeader("Vary", "Accept-Encoding");
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+    }
+
+    public void testServesUncompressedWhenDisabled() throws Exception
+    {
+        System.clearProperty(PluginUtils.PRECOMPRESS_FILE_CACHE);
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+
+        serve("css");
+
+        assertEquals(CONTENT, output.toString("UTF-8"));
+        verify(response, never()).setHeader("Content-Encoding", "gzip");
+    }
+
+    private void serve(final String type) throws DownloadException
+    {
+        GzipVariant.serve(fileCache, ResourceUtils.buildCacheKey("/download/batch." + type, Collections.<String, String>emptyMap()), new FileCacheStreamProvider()
+        {
+            public void writeStream(final OutputStream dest) throws DownloadException
+            {
+                builds++;
+                try
+                {
+                    dest.write(CONTENT.getBytes("UTF-8"));
+                }
+                catch (IOException e)
+                {
+                    throw new DownloadException(e);
+                }
+            }
+        }, type, request, response);
+    }
+
+    private static String gunzip(final byte[] bytes) throws IOException
+    {
+        return IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(bytes)), "UTF-8");
+    }
+}
@@ -546,7 +546,7 @@ public class TestPluginResourceLocatorImpl extends TestCase
         final ContextBatchPluginResource contextBatchPluginResource = (ContextBatchPluginResource) resource;
         assertEquals(1, size(contextBatchPluginResource.getContexts()));
         assertEquals(context, get(contextBatchPluginResource.getContexts(), 0));
-        verify(mockPluginAccessor, times(3)).getEnabledPluginModule(TEST_MODULE_COMPLETE_KEY);
+        verify(mockPluginAccessor, times(2)).getEnabledPluginModule(TEST_MODULE_COMPLETE_KEY);
     }
 
     public void testGetDownloadableMergedContextBatchResource() throws Exception
@@ -586,8 +586,8 @@ public class TestPluginResourceLocatorImpl extends TestCase
         assertEquals(context1, get(contextBatchPluginResource.getContexts(), 0));
         assertEquals(context2, get(contextBatchPluginResource.getContexts(), 1));
 
-        verify(mockPluginAccessor, times(3)).getEnabledPluginModule(completeKey1);
-        verify(mockPluginAccessor, times(3)).getEnabledPluginModule(completeKey2);
+        verify(mockPluginAccessor, times(2)).getEnabledPluginModule(completeKey1);
+        verify(mockPluginAccessor, times(2)).getEnabledPluginModule(completeKey2);
     }
 
     public void testGetDownloadableMergedContextBatchResourceWithOverlap() throws Exception
@@ -633,13 +633,11 @@ public class TestPluginResourceLocatorImpl extends TestCase
         assertEquals(context1, get(contextBatchPluginResource.getContexts(), 0));
         assertEquals(context2, get(contextBatchPluginResource.getContexts(), 1));
 
-        verify(mockPluginAccessor, times(3)).getEnabledPluginModule(completeKey1);
-        verify(mockPluginAccessor, times(3)).getEnabledPluginModule(completeKey2);
+        verify(mockPluginAccessor, times(2)).getEnabledPluginModule(completeKey1);
+        verify(mockPluginAccessor, times(2)).getEnabledPluginModule(completeKey2);
 
-        // TODO - BN 2.9.0 - work out a better way to ensure that the parent isn't included twice.
-        // 2 for dependency resolution
-        // 1 for resource descriptor download
-        verify(mockPluginAccessor, times(3)).getEnabledPluginModule(parentKey);
+        // dependencies are resolved from the enabled web resources, so this is only for the resource descriptor download
+        verify(mockPluginAccessor, times(1)).getEnabledPluginModule(parentKey);
     }
 
     public void testSplitLastPathPart()